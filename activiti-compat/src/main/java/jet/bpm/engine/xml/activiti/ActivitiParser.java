@@ -22,6 +22,7 @@ import jet.bpm.engine.model.ServiceTask;
 import jet.bpm.engine.model.ExpressionType;
 import jet.bpm.engine.model.InclusiveGateway;
 import jet.bpm.engine.model.IntermediateCatchEvent;
+import jet.bpm.engine.model.LoopCharacteristics;
 import jet.bpm.engine.model.ParallelGateway;
 import jet.bpm.engine.model.SequenceFlow.ExecutionListener;
 import jet.bpm.engine.model.StartEvent;
@@ -64,6 +65,7 @@ public class ActivitiParser implements Parser {
             private final String name;
             private final String processId;
             private final Collection<AbstractElement> children;
+            private LoopCharacteristics loop;
 
             public Item(String processId, String name, Collection<AbstractElement> children) {
                 this.processId = processId;
@@ -84,6 +86,13 @@ public class ActivitiParser implements Parser {
         private String timeDate;
         private String timeDuration;
         private String calledElement;
+        private boolean callActivity;
+        private ServiceTask serviceTask;
+        private boolean sequential;
+        private String loopCollection;
+        private String elementVariable;
+        private String completionCondition;
+        private LoopCharacteristics loop;
         private StringBuilder text;
 
         private ProcessDefinition process;
@@ -122,6 +131,7 @@ public class ActivitiParser implements Parser {
                     id = attributes.getValue("id");
                     name = attributes.getValue("name");
                     calledElement = attributes.getValue("calledElement");
+                    callActivity = true;
                     break;
 
                 case "boundaryEvent":
@@ -188,6 +198,17 @@ public class ActivitiParser implements Parser {
                     ServiceTask st = new ServiceTask(id, type, expr);
                     st.setName(name);
                     children.add(st);
+                    serviceTask = st;
+                    break;
+
+                case "multiInstanceLoopCharacteristics":
+                    sequential = Boolean.parseBoolean(attributes.getValue("isSequential"));
+                    loopCollection = attributes.getValue("activiti:collection");
+                    elementVariable = attributes.getValue("activiti:elementVariable");
+                    break;
+
+                case "completionCondition":
+                    text = new StringBuilder();
                     break;
 
                 case "activiti:executionListener":
@@ -287,6 +308,7 @@ public class ActivitiParser implements Parser {
                     children = i.children;
                     
                     p.setName(i.name);
+                    p.setLoopCharacteristics(i.loop);
 
                     children.add(p);
                     
@@ -329,9 +351,12 @@ public class ActivitiParser implements Parser {
                 case "callActivity":
                     CallActivity ca = new CallActivity(id, calledElement, in, out);
                     ca.setName(name);                    
+                    ca.setLoopCharacteristics(loop);
                     children.add(ca);
                     
                     calledElement = null;
+                    callActivity = false;
+                    loop = null;
                     in = null;
                     name = null;
                     out = null;
@@ -355,6 +380,33 @@ public class ActivitiParser implements Parser {
                     timeDuration = text.toString();
                     text = null;
                     break;
+
+                case "serviceTask":
+                    serviceTask = null;
+                    break;
+
+                case "completionCondition":
+                    completionCondition = text.toString().trim();
+                    text = null;
+                    break;
+
+                case "multiInstanceLoopCharacteristics":
+                    LoopCharacteristics lc = new LoopCharacteristics(sequential, loopCollection, elementVariable, completionCondition);
+
+                    // the loop belongs to the innermost activity
+                    if (serviceTask != null) {
+                        serviceTask.setLoopCharacteristics(lc);
+                    } else if (callActivity) {
+                        loop = lc;
+                    } else if (!items.isEmpty()) {
+                        items.peek().loop = lc;
+                    }
+
+                    sequential = false;
+                    loopCollection = null;
+                    elementVariable = null;
+                    completionCondition = null;
+                    break;
             }
         }
     }
@@ -1,8 +1,11 @@
 package jet.bpm.engine.xml.activiti;
 
 import java.io.InputStream;
+import jet.bpm.engine.model.CallActivity;
+import jet.bpm.engine.model.LoopCharacteristics;
 import jet.bpm.engine.model.ProcessDefinition;
 import jet.bpm.engine.model.SequenceFlow;
+import jet.bpm.engine.model.ServiceTask;
 import jet.bpm.engine.model.SubProcess;
 import jet.bpm.engine.xml.Parser;
 import static org.junit.Assert.*;
@@ -49,4 +52,34 @@ public class ActivitiParserTest {
         assertNotNull(sp2);
         assertEquals(32, sp2.getChildren().size());
     }
+
+    @Test
+    public void testMultiInstance() throws Exception {
+        InputStream in = ClassLoader.getSystemResourceAsStream("multiinstance.bpmn");
+        Parser p = new ActivitiParser();
+
+        ProcessDefinition pd = p.parse(in);
+        assertNotNull(pd);
+
+        ServiceTask t = (ServiceTask) pd.getChild("notifyTask");
+        LoopCharacteristics l = t.getLoopCharacteristics();
+        assertNotNull(l);
+        assertFalse(l.isSequential());
+        assertEquals("${recipients}", l.getCollection());
+        assertEquals("recipient", l.getElementVariable());
+        assertEquals("${nrOfCompletedInstances >= 10}", l.getCompletionCondition());
+
+        SubProcess sp = (SubProcess) pd.getChild("subprocess1");
+        l = sp.getLoopCharacteristics();
+        assertNotNull(l);
+        assertTrue(l.isSequential());
+        assertEquals("orders", l.getCollection());
+        assertNull(l.getCompletionCondition());
+        assertNull(((ServiceTask) sp.getChild("checkTask")).getLoopCharacteristics());
+
+        CallActivity ca = (CallActivity) pd.getChild("callactivity1");
+        l = ca.getLoopCharacteristics();
+        assertNotNull(l);
+        assertEquals("item", l.getElementVariable());
+    }
 }
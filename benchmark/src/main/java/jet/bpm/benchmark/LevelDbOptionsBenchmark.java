@@ -0,0 +1,104 @@
+package jet.bpm.benchmark;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import jet.bpm.engine.TimeOrderedUuidGenerator;
+import jet.bpm.engine.UuidGenerator;
+import jet.bpm.engine.leveldb.DbFactories;
+import jet.bpm.engine.leveldb.LevelDb;
+import jet.bpm.engine.leveldb.StoreOptions;
+import org.iq80.leveldb.DBFactory;
+
+/**
+ * Compares LevelDB options on an execution-like workload: each key is
+ * written, read back and rewritten, then a random half of the keys is read.
+ */
+public class LevelDbOptionsBenchmark {
+
+    private static final int RECORDS = 100000;
+    private static final int VALUE_SIZE = 1024;
+
+    public static void main(String[] args) throws Exception {
+        benchmark("warm-up", false, null);
+        benchmark("defaults", false, null);
+        benchmark("cache 64M", false, new StoreOptions().setCacheSize(64 * 1024 * 1024));
+        benchmark("write buffer 16M", false, new StoreOptions().setWriteBufferSize(16 * 1024 * 1024));
+        benchmark("block size 16K", false, new StoreOptions().setBlockSize(16 * 1024));
+        benchmark("no compression", false, new StoreOptions().setCompression(false));
+        benchmark("all", false, new StoreOptions()
+                .setCacheSize(64 * 1024 * 1024)
+                .setWriteBufferSize(16 * 1024 * 1024)
+                .setCompression(false));
+        benchmark("native, defaults", true, null);
+    }
+
+    private static void benchmark(String name, boolean nativeFactory, StoreOptions options) throws Exception {
+        String dir = "/tmp/leveldb-bench#" + System.currentTimeMillis();
+
+        DBFactory f = DbFactories.get(nativeFactory);
+        LevelDb db = new LevelDb(f, dir, false, 0, options);
+        db.init();
+
+        UuidGenerator idg = new TimeOrderedUuidGenerator();
+        Random rnd = new Random(42);
+        byte[] value = makeValue(rnd);
+
+        List<byte[]> keys = new ArrayList<>(RECORDS);
+        try {
+            long t1 = System.currentTimeMillis();
+            for (int i = 0; i < RECORDS; i++) {
+                byte[] k = key(idg.generate());
+                keys.add(k);
+                db.put(k, value);
+                db.get(k);
+                db.put(k, value);
+            }
+
+            long t2 = System.currentTimeMillis();
+            for (int i = 0; i < RECORDS / 2; i++) {
+                db.get(keys.get(rnd.nextInt(keys.size())));
+            }
+
+            long t3 = System.currentTimeMillis();
+            System.out.println(String.format("%-20s %s: write %d ms, read %d ms, size %d KB",
+                    name, f.getClass().getSimpleName(), t2 - t1, t3 - t2, size(new File(dir)) / 1024));
+        } finally {
+            db.close();
+        }
+    }
+
+    private static byte[] makeValue(Random rnd) {
+        // partially compressible, like serialized executions
+        byte[] b = new byte[VALUE_SIZE];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = i % 4 == 0 ? (byte) rnd.nextInt() : (byte) (i % 16);
+        }
+        return b;
+    }
+
+    private static byte[] key(UUID id) {
+        return ByteBuffer.allocate(16)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .array();
+    }
+
+    private static long size(File f) {
+        if (f.isFile()) {
+            return f.length();
+        }
+
+        long l = 0;
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children) {
+                l += size(c);
+            }
+        }
+        return l;
+    }
+}
@@ -4,7 +4,7 @@ import java.io.InputStream;
 import java.util.UUID;
 import jet.bpm.engine.DefaultEngine;
 import jet.bpm.engine.ProcessDefinitionProviderImpl;
-import jet.bpm.engine.api.Engine;
+import jet.bpm.engine.TimeOrderedUuidGenerator;
 import jet.bpm.engine.api.ExecutionContext;
 import jet.bpm.engine.api.JavaDelegate;
 import jet.bpm.engine.event.EventPersistenceManager;
@@ -67,7 +67,8 @@ public class SimpleBenchmark {
 
         LockManager lm = new StripedLockManagerImpl(32);
 
-        Engine engine = new DefaultEngine(pdp, str, epm, pm, lm);
+        DefaultEngine engine = new DefaultEngine(pdp, str, epm, pm, lm);
+        engine.setUuidGenerator(new TimeOrderedUuidGenerator());
 
         // ---
 
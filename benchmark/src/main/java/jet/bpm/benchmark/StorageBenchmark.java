@@ -0,0 +1,66 @@
+package jet.bpm.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import jet.bpm.engine.TimeOrderedUuidGenerator;
+import jet.bpm.engine.UuidGenerator;
+import jet.bpm.engine.leveldb.DbFactories;
+import jet.bpm.engine.leveldb.LevelDb;
+import jet.bpm.engine.persistence.Durability;
+import jet.bpm.engine.storage.Keys;
+import jet.bpm.engine.storage.KeyValueStore;
+import jet.bpm.engine.storage.MappedLogStore;
+
+/**
+ * Compares storage backends on an execution-like workload: each key is
+ * written, read back and rewritten, then a random half of the keys is read.
+ */
+public class StorageBenchmark {
+
+    private static final int RECORDS = 100000;
+    private static final int VALUE_SIZE = 1024;
+
+    public static void main(String[] args) throws Exception {
+        for (int i = 0; i < 2; i++) {
+            String dir = "/tmp/storage-bench#" + System.currentTimeMillis();
+            benchmark("leveldb", new LevelDb(DbFactories.get(false), dir + "/leveldb", false));
+
+            MappedLogStore s = new MappedLogStore(new File(dir + "/mapped"));
+            s.setDefaultDurability(Durability.NONE);
+            benchmark("mapped log", s);
+        }
+    }
+
+    private static void benchmark(String name, KeyValueStore db) throws Exception {
+        db.init();
+
+        UuidGenerator idg = new TimeOrderedUuidGenerator();
+        Random rnd = new Random(42);
+        byte[] value = new byte[VALUE_SIZE];
+        rnd.nextBytes(value);
+
+        List<byte[]> keys = new ArrayList<>(RECORDS);
+        try {
+            long t1 = System.currentTimeMillis();
+            for (int i = 0; i < RECORDS; i++) {
+                byte[] k = Keys.marshall(idg.generate());
+                keys.add(k);
+                db.put(k, value);
+                db.get(k);
+                db.put(k, value);
+            }
+
+            long t2 = System.currentTimeMillis();
+            for (int i = 0; i < RECORDS / 2; i++) {
+                db.get(keys.get(rnd.nextInt(keys.size())));
+            }
+
+            long t3 = System.currentTimeMillis();
+            System.out.println(String.format("%-12s write %d ms, read %d ms", name, t2 - t1, t3 - t2));
+        } finally {
+            db.close();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package jet.bpm.engine.api;
+
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Completion of an asynchronous service task.
+ * @see AsyncJavaDelegate
+ */
+public interface AsyncCompletion {
+
+    /**
+     * Completes the task successfully.
+     * @param variables variables to be set in the process, can be null.
+     * @return the future, which is done when the process is continued with
+     * the results. It fails if the process can't be continued, e.g. the
+     * task timed out.
+     */
+    Future<Void> complete(Map<String, Object> variables);
+
+    /**
+     * Completes the task with an error. {@link BpmnError} is handled by
+     * boundary error events of the task.
+     * @param error the error.
+     * @return the future, which is done when the process is continued with
+     * the error.
+     * @see #complete(Map)
+     */
+    Future<Void> fail(Throwable error);
+}
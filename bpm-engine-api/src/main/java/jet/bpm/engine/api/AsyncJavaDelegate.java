@@ -0,0 +1,18 @@
+package jet.bpm.engine.api;
+
+/**
+ * Service task, which completes asynchronously. The process instance waits
+ * for the completion like for an event, without holding its lock or a
+ * thread.
+ */
+public interface AsyncJavaDelegate {
+
+    /**
+     * Starts the task. The method should not block. The context must not be
+     * used after the method returns: results must be passed to the
+     * completion.
+     * @param ctx the execution context.
+     * @param completion must be called exactly once, when the task is done.
+     */
+    void execute(ExecutionContext ctx, AsyncCompletion completion) throws Exception;
+}
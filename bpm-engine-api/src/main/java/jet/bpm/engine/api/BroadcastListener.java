@@ -0,0 +1,19 @@
+package jet.bpm.engine.api;
+
+/**
+ * Receives progress of a broadcast. Methods can be called concurrently from
+ * different threads.
+ * @see Engine#broadcast(String, java.util.Map, BroadcastListener)
+ */
+public interface BroadcastListener {
+
+    /**
+     * Called when a process instance is resumed.
+     */
+    void onResumed(Subscription s);
+
+    /**
+     * Called when a process instance can't be resumed.
+     */
+    void onFailure(Subscription s, ExecutionException e);
+}
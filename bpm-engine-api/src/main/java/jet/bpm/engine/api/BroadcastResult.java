@@ -0,0 +1,42 @@
+package jet.bpm.engine.api;
+
+import java.util.List;
+
+/**
+ * Result of a broadcast.
+ * @see Engine#broadcast(String, java.util.Map, BroadcastListener)
+ */
+public class BroadcastResult {
+
+    private final int resumedCount;
+    private final int skippedCount;
+    private final List<RequestOutcome<Subscription>> failures;
+
+    public BroadcastResult(int resumedCount, int skippedCount, List<RequestOutcome<Subscription>> failures) {
+        this.resumedCount = resumedCount;
+        this.skippedCount = skippedCount;
+        this.failures = failures;
+    }
+
+    /**
+     * Returns the number of resumed process instances.
+     */
+    public int getResumedCount() {
+        return resumedCount;
+    }
+
+    /**
+     * Returns the number of events, which were consumed by other calls while
+     * the broadcast was in progress.
+     */
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * Returns the failed subscriptions with their errors.
+     */
+    public List<RequestOutcome<Subscription>> getFailures() {
+        return failures;
+    }
+}
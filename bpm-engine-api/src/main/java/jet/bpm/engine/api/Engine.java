@@ -1,6 +1,9 @@
 package jet.bpm.engine.api;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 public interface Engine {
 
@@ -11,6 +14,8 @@ public interface Engine {
      * @param processBusinessKey external process instance ID, must be unique.
      * @param processDefinitionId the id of the process definition, cannot be null.
      * @param variables variables to be passed, can be null.
+     * @throws InstanceBusyException if the instance is locked by another
+     * thread longer than the engine's lock timeout.
      * @throws ExecutionException
      */
     void start(String processBusinessKey, String processDefinitionId, Map<String, Object> variables) throws ExecutionException;
@@ -21,7 +26,69 @@ public interface Engine {
      * @param eventName the name of the event, cannot be null.
      * @param variables variables to be passed, can be null. Values with the same
      * name will be replaced.
+     * @throws InstanceBusyException if the instance is locked by another
+     * thread longer than the engine's lock timeout.
      * @throws ExecutionException
      */
     void resume(String processBusinessKey, String eventName, Map<String, Object> variables) throws ExecutionException;
+
+    /**
+     * Resumes a process instance, waiting for the event with the given ID.
+     * Doesn't require a lookup of the event by its name.
+     * @param eventId the ID of the event, cannot be null.
+     * @param variables variables to be passed, can be null. Values with the same
+     * name will be replaced.
+     * @throws NoEventFoundException if there is no such event.
+     * @throws ExecutionException
+     * @see #startWithEvents(String, String, Map)
+     * @see #resumeWithEvents(String, String, Map)
+     */
+    void resume(UUID eventId, Map<String, Object> variables) throws ExecutionException;
+
+    /**
+     * Same as {@link #start(String, String, Map)}, but returns events created
+     * by the call, i.e. the events the process instance is waiting for.
+     * @return created events, in the order of their creation.
+     * @throws ExecutionException
+     */
+    List<Subscription> startWithEvents(String processBusinessKey, String processDefinitionId, Map<String, Object> variables) throws ExecutionException;
+
+    /**
+     * Same as {@link #resume(String, String, Map)}, but returns events created
+     * by the call.
+     * @return created events, in the order of their creation.
+     * @throws ExecutionException
+     */
+    List<Subscription> resumeWithEvents(String processBusinessKey, String eventName, Map<String, Object> variables) throws ExecutionException;
+
+    /**
+     * Starts multiple process instances. Requests with different business
+     * keys can be processed in parallel. A failure of a request doesn't
+     * affect other requests.
+     * @param requests the start requests.
+     * @return outcomes of the requests, in the order of the requests.
+     */
+    List<RequestOutcome<StartRequest>> startAll(Collection<StartRequest> requests);
+
+    /**
+     * Resumes multiple process instances. Requests with the same business key
+     * are processed in the order of the requests, requests with different
+     * business keys can be processed in parallel. A failure of a request
+     * doesn't affect other requests.
+     * @param requests the resume requests.
+     * @return outcomes of the requests, in the order of the requests.
+     */
+    List<RequestOutcome<ResumeRequest>> resumeAll(Collection<ResumeRequest> requests);
+
+    /**
+     * Resumes all process instances waiting for the specified event.
+     * Instances are resumed in parallel, with limited concurrency. Only events,
+     * existing at the start of the call, are processed.
+     * @param eventName the name of the event, cannot be null.
+     * @param variables variables to be passed, can be null.
+     * @param listener receives the progress, can be null.
+     * @return the result of the broadcast.
+     * @throws ExecutionException
+     */
+    BroadcastResult broadcast(String eventName, Map<String, Object> variables, BroadcastListener listener) throws ExecutionException;
 }
@@ -15,6 +15,22 @@ public interface ExecutionContext extends Serializable {
      */
     public static final String ERROR_CODE_KEY = "errorCode";
 
+    /**
+     * Index of the current instance of a multi-instance activity.
+     * @see jet.bpm.engine.model.LoopCharacteristics
+     */
+    public static final String LOOP_COUNTER_KEY = "loopCounter";
+
+    /**
+     * Total number of instances of a multi-instance activity.
+     */
+    public static final String NUMBER_OF_INSTANCES_KEY = "nrOfInstances";
+
+    /**
+     * Number of completed instances of a multi-instance activity.
+     */
+    public static final String NUMBER_OF_COMPLETED_INSTANCES_KEY = "nrOfCompletedInstances";
+
     Object getVariable(String key);
     
     Map<String, Object> getVariables();
@@ -26,4 +42,30 @@ public interface ExecutionContext extends Serializable {
     void removeVariable(String key);
 
     Set<String> getVariableNames();
+
+    /**
+     * Returns the value of a transient variable. Transient variables are
+     * visible only within the current engine call: they are never persisted
+     * and are dropped when the process is suspended.
+     * @param key the name of the variable.
+     * @return the value of the variable or <code>null</code>.
+     */
+    Object getTransientVariable(String key);
+
+    /**
+     * Sets the value of a transient variable. The value doesn't need to be
+     * serializable.
+     * @param key the name of the variable.
+     * @param value the value of the variable.
+     * @see #getTransientVariable(java.lang.String)
+     */
+    void setTransientVariable(String key, Object value);
+
+    /**
+     * Removes a transient variable. If the variable is not set in this
+     * context, it is removed from the parent context.
+     * @param key the name of the variable.
+     * @see #getTransientVariable(java.lang.String)
+     */
+    void removeTransientVariable(String key);
 }
@@ -0,0 +1,19 @@
+package jet.bpm.engine.api;
+
+/**
+ * The process instance is locked by another thread and the lock wasn't
+ * acquired within the configured timeout. The call can be retried later.
+ */
+public class InstanceBusyException extends ExecutionException {
+
+    private final String processBusinessKey;
+
+    public InstanceBusyException(String processBusinessKey) {
+        super("Process instance '%s' is busy", processBusinessKey);
+        this.processBusinessKey = processBusinessKey;
+    }
+
+    public String getProcessBusinessKey() {
+        return processBusinessKey;
+    }
+}
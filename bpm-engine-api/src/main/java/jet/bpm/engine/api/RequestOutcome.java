@@ -0,0 +1,32 @@
+package jet.bpm.engine.api;
+
+/**
+ * Outcome of a single request of a batch call.
+ * @param <T> type of the request.
+ */
+public class RequestOutcome<T> {
+
+    private final T request;
+    private final ExecutionException error;
+
+    public RequestOutcome(T request, ExecutionException error) {
+        this.request = request;
+        this.error = error;
+    }
+
+    public T getRequest() {
+        return request;
+    }
+
+    /**
+     * Returns the error of the request, or {@code null} if the request was
+     * successful.
+     */
+    public ExecutionException getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
@@ -0,0 +1,33 @@
+package jet.bpm.engine.api;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Request to resume a process instance.
+ * @see Engine#resumeAll(java.util.Collection)
+ */
+public class ResumeRequest implements Serializable {
+
+    private final String processBusinessKey;
+    private final String eventName;
+    private final Map<String, Object> variables;
+
+    public ResumeRequest(String processBusinessKey, String eventName, Map<String, Object> variables) {
+        this.processBusinessKey = processBusinessKey;
+        this.eventName = eventName;
+        this.variables = variables;
+    }
+
+    public String getProcessBusinessKey() {
+        return processBusinessKey;
+    }
+
+    public String getEventName() {
+        return eventName;
+    }
+
+    public Map<String, Object> getVariables() {
+        return variables;
+    }
+}
@@ -0,0 +1,33 @@
+package jet.bpm.engine.api;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Request to start a new process instance.
+ * @see Engine#startAll(java.util.Collection)
+ */
+public class StartRequest implements Serializable {
+
+    private final String processBusinessKey;
+    private final String processDefinitionId;
+    private final Map<String, Object> variables;
+
+    public StartRequest(String processBusinessKey, String processDefinitionId, Map<String, Object> variables) {
+        this.processBusinessKey = processBusinessKey;
+        this.processDefinitionId = processDefinitionId;
+        this.variables = variables;
+    }
+
+    public String getProcessBusinessKey() {
+        return processBusinessKey;
+    }
+
+    public String getProcessDefinitionId() {
+        return processDefinitionId;
+    }
+
+    public Map<String, Object> getVariables() {
+        return variables;
+    }
+}
@@ -0,0 +1,38 @@
+package jet.bpm.engine.api;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * Event, which a process instance is waiting for.
+ * @see Engine#resume(UUID, java.util.Map)
+ */
+public class Subscription implements Serializable {
+
+    private final UUID eventId;
+    private final String eventName;
+    private final String processBusinessKey;
+
+    public Subscription(UUID eventId, String eventName, String processBusinessKey) {
+        this.eventId = eventId;
+        this.eventName = eventName;
+        this.processBusinessKey = processBusinessKey;
+    }
+
+    public UUID getEventId() {
+        return eventId;
+    }
+
+    public String getEventName() {
+        return eventName;
+    }
+
+    public String getProcessBusinessKey() {
+        return processBusinessKey;
+    }
+
+    @Override
+    public String toString() {
+        return "Subscription[" + eventId + ", " + eventName + ", " + processBusinessKey + "]";
+    }
+}
@@ -2,9 +2,10 @@ package jet.bpm.engine.model;
 
 import java.util.Set;
 
-public class CallActivity extends AbstractElement {
+public class CallActivity extends AbstractElement implements LoopActivity {
 
     private String name;
+    private LoopCharacteristics loopCharacteristics;
     private final String calledElement;
     private final Set<VariableMapping> in;
     private final Set<VariableMapping> out;
@@ -39,4 +40,13 @@ public class CallActivity extends AbstractElement {
     public void setName(String name) {
         this.name = name;
     }
+
+    @Override
+    public LoopCharacteristics getLoopCharacteristics() {
+        return loopCharacteristics;
+    }
+
+    public void setLoopCharacteristics(LoopCharacteristics loopCharacteristics) {
+        this.loopCharacteristics = loopCharacteristics;
+    }
 }
@@ -0,0 +1,13 @@
+package jet.bpm.engine.model;
+
+/**
+ * Activity, which can be performed as a multi-instance loop.
+ */
+public interface LoopActivity {
+
+    /**
+     * Returns the loop characteristics or {@code null}, if the activity is
+     * performed once.
+     */
+    LoopCharacteristics getLoopCharacteristics();
+}
@@ -0,0 +1,54 @@
+package jet.bpm.engine.model;
+
+import java.io.Serializable;
+
+/**
+ * Multi-instance loop of an activity: the activity is performed once for
+ * each item of a collection.
+ * <p/>
+ * Each instance sees the current item in the element variable and the
+ * variables {@link jet.bpm.engine.api.ExecutionContext#LOOP_COUNTER_KEY},
+ * {@link jet.bpm.engine.api.ExecutionContext#NUMBER_OF_INSTANCES_KEY} and
+ * {@link jet.bpm.engine.api.ExecutionContext#NUMBER_OF_COMPLETED_INSTANCES_KEY}.
+ */
+public class LoopCharacteristics implements Serializable {
+
+    private final boolean sequential;
+    private final String collection;
+    private final String elementVariable;
+    private final String completionCondition;
+
+    /**
+     * @param sequential if {@code false}, instances can be performed
+     * concurrently.
+     * @param collection the name of the variable or an EL expression, which
+     * evaluates into a collection or an array.
+     * @param elementVariable the name of the variable with the current item,
+     * can be null.
+     * @param completionCondition EL expression, which is evaluated after
+     * instances complete. The loop stops as soon as it evaluates into
+     * {@code true}. Can be null.
+     */
+    public LoopCharacteristics(boolean sequential, String collection, String elementVariable, String completionCondition) {
+        this.sequential = sequential;
+        this.collection = collection;
+        this.elementVariable = elementVariable;
+        this.completionCondition = completionCondition;
+    }
+
+    public boolean isSequential() {
+        return sequential;
+    }
+
+    public String getCollection() {
+        return collection;
+    }
+
+    public String getElementVariable() {
+        return elementVariable;
+    }
+
+    public String getCompletionCondition() {
+        return completionCondition;
+    }
+}
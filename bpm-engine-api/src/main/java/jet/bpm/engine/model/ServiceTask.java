@@ -1,8 +1,9 @@
 package jet.bpm.engine.model;
 
-public class ServiceTask extends AbstractElement {
+public class ServiceTask extends AbstractElement implements LoopActivity {
     
     private String name;
+    private LoopCharacteristics loopCharacteristics;
     private final String expression;
     private final ExpressionType type;
 
@@ -30,5 +31,14 @@ public class ServiceTask extends AbstractElement {
 
     public void setName(String name) {
         this.name = name;
-    }            
+    }
+
+    @Override
+    public LoopCharacteristics getLoopCharacteristics() {
+        return loopCharacteristics;
+    }
+
+    public void setLoopCharacteristics(LoopCharacteristics loopCharacteristics) {
+        this.loopCharacteristics = loopCharacteristics;
+    }
 }
@@ -2,9 +2,10 @@ package jet.bpm.engine.model;
 
 import java.util.Collection;
 
-public class SubProcess extends ProcessDefinition {
+public class SubProcess extends ProcessDefinition implements LoopActivity {
     
     private String name;
+    private LoopCharacteristics loopCharacteristics;
     
     public SubProcess(String id, Collection<AbstractElement> children) {
         super(id, children);
@@ -17,4 +18,13 @@ public class SubProcess extends ProcessDefinition {
     public void setName(String name) {
         this.name = name;
     }
+
+    @Override
+    public LoopCharacteristics getLoopCharacteristics() {
+        return loopCharacteristics;
+    }
+
+    public void setLoopCharacteristics(LoopCharacteristics loopCharacteristics) {
+        this.loopCharacteristics = loopCharacteristics;
+    }
 }
@@ -1,25 +1,47 @@
 package jet.bpm.engine;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import jet.bpm.engine.api.ExecutionContext;
 import jet.bpm.engine.api.ActivationListener;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import jet.bpm.engine.persistence.PersistenceManager;
+import jet.bpm.engine.persistence.WriteBehindPersistenceManager;
 import jet.bpm.engine.api.Engine;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import jet.bpm.engine.api.BroadcastListener;
+import jet.bpm.engine.api.BroadcastResult;
 import jet.bpm.engine.api.Execution;
 import jet.bpm.engine.api.ExecutionException;
+import jet.bpm.engine.api.InstanceBusyException;
 import jet.bpm.engine.api.NoEventFoundException;
+import jet.bpm.engine.api.RequestOutcome;
+import jet.bpm.engine.api.ResumeRequest;
+import jet.bpm.engine.api.StartRequest;
+import jet.bpm.engine.api.Subscription;
+import jet.bpm.engine.commands.CompleteServiceTaskCommand;
 import jet.bpm.engine.commands.ExecutionCommand;
 import jet.bpm.engine.commands.ProcessElementCommand;
 import jet.bpm.engine.el.ExpressionManager;
+import jet.bpm.engine.event.BufferedMessage;
 import jet.bpm.engine.event.Event;
 import jet.bpm.engine.event.EventPersistenceManager;
+import jet.bpm.engine.event.MessageBuffer;
 import jet.bpm.engine.handlers.ElementHandler;
+import jet.bpm.engine.handlers.LinearSegments;
+import jet.bpm.engine.handlers.ServiceTaskHandler;
 import jet.bpm.engine.lock.LockManager;
 import jet.bpm.engine.task.ServiceTaskRegistry;
 import jet.bpm.engine.model.ProcessDefinition;
@@ -32,6 +54,25 @@ public abstract class AbstractEngine implements Engine {
     private static final Logger log = LoggerFactory.getLogger(AbstractEngine.class);
 
     private final ActivationListenerHolder listenerHolder = new ActivationListenerHolder();
+    private final BatchSupport batchSupport = new BatchSupport(this);
+    private final ParallelBranches parallelBranches = new ParallelBranches(this);
+    private final LinearSegments linearSegments = new LinearSegments(this);
+
+    /**
+     * Collects events, created by the current call, by the business key of
+     * the process. Not bound to the calling thread, so events created by
+     * other threads on behalf of the call (e.g. parallel branches) are
+     * collected too. Lists are registered with the business key lock held,
+     * thus only the call, which holds the lock, adds to them.
+     * @see #startWithEvents(String, String, Map)
+     * @see #resumeWithEvents(String, String, Map)
+     */
+    private final ConcurrentMap<String, List<Subscription>> subscriptions = new ConcurrentHashMap<>();
+
+    private volatile MessageBuffer messageBuffer;
+    private volatile Executor continuationExecutor;
+    private volatile long lockTimeout = -1;
+    private volatile long asyncTaskTimeout = -1;
 
     public abstract ProcessDefinitionProvider getProcessDefinitionProvider();
 
@@ -60,30 +101,304 @@ public abstract class AbstractEngine implements Engine {
 
     @Override
     public void start(String processBusinessKey, String processDefinitionId, Map<String, Object> variables) throws ExecutionException {
-        ProcessDefinitionProvider pdp = getProcessDefinitionProvider();
+        DefaultExecution s = createExecution(processBusinessKey, processDefinitionId, variables);
 
-        ProcessDefinition pd = pdp.getById(processDefinitionId);
-        StartEvent start = ProcessDefinitionUtils.findStartEvent(pd);
+        LockManager lm = getLockManager();
+        lock(lm, processBusinessKey, lockTimeout);
+        try {
+            runAndFlush(s);
+        } finally {
+            lm.unlock(processBusinessKey);
+        }
+    }
 
-        ExecutionContext ctx = new ExecutionContextImpl(null);
-        applyVariables(ctx, variables);
+    @Override
+    public void resume(String processBusinessKey, String eventName, Map<String, Object> variables) throws ExecutionException {
+        MessageBuffer mb = messageBuffer;
 
-        UuidGenerator idg = getUuidGenerator();
+        // the event lookup must be done with the lock held, otherwise a
+        // concurrent call can consume the event or the process can start
+        // waiting for it in between
+        LockManager lm = getLockManager();
+        lock(lm, processBusinessKey, lockTimeout);
+        try {
+            Event e;
+            try {
+                e = findEvent(processBusinessKey, eventName);
+            } catch (NoEventFoundException ex) {
+                if (mb == null) {
+                    throw ex;
+                }
+                mb.add(processBusinessKey, eventName, variables);
+                log.debug("resume ['{}', '{}'] -> no event found, message buffered", processBusinessKey, eventName);
+                return;
+            }
 
-        DefaultExecution s = new DefaultExecution(idg.generate(), null, processBusinessKey, ctx);
-        s.push(new ProcessElementCommand(processDefinitionId, start.getId()));
+            resumeLocked(e, variables);
+        } finally {
+            lm.unlock(processBusinessKey);
+        }
+    }
+    
+    @Override
+    public void resume(UUID eventId, Map<String, Object> variables) throws ExecutionException {
+        EventPersistenceManager em = getEventManager();
+        Event e = em.get(eventId);
+        if (e == null) {
+            throw new NoEventFoundException("No event '%s' found", eventId);
+        }
+
+        resume(e, variables);
+    }
+
+    @Override
+    public List<Subscription> startWithEvents(String processBusinessKey, String processDefinitionId, Map<String, Object> variables) throws ExecutionException {
+        List<Subscription> l = Collections.synchronizedList(new ArrayList<Subscription>());
 
+        // the lock is reentrant, start() acquires it again
         LockManager lm = getLockManager();
-        lm.lock(processBusinessKey);
+        lock(lm, processBusinessKey, lockTimeout);
+        List<Subscription> prev = subscriptions.put(processBusinessKey, l);
         try {
-            run(s);
+            start(processBusinessKey, processDefinitionId, variables);
         } finally {
+            restoreSubscriptions(processBusinessKey, l, prev);
             lm.unlock(processBusinessKey);
         }
+        return new ArrayList<>(l);
     }
 
     @Override
-    public void resume(String processBusinessKey, String eventName, Map<String, Object> variables) throws ExecutionException {
+    public List<Subscription> resumeWithEvents(String processBusinessKey, String eventName, Map<String, Object> variables) throws ExecutionException {
+        List<Subscription> l = Collections.synchronizedList(new ArrayList<Subscription>());
+
+        LockManager lm = getLockManager();
+        lock(lm, processBusinessKey, lockTimeout);
+        List<Subscription> prev = subscriptions.put(processBusinessKey, l);
+        try {
+            resume(processBusinessKey, eventName, variables);
+        } finally {
+            restoreSubscriptions(processBusinessKey, l, prev);
+            lm.unlock(processBusinessKey);
+        }
+        return new ArrayList<>(l);
+    }
+
+    private void restoreSubscriptions(String processBusinessKey, List<Subscription> l, List<Subscription> prev) {
+        if (prev != null) {
+            subscriptions.put(processBusinessKey, prev);
+        } else {
+            subscriptions.remove(processBusinessKey, l);
+        }
+    }
+
+    /**
+     * Registers a new event of the execution.
+     */
+    public void addEvent(Event e) throws ExecutionException {
+        getEventManager().add(e);
+
+        List<Subscription> l = subscriptions.get(e.getProcessBusinessKey());
+        if (l != null) {
+            l.add(new Subscription(e.getId(), e.getName(), e.getProcessBusinessKey()));
+        }
+    }
+
+    public void resume(Event e, Map<String, Object> variables) throws ExecutionException {
+        resume(e, variables, lockTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Resumes the process with the event, waiting for the process instance
+     * lock no longer than the given time. The event is looked up again with
+     * the lock held.
+     * @param e the event.
+     * @param variables the variables, can be null.
+     * @param timeout the maximum time to wait for the lock, zero to not wait
+     * at all, negative to wait indefinitely.
+     * @param unit the time unit of the timeout.
+     * @throws InstanceBusyException if the lock wasn't acquired in time.
+     * @throws NoEventFoundException if the event was already consumed.
+     * @throws ExecutionException
+     */
+    public void resume(Event e, Map<String, Object> variables, long timeout, TimeUnit unit) throws ExecutionException {
+        String processBusinessKey = e.getProcessBusinessKey();
+
+        LockManager lm = getLockManager();
+        lock(lm, processBusinessKey, timeout < 0 ? -1 : unit.toMillis(timeout));
+        try {
+            // the event could be consumed by a concurrent call before the
+            // lock was taken
+            Event current = getEventManager().get(e.getId());
+            if (current == null) {
+                throw new NoEventFoundException("No event '%s' found for process '%s'", e.getId(), processBusinessKey);
+            }
+
+            resumeLocked(current, variables);
+        } finally {
+            lm.unlock(processBusinessKey);
+        }
+    }
+
+    @Override
+    public List<RequestOutcome<StartRequest>> startAll(Collection<StartRequest> requests) {
+        return batchSupport.process(requests, new BatchSupport.Operation<StartRequest>() {
+
+            @Override
+            public String getProcessBusinessKey(StartRequest r) {
+                return r.getProcessBusinessKey();
+            }
+
+            @Override
+            public void execute(StartRequest r) throws ExecutionException {
+                DefaultExecution s = createExecution(r.getProcessBusinessKey(), r.getProcessDefinitionId(), r.getVariables());
+                runAndFlush(s);
+            }
+        });
+    }
+
+    @Override
+    public List<RequestOutcome<ResumeRequest>> resumeAll(Collection<ResumeRequest> requests) {
+        return batchSupport.process(requests, new BatchSupport.Operation<ResumeRequest>() {
+
+            @Override
+            public String getProcessBusinessKey(ResumeRequest r) {
+                return r.getProcessBusinessKey();
+            }
+
+            @Override
+            public void execute(ResumeRequest r) throws ExecutionException {
+                Event e = findEvent(r.getProcessBusinessKey(), r.getEventName());
+                resumeLocked(e, r.getVariables());
+            }
+        });
+    }
+
+    @Override
+    public BroadcastResult broadcast(String eventName, Map<String, Object> variables, BroadcastListener listener) throws ExecutionException {
+        return batchSupport.broadcast(eventName, variables, listener);
+    }
+
+    /**
+     * Sets the executor for batch calls and broadcasts. If not set, batches
+     * are processed in the calling thread.
+     * @see #startAll(Collection)
+     * @see #resumeAll(Collection)
+     */
+    public void setBatchExecutor(Executor batchExecutor) {
+        batchSupport.setExecutor(batchExecutor);
+    }
+
+    /**
+     * Sets the maximum number of business keys processed together in a
+     * batch call. Changes of all requests with these keys are written at
+     * once.
+     */
+    public void setBatchSize(int batchSize) {
+        batchSupport.setBatchSize(batchSize);
+    }
+
+    /**
+     * Sets the maximum number of process instances resumed in parallel by a
+     * broadcast. Has no effect if the batch executor is not set.
+     * @see #broadcast(String, Map, BroadcastListener)
+     */
+    public void setBroadcastConcurrency(int broadcastConcurrency) {
+        batchSupport.setBroadcastConcurrency(broadcastConcurrency);
+    }
+
+    /**
+     * Sets the executor for branches of parallel gateways. If set, the
+     * branches are performed concurrently up to the first element other than
+     * a sequence flow or a service task, each with its own shallow copy of
+     * the process variables: tasks must not modify shared mutable values.
+     * Instances of parallel multi-instance service tasks
+     * are performed the same way. If not set, the branches are performed one
+     * after another.
+     * @see ParallelBranches
+     */
+    public void setParallelBranchExecutor(Executor parallelBranchExecutor) {
+        parallelBranches.setExecutor(parallelBranchExecutor);
+    }
+
+    /**
+     * Sets the maximum number of concurrently performed instances of a
+     * parallel multi-instance service task. Has no effect if the parallel
+     * branch executor is not set.
+     * @see #setParallelBranchExecutor(Executor)
+     */
+    public void setMultiInstanceConcurrency(int multiInstanceConcurrency) {
+        parallelBranches.setInstanceConcurrency(multiInstanceConcurrency);
+    }
+
+    /**
+     * Sets the maximum time {@link #start(String, String, Map)} and
+     * {@link #resume(String, String, Map)} wait for the lock of a process
+     * instance, which is used by another thread. If the lock isn't acquired
+     * in time, the call fails with {@link InstanceBusyException}. A negative
+     * value (default) means waiting indefinitely.
+     */
+    public void setLockTimeout(long timeout, TimeUnit unit) {
+        this.lockTimeout = timeout < 0 ? -1 : unit.toMillis(timeout);
+    }
+
+    /**
+     * Returns the lock timeout in milliseconds, negative if the engine waits
+     * indefinitely.
+     */
+    long getLockTimeout() {
+        return lockTimeout;
+    }
+
+    private static void lock(LockManager lm, String processBusinessKey, long timeout) throws InstanceBusyException {
+        if (timeout < 0) {
+            lm.lock(processBusinessKey);
+            return;
+        }
+
+        if (!lm.tryLock(processBusinessKey, timeout, TimeUnit.MILLISECONDS)) {
+            log.debug("lock ['{}'] -> busy, timeout {} ms", processBusinessKey, timeout);
+            throw new InstanceBusyException(processBusinessKey);
+        }
+    }
+
+    public ParallelBranches getParallelBranches() {
+        return parallelBranches;
+    }
+
+    /**
+     * Enables or disables the execution of linear segments (chains of
+     * sequence flows and service tasks) in a single step. Enabled by default,
+     * but takes effect only if {@link #getElementHandler()} is the stock
+     * {@link jet.bpm.engine.handlers.DelegatingElementHandler}, so custom
+     * handlers are never bypassed.
+     * @see LinearSegments
+     */
+    public void setLinearSegmentFusion(boolean enabled) {
+        linearSegments.setEnabled(enabled);
+    }
+
+    public LinearSegments getLinearSegments() {
+        return linearSegments;
+    }
+
+    private DefaultExecution createExecution(String processBusinessKey, String processDefinitionId, Map<String, Object> variables) throws ExecutionException {
+        ProcessDefinitionProvider pdp = getProcessDefinitionProvider();
+
+        ProcessDefinition pd = pdp.getById(processDefinitionId);
+        StartEvent start = ProcessDefinitionUtils.findStartEvent(pd);
+
+        ExecutionContext ctx = new ExecutionContextImpl(null);
+        ExecutionContextHelper.applyVariables(ctx, variables);
+
+        UuidGenerator idg = getUuidGenerator();
+
+        DefaultExecution s = new DefaultExecution(idg.generate(), null, processBusinessKey, processDefinitionId, ctx);
+        s.push(new ProcessElementCommand(processDefinitionId, start.getId()));
+        return s;
+    }
+
+    private Event findEvent(String processBusinessKey, String eventName) throws ExecutionException {
         EventPersistenceManager em = getEventManager();
         Collection<Event> evs = em.find(processBusinessKey, eventName);
         if (evs == null || evs.isEmpty()) {
@@ -91,63 +406,267 @@ public abstract class AbstractEngine implements Engine {
         } else if (evs.size() > 1) {
             throw new ExecutionException("Non-unique event name in process '%s': %s", processBusinessKey, eventName);
         }
-        
-        Event e = evs.iterator().next();
-        resume(e, variables);
+
+        return evs.iterator().next();
     }
-    
-    public void resume(Event e, Map<String, Object> variables) throws ExecutionException {
+
+    /**
+     * Resumes the execution of the event. The caller must hold the business
+     * key lock.
+     */
+    private void resumeLocked(Event e, Map<String, Object> variables) throws ExecutionException {
+        resumeLocked(e, variables, null);
+    }
+
+    /**
+     * Resumes the execution of the event. The caller must hold the business
+     * key lock.
+     * @param transientVariables transient variables to be set before the
+     * execution continues, can be null.
+     */
+    private void resumeLocked(Event e, Map<String, Object> variables, Map<String, Object> transientVariables) throws ExecutionException {
         String processBusinessKey = e.getProcessBusinessKey();
+        String eventName = e.getName();
 
-        LockManager lm = getLockManager();
-        lm.lock(processBusinessKey);
-        try {
-            String eventName = e.getName();
+        UUID eid = e.getExecutionId();
+        log.debug("resume ['{}', '{}'] -> got '{}'", processBusinessKey, eventName, eid);
 
-            EventPersistenceManager em = getEventManager();
-            if (e.isExclusive()) {
-                // exclusive event means that only one event from the group of
-                // events can happen. Rest of events must be removed.
-                em.clearGroup(processBusinessKey, e.getGroupId());
-            } else {
-                em.remove(e.getId());
-            }
+        removeEvent(e);
+
+        PersistenceManager pm = getPersistenceManager();
+        DefaultExecution s = pm.get(eid);
+        if (s == null) {
+            throw new ExecutionException("No execution '%s' found for process '%s'", eid, processBusinessKey);
+        }
 
-            UUID eid = e.getExecutionId();
-            log.debug("resume ['{}', '{}'] -> got '{}'", processBusinessKey, eventName, eid);
+        s.setSuspended(false);
+        EventMapHelper.migrate(s);
 
-            PersistenceManager pm = getPersistenceManager();
-            DefaultExecution s = pm.get(eid);
-            if (s == null) {
-                throw new ExecutionException("No execution '%s' found for process '%s'", eid, processBusinessKey);
+        ExecutionContextHelper.applyVariables(s.getContext(), variables);
+        if (transientVariables != null) {
+            for (Map.Entry<String, Object> v : transientVariables.entrySet()) {
+                s.getContext().setTransientVariable(v.getKey(), v.getValue());
             }
+        }
+
+        if (!EventMapHelper.isEmpty(s)) {
+            pushEventCommands(s, e);
+        } else if (s.isDone()) {
+            throw new ExecutionException("No event mapping found in process '%s' or no commands in execution", eid);
+        }
+
+        runAndFlush(s);
+    }
+
+    /**
+     * Sets the executor for continuations of asynchronous service tasks. If
+     * not set, the execution is continued in the thread, which completes the
+     * task.
+     * @see jet.bpm.engine.api.AsyncJavaDelegate
+     */
+    public void setContinuationExecutor(Executor continuationExecutor) {
+        this.continuationExecutor = continuationExecutor;
+    }
+
+    /**
+     * Sets the maximum time an asynchronous service task may take. If the
+     * task isn't completed in time, the event scheduler resumes the
+     * execution with the BPMN error
+     * {@link ServiceTaskHandler#ASYNC_TASK_TIMEOUT_ERROR}, which is handled
+     * by boundary error events of the task. Completions, which come later,
+     * fail with {@link NoEventFoundException}. A negative value (default)
+     * means no timeout.
+     * @see jet.bpm.engine.api.AsyncJavaDelegate
+     */
+    public void setAsyncTaskTimeout(long timeout, TimeUnit unit) {
+        this.asyncTaskTimeout = timeout < 0 ? -1 : unit.toMillis(timeout);
+    }
 
-            s.setSuspended(false);
+    /**
+     * Returns the timeout of asynchronous service tasks in milliseconds,
+     * negative if there is no timeout.
+     */
+    public long getAsyncTaskTimeout() {
+        return asyncTaskTimeout;
+    }
 
-            applyVariables(s.getContext(), variables);
+    /**
+     * Continues the execution, suspended by an asynchronous service task.
+     * The process instance lock is acquired with the engine's lock timeout.
+     * @param processBusinessKey the process business key.
+     * @param eventId the ID of the event, which the execution waits for.
+     * @param variables results of the task, can be null.
+     * @param error the error of the task, can be null.
+     * @return the future, which is done when the execution is continued.
+     * It fails with {@link NoEventFoundException} if the execution doesn't
+     * wait for the task anymore (e.g. the task timed out),
+     * {@link InstanceBusyException} if the lock wasn't acquired in time,
+     * or with the error of the continuation.
+     */
+    public ListenableFuture<Void> continueAsyncTask(final String processBusinessKey, final UUID eventId, final Map<String, Object> variables, final Throwable error) {
+        final SettableFuture<Void> f = SettableFuture.create();
+
+        Runnable r = new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    LockManager lm = getLockManager();
+                    lock(lm, processBusinessKey, lockTimeout);
+                    try {
+                        Event e = getEventManager().get(eventId);
+                        if (e == null) {
+                            throw new NoEventFoundException("No event '%s' found for process '%s'", eventId, processBusinessKey);
+                        }
+
+                        Map<String, Object> tvars = new HashMap<>();
+                        tvars.put(CompleteServiceTaskCommand.COMPLETED_KEY, Boolean.TRUE);
+                        if (error != null) {
+                            tvars.put(CompleteServiceTaskCommand.ERROR_KEY, error);
+                        }
+
+                        resumeLocked(e, variables, tvars);
+                    } finally {
+                        lm.unlock(processBusinessKey);
+                    }
 
-            if (!EventMapHelper.isEmpty(s)) {
-                EventMapHelper.pushCommands(s, e.getId());
-                if (e.isExclusive()) {
-                    EventMapHelper.clearGroup(s, e.getGroupId());
+                    f.set(null);
+                } catch (ExecutionException | RuntimeException e) {
+                    log.error("continueAsyncTask ['{}', '{}'] -> error", processBusinessKey, eventId, e);
+                    f.setException(e);
                 }
-            } else if (s.isDone()) {
-                throw new ExecutionException("No event mapping found in process '%s' or no commands in execution", eid);
             }
+        };
 
-            run(s);
-        } finally {
-            lm.unlock(processBusinessKey);
+        Executor ex = continuationExecutor;
+        if (ex != null) {
+            try {
+                ex.execute(r);
+            } catch (RejectedExecutionException e) {
+                log.error("continueAsyncTask ['{}', '{}'] -> rejected", processBusinessKey, eventId, e);
+                f.setException(e);
+            }
+        } else {
+            r.run();
+        }
+
+        return f;
+    }
+
+    /**
+     * Sets the buffer for messages, which arrive before the process starts
+     * to wait for them. If set, {@link #resume(String, String, Map)} buffers
+     * such messages instead of throwing {@link NoEventFoundException}. The
+     * message is consumed as soon as the process creates a matching event.
+     * <p/>
+     * Buffering is off by default. Once it is on, messages for business keys
+     * which don't exist (yet) or are already finished are accepted too and
+     * kept until they expire, so the caller can't retry them. Configure a
+     * durable buffer, e.g. {@link jet.bpm.engine.storage.KeyValueMessageBuffer},
+     * to not lose accepted messages on restart.
+     */
+    public void setMessageBuffer(MessageBuffer messageBuffer) {
+        this.messageBuffer = messageBuffer;
+    }
+
+    public MessageBuffer getMessageBuffer() {
+        return messageBuffer;
+    }
+
+    /**
+     * Returns a buffered message for the event, if any.
+     * @see #setMessageBuffer(MessageBuffer)
+     */
+    public BufferedMessage pollBufferedMessage(String processBusinessKey, String eventName) {
+        MessageBuffer mb = messageBuffer;
+        if (mb == null) {
+            return null;
+        }
+
+        BufferedMessage m = mb.poll(processBusinessKey, eventName);
+        if (m != null) {
+            log.debug("pollBufferedMessage ['{}', '{}'] -> found", processBusinessKey, eventName);
+        }
+        return m;
+    }
+
+    /**
+     * Checks if there is a buffered message for any of the events of the
+     * execution. If there is, the event is processed immediately, as if the
+     * process was resumed with the message.
+     * @return {@code true} if a buffered message was consumed.
+     */
+    public boolean consumeBufferedMessage(DefaultExecution s) throws ExecutionException {
+        MessageBuffer mb = messageBuffer;
+        if (mb == null || !mb.hasMessages(s.getBusinessKey())) {
+            return false;
+        }
+
+        EventPersistenceManager em = getEventManager();
+        for (UUID id : s.getEventMap().getRecords().keySet()) {
+            Event e = em.get(id);
+            if (e == null) {
+                continue;
+            }
+
+            BufferedMessage m = pollBufferedMessage(s.getBusinessKey(), e.getName());
+            if (m == null) {
+                continue;
+            }
+
+            removeEvent(e);
+            ExecutionContextHelper.applyVariables(s.getContext(), m.getVariables());
+            pushEventCommands(s, e);
+            return true;
+        }
+
+        return false;
+    }
+
+    private void removeEvent(Event e) {
+        EventPersistenceManager em = getEventManager();
+        if (e.isExclusive()) {
+            // exclusive event means that only one event from the group of
+            // events can happen. Rest of events must be removed.
+            em.clearGroup(e.getProcessBusinessKey(), e.getGroupId());
+        } else {
+            em.remove(e.getId());
         }
     }
 
-    private void applyVariables(ExecutionContext ctx, Map<String, Object> m) {
-        if (m == null) {
+    private void pushEventCommands(DefaultExecution s, Event e) {
+        EventMapHelper.pushCommands(s, e.getId());
+        if (e.isExclusive()) {
+            EventMapHelper.clearGroup(s, e.getGroupId());
+        }
+    }
+
+    /**
+     * Runs the execution in a unit of work, if the persistence manager
+     * supports it. All changes made by the run are written at once, while the
+     * business key lock is still held. If the run fails, the changes are
+     * discarded.
+     */
+    private void runAndFlush(DefaultExecution s) throws ExecutionException {
+        PersistenceManager pm = getPersistenceManager();
+        if (!(pm instanceof WriteBehindPersistenceManager)) {
+            run(s);
             return;
         }
 
-        for (Map.Entry<String, Object> e : m.entrySet()) {
-            ctx.setVariable(e.getKey(), e.getValue());
+        WriteBehindPersistenceManager wb = (WriteBehindPersistenceManager) pm;
+        wb.begin();
+
+        boolean success = false;
+        try {
+            run(s);
+            success = true;
+        } finally {
+            if (success) {
+                wb.flush();
+            } else {
+                wb.discard();
+            }
         }
     }
 
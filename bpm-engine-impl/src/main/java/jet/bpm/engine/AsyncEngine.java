@@ -0,0 +1,209 @@
+package jet.bpm.engine;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import jet.bpm.engine.api.Engine;
+import jet.bpm.engine.api.ExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous facade of an {@link Engine}. Calls are performed by the
+ * provided executor. Calls with the same process business key are queued and
+ * performed one after another in the order of submission, so that no executor
+ * thread waits for the business key lock held by another call of this facade.
+ * <p/>
+ * The engine still takes its own lock, so the facade can be used together
+ * with direct calls to the engine (e.g. from the event scheduler).
+ */
+public class AsyncEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncEngine.class);
+
+    private final Engine engine;
+    private final Executor executor;
+    private final ConcurrentMap<String, KeyQueue> queues = new ConcurrentHashMap<>();
+
+    public AsyncEngine(Engine engine, Executor executor) {
+        this.engine = engine;
+        this.executor = executor;
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Asynchronously starts a new process instance.
+     * @see Engine#start(String, String, Map)
+     * @return the future, completed when the process is suspended or finished.
+     */
+    public ListenableFuture<Void> startAsync(final String processBusinessKey, final String processDefinitionId, final Map<String, Object> variables) {
+        return submit(processBusinessKey, new Call() {
+
+            @Override
+            public void call() throws ExecutionException {
+                engine.start(processBusinessKey, processDefinitionId, variables);
+            }
+        });
+    }
+
+    /**
+     * Asynchronously resumes a process instance.
+     * @see Engine#resume(String, String, Map)
+     * @return the future, completed when the process is suspended or finished.
+     */
+    public ListenableFuture<Void> resumeAsync(final String processBusinessKey, final String eventName, final Map<String, Object> variables) {
+        return submit(processBusinessKey, new Call() {
+
+            @Override
+            public void call() throws ExecutionException {
+                engine.resume(processBusinessKey, eventName, variables);
+            }
+        });
+    }
+
+    /**
+     * Returns the number of business keys with pending or running calls.
+     */
+    public int getActiveKeyCount() {
+        return queues.size();
+    }
+
+    private ListenableFuture<Void> submit(String key, Call c) {
+        SettableFuture<Void> f = SettableFuture.create();
+        Task t = new Task(c, f);
+
+        while (true) {
+            KeyQueue q = queues.get(key);
+            if (q == null) {
+                q = new KeyQueue(key);
+                KeyQueue prev = queues.putIfAbsent(key, q);
+                if (prev != null) {
+                    q = prev;
+                }
+            }
+
+            if (q.offer(t)) {
+                break;
+            }
+
+            // the queue was drained and closed concurrently, retry with a new one
+        }
+
+        return f;
+    }
+
+    private interface Call {
+
+        void call() throws ExecutionException;
+    }
+
+    private static final class Task {
+
+        private final Call call;
+        private final SettableFuture<Void> future;
+
+        private Task(Call call, SettableFuture<Void> future) {
+            this.call = call;
+            this.future = future;
+        }
+    }
+
+    /**
+     * Serial queue of calls for a single business key. Runs at most one task
+     * at a time on the executor. Removes itself from the map of queues when
+     * it becomes empty.
+     */
+    private final class KeyQueue implements Runnable {
+
+        private final String key;
+        private final Queue<Task> tasks = new ArrayDeque<>();
+        private boolean running;
+        private boolean closed;
+
+        private KeyQueue(String key) {
+            this.key = key;
+        }
+
+        /**
+         * @return {@code false} if the queue is closed and can't accept
+         * new tasks.
+         */
+        private boolean offer(Task t) {
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+
+                tasks.add(t);
+                if (running) {
+                    return true;
+                }
+                running = true;
+            }
+
+            schedule(t);
+            return true;
+        }
+
+        private void schedule(Task t) {
+            try {
+                executor.execute(this);
+            } catch (RuntimeException e) {
+                log.error("schedule ['{}'] -> rejected", key, e);
+                next(t, e);
+            }
+        }
+
+        @Override
+        public void run() {
+            Task t;
+            synchronized (this) {
+                t = tasks.peek();
+            }
+
+            Throwable error = null;
+            try {
+                t.call.call();
+            } catch (Throwable e) {
+                error = e;
+            }
+
+            next(t, error);
+        }
+
+        /**
+         * Removes the completed task from the queue, completes its future and
+         * schedules the next task, if any.
+         */
+        private void next(Task done, Throwable error) {
+            Task t;
+            synchronized (this) {
+                tasks.poll();
+                t = tasks.peek();
+                if (t == null) {
+                    running = false;
+                    closed = true;
+                    queues.remove(key, this);
+                }
+            }
+
+            if (error != null) {
+                done.future.setException(error);
+            } else {
+                done.future.set(null);
+            }
+
+            if (t != null) {
+                schedule(t);
+            }
+        }
+    }
+}
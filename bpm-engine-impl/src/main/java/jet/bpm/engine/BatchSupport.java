@@ -0,0 +1,397 @@
+package jet.bpm.engine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import jet.bpm.engine.api.BroadcastListener;
+import jet.bpm.engine.api.BroadcastResult;
+import jet.bpm.engine.api.ExecutionException;
+import jet.bpm.engine.api.InstanceBusyException;
+import jet.bpm.engine.api.NoEventFoundException;
+import jet.bpm.engine.api.RequestOutcome;
+import jet.bpm.engine.api.Subscription;
+import jet.bpm.engine.event.Event;
+import jet.bpm.engine.event.EventPersistenceManager;
+import jet.bpm.engine.lock.LockManager;
+import jet.bpm.engine.persistence.PersistenceManager;
+import jet.bpm.engine.persistence.WriteBehindPersistenceManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processes batches of engine requests. Requests are grouped by business key,
+ * the groups are split into chunks of {@link #setBatchSize(int)} keys. Each
+ * chunk is processed by a single thread: locks of all its keys are taken,
+ * requests are performed in order and all changes are written at once.
+ * Chunks are processed in parallel, if an executor is set.
+ * <p/>
+ * Locks of a chunk are taken without waiting while other locks are held: if
+ * a key is busy, all held locks are released and the thread waits for that
+ * key alone, so chunks never wait for each other's locks. A key, which isn't
+ * locked within the engine's lock timeout, fails its requests with
+ * {@link InstanceBusyException}.
+ * <p/>
+ * Also performs broadcasts of events: resumes all events with the same name
+ * using the same executor.
+ */
+final class BatchSupport {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchSupport.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final int DEFAULT_BROADCAST_CONCURRENCY = 8;
+    private static final int BROADCAST_PAGE_SIZE = 1000;
+
+    interface Operation<T> {
+
+        String getProcessBusinessKey(T request);
+
+        /**
+         * Performs the request. Called with the business key lock held.
+         */
+        void execute(T request) throws ExecutionException;
+    }
+
+    private final AbstractEngine engine;
+
+    private volatile Executor executor;
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+    private volatile int broadcastConcurrency = DEFAULT_BROADCAST_CONCURRENCY;
+
+    BatchSupport(AbstractEngine engine) {
+        this.engine = engine;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    public void setBroadcastConcurrency(int broadcastConcurrency) {
+        if (broadcastConcurrency < 1) {
+            throw new IllegalArgumentException("Invalid broadcast concurrency: " + broadcastConcurrency);
+        }
+        this.broadcastConcurrency = broadcastConcurrency;
+    }
+
+    /**
+     * Resumes all events with the specified name. IDs of the events are
+     * collected first, so events created by the resumed processes are not
+     * resumed again. Events consumed by concurrent calls in the meantime are
+     * counted as skipped.
+     */
+    public BroadcastResult broadcast(String eventName, final Map<String, Object> variables, final BroadcastListener listener) {
+        final EventPersistenceManager em = engine.getEventManager();
+
+        List<UUID> ids = new ArrayList<>();
+        UUID after = null;
+        while (true) {
+            List<UUID> page = em.findIds(eventName, after, BROADCAST_PAGE_SIZE);
+            ids.addAll(page);
+            if (page.size() < BROADCAST_PAGE_SIZE) {
+                break;
+            }
+            after = page.get(page.size() - 1);
+        }
+
+        log.debug("broadcast ['{}'] -> found {} event(s)", eventName, ids.size());
+
+        final AtomicInteger resumed = new AtomicInteger();
+        final AtomicInteger skipped = new AtomicInteger();
+        final List<RequestOutcome<Subscription>> failures = Collections.synchronizedList(new ArrayList<RequestOutcome<Subscription>>());
+
+        int concurrency = broadcastConcurrency;
+        final Semaphore permits = new Semaphore(concurrency);
+        Executor ex = executor;
+
+        for (final UUID id : ids) {
+            permits.acquireUninterruptibly();
+
+            Runnable r = new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        Event e = em.get(id);
+                        if (e == null) {
+                            skipped.incrementAndGet();
+                            return;
+                        }
+
+                        Subscription s = new Subscription(id, e.getName(), e.getProcessBusinessKey());
+                        try {
+                            engine.resume(e, variables);
+                            resumed.incrementAndGet();
+                            if (listener != null) {
+                                listener.onResumed(s);
+                            }
+                        } catch (NoEventFoundException err) {
+                            // consumed by a concurrent call
+                            skipped.incrementAndGet();
+                        } catch (ExecutionException err) {
+                            onFailure(s, err);
+                        } catch (RuntimeException err) {
+                            onFailure(s, new ExecutionException("Resume failed: " + err.getMessage(), err));
+                        }
+                    } finally {
+                        permits.release();
+                    }
+                }
+
+                private void onFailure(Subscription s, ExecutionException err) {
+                    log.warn("broadcast ['{}'] -> failed: {}", s, err.getMessage());
+                    failures.add(new RequestOutcome<>(s, err));
+                    if (listener != null) {
+                        listener.onFailure(s, err);
+                    }
+                }
+            };
+
+            if (ex == null) {
+                r.run();
+                continue;
+            }
+
+            try {
+                ex.execute(r);
+            } catch (RejectedExecutionException e) {
+                r.run();
+            }
+        }
+
+        // wait for the running tasks
+        permits.acquireUninterruptibly(concurrency);
+        permits.release(concurrency);
+
+        log.debug("broadcast ['{}'] -> done (resumed: {}, skipped: {}, failed: {})", eventName, resumed.get(), skipped.get(), failures.size());
+        return new BroadcastResult(resumed.get(), skipped.get(), new ArrayList<>(failures));
+    }
+
+    public <T> List<RequestOutcome<T>> process(Collection<T> requests, Operation<T> op) {
+        List<T> l = new ArrayList<>(requests);
+        ExecutionException[] errors = new ExecutionException[l.size()];
+
+        // requests with the same key are performed in order
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < l.size(); i++) {
+            String key = op.getProcessBusinessKey(l.get(i));
+            if (key == null) {
+                errors[i] = new ExecutionException("Process business key is required");
+                continue;
+            }
+
+            List<Integer> g = groups.get(key);
+            if (g == null) {
+                g = new ArrayList<>();
+                groups.put(key, g);
+            }
+            g.add(i);
+        }
+
+        List<Chunk<T>> chunks = new ArrayList<>();
+        Chunk<T> c = null;
+        for (Map.Entry<String, List<Integer>> e : groups.entrySet()) {
+            if (c == null || c.groups.size() >= batchSize) {
+                c = new Chunk<>(l, errors, op);
+                chunks.add(c);
+            }
+            c.groups.put(e.getKey(), e.getValue());
+        }
+
+        execute(chunks);
+
+        List<RequestOutcome<T>> result = new ArrayList<>(l.size());
+        for (int i = 0; i < l.size(); i++) {
+            result.add(new RequestOutcome<>(l.get(i), errors[i]));
+        }
+
+        log.debug("process -> done ({} requests, {} chunks)", l.size(), chunks.size());
+        return result;
+    }
+
+    private <T> void execute(List<Chunk<T>> chunks) {
+        Executor ex = executor;
+        if (ex == null || chunks.size() < 2) {
+            for (Chunk<T> c : chunks) {
+                c.run();
+            }
+            return;
+        }
+
+        final CountDownLatch latch = new CountDownLatch(chunks.size());
+        for (final Chunk<T> c : chunks) {
+            Runnable r = new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        c.run();
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            };
+
+            try {
+                ex.execute(r);
+            } catch (RejectedExecutionException e) {
+                r.run();
+            }
+        }
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a batch", e);
+        }
+    }
+
+    private final class Chunk<T> implements Runnable {
+
+        private final List<T> requests;
+        private final ExecutionException[] errors;
+        private final Operation<T> op;
+        private final Map<String, List<Integer>> groups = new LinkedHashMap<>();
+
+        private Chunk(List<T> requests, ExecutionException[] errors, Operation<T> op) {
+            this.requests = requests;
+            this.errors = errors;
+            this.op = op;
+        }
+
+        @Override
+        public void run() {
+            LockManager lm = engine.getLockManager();
+
+            PersistenceManager pm = engine.getPersistenceManager();
+            WriteBehindPersistenceManager wb = null;
+            if (pm instanceof WriteBehindPersistenceManager) {
+                wb = (WriteBehindPersistenceManager) pm;
+            }
+
+            List<String> locked = new ArrayList<>(groups.size());
+            try {
+                acquire(lm, locked);
+
+                if (wb != null) {
+                    // changes of successful requests are merged into this
+                    // unit of work and written at once
+                    wb.begin();
+                }
+
+                boolean success = false;
+                try {
+                    for (Map.Entry<String, List<Integer>> g : groups.entrySet()) {
+                        if (!locked.contains(g.getKey())) {
+                            continue;
+                        }
+                        for (Integer i : g.getValue()) {
+                            perform(i);
+                        }
+                    }
+                    success = true;
+                } finally {
+                    if (wb != null) {
+                        if (success) {
+                            wb.flush();
+                        } else {
+                            wb.discard();
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                log.error("run -> batch failed", e);
+                for (List<Integer> g : groups.values()) {
+                    for (Integer i : g) {
+                        if (errors[i] == null) {
+                            errors[i] = new ExecutionException("Batch failed: " + e.getMessage(), e);
+                        }
+                    }
+                }
+            } finally {
+                for (String k : locked) {
+                    lm.unlock(k);
+                }
+            }
+        }
+
+        /**
+         * Locks the keys of the chunk. Keys, which are not locked in time,
+         * get {@link InstanceBusyException} for their requests.
+         * @param locked receives the locked keys.
+         */
+        private void acquire(LockManager lm, List<String> locked) {
+            long timeout = engine.getLockTimeout();
+            long deadline = System.currentTimeMillis() + timeout;
+
+            List<String> pending = new ArrayList<>(groups.keySet());
+            Collections.sort(pending);
+
+            int n = 0;
+            while (n < pending.size()) {
+                String k = pending.get(n);
+                if (lm.tryLock(k, 0, TimeUnit.MILLISECONDS)) {
+                    locked.add(k);
+                    n++;
+                    continue;
+                }
+
+                // back off: release everything and wait for the busy key
+                for (String l : locked) {
+                    lm.unlock(l);
+                }
+                locked.clear();
+
+                boolean acquired;
+                if (timeout < 0) {
+                    lm.lock(k);
+                    acquired = true;
+                } else {
+                    long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                    acquired = lm.tryLock(k, remaining, TimeUnit.MILLISECONDS);
+                }
+
+                pending.remove(k);
+                if (acquired) {
+                    // the busy key goes first, the rest are taken again
+                    pending.add(0, k);
+                    locked.add(k);
+                    n = 1;
+                } else {
+                    log.debug("acquire ['{}'] -> busy, timeout {} ms", k, timeout);
+                    for (Integer i : groups.get(k)) {
+                        errors[i] = new InstanceBusyException(k);
+                    }
+                    n = 0;
+                }
+            }
+        }
+
+        private void perform(int i) {
+            try {
+                op.execute(requests.get(i));
+            } catch (ExecutionException e) {
+                errors[i] = e;
+            } catch (RuntimeException e) {
+                errors[i] = new ExecutionException("Request failed: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package jet.bpm.engine;
 
 import jet.bpm.engine.persistence.DummyPersistenceManager;
 import jet.bpm.engine.persistence.PersistenceManager;
+import jet.bpm.engine.persistence.WriteBehindPersistenceManager;
 import jet.bpm.engine.api.Engine;
 import jet.bpm.engine.lock.LockManager;
 import jet.bpm.engine.el.DefaultExpressionManager;
@@ -20,7 +21,7 @@ public class DefaultEngine extends AbstractEngine implements Engine {
     private final ElementHandler elementHandler = new DelegatingElementHandler(this);
     private final PersistenceManager persistenceManager;
     private final LockManager lockManager;
-    private final UuidGenerator idGenerator = new JugUuidGenerator();
+    private volatile UuidGenerator idGenerator = new JugUuidGenerator();
 
     private final ProcessDefinitionProvider processDefinitionProvider;
     private final ServiceTaskRegistry serviceTaskRegistry;
@@ -52,7 +53,7 @@ public class DefaultEngine extends AbstractEngine implements Engine {
         this.serviceTaskRegistry = serviceTaskRegistry;
         this.eventManager = eventPersistenceManager;
         this.expressionManager = new DefaultExpressionManager(serviceTaskRegistry);
-        this.persistenceManager = persistenceManager;
+        this.persistenceManager = new WriteBehindPersistenceManager(persistenceManager);
         this.lockManager = lockManager;
     }
 
@@ -95,4 +96,13 @@ public class DefaultEngine extends AbstractEngine implements Engine {
     public UuidGenerator getUuidGenerator() {
         return idGenerator;
     }
+
+    /**
+     * Sets the generator of execution, event and group IDs. The default one
+     * generates random IDs, {@link TimeOrderedUuidGenerator} is recommended
+     * for the LevelDB backends.
+     */
+    public void setUuidGenerator(UuidGenerator idGenerator) {
+        this.idGenerator = idGenerator;
+    }
 }
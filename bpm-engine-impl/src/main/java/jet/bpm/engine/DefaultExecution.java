@@ -11,22 +11,37 @@ import java.util.concurrent.ConcurrentLinkedDeque;
 import jet.bpm.engine.api.Execution;
 import jet.bpm.engine.api.ExecutionContext;
 import jet.bpm.engine.commands.ExecutionCommand;
+import jet.bpm.engine.journal.ExecutionJournal;
 
 public class DefaultExecution implements Execution, Serializable {
 
+    private static final long serialVersionUID = -5809599118237465343L;
+
     private final UUID id;
     private final UUID parentId;
     private final String processBusinessKey;
+    private final String processDefinitionId;
     private final Deque<ExecutionCommand> commands = new ConcurrentLinkedDeque<>();
     private final Map<ActivationKey, Integer> activations = Collections.synchronizedMap(new HashMap<ActivationKey, Integer>());
+    private EventMap eventMap = new EventMap();
     
     private boolean suspended = false;
     private ExecutionContext context;
 
+    /**
+     * Records changes of this execution, if set. Never serialized.
+     */
+    private transient volatile ExecutionJournal journal;
+
     public DefaultExecution(UUID id, UUID parentId, String processBusinessKey, ExecutionContext context) {
+        this(id, parentId, processBusinessKey, null, context);
+    }
+
+    public DefaultExecution(UUID id, UUID parentId, String processBusinessKey, String processDefinitionId, ExecutionContext context) {
         this.id = id;
         this.parentId = parentId;
         this.processBusinessKey = processBusinessKey;
+        this.processDefinitionId = processDefinitionId;
         this.context = context;
     }
 
@@ -45,12 +60,53 @@ public class DefaultExecution implements Execution, Serializable {
         return processBusinessKey;
     }
 
+    /**
+     * The ID of the process definition, which was used to start this
+     * execution. Can be <code>null</code> for executions persisted by previous
+     * versions of the engine.
+     */
+    public String getProcessDefinitionId() {
+        return processDefinitionId;
+    }
+
     public ExecutionContext getContext() {
         return context;
     }
     
     public void setContext(ExecutionContext ctx) {
         this.context = ctx;
+
+        ExecutionJournal j = journal;
+        if (j != null) {
+            j.onContext(ctx);
+        }
+    }
+
+    /**
+     * Event subscriptions of this execution.
+     */
+    public EventMap getEventMap() {
+        if (eventMap == null) {
+            // executions serialized before the event map was introduced
+            eventMap = new EventMap();
+        }
+        return eventMap;
+    }
+
+    public void setEventMap(EventMap eventMap) {
+        this.eventMap = eventMap;
+    }
+
+    public ExecutionJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Sets the journal, which records changes of this execution.
+     * @param journal the journal or <code>null</code> to stop recording.
+     */
+    public void setJournal(ExecutionJournal journal) {
+        this.journal = journal;
     }
     
     @Override
@@ -65,14 +121,30 @@ public class DefaultExecution implements Execution, Serializable {
 
     public void setSuspended(boolean suspended) {
         this.suspended = suspended;
+
+        ExecutionJournal j = journal;
+        if (j != null) {
+            j.onSuspended(suspended);
+        }
     }
 
     public ExecutionCommand pop() {
-        return commands.poll();
+        ExecutionCommand c = commands.poll();
+
+        ExecutionJournal j = journal;
+        if (c != null && j != null) {
+            j.onPop();
+        }
+        return c;
     }
 
     public void push(ExecutionCommand f) {
         commands.push(f);
+
+        ExecutionJournal j = journal;
+        if (j != null) {
+            j.onPush(f);
+        }
     }
 
     public ExecutionCommand peek() {
@@ -95,6 +167,11 @@ public class DefaultExecution implements Execution, Serializable {
         }
         i = i + count;
         activations.put(k, i);
+
+        ExecutionJournal j = journal;
+        if (j != null) {
+            j.onActivation(processDefinitionId, elementId, count);
+        }
         return i;
     }
     
@@ -0,0 +1,163 @@
+package jet.bpm.engine;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import jet.bpm.engine.commands.ExecutionCommand;
+
+/**
+ * Event subscriptions of an execution: maps event IDs to the commands, which
+ * must be performed when the event happens. Uses compact serialized form.
+ */
+public final class EventMap implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private transient Map<UUID, Record> records = new LinkedHashMap<>();
+    private transient boolean modified;
+
+    public synchronized boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    public synchronized int size() {
+        return records.size();
+    }
+
+    public synchronized boolean contains(UUID eventId) {
+        return records.containsKey(eventId);
+    }
+
+    public synchronized Record get(UUID eventId) {
+        return records.get(eventId);
+    }
+
+    public synchronized void put(UUID eventId, Record r) {
+        records.put(eventId, r);
+        modified = true;
+    }
+
+    public synchronized Record remove(UUID eventId) {
+        Record r = records.remove(eventId);
+        if (r != null) {
+            modified = true;
+        }
+        return r;
+    }
+
+    /**
+     * Removes all records of the specified group.
+     * @param groupId the ID of event group.
+     * @return number of removed records.
+     */
+    public synchronized int removeGroup(UUID groupId) {
+        int removed = 0;
+        for (Iterator<Record> i = records.values().iterator(); i.hasNext();) {
+            Record r = i.next();
+            if (groupId.equals(r.getGroupId())) {
+                i.remove();
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            modified = true;
+        }
+        return removed;
+    }
+
+    /**
+     * Returns <code>true</code> if records were added or removed since the
+     * last call.
+     */
+    public synchronized boolean takeModified() {
+        boolean m = modified;
+        modified = false;
+        return m;
+    }
+
+    /**
+     * Returns a snapshot of all records, in order of their addition.
+     */
+    public synchronized Map<UUID, Record> getRecords() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(records));
+    }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+
+        out.writeInt(records.size());
+        for (Map.Entry<UUID, Record> e : records.entrySet()) {
+            writeUuid(out, e.getKey());
+
+            Record r = e.getValue();
+            writeUuid(out, r.getGroupId());
+
+            List<ExecutionCommand> l = r.getCommands();
+            out.writeInt(l.size());
+            for (ExecutionCommand c : l) {
+                out.writeObject(c);
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+
+        int size = in.readInt();
+        records = new LinkedHashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            UUID id = readUuid(in);
+            UUID groupId = readUuid(in);
+
+            int cnt = in.readInt();
+            List<ExecutionCommand> l = new ArrayList<>(cnt);
+            for (int j = 0; j < cnt; j++) {
+                l.add((ExecutionCommand) in.readObject());
+            }
+
+            records.put(id, new Record(groupId, l));
+        }
+    }
+
+    private static void writeUuid(ObjectOutputStream out, UUID id) throws IOException {
+        out.writeBoolean(id != null);
+        if (id != null) {
+            out.writeLong(id.getMostSignificantBits());
+            out.writeLong(id.getLeastSignificantBits());
+        }
+    }
+
+    private static UUID readUuid(ObjectInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    public static final class Record implements Serializable {
+
+        private final UUID groupId;
+        private final List<ExecutionCommand> commands;
+
+        public Record(UUID groupId, List<ExecutionCommand> commands) {
+            this.groupId = groupId;
+            this.commands = commands;
+        }
+
+        public UUID getGroupId() {
+            return groupId;
+        }
+
+        public List<ExecutionCommand> getCommands() {
+            return commands;
+        }
+    }
+}
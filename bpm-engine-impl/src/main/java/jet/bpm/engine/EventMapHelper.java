@@ -3,10 +3,10 @@ package jet.bpm.engine;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import jet.bpm.engine.EventMap.Record;
 import jet.bpm.engine.api.ExecutionContext;
 import jet.bpm.engine.api.ExecutionException;
 import jet.bpm.engine.commands.ExecutionCommand;
@@ -14,42 +14,31 @@ import jet.bpm.engine.event.Event;
 
 public class EventMapHelper {
 
-    private static final String EVENT_MAP_KEY = "__bpmn_event_map";
+    /**
+     * Name of the process variable, which was used to store event mappings
+     * before {@link EventMap} was introduced.
+     */
+    private static final String LEGACY_EVENT_MAP_KEY = "__bpmn_event_map";
 
-    @SuppressWarnings("unchecked")
     public static void put(DefaultExecution e, Event ev, ExecutionCommand... commands) throws ExecutionException {
-        ExecutionContext ctx = e.getContext();
-        Map<UUID, EventRecord> m = (Map<UUID, EventRecord>) ctx.getVariable(EVENT_MAP_KEY);
-        if (m == null) {
-            m = new HashMap<>();
-        }
-        
-        if (m.containsKey(ev.getId())) {
+        EventMap m = e.getEventMap();
+
+        if (m.contains(ev.getId())) {
             throw new ExecutionException("Duplicate event mapping key '%s'", e.getId());
         }
-        
+
         List<ExecutionCommand> l = new ArrayList<>();
         l.addAll(Arrays.asList(commands));
-        
-        m.put(ev.getId(), new EventRecord(ev.getGroupId(), l));
-        ctx.setVariable(EVENT_MAP_KEY, m);
+
+        m.put(ev.getId(), new Record(ev.getGroupId(), l));
     }
-    
+
     public static boolean isEmpty(DefaultExecution e) {
-        ExecutionContext ctx = e.getContext();
-        Map<?, ?> m = (Map<?, ?>) ctx.getVariable(EVENT_MAP_KEY);
-        return m == null || m.isEmpty();
+        return e.getEventMap().isEmpty();
     }
-    
-    @SuppressWarnings("unchecked")
-    public static void pushCommands(DefaultExecution e, UUID eventId) {
-        ExecutionContext ctx = e.getContext();
-        Map<UUID, EventRecord> m = (Map<UUID, EventRecord>) ctx.getVariable(EVENT_MAP_KEY);
-        if (m == null) {
-            return;
-        }
 
-        EventRecord r = m.get(eventId);
+    public static void pushCommands(DefaultExecution e, UUID eventId) {
+        Record r = e.getEventMap().get(eventId);
         if (r == null) {
             return;
         }
@@ -58,43 +47,55 @@ public class EventMapHelper {
         if (l == null) {
             return;
         }
-        
+
         for (ExecutionCommand c : l) {
             e.push(c);
         }
     }
 
-    @SuppressWarnings("unchecked")
     public static void clearGroup(DefaultExecution s, UUID groupId) {
         if (groupId == null) {
             return;
         }
 
+        s.getEventMap().removeGroup(groupId);
+    }
+
+    /**
+     * Moves event mappings of executions, persisted by previous versions of
+     * the engine, from the process variables to the execution's
+     * {@link EventMap}.
+     * @param s the loaded execution.
+     */
+    @SuppressWarnings("unchecked")
+    public static void migrate(DefaultExecution s) {
         ExecutionContext ctx = s.getContext();
-        Map<UUID, EventRecord> m = (Map<UUID, EventRecord>) ctx.getVariable(EVENT_MAP_KEY);
-        if (m == null) {
+        if (ctx == null || !ctx.hasVariable(LEGACY_EVENT_MAP_KEY)) {
             return;
         }
 
-        List<UUID> toDelete = new ArrayList<>();
-        for (Map.Entry<UUID, EventRecord> e : m.entrySet()) {
-            EventRecord r = e.getValue();
-            if (groupId.equals(r.getGroupId())) {
-                toDelete.add(e.getKey());
-            }
-        }
-
-        for (UUID id : toDelete) {
-            m.remove(id);
+        Map<UUID, ?> m = (Map<UUID, ?>) ctx.getVariable(LEGACY_EVENT_MAP_KEY);
+        ctx.removeVariable(LEGACY_EVENT_MAP_KEY);
+        if (m == null) {
+            return;
         }
 
-        if (m.isEmpty()) {
-            ctx.removeVariable(EVENT_MAP_KEY);
-        } else {
-            ctx.setVariable(EVENT_MAP_KEY, m);
+        EventMap dst = s.getEventMap();
+        for (Map.Entry<UUID, ?> e : m.entrySet()) {
+            Object v = e.getValue();
+            if (v instanceof EventRecord) {
+                EventRecord r = (EventRecord) v;
+                dst.put(e.getKey(), new Record(r.getGroupId(), r.getCommands()));
+            }
         }
     }
 
+    /**
+     * Event mapping of previous versions of the engine. Kept only to be able
+     * to read old executions.
+     * @deprecated use {@link EventMap.Record}.
+     */
+    @Deprecated
     public static final class EventRecord implements Serializable {
 
         private final UUID groupId;
@@ -1,6 +1,7 @@
 package jet.bpm.engine;
 
 import jet.bpm.engine.api.ExecutionContext;
+import java.util.Map;
 import java.util.Set;
 import jet.bpm.engine.el.ExpressionManager;
 import jet.bpm.engine.model.VariableMapping;
@@ -45,6 +46,32 @@ public final class ExecutionContextHelper {
         }
     }
 
+    /**
+     * Sets the variables in the context. Existing values are replaced.
+     * @param ctx the execution context.
+     * @param m the variables, can be null.
+     */
+    public static void applyVariables(ExecutionContext ctx, Map<String, Object> m) {
+        if (m == null) {
+            return;
+        }
+
+        for (Map.Entry<String, Object> e : m.entrySet()) {
+            ctx.setVariable(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Drops transient variables of the given context and its parents.
+     * @param ctx the execution context.
+     * @see ExecutionContext#getTransientVariable(java.lang.String)
+     */
+    public static void clearTransientVariables(ExecutionContext ctx) {
+        if (ctx instanceof ExecutionContextImpl) {
+            ((ExecutionContextImpl) ctx).clearTransientVariables();
+        }
+    }
+
     private ExecutionContextHelper() {
     }
 }
@@ -1,16 +1,35 @@
 package jet.bpm.engine;
 
 import jet.bpm.engine.api.ExecutionContext;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 
 public class ExecutionContextImpl implements ExecutionContext {
-    
+
+    private static final long serialVersionUID = 5899975066181247032L;
+
     private final ExecutionContext parent;
     private final Map<String, Object> variables = Collections.synchronizedMap(new HashMap<String, Object>());
 
+    /**
+     * Transient variables, never serialized. Created on the first use,
+     * <code>null</code> until then and after deserialization.
+     */
+    private transient volatile Map<String, Object> transientVariables;
+
+    /**
+     * Names of variables, changed since the tracking was started. Mutable
+     * values, which were read, count as changed: they can be modified in
+     * place. Never serialized, <code>null</code> if changes are not tracked.
+     */
+    private transient Set<String> changedVariables;
+
     public ExecutionContextImpl(ExecutionContext parent) {
         this.parent = parent;
     }
@@ -21,6 +40,7 @@ public class ExecutionContextImpl implements ExecutionContext {
         if (v == null && parent != null) {
             return parent.getVariable(key);
         }
+        onRead(key, v);
         return v;
     }
 
@@ -31,19 +51,26 @@ public class ExecutionContextImpl implements ExecutionContext {
             m.putAll(parent.getVariables());
         }
         
-        m.putAll(variables);
+        synchronized (variables) {
+            m.putAll(variables);
+            for (Map.Entry<String, Object> e : variables.entrySet()) {
+                onRead(e.getKey(), e.getValue());
+            }
+        }
         return m;
     }
     
     @Override
     public void setVariable(String key, Object value) {
         variables.put(key, value);
+        onChange(key);
     }
 
     @Override
     public void removeVariable(String key) {
         if (variables.containsKey(key)) {
             variables.remove(key);
+            onChange(key);
         } else if (parent != null) {
             parent.removeVariable(key);
         }
@@ -64,4 +91,126 @@ public class ExecutionContextImpl implements ExecutionContext {
     public Set<String> getVariableNames() {
         return Collections.unmodifiableSet(variables.keySet());
     }
+
+    @Override
+    public Object getTransientVariable(String key) {
+        Object v = null;
+
+        Map<String, Object> m = transientVariables;
+        if (m != null) {
+            v = m.get(key);
+        }
+
+        if (v == null && parent != null) {
+            return parent.getTransientVariable(key);
+        }
+        return v;
+    }
+
+    @Override
+    public void setTransientVariable(String key, Object value) {
+        Map<String, Object> m = transientVariables;
+        if (m == null) {
+            synchronized (this) {
+                m = transientVariables;
+                if (m == null) {
+                    m = Collections.synchronizedMap(new HashMap<String, Object>());
+                    transientVariables = m;
+                }
+            }
+        }
+        m.put(key, value);
+    }
+
+    /**
+     * Removes the transient variable of this context or, if it is not set
+     * here, of the parent context.
+     */
+    @Override
+    public void removeTransientVariable(String key) {
+        Map<String, Object> m = transientVariables;
+        if (m != null && m.containsKey(key)) {
+            m.remove(key);
+        } else if (parent != null) {
+            parent.removeTransientVariable(key);
+        }
+    }
+
+    /**
+     * Drops all transient variables of this context and its parents.
+     */
+    public void clearTransientVariables() {
+        transientVariables = null;
+        if (parent instanceof ExecutionContextImpl) {
+            ((ExecutionContextImpl) parent).clearTransientVariables();
+        }
+    }
+
+    public ExecutionContext getParent() {
+        return parent;
+    }
+
+    /**
+     * Returns <code>true</code> if the variable is set in this context,
+     * parent contexts are not checked.
+     */
+    public boolean hasLocalVariable(String key) {
+        return variables.containsKey(key);
+    }
+
+    /**
+     * Returns the value of the variable of this context, parent contexts are
+     * not checked. Unlike {@link #getVariable(String)}, the read is not
+     * tracked as a change.
+     */
+    public Object getLocalVariable(String key) {
+        return variables.get(key);
+    }
+
+    /**
+     * Starts tracking of variable changes in this context. Previously tracked
+     * changes are dropped.
+     */
+    public void trackChanges() {
+        changedVariables = Collections.synchronizedSet(new HashSet<String>());
+    }
+
+    /**
+     * Returns the names of variables, which were set, removed or read with a
+     * mutable value in this context since the last call, and starts over.
+     * @return the names of changed variables or <code>null</code> if changes
+     * are not tracked.
+     */
+    public Set<String> takeChanges() {
+        Set<String> s = changedVariables;
+        if (s == null) {
+            return null;
+        }
+
+        synchronized (s) {
+            Set<String> result = new HashSet<>(s);
+            s.clear();
+            return result;
+        }
+    }
+
+    private void onChange(String key) {
+        Set<String> s = changedVariables;
+        if (s != null) {
+            s.add(key);
+        }
+    }
+
+    private void onRead(String key, Object value) {
+        if (changedVariables != null && !isImmutable(value)) {
+            onChange(key);
+        }
+    }
+
+    private static boolean isImmutable(Object v) {
+        return v == null || v instanceof String || v instanceof Boolean || v instanceof Character
+                || v instanceof Integer || v instanceof Long || v instanceof Short || v instanceof Byte
+                || v instanceof Double || v instanceof Float || v instanceof BigInteger
+                || v instanceof BigDecimal || v instanceof UUID || v instanceof Enum;
+    }
 }
@@ -29,6 +29,12 @@ public final class FlowUtils {
     }
 
     public static void followFlows(AbstractEngine engine, DefaultExecution execution, String processDefinitionId, String elementId, UUID groupId, boolean exclusive) throws ExecutionException {
+        if (MultiInstanceHelper.isAwaitingInstance(execution, processDefinitionId, elementId)) {
+            // an instance of a multi-instance activity returns to its loop
+            log.debug("followFlows ['{}'] -> instance of '{}', '{}' completed", execution.getId(), processDefinitionId, elementId);
+            return;
+        }
+
         ProcessDefinitionProvider provider = engine.getProcessDefinitionProvider();
         ProcessDefinition pd = provider.getById(processDefinitionId);
         List<SequenceFlow> flows = ProcessDefinitionUtils.findOutgoingFlows(pd, elementId);
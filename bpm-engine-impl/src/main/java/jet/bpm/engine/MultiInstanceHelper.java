@@ -0,0 +1,148 @@
+package jet.bpm.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jet.bpm.engine.api.ExecutionContext;
+import jet.bpm.engine.api.ExecutionException;
+import jet.bpm.engine.commands.CompleteLoopInstanceCommand;
+import jet.bpm.engine.commands.ExecutionCommand;
+import jet.bpm.engine.commands.LoopInstanceCommand;
+import jet.bpm.engine.commands.MultiInstanceCommand;
+import jet.bpm.engine.el.ExpressionManager;
+import jet.bpm.engine.model.AbstractElement;
+import jet.bpm.engine.model.LoopActivity;
+import jet.bpm.engine.model.LoopCharacteristics;
+
+/**
+ * Multi-instance activities support.
+ * <p/>
+ * The loop is controlled by {@link MultiInstanceCommand}, which stays on the
+ * stack until the loop ends. Each instance is started with
+ * {@link LoopInstanceCommand} on top of {@link CompleteLoopInstanceCommand}.
+ * When the instance is done, the activity doesn't follow its outgoing flows,
+ * but returns to the loop.
+ */
+public final class MultiInstanceHelper {
+
+    public static LoopCharacteristics getLoopCharacteristics(AbstractElement e) {
+        if (e instanceof LoopActivity) {
+            return ((LoopActivity) e).getLoopCharacteristics();
+        }
+        return null;
+    }
+
+    /**
+     * Evaluates the loop collection. The collection can be specified with
+     * the name of a variable or with EL expression.
+     * @return items of the collection, never null.
+     * @throws ExecutionException if the collection is not a collection or an
+     * array.
+     */
+    public static List<Object> getItems(ExpressionManager em, ExecutionContext ctx, String elementId, LoopCharacteristics l) throws ExecutionException {
+        String expr = l.getCollection();
+        if (expr == null) {
+            throw new ExecutionException("No loop collection specified for '%s'", elementId);
+        }
+
+        Object v;
+        if (expr.contains("${") || expr.contains("#{")) {
+            v = em.eval(ctx, expr, Object.class);
+        } else {
+            v = ctx.getVariable(expr);
+        }
+
+        if (v == null) {
+            return Collections.emptyList();
+        } else if (v instanceof Collection) {
+            return new ArrayList<>((Collection<?>) v);
+        } else if (v instanceof Object[]) {
+            return Arrays.asList((Object[]) v);
+        }
+
+        throw new ExecutionException("Invalid loop collection of '%s': %s", elementId, v.getClass().getName());
+    }
+
+    /**
+     * Returns variables of an instance: the element variable and the loop
+     * counters.
+     */
+    public static Map<String, Object> getInstanceVariables(LoopCharacteristics l, Object item, int loopCounter, int instances) {
+        Map<String, Object> m = new HashMap<>();
+        if (l.getElementVariable() != null) {
+            m.put(l.getElementVariable(), item);
+        }
+        m.put(ExecutionContext.LOOP_COUNTER_KEY, loopCounter);
+        m.put(ExecutionContext.NUMBER_OF_INSTANCES_KEY, instances);
+        return m;
+    }
+
+    /**
+     * Removes variables of the loop.
+     */
+    public static void clearVariables(ExecutionContext ctx, String elementVariable) {
+        if (elementVariable != null) {
+            ctx.removeVariable(elementVariable);
+        }
+        ctx.removeVariable(ExecutionContext.LOOP_COUNTER_KEY);
+        ctx.removeVariable(ExecutionContext.NUMBER_OF_INSTANCES_KEY);
+        ctx.removeVariable(ExecutionContext.NUMBER_OF_COMPLETED_INSTANCES_KEY);
+    }
+
+    /**
+     * Returns {@code true} if the specified element is performed as an
+     * instance of a loop, which waits for its completion.
+     */
+    public static boolean isAwaitingInstance(DefaultExecution s, String processDefinitionId, String elementId) {
+        ExecutionCommand c = s.peek();
+        if (!(c instanceof CompleteLoopInstanceCommand)) {
+            return false;
+        }
+
+        CompleteLoopInstanceCommand cc = (CompleteLoopInstanceCommand) c;
+        return cc.getElementId().equals(elementId) && cc.getProcessDefinitionId().equals(processDefinitionId);
+    }
+
+    /**
+     * Stops the loop of the specified element, e.g. when an instance is
+     * interrupted by a boundary event. Does nothing, if the element is not
+     * performed as a loop instance.
+     */
+    public static void interrupt(DefaultExecution s, String processDefinitionId, String elementId) {
+        if (!isAwaitingInstance(s, processDefinitionId, elementId)) {
+            return;
+        }
+
+        // pending instances of the same loop
+        while (true) {
+            ExecutionCommand c = s.peek();
+            if (c instanceof CompleteLoopInstanceCommand && isAwaitingInstance(s, processDefinitionId, elementId)) {
+                s.pop();
+            } else if (c instanceof LoopInstanceCommand && isSameElement((LoopInstanceCommand) c, processDefinitionId, elementId)) {
+                s.pop();
+            } else {
+                break;
+            }
+        }
+
+        ExecutionCommand c = s.peek();
+        if (c instanceof MultiInstanceCommand) {
+            MultiInstanceCommand mc = (MultiInstanceCommand) c;
+            if (mc.getElementId().equals(elementId) && mc.getProcessDefinitionId().equals(processDefinitionId)) {
+                s.pop();
+                clearVariables(s.getContext(), mc.getElementVariable());
+            }
+        }
+    }
+
+    private static boolean isSameElement(LoopInstanceCommand c, String processDefinitionId, String elementId) {
+        return c.getElementId().equals(elementId) && c.getProcessDefinitionId().equals(processDefinitionId);
+    }
+
+    private MultiInstanceHelper() {
+    }
+}
@@ -0,0 +1,333 @@
+package jet.bpm.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import jet.bpm.engine.api.ExecutionContext;
+import jet.bpm.engine.api.ExecutionException;
+import jet.bpm.engine.commands.ExecutionCommand;
+import jet.bpm.engine.commands.ForkBranchesCommand;
+import jet.bpm.engine.commands.ProcessElementCommand;
+import jet.bpm.engine.handlers.ElementHandler;
+import jet.bpm.engine.model.AbstractElement;
+import jet.bpm.engine.model.ProcessDefinition;
+import jet.bpm.engine.model.SequenceFlow;
+import jet.bpm.engine.model.ServiceTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Performs branches of parallel gateways concurrently. Each branch runs in
+ * its own child execution with a shallow copy of the process variables,
+ * until it reaches an element other than a sequence flow or a service task
+ * (e.g. the joining gateway or an event). Remaining commands of the branches are
+ * returned to the parent execution and are performed as usual, so wait states
+ * and joins keep their sequential semantics.
+ * <p/>
+ * Results are merged in the order of the gateway's outgoing flows: changes of
+ * variables made by later branches overwrite changes of earlier ones,
+ * activations are reported to the listeners branch by branch. Transient
+ * variables are not visible in the branches.
+ * <p/>
+ * The copy is shallow: values themselves are shared by all branches. Only
+ * variables, which a branch sets to another object or removes, are merged;
+ * changes made inside a value (e.g. adding to a list) are not detected.
+ * Tasks of concurrent branches must not modify shared mutable values, they
+ * should set new values instead, otherwise the branches race.
+ */
+public final class ParallelBranches {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelBranches.class);
+
+    public static final int DEFAULT_INSTANCE_CONCURRENCY = 16;
+
+    private static final ThreadLocal<Branch> current = new ThreadLocal<>();
+
+    private final AbstractEngine engine;
+    private volatile Executor executor;
+    private volatile int instanceConcurrency = DEFAULT_INSTANCE_CONCURRENCY;
+
+    ParallelBranches(AbstractEngine engine) {
+        this.engine = engine;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the maximum number of concurrently performed instances of a
+     * parallel multi-instance activity.
+     */
+    public void setInstanceConcurrency(int instanceConcurrency) {
+        if (instanceConcurrency < 1) {
+            throw new IllegalArgumentException("Invalid instance concurrency: " + instanceConcurrency);
+        }
+        this.instanceConcurrency = instanceConcurrency;
+    }
+
+    public int getInstanceConcurrency() {
+        return instanceConcurrency;
+    }
+
+    /**
+     * Returns {@code true} if branches of the gateways, reached by the
+     * current thread, can be performed concurrently.
+     */
+    public boolean isEnabled() {
+        return executor != null && !isBranchThread();
+    }
+
+    /**
+     * Returns {@code true} if the current thread performs a parallel branch.
+     */
+    public static boolean isBranchThread() {
+        return current.get() != null;
+    }
+
+    /**
+     * Returns the command to the execution and stops the current branch. The
+     * command will be performed by the parent execution. Used by elements,
+     * which can't be performed in parallel branches (e.g. asynchronous
+     * tasks).
+     * @param s the execution of the branch.
+     * @param c the command to return.
+     */
+    public static void deferToParent(DefaultExecution s, ProcessElementCommand c) {
+        s.push(c);
+
+        Branch b = current.get();
+        if (b != null) {
+            b.deferred = true;
+        }
+    }
+
+    /**
+     * Performs the branches of the gateway. Falls back to the sequential
+     * execution if there is no executor or only one branch.
+     * @param s the parent execution.
+     * @param c the fork command.
+     * @throws ExecutionException
+     */
+    public void fork(DefaultExecution s, ForkBranchesCommand c) throws ExecutionException {
+        List<String> flowIds = c.getFlowIds();
+
+        Executor ex = executor;
+        if (ex == null || flowIds.size() < 2 || isBranchThread()) {
+            // the first flow goes on the top of the stack
+            for (int i = flowIds.size() - 1; i >= 0; i--) {
+                s.push(new ProcessElementCommand(c.getProcessDefinitionId(), flowIds.get(i), c.getGroupId(), false));
+            }
+            return;
+        }
+
+        List<List<ExecutionCommand>> stacks = new ArrayList<>(flowIds.size());
+        for (String flowId : flowIds) {
+            List<ExecutionCommand> l = new ArrayList<>(1);
+            l.add(new ProcessElementCommand(c.getProcessDefinitionId(), flowId, c.getGroupId(), false));
+            stacks.add(l);
+        }
+
+        List<List<ExecutionCommand>> remaining = run(s, stacks, null);
+
+        // return the remaining commands, the first branch goes on the top
+        for (int i = remaining.size() - 1; i >= 0; i--) {
+            push(s, remaining.get(i));
+        }
+
+        log.debug("fork ['{}', '{}'] -> done ({} branches)", s.getId(), c.getElementId(), flowIds.size());
+    }
+
+    /**
+     * Performs the commands in child executions concurrently and merges
+     * their variables and activations into the parent execution, in order.
+     * @param s the parent execution.
+     * @param stacks initial commands of each child execution, the bottom of
+     * the stack first.
+     * @param variables additional variables of each child execution, can be
+     * null. These variables are not merged into the parent execution, unless
+     * changed by the child.
+     * @return the remaining commands of each child execution, the bottom of
+     * the stack first.
+     * @throws ExecutionException
+     */
+    public List<List<ExecutionCommand>> run(DefaultExecution s, List<List<ExecutionCommand>> stacks, List<Map<String, Object>> variables) throws ExecutionException {
+        Executor ex = executor;
+        if (ex == null) {
+            throw new IllegalStateException("Parallel branch executor is not set");
+        }
+
+        ExecutionContext ctx = s.getContext();
+        Map<String, Object> snapshot = ctx.getVariables();
+
+        List<Branch> branches = new ArrayList<>(stacks.size());
+        List<FutureTask<Void>> tasks = new ArrayList<>(stacks.size());
+        for (int i = 0; i < stacks.size(); i++) {
+            Map<String, Object> initial = snapshot;
+            if (variables != null && variables.get(i) != null) {
+                initial = new HashMap<>(snapshot);
+                initial.putAll(variables.get(i));
+            }
+
+            ExecutionContext childCtx = new ExecutionContextImpl(null);
+            ExecutionContextHelper.applyVariables(childCtx, initial);
+
+            DefaultExecution child = new DefaultExecution(s.getId(), s.getParentId(), s.getBusinessKey(), s.getProcessDefinitionId(), childCtx);
+            push(child, stacks.get(i));
+
+            final Branch b = new Branch(child, initial);
+            branches.add(b);
+            tasks.add(new FutureTask<>(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    run(b);
+                    return null;
+                }
+            }));
+        }
+
+        // the first branch is performed by the current thread
+        for (int i = 1; i < tasks.size(); i++) {
+            FutureTask<Void> t = tasks.get(i);
+            try {
+                ex.execute(t);
+            } catch (RejectedExecutionException e) {
+                t.run();
+            }
+        }
+        tasks.get(0).run();
+
+        ExecutionException error = null;
+        for (FutureTask<Void> t : tasks) {
+            ExecutionException e = await(t);
+            if (error == null) {
+                error = e;
+            }
+        }
+
+        if (error != null) {
+            throw error;
+        }
+
+        List<List<ExecutionCommand>> result = new ArrayList<>(branches.size());
+        for (Branch b : branches) {
+            mergeVariables(b.initial, b.execution.getContext(), ctx);
+
+            for (ProcessElementCommand a : b.activations) {
+                s.onActivation(s, a.getProcessDefinitionId(), a.getElementId());
+                engine.fireOnElementActivation(s, a.getProcessDefinitionId(), a.getElementId());
+            }
+
+            List<ExecutionCommand> l = new ArrayList<>(b.execution.size());
+            ExecutionCommand cmd;
+            while ((cmd = b.execution.pop()) != null) {
+                l.add(cmd);
+            }
+            Collections.reverse(l);
+            result.add(l);
+        }
+
+        return result;
+    }
+
+    private static void push(DefaultExecution s, List<ExecutionCommand> commands) {
+        for (ExecutionCommand c : commands) {
+            s.push(c);
+        }
+    }
+
+    private void run(Branch b) throws ExecutionException {
+        current.set(b);
+        try {
+            DefaultExecution x = b.execution;
+            ElementHandler h = engine.getElementHandler();
+
+            while (true) {
+                ExecutionCommand cmd = x.peek();
+                if (!(cmd instanceof ProcessElementCommand)) {
+                    break;
+                }
+
+                ProcessElementCommand c = (ProcessElementCommand) cmd;
+                if (!isBranchElement(c)) {
+                    break;
+                }
+
+                h.handle(x, c);
+                if (b.deferred) {
+                    // the command was returned to the stack
+                    break;
+                }
+
+                b.activations.add(c);
+            }
+        } finally {
+            current.remove();
+        }
+    }
+
+    private boolean isBranchElement(ProcessElementCommand c) throws ExecutionException {
+        ProcessDefinition pd = engine.getProcessDefinitionProvider().getById(c.getProcessDefinitionId());
+        AbstractElement e = ProcessDefinitionUtils.findElement(pd, c.getElementId());
+        return e instanceof SequenceFlow || e instanceof ServiceTask;
+    }
+
+    private static ExecutionException await(FutureTask<Void> t) {
+        try {
+            t.get();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ExecutionException("Interrupted while waiting for a parallel branch", e);
+        } catch (java.util.concurrent.ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ExecutionException) {
+                return (ExecutionException) cause;
+            }
+            return new ExecutionException("Parallel branch failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Applies changes of the branch's variables to the parent context.
+     * Variables, which still refer to the same object, are considered
+     * unchanged and are left untouched.
+     */
+    private static void mergeVariables(Map<String, Object> initial, ExecutionContext src, ExecutionContext dst) {
+        Map<String, Object> vars = src.getVariables();
+
+        for (Map.Entry<String, Object> e : vars.entrySet()) {
+            String k = e.getKey();
+            Object v = e.getValue();
+            if (!initial.containsKey(k) || initial.get(k) != v) {
+                dst.setVariable(k, v);
+            }
+        }
+
+        for (String k : initial.keySet()) {
+            if (!vars.containsKey(k)) {
+                dst.removeVariable(k);
+            }
+        }
+    }
+
+    private static final class Branch {
+
+        private final DefaultExecution execution;
+        private final Map<String, Object> initial;
+        private final List<ProcessElementCommand> activations = new ArrayList<>();
+        private boolean deferred;
+
+        private Branch(DefaultExecution execution, Map<String, Object> initial) {
+            this.execution = execution;
+            this.initial = initial;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package jet.bpm.engine.commands;
+
+import jet.bpm.engine.AbstractEngine;
+import jet.bpm.engine.DefaultExecution;
+import jet.bpm.engine.api.ExecutionException;
+
+/**
+ * Marks the end of an instance of a multi-instance activity. While this
+ * command is on the top of the stack, the activity returns to its loop
+ * instead of following its outgoing flows.
+ * @see jet.bpm.engine.MultiInstanceHelper
+ */
+public class CompleteLoopInstanceCommand implements ExecutionCommand {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String processDefinitionId;
+    private final String elementId;
+
+    public CompleteLoopInstanceCommand(String processDefinitionId, String elementId) {
+        this.processDefinitionId = processDefinitionId;
+        this.elementId = elementId;
+    }
+
+    public String getProcessDefinitionId() {
+        return processDefinitionId;
+    }
+
+    public String getElementId() {
+        return elementId;
+    }
+
+    @Override
+    public DefaultExecution exec(AbstractEngine engine, DefaultExecution execution) throws ExecutionException {
+        execution.pop();
+        return execution;
+    }
+}
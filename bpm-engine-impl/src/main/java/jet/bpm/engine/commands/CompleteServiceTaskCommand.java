@@ -0,0 +1,75 @@
+package jet.bpm.engine.commands;
+
+import jet.bpm.engine.AbstractEngine;
+import jet.bpm.engine.DefaultExecution;
+import jet.bpm.engine.api.ExecutionContext;
+import jet.bpm.engine.api.BpmnError;
+import jet.bpm.engine.api.ExecutionException;
+import jet.bpm.engine.handlers.DelegatingElementHandler;
+import jet.bpm.engine.handlers.ElementHandler;
+import jet.bpm.engine.handlers.ServiceTaskHandler;
+import jet.bpm.engine.model.ServiceTask;
+
+/**
+ * Continues the flow after an asynchronous service task is completed. If
+ * the execution is resumed without the completion (the event of the task
+ * expired), the task fails with the
+ * {@link ServiceTaskHandler#ASYNC_TASK_TIMEOUT_ERROR} error.
+ */
+public class CompleteServiceTaskCommand implements ExecutionCommand {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Name of the transient variable with the error of the task.
+     */
+    public static final String ERROR_KEY = "__bpmn_async_task_error";
+
+    /**
+     * Name of the transient variable, which marks the resume by the
+     * completion of the task.
+     */
+    public static final String COMPLETED_KEY = "__bpmn_async_task_completed";
+
+    private final ProcessElementCommand task;
+
+    public CompleteServiceTaskCommand(ProcessElementCommand task) {
+        this.task = task;
+    }
+
+    public ProcessElementCommand getTask() {
+        return task;
+    }
+
+    @Override
+    public DefaultExecution exec(AbstractEngine engine, DefaultExecution execution) throws ExecutionException {
+        execution.pop();
+
+        ExecutionContext ctx = execution.getContext();
+        Throwable error = (Throwable) ctx.getTransientVariable(ERROR_KEY);
+        boolean completed = ctx.getTransientVariable(COMPLETED_KEY) != null;
+        ctx.removeTransientVariable(ERROR_KEY);
+        ctx.removeTransientVariable(COMPLETED_KEY);
+
+        if (!completed) {
+            error = new BpmnError(ServiceTaskHandler.ASYNC_TASK_TIMEOUT_ERROR);
+        }
+
+        getHandler(engine).complete(execution, task, error);
+
+        return execution;
+    }
+
+    private static ServiceTaskHandler getHandler(AbstractEngine engine) throws ExecutionException {
+        ElementHandler h = engine.getElementHandler();
+        if (h instanceof DelegatingElementHandler) {
+            h = ((DelegatingElementHandler) h).getHandler(ServiceTask.class);
+        }
+
+        if (!(h instanceof ServiceTaskHandler)) {
+            throw new ExecutionException("Asynchronous service tasks require %s, got %s", ServiceTaskHandler.class.getName(), h);
+        }
+
+        return (ServiceTaskHandler) h;
+    }
+}
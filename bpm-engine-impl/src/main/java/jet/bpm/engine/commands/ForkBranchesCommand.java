@@ -0,0 +1,53 @@
+package jet.bpm.engine.commands;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import jet.bpm.engine.AbstractEngine;
+import jet.bpm.engine.DefaultExecution;
+import jet.bpm.engine.api.ExecutionException;
+
+/**
+ * Starts the branches of a parallel gateway. Branches are performed
+ * concurrently, if the engine is configured to do so.
+ * @see jet.bpm.engine.ParallelBranches
+ */
+public class ForkBranchesCommand implements ExecutionCommand {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String processDefinitionId;
+    private final String elementId;
+    private final UUID groupId;
+    private final ArrayList<String> flowIds;
+
+    public ForkBranchesCommand(String processDefinitionId, String elementId, UUID groupId, List<String> flowIds) {
+        this.processDefinitionId = processDefinitionId;
+        this.elementId = elementId;
+        this.groupId = groupId;
+        this.flowIds = new ArrayList<>(flowIds);
+    }
+
+    public String getProcessDefinitionId() {
+        return processDefinitionId;
+    }
+
+    public String getElementId() {
+        return elementId;
+    }
+
+    public UUID getGroupId() {
+        return groupId;
+    }
+
+    public List<String> getFlowIds() {
+        return flowIds;
+    }
+
+    @Override
+    public DefaultExecution exec(AbstractEngine engine, DefaultExecution execution) throws ExecutionException {
+        execution.pop();
+        engine.getParallelBranches().fork(execution, this);
+        return execution;
+    }
+}
@@ -10,6 +10,7 @@ import jet.bpm.engine.BpmnErrorHelper;
 import jet.bpm.engine.DefaultExecution;
 import jet.bpm.engine.api.ExecutionContext;
 import jet.bpm.engine.FlowUtils;
+import jet.bpm.engine.MultiInstanceHelper;
 import jet.bpm.engine.ProcessDefinitionProvider;
 import jet.bpm.engine.ProcessDefinitionUtils;
 import jet.bpm.engine.model.BoundaryEvent;
@@ -65,6 +66,9 @@ public class HandleRaisedErrorCommand implements ExecutionCommand {
             
             // error is handled
             BpmnErrorHelper.clear(ctx);
+
+            // the boundary event interrupts the loop, if any
+            MultiInstanceHelper.interrupt(execution, processDefinitionId, elementId);
             
             // save errorRef for later
             ctx.setVariable(ExecutionContext.ERROR_CODE_KEY, errorRef);
@@ -0,0 +1,56 @@
+package jet.bpm.engine.commands;
+
+import java.util.UUID;
+import jet.bpm.engine.AbstractEngine;
+import jet.bpm.engine.DefaultExecution;
+import jet.bpm.engine.ExecutionContextHelper;
+import jet.bpm.engine.MultiInstanceHelper;
+import jet.bpm.engine.ProcessDefinitionUtils;
+import jet.bpm.engine.api.ExecutionException;
+import jet.bpm.engine.model.AbstractElement;
+import jet.bpm.engine.model.LoopCharacteristics;
+import jet.bpm.engine.model.ProcessDefinition;
+
+/**
+ * Performs a single instance of a multi-instance activity. Sets the element
+ * variable and the loop counters before the activity is performed.
+ */
+public class LoopInstanceCommand extends ProcessElementCommand {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Object item;
+    private final int loopCounter;
+    private final int instances;
+
+    public LoopInstanceCommand(String processDefinitionId, String elementId, UUID groupId, boolean exclusive, Object item, int loopCounter, int instances) {
+        super(processDefinitionId, elementId, groupId, exclusive);
+        this.item = item;
+        this.loopCounter = loopCounter;
+        this.instances = instances;
+    }
+
+    public Object getItem() {
+        return item;
+    }
+
+    public int getLoopCounter() {
+        return loopCounter;
+    }
+
+    public int getInstances() {
+        return instances;
+    }
+
+    @Override
+    public DefaultExecution exec(AbstractEngine engine, DefaultExecution execution) throws ExecutionException {
+        ProcessDefinition pd = engine.getProcessDefinitionProvider().getById(getProcessDefinitionId());
+        AbstractElement e = ProcessDefinitionUtils.findElement(pd, getElementId());
+        LoopCharacteristics l = MultiInstanceHelper.getLoopCharacteristics(e);
+        if (l != null) {
+            ExecutionContextHelper.applyVariables(execution.getContext(), MultiInstanceHelper.getInstanceVariables(l, item, loopCounter, instances));
+        }
+
+        return super.exec(engine, execution);
+    }
+}
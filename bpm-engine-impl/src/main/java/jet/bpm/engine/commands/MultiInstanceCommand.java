@@ -0,0 +1,182 @@
+package jet.bpm.engine.commands;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import jet.bpm.engine.AbstractEngine;
+import jet.bpm.engine.BpmnErrorHelper;
+import jet.bpm.engine.DefaultExecution;
+import jet.bpm.engine.FlowUtils;
+import jet.bpm.engine.MultiInstanceHelper;
+import jet.bpm.engine.ParallelBranches;
+import jet.bpm.engine.ProcessDefinitionUtils;
+import jet.bpm.engine.api.ExecutionContext;
+import jet.bpm.engine.api.ExecutionException;
+import jet.bpm.engine.model.AbstractElement;
+import jet.bpm.engine.model.LoopCharacteristics;
+import jet.bpm.engine.model.ProcessDefinition;
+import jet.bpm.engine.model.ServiceTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Controls the loop of a multi-instance activity. Stays on the stack until
+ * all instances are completed, the completion condition is met or an
+ * instance raises an error.
+ * <p/>
+ * Instances of a parallel service task are performed concurrently, in groups
+ * of {@link ParallelBranches#getInstanceConcurrency()}, if the parallel
+ * branch executor is set. The completion condition is checked after each
+ * group. Other parallel activities are performed one instance after another.
+ * <p/>
+ * The command is immutable, like all commands on the stack: to advance the
+ * loop it is replaced with a copy, so journaled executions record the
+ * progress as pop and push steps.
+ */
+public class MultiInstanceCommand implements ExecutionCommand {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger log = LoggerFactory.getLogger(MultiInstanceCommand.class);
+
+    private final String processDefinitionId;
+    private final String elementId;
+    private final UUID groupId;
+    private final boolean exclusive;
+    private final String elementVariable;
+    private final ArrayList<Object> items;
+    private final int next;
+
+    public MultiInstanceCommand(ProcessElementCommand c, String elementVariable, List<Object> items) {
+        this.processDefinitionId = c.getProcessDefinitionId();
+        this.elementId = c.getElementId();
+        this.groupId = c.getGroupId();
+        this.exclusive = c.isExclusive();
+        this.elementVariable = elementVariable;
+        this.items = new ArrayList<>(items);
+        this.next = 0;
+    }
+
+    private MultiInstanceCommand(MultiInstanceCommand c, int next) {
+        this.processDefinitionId = c.processDefinitionId;
+        this.elementId = c.elementId;
+        this.groupId = c.groupId;
+        this.exclusive = c.exclusive;
+        this.elementVariable = c.elementVariable;
+        this.items = c.items;
+        this.next = next;
+    }
+
+    public String getProcessDefinitionId() {
+        return processDefinitionId;
+    }
+
+    public String getElementId() {
+        return elementId;
+    }
+
+    public String getElementVariable() {
+        return elementVariable;
+    }
+
+    @Override
+    public DefaultExecution exec(AbstractEngine engine, DefaultExecution execution) throws ExecutionException {
+        ProcessDefinition pd = engine.getProcessDefinitionProvider().getById(processDefinitionId);
+        AbstractElement e = ProcessDefinitionUtils.findElement(pd, elementId);
+        LoopCharacteristics l = MultiInstanceHelper.getLoopCharacteristics(e);
+        if (l == null) {
+            throw new ExecutionException("Element '%s' of process '%s' is not a multi-instance activity", elementId, processDefinitionId);
+        }
+
+        ExecutionContext ctx = execution.getContext();
+
+        if (next > 0 && BpmnErrorHelper.getRaisedError(ctx) != null) {
+            // the error will be handled by the parent execution
+            log.debug("exec ['{}', '{}'] -> error raised after {} instance(s)", execution.getBusinessKey(), elementId, next);
+            execution.pop();
+            MultiInstanceHelper.clearVariables(ctx, elementVariable);
+            return execution;
+        }
+
+        ctx.setVariable(ExecutionContext.NUMBER_OF_COMPLETED_INSTANCES_KEY, next);
+
+        if (next >= items.size() || next > 0 && isCompleted(engine, ctx, l)) {
+            log.debug("exec ['{}', '{}'] -> done ({} of {} instance(s))", execution.getBusinessKey(), elementId, next, items.size());
+            execution.pop();
+            MultiInstanceHelper.clearVariables(ctx, elementVariable);
+            FlowUtils.followFlows(engine, execution, processDefinitionId, elementId, groupId, exclusive);
+            return execution;
+        }
+
+        if (!l.isSequential() && e instanceof ServiceTask && engine.getParallelBranches().isEnabled()) {
+            runConcurrently(engine, execution, l);
+        } else {
+            execution.pop();
+            execution.push(new MultiInstanceCommand(this, next + 1));
+            execution.push(new CompleteLoopInstanceCommand(processDefinitionId, elementId));
+            execution.push(makeInstance(next));
+        }
+
+        return execution;
+    }
+
+    private void runConcurrently(AbstractEngine engine, DefaultExecution s, LoopCharacteristics l) throws ExecutionException {
+        ParallelBranches pb = engine.getParallelBranches();
+        int n = Math.min(pb.getInstanceConcurrency(), items.size() - next);
+
+        List<List<ExecutionCommand>> stacks = new ArrayList<>(n);
+        List<Map<String, Object>> vars = new ArrayList<>(n);
+        for (int i = next; i < next + n; i++) {
+            stacks.add(Arrays.<ExecutionCommand>asList(new CompleteLoopInstanceCommand(processDefinitionId, elementId), makeInstance(i)));
+            vars.add(MultiInstanceHelper.getInstanceVariables(l, items.get(i), i, items.size()));
+        }
+
+        List<List<ExecutionCommand>> remaining = pb.run(s, stacks, vars);
+
+        int performed = next + n;
+        s.pop();
+        s.push(new MultiInstanceCommand(this, performed));
+
+        for (List<ExecutionCommand> r : remaining) {
+            if (r.isEmpty() || !(r.get(0) instanceof CompleteLoopInstanceCommand)) {
+                // the instance was interrupted by a boundary event, so is
+                // the loop
+                log.debug("runConcurrently ['{}', '{}'] -> interrupted", s.getBusinessKey(), elementId);
+                s.pop();
+                MultiInstanceHelper.clearVariables(s.getContext(), elementVariable);
+                push(s, r);
+                return;
+            }
+        }
+
+        // unfinished instances (e.g. asynchronous tasks) are performed by
+        // this execution before the next group
+        for (int i = remaining.size() - 1; i >= 0; i--) {
+            push(s, remaining.get(i));
+        }
+
+        log.debug("runConcurrently ['{}', '{}'] -> {} of {} instance(s) performed", s.getBusinessKey(), elementId, performed, items.size());
+    }
+
+    private LoopInstanceCommand makeInstance(int i) {
+        return new LoopInstanceCommand(processDefinitionId, elementId, groupId, exclusive, items.get(i), i, items.size());
+    }
+
+    private static boolean isCompleted(AbstractEngine engine, ExecutionContext ctx, LoopCharacteristics l) {
+        String expr = l.getCompletionCondition();
+        if (expr == null) {
+            return false;
+        }
+
+        Boolean b = engine.getExpressionManager().eval(ctx, expr, Boolean.class);
+        return b != null && b;
+    }
+
+    private static void push(DefaultExecution s, List<ExecutionCommand> commands) {
+        for (ExecutionCommand c : commands) {
+            s.push(c);
+        }
+    }
+}
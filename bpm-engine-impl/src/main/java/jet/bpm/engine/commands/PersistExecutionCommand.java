@@ -7,6 +7,16 @@ import jet.bpm.engine.persistence.PersistenceManager;
 
 public class PersistExecutionCommand implements ExecutionCommand {
 
+    private static final long serialVersionUID = 3179495305631855874L;
+
+    /**
+     * The command is stateless, the instance is shared by all executions.
+     */
+    public static final PersistExecutionCommand INSTANCE = new PersistExecutionCommand();
+
+    private PersistExecutionCommand() {
+    }
+
     @Override
     public DefaultExecution exec(AbstractEngine engine, DefaultExecution execution) throws ExecutionException {
         execution.pop();
@@ -16,4 +26,8 @@ public class PersistExecutionCommand implements ExecutionCommand {
         
         return execution;
     }
+
+    private Object readResolve() {
+        return INSTANCE;
+    }
 }
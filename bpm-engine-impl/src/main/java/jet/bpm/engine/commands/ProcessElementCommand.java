@@ -7,6 +7,8 @@ import jet.bpm.engine.DefaultExecution;
 
 public class ProcessElementCommand implements ExecutionCommand {
 
+    private static final long serialVersionUID = 6825608643062416344L;
+
     private final String processDefinitionId;
     private final String elementId;
     private final UUID groupId;
@@ -45,6 +47,10 @@ public class ProcessElementCommand implements ExecutionCommand {
     
     @Override
     public DefaultExecution exec(AbstractEngine engine, DefaultExecution execution) throws ExecutionException {
+        if (engine.getLinearSegments().run(execution, this)) {
+            return execution;
+        }
+
         engine.getElementHandler().handle(execution, this);
 
         // perform notification of element activation
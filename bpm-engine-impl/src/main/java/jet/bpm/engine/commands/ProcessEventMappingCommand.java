@@ -7,14 +7,28 @@ import jet.bpm.engine.api.ExecutionException;
 
 public class ProcessEventMappingCommand implements ExecutionCommand {
 
+    private static final long serialVersionUID = -1210164503414050943L;
+
+    /**
+     * The command is stateless, the instance is shared by all executions.
+     */
+    public static final ProcessEventMappingCommand INSTANCE = new ProcessEventMappingCommand();
+
+    private ProcessEventMappingCommand() {
+    }
+
     @Override
     public DefaultExecution exec(AbstractEngine engine, DefaultExecution execution) throws ExecutionException {
         execution.pop();
         
-        if (!EventMapHelper.isEmpty(execution)) {
-            execution.push(new SuspendExecutionCommand());
+        if (!EventMapHelper.isEmpty(execution) && !engine.consumeBufferedMessage(execution)) {
+            execution.push(SuspendExecutionCommand.INSTANCE);
         }
         
         return execution;
     }
+
+    private Object readResolve() {
+        return INSTANCE;
+    }
 }
@@ -3,6 +3,7 @@ package jet.bpm.engine.commands;
 import jet.bpm.engine.AbstractEngine;
 import jet.bpm.engine.api.ExecutionException;
 import jet.bpm.engine.DefaultExecution;
+import jet.bpm.engine.ExecutionContextHelper;
 
 /**
  * Process suspension command. Invokes saving of process state and interrupts
@@ -10,13 +11,31 @@ import jet.bpm.engine.DefaultExecution;
  */
 public class SuspendExecutionCommand implements ExecutionCommand {
 
+    private static final long serialVersionUID = 9036379687018476437L;
+
+    /**
+     * The command is stateless, the instance is shared by all executions.
+     */
+    public static final SuspendExecutionCommand INSTANCE = new SuspendExecutionCommand();
+
+    private SuspendExecutionCommand() {
+    }
+
     @Override
     public DefaultExecution exec(AbstractEngine e, DefaultExecution s) throws ExecutionException {
         s.pop();
         
         s.setSuspended(true);
+
+        // transient variables live only until the next wait state
+        ExecutionContextHelper.clearTransientVariables(s.getContext());
+
         e.getPersistenceManager().save(s);
         
         return s;
     }
+
+    private Object readResolve() {
+        return INSTANCE;
+    }
 }
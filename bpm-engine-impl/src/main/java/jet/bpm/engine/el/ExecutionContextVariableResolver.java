@@ -31,12 +31,22 @@ public class ExecutionContextVariableResolver extends ELResolver {
 
     @Override
     public Object getValue(ELContext context, Object base, Object property) {
+        if (base != null) {
+            return null;
+        }
+
         String k = (String) property;
-        if (base == null && executionContext.hasVariable(k)) {
+        if (executionContext.hasVariable(k)) {
             context.setPropertyResolved(true);
             return executionContext.getVariable(k);
         }
 
+        Object v = executionContext.getTransientVariable(k);
+        if (v != null) {
+            context.setPropertyResolved(true);
+            return v;
+        }
+
         return null;
     }
 
@@ -0,0 +1,44 @@
+package jet.bpm.engine.event;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Message, which arrived before the process instance started to wait for it.
+ * @see MessageBuffer
+ */
+public class BufferedMessage implements Serializable {
+
+    private final String processBusinessKey;
+    private final String eventName;
+    private final Map<String, Object> variables;
+    private final Date expiredAt;
+
+    public BufferedMessage(String processBusinessKey, String eventName, Map<String, Object> variables, Date expiredAt) {
+        this.processBusinessKey = processBusinessKey;
+        this.eventName = eventName;
+        this.variables = variables;
+        this.expiredAt = expiredAt;
+    }
+
+    public String getProcessBusinessKey() {
+        return processBusinessKey;
+    }
+
+    public String getEventName() {
+        return eventName;
+    }
+
+    public Map<String, Object> getVariables() {
+        return variables;
+    }
+
+    public Date getExpiredAt() {
+        return expiredAt;
+    }
+
+    public boolean isExpired(long now) {
+        return expiredAt != null && expiredAt.getTime() <= now;
+    }
+}
@@ -13,6 +13,11 @@ public interface EventPersistenceManager {
 
     Collection<Event> find(String processBusinessKey, String eventName);
 
+    /**
+     * @see EventStorage#findIds(String, UUID, int)
+     */
+    List<UUID> findIds(String eventName, UUID after, int maxEvents);
+
     void clearGroup(String processBusinessKey, UUID groupId);
 
     void add(Event event) throws ExecutionException;
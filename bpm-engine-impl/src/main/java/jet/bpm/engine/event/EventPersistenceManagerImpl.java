@@ -38,6 +38,13 @@ public class EventPersistenceManagerImpl implements EventPersistenceManager {
         return result;
     }
     
+    @Override
+    public List<UUID> findIds(String eventName, UUID after, int maxEvents) {
+        List<UUID> result = eventStorage.findIds(eventName, after, maxEvents);
+        log.debug("findIds ['{}', '{}', {}] -> done ({})", eventName, after, maxEvents, result.size());
+        return result;
+    }
+
     @Override
     public void add(Event event) throws ExecutionException {
         eventStorage.add(event);
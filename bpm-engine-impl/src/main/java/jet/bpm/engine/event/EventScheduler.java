@@ -1,11 +1,17 @@
 package jet.bpm.engine.event;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import jet.bpm.engine.DefaultEngine;
+import jet.bpm.engine.api.InstanceBusyException;
 import jet.bpm.engine.api.NoEventFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,12 +26,15 @@ public final class EventScheduler {
     private final List<Thread> eventExecutorThreads = new ArrayList<>();
 
     private Thread eventAcquisitionThread;
+    private volatile ScheduledExecutorService retryExecutor;
     private volatile boolean stopped = true;
     private int eventExecutorsCount = 10;
     private int maxEventsPerAcquisition = 10;
     private long acquisitionDelay = SECONDS.toMillis(5);
     private long acquisitionErrorDelay = SECONDS.toMillis(5);
     private long executionErrorDelay = SECONDS.toMillis(5);
+    private long lockTimeout = 0;
+    private long busyRetryDelay = SECONDS.toMillis(1);
 
     public EventScheduler(DefaultEngine engine, int maxAcquiredEventQueueSize) {
         this.engine = engine;
@@ -53,6 +62,25 @@ public final class EventScheduler {
         this.executionErrorDelay = executionErrorDelay;
     }
 
+    /**
+     * Sets the maximum time in milliseconds to wait for the lock of a process
+     * instance, which is used by another thread. Zero (default) means no
+     * waiting: events of busy instances are rescheduled instead of blocking
+     * the executor threads.
+     * @see #setBusyRetryDelay(long)
+     */
+    public void setLockTimeout(long lockTimeout) {
+        this.lockTimeout = lockTimeout;
+    }
+
+    /**
+     * Sets the delay in milliseconds before an event of a busy process
+     * instance is executed again.
+     */
+    public void setBusyRetryDelay(long busyRetryDelay) {
+        this.busyRetryDelay = busyRetryDelay;
+    }
+
     public synchronized void start() {
         if (!stopped) {
             return;
@@ -60,6 +88,11 @@ public final class EventScheduler {
 
         stopped = false;
 
+        retryExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("eventRetryThread")
+                .setDaemon(true)
+                .build());
+
         for (int i = 0; i < eventExecutorsCount; i++) {
             Thread t = new Thread("eventExecutionThread") {
 
@@ -97,6 +130,8 @@ public final class EventScheduler {
         }
         eventExecutorThreads.clear();
 
+        retryExecutor.shutdownNow();
+
         log.info("stop -> done");
     }
 
@@ -131,7 +166,11 @@ public final class EventScheduler {
                 ExpiredEvent x = acquiredEventQueue.take();
                 Event e = eventManager.get(x.geId());
 
-                engine.resume(e, null);
+                try {
+                    engine.resume(e, null, lockTimeout, MILLISECONDS);
+                } catch (InstanceBusyException ex) {
+                    retry(x);
+                }
             } catch (NoEventFoundException e) {
                 log.warn("eventExecutionLoop -> no event found: {}", e.getMessage());
             } catch (InterruptedException e) {
@@ -146,6 +185,25 @@ public final class EventScheduler {
         log.info("eventAcquisitionLoop -> done");
     }
 
+    private void retry(final ExpiredEvent x) {
+        log.debug("retry ['{}'] -> instance is busy, retry in {} ms", x.geId(), busyRetryDelay);
+
+        try {
+            retryExecutor.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (!acquiredEventQueue.offer(x)) {
+                        // the queue is full, try again later
+                        retry(x);
+                    }
+                }
+            }, busyRetryDelay, MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.warn("retry ['{}'] -> scheduler is stopped, event is skipped", x.geId());
+        }
+    }
+
     private void sleep(long t) {
         try {
             Thread.sleep(t);
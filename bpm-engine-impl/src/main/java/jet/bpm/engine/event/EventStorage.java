@@ -16,5 +16,15 @@ public interface EventStorage {
 
     void add(Event event);
 
+    /**
+     * Returns IDs of events with the specified name, in the storage specific
+     * order. Used to iterate over all events with the name page by page.
+     * @param eventName the name of events.
+     * @param after the last ID of the previous page or <code>null</code> for
+     * the first page.
+     * @param maxEvents the maximum number of IDs to return.
+     */
+    List<UUID> findIds(String eventName, UUID after, int maxEvents);
+
     List<ExpiredEvent> findNextExpiredEvent(int maxEvents);
 }
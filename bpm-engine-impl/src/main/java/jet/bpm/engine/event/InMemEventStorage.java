@@ -7,12 +7,15 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
 import java.util.UUID;
 
 public class InMemEventStorage implements EventStorage {
 
     private final Map<UUID, Event> events = new HashMap<>();
     private final List<ExpiredEvent> eventsToExecute = new ArrayList<>();
+    private final Map<String, NavigableSet<UUID>> names = new HashMap<>();
 
     @Override
     public Event get(UUID k) {
@@ -27,6 +30,7 @@ public class InMemEventStorage implements EventStorage {
             Event e = events.remove(k);
 
             removeEventExpiredEvent(e);
+            removeName(e);
             return e;
         }
     }
@@ -62,12 +66,42 @@ public class InMemEventStorage implements EventStorage {
         synchronized (events) {
             events.put(event.getId(), event);
 
+            NavigableSet<UUID> ids = names.get(event.getName());
+            if (ids == null) {
+                ids = new TreeSet<>();
+                names.put(event.getName(), ids);
+            }
+            ids.add(event.getId());
+
             if (event.getExpiredAt() != null) {
                 eventsToExecute.add(new ExpiredEvent(event.getId(), event.getExpiredAt()));
             }
         }
     }
 
+    @Override
+    public List<UUID> findIds(String eventName, UUID after, int maxEvents) {
+        List<UUID> result = new ArrayList<>();
+        synchronized (events) {
+            NavigableSet<UUID> ids = names.get(eventName);
+            if (ids == null) {
+                return result;
+            }
+
+            if (after != null) {
+                ids = ids.tailSet(after, false);
+            }
+
+            for (UUID id : ids) {
+                if (result.size() >= maxEvents) {
+                    break;
+                }
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
     @Override
     public List<ExpiredEvent> findNextExpiredEvent(int maxEvents) {
         List<ExpiredEvent> result = new ArrayList<>(maxEvents);
@@ -88,6 +122,22 @@ public class InMemEventStorage implements EventStorage {
         return result;
     }
 
+    private void removeName(Event e) {
+        if (e == null) {
+            return;
+        }
+
+        NavigableSet<UUID> ids = names.get(e.getName());
+        if (ids == null) {
+            return;
+        }
+
+        ids.remove(e.getId());
+        if (ids.isEmpty()) {
+            names.remove(e.getName());
+        }
+    }
+
     private void removeEventExpiredEvent(Event e) {
         if(e == null) {
             return;
@@ -0,0 +1,124 @@
+package jet.bpm.engine.event;
+
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory message buffer. Messages expire after the configured time to
+ * live.
+ * <p/>
+ * <b>Not durable:</b> buffered messages are lost on restart, although the
+ * senders were told they are delivered. Use it only when the messages can
+ * be lost, e.g. in tests, otherwise use
+ * {@link jet.bpm.engine.storage.KeyValueMessageBuffer}.
+ */
+public class InMemMessageBuffer implements MessageBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(InMemMessageBuffer.class);
+
+    /**
+     * Expired messages of all processes are removed every N additions.
+     */
+    private static final int PURGE_INTERVAL = 1000;
+
+    private final long ttl;
+    private final Map<String, Deque<BufferedMessage>> messages = new HashMap<>();
+    private int addCount;
+
+    /**
+     * @param ttl time to live of messages, in milliseconds.
+     */
+    public InMemMessageBuffer(long ttl) {
+        this.ttl = ttl;
+    }
+
+    @Override
+    public void add(String processBusinessKey, String eventName, Map<String, Object> variables) {
+        BufferedMessage m = new BufferedMessage(processBusinessKey, eventName, variables,
+                new Date(System.currentTimeMillis() + ttl));
+
+        synchronized (messages) {
+            Deque<BufferedMessage> q = messages.get(processBusinessKey);
+            if (q == null) {
+                q = new ArrayDeque<>();
+                messages.put(processBusinessKey, q);
+            }
+            q.add(m);
+
+            if (++addCount % PURGE_INTERVAL == 0) {
+                purgeExpired();
+            }
+        }
+
+        log.debug("add ['{}', '{}'] -> done", processBusinessKey, eventName);
+    }
+
+    @Override
+    public boolean hasMessages(String processBusinessKey) {
+        synchronized (messages) {
+            return messages.containsKey(processBusinessKey);
+        }
+    }
+
+    @Override
+    public BufferedMessage poll(String processBusinessKey, String eventName) {
+        long now = System.currentTimeMillis();
+
+        synchronized (messages) {
+            Deque<BufferedMessage> q = messages.get(processBusinessKey);
+            if (q == null) {
+                return null;
+            }
+
+            BufferedMessage result = null;
+            for (Iterator<BufferedMessage> i = q.iterator(); i.hasNext();) {
+                BufferedMessage m = i.next();
+                if (m.isExpired(now)) {
+                    i.remove();
+                } else if (m.getEventName().equals(eventName)) {
+                    i.remove();
+                    result = m;
+                    break;
+                }
+            }
+
+            if (q.isEmpty()) {
+                messages.remove(processBusinessKey);
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Removes expired messages of all processes.
+     */
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+
+        synchronized (messages) {
+            for (Iterator<Deque<BufferedMessage>> i = messages.values().iterator(); i.hasNext();) {
+                Deque<BufferedMessage> q = i.next();
+                for (Iterator<BufferedMessage> j = q.iterator(); j.hasNext();) {
+                    if (j.next().isExpired(now)) {
+                        j.remove();
+                        removed++;
+                    }
+                }
+
+                if (q.isEmpty()) {
+                    i.remove();
+                }
+            }
+        }
+
+        log.debug("purgeExpired -> done ({})", removed);
+    }
+}
@@ -0,0 +1,35 @@
+package jet.bpm.engine.event;
+
+import java.util.Map;
+
+/**
+ * Keeps messages, which arrived before the process instance started to wait
+ * for them. All calls for the same business key are made with the business
+ * key lock held.
+ * <p/>
+ * The engine reports a buffered message as delivered, so the buffer must be
+ * as durable as the event storage, otherwise a restart silently loses
+ * messages, which the callers consider delivered.
+ * @see jet.bpm.engine.storage.KeyValueMessageBuffer
+ */
+public interface MessageBuffer {
+
+    /**
+     * Buffers a message. The message must be stored when the method
+     * returns.
+     */
+    void add(String processBusinessKey, String eventName, Map<String, Object> variables);
+
+    /**
+     * Returns {@code true} if there are buffered messages for the
+     * process.
+     */
+    boolean hasMessages(String processBusinessKey);
+
+    /**
+     * Removes and returns the oldest non-expired message with the specified
+     * name.
+     * @return the message or {@code null}.
+     */
+    BufferedMessage poll(String processBusinessKey, String eventName);
+}
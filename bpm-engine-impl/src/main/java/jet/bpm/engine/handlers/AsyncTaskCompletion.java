@@ -0,0 +1,94 @@
+package jet.bpm.engine.handlers;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.Map;
+import java.util.UUID;
+import jet.bpm.engine.AbstractEngine;
+import jet.bpm.engine.api.AsyncCompletion;
+
+/**
+ * Completion of an asynchronous service task. If the task completes before
+ * the execution is suspended, the handler continues the execution
+ * immediately. Otherwise, the engine is asked to continue the suspended
+ * execution. Either way, the caller gets a future of the continuation.
+ */
+class AsyncTaskCompletion implements AsyncCompletion {
+
+    private final AbstractEngine engine;
+    private final String processBusinessKey;
+    private final SettableFuture<Void> immediate = SettableFuture.create();
+
+    private UUID eventId;
+    private boolean done;
+    private Map<String, Object> variables;
+    private Throwable error;
+
+    AsyncTaskCompletion(AbstractEngine engine, String processBusinessKey) {
+        this.engine = engine;
+        this.processBusinessKey = processBusinessKey;
+    }
+
+    @Override
+    public ListenableFuture<Void> complete(Map<String, Object> variables) {
+        return finish(variables, null);
+    }
+
+    @Override
+    public ListenableFuture<Void> fail(Throwable error) {
+        return finish(null, error != null ? error : new IllegalArgumentException("Error is required"));
+    }
+
+    /**
+     * Links the completion with the event of the suspended execution.
+     * @return {@code false} if the task is already completed.
+     */
+    synchronized boolean arm(UUID eventId) {
+        if (done) {
+            return false;
+        }
+        this.eventId = eventId;
+        return true;
+    }
+
+    synchronized Map<String, Object> getVariables() {
+        return variables;
+    }
+
+    synchronized Throwable getError() {
+        return error;
+    }
+
+    /**
+     * Reports the outcome of the immediate continuation.
+     * @param error the error of the continuation or {@code null}.
+     */
+    void continued(Throwable error) {
+        if (error != null) {
+            immediate.setException(error);
+        } else {
+            immediate.set(null);
+        }
+    }
+
+    private ListenableFuture<Void> finish(Map<String, Object> variables, Throwable error) {
+        UUID id;
+        synchronized (this) {
+            if (done) {
+                throw new IllegalStateException("The task is already completed");
+            }
+
+            done = true;
+            this.variables = variables;
+            this.error = error;
+            id = eventId;
+        }
+
+        if (id == null) {
+            // completed before the execution was suspended
+            return immediate;
+        }
+
+        return engine.continueAsyncTask(processBusinessKey, id, variables, error);
+    }
+}
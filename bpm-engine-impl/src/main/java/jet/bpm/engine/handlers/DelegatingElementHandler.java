@@ -6,7 +6,9 @@ import jet.bpm.engine.api.ExecutionException;
 import jet.bpm.engine.DefaultExecution;
 import jet.bpm.engine.ProcessDefinitionProvider;
 import jet.bpm.engine.AbstractEngine;
+import jet.bpm.engine.MultiInstanceHelper;
 import jet.bpm.engine.ProcessDefinitionUtils;
+import jet.bpm.engine.commands.LoopInstanceCommand;
 import jet.bpm.engine.commands.ProcessElementCommand;
 import jet.bpm.engine.model.AbstractElement;
 import jet.bpm.engine.model.CallActivity;
@@ -33,6 +35,7 @@ public class DelegatingElementHandler implements ElementHandler {
 
     private final AbstractEngine engine;
     private final Map<String, ElementHandler> delegates = new HashMap<>();
+    private final ElementHandler multiInstanceHandler;
 
     public DelegatingElementHandler(AbstractEngine engine) {
         this.engine = engine;
@@ -48,12 +51,22 @@ public class DelegatingElementHandler implements ElementHandler {
         register(ServiceTask.class, new ServiceTaskHandler(engine));
         register(StartEvent.class, new StartEventHandler(engine));
         register(SubProcess.class, new SubProcessElementHandler(engine));
+
+        multiInstanceHandler = new MultiInstanceHandler(engine);
     }
 
     private void register(Class<? extends AbstractElement> k, ElementHandler h) {
         delegates.put(k.getName(), h);
     }
 
+    /**
+     * Returns the handler of the element type.
+     * @return the handler or {@code null}.
+     */
+    public ElementHandler getHandler(Class<? extends AbstractElement> k) {
+        return delegates.get(k.getName());
+    }
+
     @Override
     public void handle(DefaultExecution s, ProcessElementCommand c) throws ExecutionException {
         ProcessDefinitionProvider provider = engine.getProcessDefinitionProvider();
@@ -64,6 +77,11 @@ public class DelegatingElementHandler implements ElementHandler {
         log.debug("handle ['{}', '{}'] -> got {} ('{}')", s.getId(), c.getProcessDefinitionId(), key, e.getId());
 
         ElementHandler h = delegates.get(key);
+        if (!(c instanceof LoopInstanceCommand) && MultiInstanceHelper.getLoopCharacteristics(e) != null) {
+            // instances of the loop are handled by the element's handler
+            h = multiInstanceHandler;
+        }
+
         if (h != null) {
             h.handle(s, c);
         } else {
@@ -21,7 +21,7 @@ public class EventBasedGatewayHandler extends AbstractElementHandler {
         // add to the stack process suspension command. It is expected that it
         // will be called when all outgoind sequence flows of this gateway
         // is done.
-        s.push(new ProcessEventMappingCommand());
+        s.push(ProcessEventMappingCommand.INSTANCE);
 
         UUID groupId = getEngine().getUuidGenerator().generate();
 
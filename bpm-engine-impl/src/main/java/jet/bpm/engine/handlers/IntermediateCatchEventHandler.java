@@ -5,6 +5,7 @@ import java.util.UUID;
 import jet.bpm.engine.AbstractEngine;
 import jet.bpm.engine.DefaultExecution;
 import jet.bpm.engine.EventMapHelper;
+import jet.bpm.engine.ExecutionContextHelper;
 import jet.bpm.engine.ProcessDefinitionUtils;
 import jet.bpm.engine.api.ExecutionContext;
 import jet.bpm.engine.api.ExecutionException;
@@ -12,6 +13,7 @@ import jet.bpm.engine.commands.PersistExecutionCommand;
 import jet.bpm.engine.commands.ProcessElementCommand;
 import jet.bpm.engine.commands.SuspendExecutionCommand;
 import jet.bpm.engine.el.ExpressionManager;
+import jet.bpm.engine.event.BufferedMessage;
 import jet.bpm.engine.event.Event;
 import jet.bpm.engine.model.IntermediateCatchEvent;
 import jet.bpm.engine.model.ProcessDefinition;
@@ -46,17 +48,25 @@ public class IntermediateCatchEventHandler extends AbstractElementHandler {
             SequenceFlow next = ProcessDefinitionUtils.findOutgoingFlow(pd, c.getElementId());
             
             EventMapHelper.put(s, e,
-                    new PersistExecutionCommand(),
+                    PersistExecutionCommand.INSTANCE,
                     new ProcessElementCommand(pd.getId(), next.getId(), c.getGroupId(), c.isExclusive()));
         } else {
             // standalone event
-            s.push(new SuspendExecutionCommand());
-            
             SequenceFlow next = ProcessDefinitionUtils.findOutgoingFlow(pd, c.getElementId());
+
+            BufferedMessage m = getEngine().pollBufferedMessage(s.getBusinessKey(), e.getName());
+            if (m != null) {
+                // the message is already here, no need to wait
+                ExecutionContextHelper.applyVariables(s.getContext(), m.getVariables());
+                s.push(new ProcessElementCommand(pd.getId(), next.getId(), c.getGroupId(), c.isExclusive()));
+                return;
+            }
+
+            s.push(SuspendExecutionCommand.INSTANCE);
             s.push(new ProcessElementCommand(pd.getId(), next.getId(), c.getGroupId(), c.isExclusive()));
         }
         
-        getEngine().getEventManager().add(e);
+        getEngine().addEvent(e);
     }
 
     private Event makeEvent(ProcessElementCommand c, DefaultExecution s) throws ExecutionException {
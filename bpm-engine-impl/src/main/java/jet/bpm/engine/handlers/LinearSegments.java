@@ -0,0 +1,244 @@
+package jet.bpm.engine.handlers;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import jet.bpm.engine.AbstractEngine;
+import jet.bpm.engine.DefaultExecution;
+import jet.bpm.engine.MultiInstanceHelper;
+import jet.bpm.engine.ProcessDefinitionUtils;
+import jet.bpm.engine.api.ExecutionException;
+import jet.bpm.engine.commands.ProcessElementCommand;
+import jet.bpm.engine.model.AbstractElement;
+import jet.bpm.engine.model.ProcessDefinition;
+import jet.bpm.engine.model.SequenceFlow;
+import jet.bpm.engine.model.ServiceTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Performs linear segments of processes in a single step. A segment is a
+ * chain of sequence flows and service tasks without gateways, events,
+ * boundary events or loops. Segments are computed once per process
+ * definition and element.
+ * <p/>
+ * Elements of a segment are performed one after another without pushing
+ * commands to the stack. Activations are reported in the same order as with
+ * the element-by-element execution. The segment stops early, if a task
+ * doesn't complete normally (e.g. asynchronous task, BPMN error).
+ * <p/>
+ * Segments are performed only if the engine uses the stock
+ * {@link DelegatingElementHandler} with the stock handlers of sequence flows
+ * and service tasks, otherwise custom handlers would be bypassed.
+ */
+public class LinearSegments {
+
+    private static final Logger log = LoggerFactory.getLogger(LinearSegments.class);
+
+    private static final int MAX_SEGMENT_LENGTH = 256;
+
+    private static final Segment NONE = new Segment(Collections.<AbstractElement>emptyList(), null, null);
+
+    private final AbstractEngine engine;
+    private final Cache<ProcessDefinition, ConcurrentMap<String, Segment>> segments = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    private volatile boolean enabled = true;
+
+    public LinearSegments(AbstractEngine engine) {
+        this.engine = engine;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Performs the segment, which starts with the element of the command.
+     * @param s current execution, the command must be on the top of its
+     * stack.
+     * @param c the command.
+     * @return {@code false} if the element doesn't start a segment and must
+     * be performed as usual.
+     * @throws ExecutionException
+     */
+    public boolean run(DefaultExecution s, ProcessElementCommand c) throws ExecutionException {
+        if (!enabled) {
+            return false;
+        }
+
+        ServiceTaskHandler serviceTaskHandler = getStockServiceTaskHandler();
+        if (serviceTaskHandler == null) {
+            return false;
+        }
+
+        String pdId = c.getProcessDefinitionId();
+        ProcessDefinition pd = engine.getProcessDefinitionProvider().getById(pdId);
+        Segment seg = getSegment(pd, c.getElementId());
+        if (seg == null) {
+            return false;
+        }
+
+        s.pop();
+
+        List<AbstractElement> elements = seg.elements;
+        for (int i = 0; i < elements.size(); i++) {
+            AbstractElement e = elements.get(i);
+
+            if (e instanceof SequenceFlow) {
+                SequenceFlowHandler.processListeners(engine, s.getContext(), (SequenceFlow) e);
+            } else {
+                ProcessElementCommand ec = i == 0 ? c : seg.command(i, c);
+                if (!serviceTaskHandler.perform(s, pd, ec, (ServiceTask) e)) {
+                    activate(s, pdId, e.getId());
+                    log.debug("run ['{}', '{}'] -> stopped at '{}'", s.getId(), c.getElementId(), e.getId());
+                    return true;
+                }
+            }
+
+            activate(s, pdId, e.getId());
+        }
+
+        s.push(seg.command(elements.size(), c));
+        return true;
+    }
+
+    /**
+     * Returns the engine's service task handler, if the engine uses the
+     * stock handlers for the elements of segments.
+     * @return the handler or {@code null}.
+     */
+    private ServiceTaskHandler getStockServiceTaskHandler() {
+        ElementHandler h = engine.getElementHandler();
+        if (h == null || h.getClass() != DelegatingElementHandler.class) {
+            return null;
+        }
+
+        DelegatingElementHandler d = (DelegatingElementHandler) h;
+        ElementHandler f = d.getHandler(SequenceFlow.class);
+        ElementHandler t = d.getHandler(ServiceTask.class);
+        if (f == null || f.getClass() != SequenceFlowHandler.class
+                || t == null || t.getClass() != ServiceTaskHandler.class) {
+            return null;
+        }
+
+        return (ServiceTaskHandler) t;
+    }
+
+    private void activate(DefaultExecution s, String processDefinitionId, String elementId) {
+        s.onActivation(s, processDefinitionId, elementId);
+        engine.fireOnElementActivation(s, processDefinitionId, elementId);
+    }
+
+    private Segment getSegment(ProcessDefinition pd, String elementId) throws ExecutionException {
+        ConcurrentMap<String, Segment> m = segments.getIfPresent(pd);
+        if (m == null) {
+            m = new ConcurrentHashMap<>();
+            ConcurrentMap<String, Segment> prev = segments.asMap().putIfAbsent(pd, m);
+            if (prev != null) {
+                m = prev;
+            }
+        }
+
+        Segment seg = m.get(elementId);
+        if (seg == null) {
+            seg = compute(pd, elementId);
+            m.putIfAbsent(elementId, seg);
+        }
+
+        return seg != NONE ? seg : null;
+    }
+
+    private static Segment compute(ProcessDefinition pd, String elementId) throws ExecutionException {
+        ProcessDefinition sub = ProcessDefinitionUtils.findElementProcess(pd, elementId);
+
+        List<AbstractElement> l = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+
+        String next = elementId;
+        while (l.size() < MAX_SEGMENT_LENGTH) {
+            AbstractElement e = sub.getChild(next);
+            if (e == null || !isLinear(pd, sub, e) || !seen.add(next)) {
+                break;
+            }
+
+            l.add(e);
+
+            if (e instanceof SequenceFlow) {
+                next = ((SequenceFlow) e).getTo();
+            } else {
+                next = ProcessDefinitionUtils.findOutgoingFlow(sub, e.getId()).getId();
+            }
+        }
+
+        if (l.size() < 2) {
+            return NONE;
+        }
+
+        log.debug("compute ['{}', '{}'] -> {} element(s), next '{}'", pd.getId(), elementId, l.size(), next);
+        return new Segment(l, next, pd.getId());
+    }
+
+    private static boolean isLinear(ProcessDefinition pd, ProcessDefinition sub, AbstractElement e) throws ExecutionException {
+        if (e instanceof SequenceFlow) {
+            return true;
+        }
+
+        if (e instanceof ServiceTask) {
+            return MultiInstanceHelper.getLoopCharacteristics(e) == null
+                    && ProcessDefinitionUtils.findOptionalBoundaryEvents(pd, e.getId()).isEmpty()
+                    && ProcessDefinitionUtils.findOptionalOutgoingFlows(sub, e.getId()).size() == 1;
+        }
+
+        return false;
+    }
+
+    private static final class Segment {
+
+        private final List<AbstractElement> elements;
+
+        /**
+         * Commands of the elements and of the next element after the
+         * segment. Commands are immutable and shared by executions, which
+         * don't use event groups.
+         */
+        private final ProcessElementCommand[] commands;
+
+        private Segment(List<AbstractElement> elements, String next, String processDefinitionId) {
+            this.elements = elements;
+            this.commands = new ProcessElementCommand[elements.size() + 1];
+
+            if (processDefinitionId == null) {
+                return;
+            }
+
+            for (int i = 0; i < elements.size(); i++) {
+                AbstractElement e = elements.get(i);
+                if (e instanceof ServiceTask) {
+                    commands[i] = new ProcessElementCommand(processDefinitionId, e.getId());
+                }
+            }
+            commands[elements.size()] = new ProcessElementCommand(processDefinitionId, next);
+        }
+
+        private ProcessElementCommand command(int i, ProcessElementCommand c) {
+            if (c.getGroupId() == null && !c.isExclusive()) {
+                return commands[i];
+            }
+
+            String id = i < elements.size() ? elements.get(i).getId() : commands[i].getElementId();
+            return new ProcessElementCommand(c.getProcessDefinitionId(), id, c.getGroupId(), c.isExclusive());
+        }
+    }
+}
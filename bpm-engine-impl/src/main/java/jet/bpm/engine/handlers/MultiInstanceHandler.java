@@ -0,0 +1,48 @@
+package jet.bpm.engine.handlers;
+
+import java.util.List;
+import jet.bpm.engine.AbstractEngine;
+import jet.bpm.engine.DefaultExecution;
+import jet.bpm.engine.FlowUtils;
+import jet.bpm.engine.MultiInstanceHelper;
+import jet.bpm.engine.ProcessDefinitionUtils;
+import jet.bpm.engine.api.ExecutionException;
+import jet.bpm.engine.commands.MultiInstanceCommand;
+import jet.bpm.engine.commands.ProcessElementCommand;
+import jet.bpm.engine.model.AbstractElement;
+import jet.bpm.engine.model.LoopCharacteristics;
+import jet.bpm.engine.model.ProcessDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Starts the loop of a multi-instance activity.
+ * @see MultiInstanceCommand
+ */
+public class MultiInstanceHandler extends AbstractElementHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(MultiInstanceHandler.class);
+
+    public MultiInstanceHandler(AbstractEngine engine) {
+        super(engine);
+    }
+
+    @Override
+    public void handle(DefaultExecution s, ProcessElementCommand c) throws ExecutionException {
+        s.pop();
+
+        ProcessDefinition pd = getProcessDefinition(c);
+        AbstractElement e = ProcessDefinitionUtils.findElement(pd, c.getElementId());
+        LoopCharacteristics l = MultiInstanceHelper.getLoopCharacteristics(e);
+
+        List<Object> items = MultiInstanceHelper.getItems(getEngine().getExpressionManager(), s.getContext(), e.getId(), l);
+        if (items.isEmpty()) {
+            log.debug("handle ['{}', '{}'] -> empty collection, skipping", s.getBusinessKey(), c.getElementId());
+            FlowUtils.followFlows(getEngine(), s, c);
+            return;
+        }
+
+        log.debug("handle ['{}', '{}'] -> starting {} instance(s)", s.getBusinessKey(), c.getElementId(), items.size());
+        s.push(new MultiInstanceCommand(c, l.getElementVariable(), items));
+    }
+}
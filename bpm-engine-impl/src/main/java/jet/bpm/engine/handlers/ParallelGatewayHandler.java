@@ -6,8 +6,10 @@ import java.util.UUID;
 import jet.bpm.engine.AbstractEngine;
 import jet.bpm.engine.DefaultExecution;
 import jet.bpm.engine.FlowUtils;
+import jet.bpm.engine.ParallelBranches;
 import jet.bpm.engine.ProcessDefinitionUtils;
 import jet.bpm.engine.api.ExecutionException;
+import jet.bpm.engine.commands.ForkBranchesCommand;
 import jet.bpm.engine.commands.ProcessElementCommand;
 import jet.bpm.engine.commands.ProcessEventMappingCommand;
 import jet.bpm.engine.model.ProcessDefinition;
@@ -49,11 +51,20 @@ public class ParallelGatewayHandler extends AbstractElementHandler {
             inactive.removeAll(filtered);
             processInactive(s, c, inactive);
 
-            s.push(new ProcessEventMappingCommand());
+            s.push(ProcessEventMappingCommand.INSTANCE);
 
             UUID groupId = getEngine().getUuidGenerator().generate();
 
-            FlowUtils.followFlows(s, c.getProcessDefinitionId(), c.getElementId(), groupId, false, filtered);
+            ParallelBranches pb = getEngine().getParallelBranches();
+            if (filtered.size() > 1 && pb.isEnabled()) {
+                List<String> ids = new ArrayList<>(filtered.size());
+                for (SequenceFlow f : filtered) {
+                    ids.add(f.getId());
+                }
+                s.push(new ForkBranchesCommand(c.getProcessDefinitionId(), c.getElementId(), groupId, ids));
+            } else {
+                FlowUtils.followFlows(s, c.getProcessDefinitionId(), c.getElementId(), groupId, false, filtered);
+            }
         } else {
             log.debug("handle ['{}', '{}'] -> keep joining on '{}' (activated: {}, total: {})", s.getId(), c.getProcessDefinitionId(), eId, activated, total);
         }
@@ -29,7 +29,7 @@ public class SequenceFlowHandler extends AbstractElementHandler {
         ProcessDefinition pd = getProcessDefinition(c);
 
         SequenceFlow flow = (SequenceFlow) ProcessDefinitionUtils.findElement(pd, c.getElementId());
-        processListeners(s.getContext(), flow);
+        processListeners(getEngine(), s.getContext(), flow);
 
         // add to the stack the element processing command. Preserve group ID
         // and exclusiveness flag
@@ -39,16 +39,17 @@ public class SequenceFlowHandler extends AbstractElementHandler {
     /**
      * Handle process flow listeners. Listener reference can be specified with
      * EL expression.
+     * @param engine the engine.
      * @param ctx current execution context.
      * @param f processing flow.
      * @throws ExecutionException
      */
-    private void processListeners(ExecutionContext ctx, SequenceFlow f) throws ExecutionException {
+    static void processListeners(AbstractEngine engine, ExecutionContext ctx, SequenceFlow f) throws ExecutionException {
         if (f.getListeners() == null) {
             return;
         }
 
-        ExpressionManager em = getEngine().getExpressionManager();
+        ExpressionManager em = engine.getExpressionManager();
         for (SequenceFlow.ExecutionListener l : f.getListeners()) {
             ExpressionType type = l.getType();
             String expr = l.getExpression();
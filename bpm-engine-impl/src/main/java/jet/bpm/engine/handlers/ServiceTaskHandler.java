@@ -1,17 +1,26 @@
 package jet.bpm.engine.handlers;
 
+import java.util.Date;
+import java.util.UUID;
 import javax.el.ELException;
+import jet.bpm.engine.api.AsyncJavaDelegate;
 import jet.bpm.engine.api.BpmnError;
 import jet.bpm.engine.api.ExecutionException;
 import jet.bpm.engine.BpmnErrorHelper;
 import jet.bpm.engine.DefaultExecution;
+import jet.bpm.engine.ExecutionContextHelper;
 import jet.bpm.engine.api.ExecutionContext;
 import jet.bpm.engine.AbstractEngine;
 import jet.bpm.engine.FlowUtils;
 import jet.bpm.engine.api.JavaDelegate;
+import jet.bpm.engine.MultiInstanceHelper;
+import jet.bpm.engine.ParallelBranches;
 import jet.bpm.engine.ProcessDefinitionUtils;
+import jet.bpm.engine.commands.CompleteServiceTaskCommand;
 import jet.bpm.engine.commands.ProcessElementCommand;
+import jet.bpm.engine.commands.SuspendExecutionCommand;
 import jet.bpm.engine.el.ExpressionManager;
+import jet.bpm.engine.event.Event;
 import jet.bpm.engine.task.ServiceTaskRegistry;
 import jet.bpm.engine.model.BoundaryEvent;
 import jet.bpm.engine.model.ProcessDefinition;
@@ -22,7 +31,8 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Service task handling. Supports task calling by delegate expression - EL
- * expression which evals into {@link JavaDelegate} instance.
+ * expression which evals into {@link JavaDelegate} or
+ * {@link AsyncJavaDelegate} instance.
  *
  * @see ServiceTaskRegistry
  */
@@ -30,6 +40,19 @@ public class ServiceTaskHandler extends AbstractElementHandler {
 
     private static final Logger log = LoggerFactory.getLogger(ServiceTaskHandler.class);
 
+    /**
+     * Prefix of names of events, which are used to wait for asynchronous
+     * tasks.
+     */
+    public static final String ASYNC_TASK_EVENT_PREFIX = "__async_task:";
+
+    /**
+     * Error reference of the BPMN error, which is raised when an
+     * asynchronous task isn't completed in time.
+     * @see AbstractEngine#setAsyncTaskTimeout(long, java.util.concurrent.TimeUnit)
+     */
+    public static final String ASYNC_TASK_TIMEOUT_ERROR = "asyncTaskTimeout";
+
     public ServiceTaskHandler(AbstractEngine engine) {
         super(engine);
     }
@@ -41,53 +64,145 @@ public class ServiceTaskHandler extends AbstractElementHandler {
         ProcessDefinition pd = getProcessDefinition(c);
         ServiceTask t = (ServiceTask) ProcessDefinitionUtils.findElement(pd, c.getElementId());
 
+        if (perform(s, pd, c, t)) {
+            FlowUtils.followFlows(getEngine(), s, c);
+        }
+    }
+
+    /**
+     * Performs the task. The command of the task must be already removed
+     * from the stack.
+     * @param s current execution.
+     * @param pd the process definition of the task.
+     * @param c the command of the task.
+     * @param t the task.
+     * @return {@code true} if the task is completed and the execution should
+     * follow its outgoing flows, {@code false} if the execution continues
+     * otherwise (asynchronous task, BPMN error).
+     * @throws ExecutionException
+     */
+    public boolean perform(DefaultExecution s, ProcessDefinition pd, ProcessElementCommand c, ServiceTask t) throws ExecutionException {
         ExpressionType type = t.getType();
         String expr = t.getExpression();
 
-        if (expr != null) {
-            ExpressionManager em = getEngine().getExpressionManager();
-            ExecutionContext ctx = s.getContext();
+        if (expr == null) {
+            log.debug("handle ['{}', '{}', '{}'] -> empty expression, noop", s.getBusinessKey(), c.getElementId(), expr);
+            return true;
+        }
 
-            try {
-                switch (type) {
-                    case SIMPLE: {
-                        // simple case: task execution its just an eval
-                        em.eval(ctx, expr, Object.class);
-                        break;
-                    }
-                    case DELEGATE: {
-                        // delegation: task execution its execution of delegate
-                        // reference
-                        JavaDelegate d = em.eval(ctx, expr, JavaDelegate.class);
-                        d.execute(ctx);
-                        break;
-                    }
-                    case NONE: {
-                        // NOOP
-                        break;
-                    }
-                    default: {
-                        throw new ExecutionException("Unsupported expression type '%s'", type);
+        ExpressionManager em = getEngine().getExpressionManager();
+        ExecutionContext ctx = s.getContext();
+
+        try {
+            switch (type) {
+                case SIMPLE: {
+                    // simple case: task execution its just an eval
+                    em.eval(ctx, expr, Object.class);
+                    break;
+                }
+                case DELEGATE: {
+                    // delegation: task execution its execution of delegate
+                    // reference
+                    Object d = em.eval(ctx, expr, Object.class);
+                    if (d instanceof AsyncJavaDelegate) {
+                        if (ParallelBranches.isBranchThread()) {
+                            // wait states are performed by the parent
+                            // execution
+                            ParallelBranches.deferToParent(s, c);
+                            return false;
+                        }
+                        executeAsync(s, c, (AsyncJavaDelegate) d);
+                        return false;
                     }
+                    ((JavaDelegate) d).execute(ctx);
+                    break;
+                }
+                case NONE: {
+                    // NOOP
+                    break;
                 }
-                FlowUtils.followFlows(getEngine(), s, c);
-            } catch (ELException e) {
-                Throwable cause = e.getCause();
-                if (cause instanceof BpmnError) {
-                    handleBpmError(s, pd, c, (BpmnError) cause);
-                } else {
-                    throw e;
+                default: {
+                    throw new ExecutionException("Unsupported expression type '%s'", type);
                 }
-            } catch (BpmnError e) {
-                handleBpmError(s, pd, c, e);
-            } catch (ExecutionException e) {
+            }
+            return true;
+        } catch (ELException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof BpmnError) {
+                handleBpmError(s, pd, c, (BpmnError) cause);
+                return false;
+            } else {
                 throw e;
-            } catch (Exception e) {
-                throw new ExecutionException("Unhandled execution exception: " + expr, e);
             }
-        } else {
-            log.debug("handle ['{}', '{}', '{}'] -> empty expression, noop", s.getBusinessKey(), c.getElementId(), expr);
+        } catch (BpmnError e) {
+            handleBpmError(s, pd, c, e);
+            return false;
+        } catch (ExecutionException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ExecutionException("Unhandled execution exception: " + expr, e);
+        }
+    }
+
+    /**
+     * Starts the asynchronous task. If the task isn't completed immediately,
+     * suspends the execution until the task is completed.
+     */
+    private void executeAsync(DefaultExecution s, ProcessElementCommand c, AsyncJavaDelegate d) throws Exception {
+        AbstractEngine engine = getEngine();
+
+        AsyncTaskCompletion completion = new AsyncTaskCompletion(engine, s.getBusinessKey());
+        d.execute(s.getContext(), completion);
+
+        UUID id = engine.getUuidGenerator().generate();
+        if (!completion.arm(id)) {
+            log.debug("executeAsync ['{}', '{}'] -> completed immediately", s.getBusinessKey(), c.getElementId());
+            try {
+                ExecutionContextHelper.applyVariables(s.getContext(), completion.getVariables());
+                complete(s, c, completion.getError());
+            } catch (ExecutionException | RuntimeException e) {
+                completion.continued(e);
+                throw e;
+            }
+            completion.continued(null);
+            return;
+        }
+
+        // the task will be completed by the completion, the engine waits
+        // for it as for an event
+        s.push(new CompleteServiceTaskCommand(c));
+        s.push(SuspendExecutionCommand.INSTANCE);
+
+        // the scheduler resumes the execution when the task times out
+        long timeout = engine.getAsyncTaskTimeout();
+        Date expiredAt = timeout >= 0 ? new Date(System.currentTimeMillis() + timeout) : null;
+
+        Event e = new Event(id, s.getId(), null, ASYNC_TASK_EVENT_PREFIX + c.getElementId(), s.getBusinessKey(), false, expiredAt);
+        engine.addEvent(e);
+
+        log.debug("executeAsync ['{}', '{}'] -> waiting for '{}'", s.getBusinessKey(), c.getElementId(), id);
+    }
+
+    /**
+     * Continues the flow after the task is completed.
+     * @param s current execution.
+     * @param c the command of the task.
+     * @param error the error of the task or {@code null}.
+     * @throws ExecutionException
+     */
+    public void complete(DefaultExecution s, ProcessElementCommand c, Throwable error) throws ExecutionException {
+        if (error == null) {
             FlowUtils.followFlows(getEngine(), s, c);
+            return;
+        }
+
+        ProcessDefinition pd = getProcessDefinition(c);
+        if (error instanceof BpmnError) {
+            handleBpmError(s, pd, c, (BpmnError) error);
+        } else if (error instanceof ExecutionException) {
+            throw (ExecutionException) error;
+        } else {
+            throw new ExecutionException("Unhandled execution exception in task '" + c.getElementId() + "'", error);
         }
     }
 
@@ -114,6 +229,8 @@ public class ServiceTaskHandler extends AbstractElementHandler {
             // task element had boundary error event - the execution will use
             // its flow
             log.debug("handleBpmError ['{}', '{}'] -> handle boundary error '{}'", bk, eid, errorRef);
+            // the boundary event interrupts the loop, if any
+            MultiInstanceHelper.interrupt(s, c.getProcessDefinitionId(), eid);
             // save errorRef for later
             s.getContext().setVariable(ExecutionContext.ERROR_CODE_KEY, errorRef);
             FlowUtils.followFlows(getEngine(), s, c, ev.getId());
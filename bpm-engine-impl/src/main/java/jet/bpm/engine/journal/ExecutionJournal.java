@@ -0,0 +1,133 @@
+package jet.bpm.engine.journal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import jet.bpm.engine.DefaultExecution;
+import jet.bpm.engine.ExecutionContextImpl;
+import jet.bpm.engine.api.ExecutionContext;
+import jet.bpm.engine.commands.ExecutionCommand;
+
+/**
+ * Records steps of an execution between two saves. Commands, activations and
+ * the suspension flag are recorded as they change. Variables and event
+ * subscriptions are collected once per save: only the final values of
+ * changed variables are recorded.
+ * <p/>
+ * Variable changes are tracked by {@link ExecutionContextImpl}. A variable
+ * with a mutable value (e.g. a list) counts as changed once it is read, as
+ * the value can be modified in place. Commands are serialized when the steps
+ * are written, so commands must not change after they are pushed: a command,
+ * which keeps state (e.g.
+ * {@link jet.bpm.engine.commands.MultiInstanceCommand}), is replaced with a
+ * copy instead.
+ */
+public final class ExecutionJournal {
+
+    private final long version;
+    private final List<ExecutionStep> steps = new ArrayList<>();
+    private boolean contextChanged;
+
+    private ExecutionJournal(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Starts recording of the execution's changes.
+     * @param e the execution.
+     * @param version the version of the stored state, which the changes are
+     * based on.
+     */
+    public static ExecutionJournal attach(DefaultExecution e, long version) {
+        for (ExecutionContext c = e.getContext(); c instanceof ExecutionContextImpl; c = ((ExecutionContextImpl) c).getParent()) {
+            ((ExecutionContextImpl) c).trackChanges();
+        }
+        e.getEventMap().takeModified();
+
+        ExecutionJournal j = new ExecutionJournal(version);
+        e.setJournal(j);
+        return j;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns <code>true</code> if the recorded steps can't be applied to
+     * the stored state on their own, e.g. when the execution switched to
+     * another context. Such changes must be stored as a snapshot.
+     */
+    public synchronized boolean isContextChanged() {
+        return contextChanged;
+    }
+
+    public synchronized void onPush(ExecutionCommand c) {
+        steps.add(new ExecutionSteps.Push(c));
+    }
+
+    public synchronized void onPop() {
+        steps.add(ExecutionSteps.Pop.INSTANCE);
+    }
+
+    public synchronized void onActivation(String processDefinitionId, String elementId, int count) {
+        steps.add(new ExecutionSteps.Activation(processDefinitionId, elementId, count));
+    }
+
+    public synchronized void onSuspended(boolean suspended) {
+        steps.add(new ExecutionSteps.Suspended(suspended));
+    }
+
+    public synchronized void onContext(ExecutionContext ctx) {
+        steps.add(new ExecutionSteps.Context(ctx));
+        contextChanged = true;
+    }
+
+    /**
+     * Collects changes of variables and event subscriptions and returns all
+     * steps recorded since the last call.
+     */
+    public synchronized List<ExecutionStep> drain(DefaultExecution e) {
+        int depth = 0;
+        for (ExecutionContext c = e.getContext(); c != null; depth++) {
+            if (!(c instanceof ExecutionContextImpl)) {
+                contextChanged = true;
+                break;
+            }
+
+            ExecutionContextImpl ci = (ExecutionContextImpl) c;
+            Set<String> names = ci.takeChanges();
+            if (names == null) {
+                // a context, which was created after the recording started
+                contextChanged = true;
+                break;
+            }
+
+            if (!names.isEmpty()) {
+                Map<String, Object> values = new HashMap<>();
+                Set<String> removed = new HashSet<>();
+                for (String n : names) {
+                    if (ci.hasLocalVariable(n)) {
+                        values.put(n, ci.getLocalVariable(n));
+                    } else {
+                        removed.add(n);
+                    }
+                }
+                steps.add(new ExecutionSteps.Variables(depth, values, removed));
+            }
+
+            c = ci.getParent();
+        }
+
+        if (e.getEventMap().takeModified()) {
+            steps.add(new ExecutionSteps.Events(e.getEventMap()));
+        }
+
+        List<ExecutionStep> result = new ArrayList<>(steps);
+        steps.clear();
+        return result;
+    }
+}
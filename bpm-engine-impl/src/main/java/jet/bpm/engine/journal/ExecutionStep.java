@@ -0,0 +1,16 @@
+package jet.bpm.engine.journal;
+
+import java.io.Serializable;
+import jet.bpm.engine.DefaultExecution;
+
+/**
+ * A change of an execution, recorded in its journal.
+ * @see ExecutionJournal
+ */
+public interface ExecutionStep extends Serializable {
+
+    /**
+     * Applies the change to the execution.
+     */
+    void apply(DefaultExecution execution);
+}
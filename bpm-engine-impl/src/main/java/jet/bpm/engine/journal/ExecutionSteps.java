@@ -0,0 +1,198 @@
+package jet.bpm.engine.journal;
+
+import java.util.Map;
+import java.util.Set;
+import jet.bpm.engine.DefaultExecution;
+import jet.bpm.engine.EventMap;
+import jet.bpm.engine.ExecutionContextImpl;
+import jet.bpm.engine.api.ExecutionContext;
+import jet.bpm.engine.commands.ExecutionCommand;
+
+/**
+ * Steps, which are recorded in execution journals.
+ */
+public final class ExecutionSteps {
+
+    public static final class Push implements ExecutionStep {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ExecutionCommand command;
+
+        public Push(ExecutionCommand command) {
+            this.command = command;
+        }
+
+        @Override
+        public void apply(DefaultExecution execution) {
+            execution.push(command);
+        }
+
+        @Override
+        public String toString() {
+            return "push " + command.getClass().getSimpleName();
+        }
+    }
+
+    public static final class Pop implements ExecutionStep {
+
+        private static final long serialVersionUID = 1L;
+
+        public static final Pop INSTANCE = new Pop();
+
+        private Pop() {
+        }
+
+        @Override
+        public void apply(DefaultExecution execution) {
+            execution.pop();
+        }
+
+        @Override
+        public String toString() {
+            return "pop";
+        }
+
+        private Object readResolve() {
+            return INSTANCE;
+        }
+    }
+
+    public static final class Activation implements ExecutionStep {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String processDefinitionId;
+        private final String elementId;
+        private final int count;
+
+        public Activation(String processDefinitionId, String elementId, int count) {
+            this.processDefinitionId = processDefinitionId;
+            this.elementId = elementId;
+            this.count = count;
+        }
+
+        @Override
+        public void apply(DefaultExecution execution) {
+            execution.inc(processDefinitionId, elementId, count);
+        }
+
+        @Override
+        public String toString() {
+            return "activation " + processDefinitionId + "/" + elementId + " +" + count;
+        }
+    }
+
+    public static final class Suspended implements ExecutionStep {
+
+        private static final long serialVersionUID = 1L;
+
+        private final boolean suspended;
+
+        public Suspended(boolean suspended) {
+            this.suspended = suspended;
+        }
+
+        @Override
+        public void apply(DefaultExecution execution) {
+            execution.setSuspended(suspended);
+        }
+
+        @Override
+        public String toString() {
+            return "suspended " + suspended;
+        }
+    }
+
+    public static final class Context implements ExecutionStep {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ExecutionContext context;
+
+        public Context(ExecutionContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public void apply(DefaultExecution execution) {
+            execution.setContext(context);
+        }
+
+        @Override
+        public String toString() {
+            return "context";
+        }
+    }
+
+    /**
+     * Variables, which were set or removed in a context of the execution.
+     */
+    public static final class Variables implements ExecutionStep {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int depth;
+        private final Map<String, Object> values;
+        private final Set<String> removed;
+
+        /**
+         * @param depth the position of the context in the chain of parent
+         * contexts, 0 is the current context of the execution.
+         * @param values the new values of variables.
+         * @param removed the names of removed variables.
+         */
+        public Variables(int depth, Map<String, Object> values, Set<String> removed) {
+            this.depth = depth;
+            this.values = values;
+            this.removed = removed;
+        }
+
+        @Override
+        public void apply(DefaultExecution execution) {
+            ExecutionContext ctx = execution.getContext();
+            for (int i = 0; i < depth; i++) {
+                ctx = ((ExecutionContextImpl) ctx).getParent();
+            }
+
+            ExecutionContextImpl c = (ExecutionContextImpl) ctx;
+            for (Map.Entry<String, Object> e : values.entrySet()) {
+                c.setVariable(e.getKey(), e.getValue());
+            }
+            for (String k : removed) {
+                if (c.hasLocalVariable(k)) {
+                    c.removeVariable(k);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "variables " + values.keySet() + (removed.isEmpty() ? "" : ", removed " + removed);
+        }
+    }
+
+    public static final class Events implements ExecutionStep {
+
+        private static final long serialVersionUID = 1L;
+
+        private final EventMap eventMap;
+
+        public Events(EventMap eventMap) {
+            this.eventMap = eventMap;
+        }
+
+        @Override
+        public void apply(DefaultExecution execution) {
+            execution.setEventMap(eventMap);
+        }
+
+        @Override
+        public String toString() {
+            return "events " + eventMap.getRecords().keySet();
+        }
+    }
+
+    private ExecutionSteps() {
+    }
+}
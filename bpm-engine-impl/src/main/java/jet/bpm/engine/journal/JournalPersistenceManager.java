@@ -0,0 +1,387 @@
+package jet.bpm.engine.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import jet.bpm.engine.DefaultExecution;
+import jet.bpm.engine.leveldb.Serializer;
+import jet.bpm.engine.persistence.BatchPersistenceManager;
+import jet.bpm.engine.persistence.Durability;
+import jet.bpm.engine.storage.KeyValueIterator;
+import jet.bpm.engine.storage.KeyValueStore;
+import jet.bpm.engine.storage.Keys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Event-sourced persistence manager. Instead of rewriting the whole
+ * execution on each save, only the steps recorded since the previous save
+ * (see {@link ExecutionJournal}) are appended to the execution's journal.
+ * A snapshot of the execution is written every N entries and when the
+ * execution switches to another context, e.g. enters a sub-process. On load,
+ * the execution is restored from the last snapshot and the following
+ * entries.
+ * <p/>
+ * Executions, which are saved without a journal of this manager (e.g. new
+ * executions), are written as snapshots.
+ * <p/>
+ * Journals are stored in a {@link KeyValueStore}: the head of an execution
+ * is stored under its ID, the entries are stored under the ID followed by
+ * the entry number.
+ */
+public class JournalPersistenceManager implements BatchPersistenceManager {
+
+    private static final Logger log = LoggerFactory.getLogger(JournalPersistenceManager.class);
+
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 100;
+
+    private static final byte SNAPSHOT = 1;
+    private static final byte STEPS = 2;
+
+    private static final int KEY_LENGTH = Keys.UUID_LENGTH + 8;
+
+    private final KeyValueStore store;
+    private final Serializer serializer;
+
+    private int snapshotInterval = DEFAULT_SNAPSHOT_INTERVAL;
+    private boolean retainHistory = false;
+    private volatile Durability defaultDurability = Durability.SYNC;
+
+    public JournalPersistenceManager(KeyValueStore store, Serializer serializer) {
+        this.store = store;
+        this.serializer = serializer;
+    }
+
+    /**
+     * Sets the number of journal entries between snapshots.
+     */
+    public void setSnapshotInterval(int snapshotInterval) {
+        if (snapshotInterval < 1) {
+            throw new IllegalArgumentException("Invalid snapshot interval: " + snapshotInterval);
+        }
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * If set, journal entries are kept after a snapshot, so the whole history
+     * of an execution can be replayed with {@link #getHistory(UUID)} and
+     * {@link #replay(UUID, int)}. Otherwise, older entries are deleted when a
+     * snapshot is written. Disabled by default.
+     */
+    public void setRetainHistory(boolean retainHistory) {
+        this.retainHistory = retainHistory;
+    }
+
+    /**
+     * Sets the durability of journal writes, {@link Durability#SYNC} by
+     * default.
+     */
+    public void setDefaultDurability(Durability defaultDurability) {
+        this.defaultDurability = defaultDurability;
+    }
+
+    public void init() {
+        store.init();
+    }
+
+    public void close() {
+        store.close();
+    }
+
+    @Override
+    public void save(DefaultExecution execution) {
+        write(Collections.singletonList(execution), Collections.<UUID>emptyList());
+    }
+
+    @Override
+    public DefaultExecution get(UUID id) {
+        Head h = readHead(id);
+        if (h == null) {
+            return null;
+        }
+
+        DefaultExecution e = load(id, h.snapshot, h.last, Integer.MAX_VALUE);
+        ExecutionJournal.attach(e, h.last);
+        return e;
+    }
+
+    @Override
+    public DefaultExecution remove(UUID id) {
+        Head h = readHead(id);
+        if (h == null) {
+            return null;
+        }
+
+        DefaultExecution e = load(id, h.snapshot, h.last, Integer.MAX_VALUE);
+
+        List<byte[]> deletes = new ArrayList<>();
+        delete(id, h, deletes);
+        store.write(Collections.<byte[], byte[]>emptyMap(), deletes, getDefaultDurability());
+
+        log.debug("remove ['{}'] -> done", id);
+        return e;
+    }
+
+    @Override
+    public void write(Collection<DefaultExecution> toSave, Collection<UUID> toRemove) {
+        Map<byte[], byte[]> puts = new IdentityHashMap<>();
+        List<byte[]> deletes = new ArrayList<>();
+
+        List<DefaultExecution> saved = new ArrayList<>(toSave.size());
+        List<Long> versions = new ArrayList<>(toSave.size());
+        for (DefaultExecution e : toSave) {
+            long v = prepare(e, puts, deletes);
+            if (v >= 0) {
+                saved.add(e);
+                versions.add(v);
+            }
+        }
+
+        for (UUID id : toRemove) {
+            Head h = readHead(id);
+            if (h != null) {
+                delete(id, h, deletes);
+            }
+        }
+
+        if (puts.isEmpty() && deletes.isEmpty()) {
+            return;
+        }
+
+        store.write(puts, deletes, getDefaultDurability());
+
+        for (int i = 0; i < saved.size(); i++) {
+            ExecutionJournal.attach(saved.get(i), versions.get(i));
+        }
+
+        log.debug("write -> done (saved: {}, removed: {}, entries: {})", toSave.size(), toRemove.size(), puts.size());
+    }
+
+    /**
+     * Returns the recorded steps of the execution. If the history is not
+     * retained, only the steps since the last snapshot are returned.
+     * @return the steps or <code>null</code> if the execution is not found.
+     */
+    public List<ExecutionStep> getHistory(UUID id) {
+        Head h = readHead(id);
+        if (h == null) {
+            return null;
+        }
+
+        List<ExecutionStep> result = new ArrayList<>();
+        try (KeyValueIterator it = store.iterator()) {
+            it.seek(key(id, h.first));
+            while (it.hasNext()) {
+                Map.Entry<byte[], byte[]> en = it.next();
+                if (!isEntry(en.getKey(), id) || seq(en.getKey()) > h.last) {
+                    break;
+                }
+
+                byte[] v = en.getValue();
+                if (v[0] == STEPS) {
+                    result.addAll(unmarshallSteps(v));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("call 'getHistory' error", e);
+        }
+        return result;
+    }
+
+    /**
+     * Restores the state of the execution after the specified number of
+     * steps of its history.
+     * @see #getHistory(UUID)
+     */
+    public DefaultExecution replay(UUID id, int steps) {
+        Head h = readHead(id);
+        if (h == null) {
+            return null;
+        }
+        return load(id, h.first, h.last, steps);
+    }
+
+    protected Durability getDefaultDurability() {
+        return defaultDurability;
+    }
+
+    /**
+     * Adds the journal entries of the execution to the write.
+     * @return the number of the last entry or -1 if nothing to write.
+     */
+    private long prepare(DefaultExecution e, Map<byte[], byte[]> puts, List<byte[]> deletes) {
+        UUID id = e.getId();
+        Head h = readHead(id);
+
+        ExecutionJournal j = e.getJournal();
+        boolean consistent = h != null && j != null && j.getVersion() == h.last;
+
+        List<ExecutionStep> steps = j != null ? j.drain(e) : Collections.<ExecutionStep>emptyList();
+        if (consistent && steps.isEmpty()) {
+            return -1;
+        }
+
+        // if the write fails, the next save writes a snapshot
+        e.setJournal(null);
+
+        boolean snapshot = !consistent || j.isContextChanged() || h.last - h.snapshot >= snapshotInterval;
+        if (!snapshot) {
+            long seq = h.last + 1;
+            puts.put(key(id, seq), marshall(STEPS, steps));
+            puts.put(Keys.marshall(id), new Head(h.first, h.snapshot, seq).toBytes());
+            return seq;
+        }
+
+        long seq = h != null ? h.last + 1 : 0;
+        if (consistent && retainHistory) {
+            // keep the steps, which led to the snapshot
+            puts.put(key(id, seq), marshall(STEPS, steps));
+            seq++;
+        }
+        puts.put(key(id, seq), marshall(SNAPSHOT, e));
+
+        long first = seq;
+        if (h != null) {
+            if (retainHistory) {
+                first = h.first;
+            } else {
+                for (long i = h.first; i <= h.last; i++) {
+                    deletes.add(key(id, i));
+                }
+            }
+        }
+
+        puts.put(Keys.marshall(id), new Head(first, seq, seq).toBytes());
+        return seq;
+    }
+
+    private void delete(UUID id, Head h, List<byte[]> deletes) {
+        deletes.add(Keys.marshall(id));
+        for (long i = h.first; i <= h.last; i++) {
+            deletes.add(key(id, i));
+        }
+    }
+
+    /**
+     * Restores the execution from the entries in the specified range. Each
+     * snapshot replaces the state restored so far.
+     * @param maxSteps the maximum number of steps to apply.
+     */
+    private DefaultExecution load(UUID id, long from, long to, int maxSteps) {
+        DefaultExecution e = null;
+        int applied = 0;
+
+        try (KeyValueIterator it = store.iterator()) {
+            it.seek(key(id, from));
+            while (it.hasNext()) {
+                Map.Entry<byte[], byte[]> en = it.next();
+                if (!isEntry(en.getKey(), id) || seq(en.getKey()) > to) {
+                    break;
+                }
+
+                byte[] v = en.getValue();
+                if (v[0] == SNAPSHOT) {
+                    e = (DefaultExecution) unmarshall(v);
+                    continue;
+                }
+
+                if (applied >= maxSteps) {
+                    break;
+                }
+
+                if (e == null) {
+                    throw new IllegalStateException("Journal of execution '" + id + "' doesn't start with a snapshot");
+                }
+
+                for (ExecutionStep s : unmarshallSteps(v)) {
+                    if (applied >= maxSteps) {
+                        break;
+                    }
+                    s.apply(e);
+                    applied++;
+                }
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("call 'load' error", ex);
+        }
+
+        if (e == null) {
+            throw new IllegalStateException("No snapshot of execution '" + id + "' found");
+        }
+        return e;
+    }
+
+    private Head readHead(UUID id) {
+        byte[] b = store.get(Keys.marshall(id));
+        if (b == null) {
+            return null;
+        }
+        return Head.fromBytes(b);
+    }
+
+    private byte[] marshall(byte type, Object value) {
+        byte[] b = serializer.toBytes(value);
+        byte[] result = new byte[b.length + 1];
+        result[0] = type;
+        System.arraycopy(b, 0, result, 1, b.length);
+        return result;
+    }
+
+    private Object unmarshall(byte[] value) {
+        return serializer.fromBytes(Arrays.copyOfRange(value, 1, value.length));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<ExecutionStep> unmarshallSteps(byte[] value) {
+        return (List<ExecutionStep>) unmarshall(value);
+    }
+
+    private static byte[] key(UUID id, long seq) {
+        return ByteBuffer.allocate(KEY_LENGTH)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .putLong(seq)
+                .array();
+    }
+
+    private static boolean isEntry(byte[] key, UUID id) {
+        return key.length == KEY_LENGTH && id.equals(Keys.unmarshall(key));
+    }
+
+    private static long seq(byte[] key) {
+        return ByteBuffer.wrap(key, Keys.UUID_LENGTH, 8).getLong();
+    }
+
+    private static final class Head {
+
+        private final long first;
+        private final long snapshot;
+        private final long last;
+
+        private Head(long first, long snapshot, long last) {
+            this.first = first;
+            this.snapshot = snapshot;
+            this.last = last;
+        }
+
+        private byte[] toBytes() {
+            return ByteBuffer.allocate(8 * 3)
+                    .putLong(first)
+                    .putLong(snapshot)
+                    .putLong(last)
+                    .array();
+        }
+
+        private static Head fromBytes(byte[] b) {
+            ByteBuffer buffer = ByteBuffer.wrap(b);
+            return new Head(buffer.getLong(), buffer.getLong(), buffer.getLong());
+        }
+    }
+}
@@ -1,14 +1,28 @@
 package jet.bpm.engine.leveldb;
 
+import java.util.HashMap;
+import java.util.Map;
+import jet.bpm.engine.persistence.Durability;
+
 public class Configuration {
 
     private String eventPath;
     private String expiredEventIndexPath;
     private String businessKeyEventIndexPath;
+    private String eventNameIndexPath;
     private String executionPath;
 
     private boolean syncWrite = true;
 
+    private Durability defaultDurability;
+    private final Map<String, Durability> durabilities = new HashMap<>();
+    private long asyncFlushInterval = 1000;
+
+    private StoreOptions executionOptions = new StoreOptions();
+    private StoreOptions eventOptions = new StoreOptions();
+    private StoreOptions indexOptions = new StoreOptions();
+    private boolean nativeFactory;
+
     public String getEventPath() {
         return eventPath;
     }
@@ -33,6 +47,18 @@ public class Configuration {
         this.businessKeyEventIndexPath = businessKeyEventIndexPath;
     }
 
+    public String getEventNameIndexPath() {
+        return eventNameIndexPath;
+    }
+
+    /**
+     * Sets the path of the event name index. If not set, searching events by
+     * name requires a full scan of events.
+     */
+    public void setEventNameIndexPath(String eventNameIndexPath) {
+        this.eventNameIndexPath = eventNameIndexPath;
+    }
+
     public String getExecutionPath() {
         return executionPath;
     }
@@ -48,4 +74,111 @@ public class Configuration {
     public boolean isSyncWrite() {
         return syncWrite;
     }
+
+    /**
+     * Sets the durability of execution writes for all process definitions
+     * without an explicit durability. If not set, it depends on
+     * {@link #isSyncWrite()}.
+     */
+    public void setDefaultDurability(Durability defaultDurability) {
+        this.defaultDurability = defaultDurability;
+    }
+
+    public Durability getDefaultDurability() {
+        if (defaultDurability != null) {
+            return defaultDurability;
+        }
+        return syncWrite ? Durability.SYNC : Durability.NONE;
+    }
+
+    /**
+     * Sets the durability of execution writes for the specified process
+     * definition.
+     * @param processDefinitionId the ID of process definition.
+     * @param durability durability of writes, <code>null</code> to use the
+     * default durability.
+     */
+    public void setDurability(String processDefinitionId, Durability durability) {
+        synchronized (durabilities) {
+            if (durability == null) {
+                durabilities.remove(processDefinitionId);
+            } else {
+                durabilities.put(processDefinitionId, durability);
+            }
+        }
+    }
+
+    public Durability getDurability(String processDefinitionId) {
+        if (processDefinitionId != null) {
+            synchronized (durabilities) {
+                Durability d = durabilities.get(processDefinitionId);
+                if (d != null) {
+                    return d;
+                }
+            }
+        }
+        return getDefaultDurability();
+    }
+
+    /**
+     * Sets the interval of background flushes for
+     * {@link Durability#ASYNC_FLUSH} writes, in milliseconds.
+     */
+    public void setAsyncFlushInterval(long asyncFlushInterval) {
+        this.asyncFlushInterval = asyncFlushInterval;
+    }
+
+    public long getAsyncFlushInterval() {
+        return asyncFlushInterval;
+    }
+
+    /**
+     * Returns the options of the execution store. Executions are read and
+     * rewritten on each resume, a larger cache and write buffer usually pay
+     * off.
+     */
+    public StoreOptions getExecutionOptions() {
+        return executionOptions;
+    }
+
+    public void setExecutionOptions(StoreOptions executionOptions) {
+        this.executionOptions = executionOptions;
+    }
+
+    /**
+     * Returns the options of the event store. Events are mostly written once
+     * and read once.
+     */
+    public StoreOptions getEventOptions() {
+        return eventOptions;
+    }
+
+    public void setEventOptions(StoreOptions eventOptions) {
+        this.eventOptions = eventOptions;
+    }
+
+    /**
+     * Returns the options of the event indexes (expired events, business
+     * keys, event names).
+     */
+    public StoreOptions getIndexOptions() {
+        return indexOptions;
+    }
+
+    public void setIndexOptions(StoreOptions indexOptions) {
+        this.indexOptions = indexOptions;
+    }
+
+    /**
+     * Enables the native LevelDB (leveldbjni), if it is available. Used by
+     * the constructors of the stores without an explicit factory.
+     * @see DbFactories#get(boolean)
+     */
+    public void setNativeFactory(boolean nativeFactory) {
+        this.nativeFactory = nativeFactory;
+    }
+
+    public boolean isNativeFactory() {
+        return nativeFactory;
+    }
 }
@@ -0,0 +1,42 @@
+package jet.bpm.engine.leveldb;
+
+import org.iq80.leveldb.DBFactory;
+import org.iq80.leveldb.impl.Iq80DBFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Selects the LevelDB implementation.
+ */
+public final class DbFactories {
+
+    private static final Logger log = LoggerFactory.getLogger(DbFactories.class);
+
+    private static final String JNI_FACTORY_CLASS = "org.fusesource.leveldbjni.JniDBFactory";
+
+    /**
+     * Returns the factory of the native LevelDB (leveldbjni), if it is
+     * available in the classpath and loads on this platform, or the pure
+     * Java factory otherwise.
+     * @param preferNative if {@code false}, the pure Java factory is
+     * returned.
+     */
+    public static DBFactory get(boolean preferNative) {
+        if (preferNative) {
+            try {
+                Class<?> k = Class.forName(JNI_FACTORY_CLASS);
+                DBFactory f = (DBFactory) k.getField("factory").get(null);
+                log.info("get -> using the native LevelDB: {}", f);
+                return f;
+            } catch (ClassNotFoundException e) {
+                log.info("get -> native LevelDB is not available, using the Java implementation");
+            } catch (ReflectiveOperationException | LinkageError e) {
+                log.warn("get -> unable to load native LevelDB, using the Java implementation", e);
+            }
+        }
+        return Iq80DBFactory.factory;
+    }
+
+    private DbFactories() {
+    }
+}
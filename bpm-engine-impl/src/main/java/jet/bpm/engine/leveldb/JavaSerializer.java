@@ -0,0 +1,55 @@
+package jet.bpm.engine.leveldb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serializer, which uses the standard Java serialization.
+ */
+public class JavaSerializer implements Serializer {
+
+    private static final Logger log = LoggerFactory.getLogger(JavaSerializer.class);
+
+    @Override
+    public byte[] toBytes(Object value) {
+        try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                ObjectOutput out = new ObjectOutputStream(bos)) {
+            out.writeObject(value);
+            return bos.toByteArray();
+        } catch (IOException e) {
+            log.error("toBytes -> error", e);
+            return null;
+        }
+    }
+
+    @Override
+    public Object fromBytes(byte[] bytes) {
+        try (ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
+                ObjectInput in = new ObjectInputStream(bis) {
+
+                    @Override
+                    protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                        final String name = desc.getName();
+                        try {
+                            return Class.forName(name);
+                        } catch (final ClassNotFoundException ex) {
+                            return Class.forName(name, false, Thread.currentThread().getContextClassLoader());
+                        }
+                    }
+
+                }) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            log.error("fromBytes -> error", e);
+            return null;
+        }
+    }
+}
@@ -4,12 +4,17 @@ import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.pool.*;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import jet.bpm.engine.DefaultExecution;
-import jet.bpm.engine.EventMapHelper.EventRecord;
+import jet.bpm.engine.EventMap;
 import jet.bpm.engine.ExecutionContextImpl;
 import jet.bpm.engine.commands.ExecutionCommand;
 import jet.bpm.engine.commands.HandleRaisedErrorCommand;
@@ -29,6 +34,7 @@ public class KryoSerializer implements Serializer {
 
         KryoFactory factory = new KryoFactory() {
             @Override
+            @SuppressWarnings("deprecation")
             public Kryo create() {
                 Kryo kryo = new Kryo();
                 kryo.setReferences(true);
@@ -38,15 +44,18 @@ public class KryoSerializer implements Serializer {
                 kryo.register(HashSet.class);
                 kryo.register(DefaultExecution.class);
                 kryo.register(ExecutionContextImpl.class);
-                kryo.register(EventRecord.class);
+                // still registered, so executions written by previous
+                // versions with the legacy event map variable can be read
+                kryo.register(jet.bpm.engine.EventMapHelper.EventRecord.class);
 
-                kryo.register(ProcessElementCommand.class);
+                kryo.register(ProcessElementCommand.class, new ProcessElementCommandSerializer());
                 kryo.register(ExecutionCommand.class);
                 kryo.register(HandleRaisedErrorCommand.class);
                 kryo.register(MergeExecutionContextCommand.class);
-                kryo.register(SuspendExecutionCommand.class);
-                kryo.register(ProcessEventMappingCommand.class);
-                kryo.register(PersistExecutionCommand.class);
+                kryo.register(SuspendExecutionCommand.class, new SingletonSerializer<>(SuspendExecutionCommand.INSTANCE));
+                kryo.register(ProcessEventMappingCommand.class, new SingletonSerializer<>(ProcessEventMappingCommand.INSTANCE));
+                kryo.register(PersistExecutionCommand.class, new SingletonSerializer<>(PersistExecutionCommand.INSTANCE));
+                kryo.register(EventMap.class, new EventMapSerializer());
 
                 kryo.setClassLoader(Thread.currentThread().getContextClassLoader());
 
@@ -80,4 +89,140 @@ public class KryoSerializer implements Serializer {
             kryoPool.release(kryo);
         }
     }
+
+    /**
+     * Stateless commands are written as their registered class IDs only and
+     * are read as the shared instances.
+     */
+    private static final class SingletonSerializer<T> extends com.esotericsoftware.kryo.Serializer<T> {
+
+        private final T instance;
+
+        private SingletonSerializer(T instance) {
+            this.instance = instance;
+            setImmutable(true);
+        }
+
+        @Override
+        public void write(Kryo kryo, Output output, T object) {
+        }
+
+        @Override
+        public T read(Kryo kryo, Input input, Class<T> type) {
+            return instance;
+        }
+    }
+
+    /**
+     * Compact form of {@link ProcessElementCommand}: IDs of the definition and
+     * the element, a byte of flags and, if present, the group ID as a pair of
+     * longs. IDs are interned on reading, so commands of deserialized
+     * executions share the strings.
+     */
+    private static final class ProcessElementCommandSerializer extends com.esotericsoftware.kryo.Serializer<ProcessElementCommand> {
+
+        private static final int HAS_GROUP = 1;
+        private static final int EXCLUSIVE = 2;
+
+        private static final Interner<String> ids = Interners.newWeakInterner();
+
+        private ProcessElementCommandSerializer() {
+            setImmutable(true);
+        }
+
+        @Override
+        public void write(Kryo kryo, Output output, ProcessElementCommand c) {
+            output.writeString(c.getProcessDefinitionId());
+            output.writeString(c.getElementId());
+
+            UUID groupId = c.getGroupId();
+            int flags = (groupId != null ? HAS_GROUP : 0) | (c.isExclusive() ? EXCLUSIVE : 0);
+            output.writeByte(flags);
+
+            if (groupId != null) {
+                output.writeLong(groupId.getMostSignificantBits());
+                output.writeLong(groupId.getLeastSignificantBits());
+            }
+        }
+
+        @Override
+        public ProcessElementCommand read(Kryo kryo, Input input, Class<ProcessElementCommand> type) {
+            String processDefinitionId = intern(input.readString());
+            String elementId = intern(input.readString());
+
+            int flags = input.readByte();
+
+            UUID groupId = null;
+            if ((flags & HAS_GROUP) != 0) {
+                groupId = new UUID(input.readLong(), input.readLong());
+            }
+
+            return new ProcessElementCommand(processDefinitionId, elementId, groupId, (flags & EXCLUSIVE) != 0);
+        }
+
+        private static String intern(String s) {
+            return s != null ? ids.intern(s) : null;
+        }
+    }
+
+    /**
+     * Compact form of {@link EventMap}: IDs are written as pairs of longs,
+     * commands are written with their registered class IDs.
+     */
+    private static final class EventMapSerializer extends com.esotericsoftware.kryo.Serializer<EventMap> {
+
+        @Override
+        public void write(Kryo kryo, Output output, EventMap m) {
+            Map<UUID, EventMap.Record> records = m.getRecords();
+            output.writeInt(records.size(), true);
+            for (Map.Entry<UUID, EventMap.Record> e : records.entrySet()) {
+                writeUuid(output, e.getKey());
+
+                EventMap.Record r = e.getValue();
+                writeUuid(output, r.getGroupId());
+
+                List<ExecutionCommand> l = r.getCommands();
+                output.writeInt(l.size(), true);
+                for (ExecutionCommand c : l) {
+                    kryo.writeClassAndObject(output, c);
+                }
+            }
+        }
+
+        @Override
+        public EventMap read(Kryo kryo, Input input, Class<EventMap> type) {
+            EventMap m = new EventMap();
+
+            int size = input.readInt(true);
+            for (int i = 0; i < size; i++) {
+                UUID id = readUuid(input);
+                UUID groupId = readUuid(input);
+
+                int cnt = input.readInt(true);
+                List<ExecutionCommand> l = new ArrayList<>(cnt);
+                for (int j = 0; j < cnt; j++) {
+                    l.add((ExecutionCommand) kryo.readClassAndObject(input));
+                }
+
+                m.put(id, new EventMap.Record(groupId, l));
+            }
+
+            return m;
+        }
+
+        private static void writeUuid(Output output, UUID id) {
+            output.writeBoolean(id != null);
+            if (id != null) {
+                output.writeLong(id.getMostSignificantBits());
+                output.writeLong(id.getLeastSignificantBits());
+            }
+        }
+
+        private static UUID readUuid(Input input) {
+            if (!input.readBoolean()) {
+                return null;
+            }
+            return new UUID(input.readLong(), input.readLong());
+        }
+    }
 }
@@ -3,6 +3,10 @@ package jet.bpm.engine.leveldb;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Map;
+import jet.bpm.engine.persistence.Durability;
+import jet.bpm.engine.storage.KeyValueIterator;
+import jet.bpm.engine.storage.KeyValueStore;
 import org.iq80.leveldb.DB;
 import org.iq80.leveldb.DBException;
 import org.iq80.leveldb.DBFactory;
@@ -15,7 +19,7 @@ import org.iq80.leveldb.impl.WriteBatchImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class LevelDb {
+public class LevelDb implements KeyValueStore {
 
     private static final Logger log = LoggerFactory.getLogger(LevelDb.class);
 
@@ -27,14 +31,44 @@ public class LevelDb {
 
     private final ReadOptions readOptions;
     private final WriteOptions writeOptions;
+    private final WriteOptions syncWriteOptions;
+    private final WriteOptions asyncWriteOptions;
+    private final long flushInterval;
+    private final StoreOptions options;
+
+    private LevelDbSync sync;
 
     public LevelDb(DBFactory dbFactory, String path, boolean syncWrite) {
+        this(dbFactory, path, syncWrite, 0);
+    }
+
+    /**
+     * @param flushInterval interval of background flushes for
+     * {@link Durability#ASYNC_FLUSH} writes, in milliseconds. If zero, such
+     * writes are never flushed explicitly.
+     */
+    public LevelDb(DBFactory dbFactory, String path, boolean syncWrite, long flushInterval) {
+        this(dbFactory, path, syncWrite, flushInterval, null);
+    }
+
+    /**
+     * @param flushInterval interval of background flushes for
+     * {@link Durability#ASYNC_FLUSH} writes, in milliseconds. If zero, such
+     * writes are never flushed explicitly.
+     * @param options tuning options of the database, can be null.
+     */
+    public LevelDb(DBFactory dbFactory, String path, boolean syncWrite, long flushInterval, StoreOptions options) {
         this.dbFactory = dbFactory;
         this.path = path;
         this.readOptions = new ReadOptions();
         this.writeOptions = new WriteOptions().sync(syncWrite);
+        this.syncWriteOptions = new WriteOptions().sync(true);
+        this.asyncWriteOptions = new WriteOptions().sync(false);
+        this.flushInterval = flushInterval;
+        this.options = options;
     }
 
+    @Override
     public void init() {
         try {
             db = openDatabase(dbFactory, path, dbOptions());
@@ -42,9 +76,17 @@ public class LevelDb {
             log.error("init ['{}'] -> error", path, e);
             throw new RuntimeException("Unable to start database: '" + path + "'");
         }
+
+        sync = new LevelDbSync(db, path);
+        sync.startFlusher(flushInterval);
     }
 
+    @Override
     public void close() {
+        if (sync != null) {
+            sync.stop();
+        }
+
         try {
             db.close();
         } catch (IOException e) {
@@ -52,18 +94,28 @@ public class LevelDb {
         }
     }
 
+    @Override
     public byte[] get(byte[] key) throws DBException {
         return db.get(key, getReadOptions());
     }
 
-    public DBIterator iterator() {
-        return db.iterator(getReadOptions());
+    @Override
+    public KeyValueIterator iterator() {
+        return new LevelDbIterator(db.iterator(getReadOptions()));
     }
 
+    @Override
     public void put(byte[] key, byte[] value) throws DBException {
         db.put(key, value, getWriteOptions());
     }
 
+    @Override
+    public void put(byte[] key, byte[] value, Durability durability) throws DBException {
+        db.put(key, value, getWriteOptions(durability));
+        afterWrite(durability);
+    }
+
+    @Override
     public void delete(byte[] key) throws DBException {
         db.delete(key);
     }
@@ -76,6 +128,44 @@ public class LevelDb {
         db.write(b);
     }
 
+    /**
+     * Applies puts and deletes in a single write batch.
+     * @param puts key-value pairs to put.
+     * @param deletes keys to delete.
+     */
+    public void write(Map<byte[], byte[]> puts, Collection<byte[]> deletes) throws DBException {
+        write(puts, deletes, null);
+    }
+
+    /**
+     * Applies puts and deletes in a single write batch.
+     * @param puts key-value pairs to put.
+     * @param deletes keys to delete.
+     * @param durability durability of the write or <code>null</code> to use
+     * the database's default write options.
+     */
+    @Override
+    public void write(Map<byte[], byte[]> puts, Collection<byte[]> deletes, Durability durability) throws DBException {
+        WriteBatch b = db.createWriteBatch();
+        try {
+            for (Map.Entry<byte[], byte[]> e : puts.entrySet()) {
+                b.put(e.getKey(), e.getValue());
+            }
+            for (byte[] k : deletes) {
+                b.delete(k);
+            }
+            db.write(b, getWriteOptions(durability));
+        } finally {
+            try {
+                b.close();
+            } catch (IOException e) {
+                log.warn("write ['{}'] -> error while closing the batch", path, e);
+            }
+        }
+
+        afterWrite(durability);
+    }
+
     private DB openDatabase(DBFactory dbFactory, String location, Options options) throws IOException {
         File dir = new File(location);
         if (!dir.exists()) {
@@ -92,7 +182,71 @@ public class LevelDb {
         return writeOptions;
     }
 
+    private WriteOptions getWriteOptions(Durability durability) {
+        if (durability == null) {
+            return writeOptions;
+        }
+        return durability == Durability.SYNC ? syncWriteOptions : asyncWriteOptions;
+    }
+
+    private void afterWrite(Durability durability) {
+        if (durability == Durability.ASYNC_FLUSH) {
+            sync.markDirty();
+        } else if (durability == Durability.GROUP_COMMIT) {
+            sync.awaitSync();
+        }
+    }
+
     private Options dbOptions() {
-        return new Options().createIfMissing(true);
+        if (options == null) {
+            return new Options().createIfMissing(true);
+        }
+
+        log.info("dbOptions ['{}'] -> {}", path, options);
+        return options.toOptions();
+    }
+
+    private static final class LevelDbIterator implements KeyValueIterator {
+
+        private final DBIterator delegate;
+
+        private LevelDbIterator(DBIterator delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void seek(byte[] key) {
+            delegate.seek(key);
+        }
+
+        @Override
+        public void seekToFirst() {
+            delegate.seekToFirst();
+        }
+
+        @Override
+        public Map.Entry<byte[], byte[]> peekNext() {
+            return delegate.peekNext();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return delegate.hasNext();
+        }
+
+        @Override
+        public Map.Entry<byte[], byte[]> next() {
+            return delegate.next();
+        }
+
+        @Override
+        public void remove() {
+            delegate.remove();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
     }
 }
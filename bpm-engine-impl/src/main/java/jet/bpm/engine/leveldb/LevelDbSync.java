@@ -0,0 +1,149 @@
+package jet.bpm.engine.leveldb;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.WriteOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Syncs non-synchronous writes of a database: either in the background (see
+ * {@link jet.bpm.engine.persistence.Durability#ASYNC_FLUSH}) or on demand,
+ * sharing one sync between all concurrent writers (see
+ * {@link jet.bpm.engine.persistence.Durability#GROUP_COMMIT}).
+ */
+final class LevelDbSync {
+
+    private static final Logger log = LoggerFactory.getLogger(LevelDbSync.class);
+
+    /**
+     * Key of the marker record. Execution and event keys are never empty.
+     */
+    private static final byte[] SYNC_KEY = new byte[0];
+    private static final WriteOptions SYNC_OPTIONS = new WriteOptions().sync(true);
+
+    private final DB db;
+    private final String path;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition syncDone = lock.newCondition();
+    private long synced = 0;
+    private boolean syncing = false;
+
+    private ScheduledExecutorService flusher;
+
+    public LevelDbSync(DB db, String path) {
+        this.db = db;
+        this.path = path;
+    }
+
+    public synchronized void startFlusher(long interval) {
+        if (flusher != null || interval <= 0) {
+            return;
+        }
+
+        flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "leveldbFlushThread");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        flusher.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (Exception e) {
+                    log.error("flush ['{}'] -> error", path, e);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (flusher != null) {
+            flusher.shutdown();
+            flusher = null;
+        }
+        flush();
+    }
+
+    /**
+     * Marks the database as having unsynced writes, which will be synced by
+     * the background flusher.
+     */
+    public void markDirty() {
+        dirty.set(true);
+    }
+
+    /**
+     * Syncs the database, if it has unsynced writes.
+     */
+    public void flush() {
+        if (dirty.getAndSet(false)) {
+            sync();
+        }
+    }
+
+    /**
+     * Blocks until a just completed non-synchronous write is synced to disk.
+     * If no sync is in progress, performs it in the calling thread. Otherwise,
+     * waits for the current one and, if it started before the write, for the
+     * next one.
+     */
+    public void awaitSync() {
+        long seq = written.incrementAndGet();
+
+        lock.lock();
+        try {
+            while (synced < seq) {
+                if (syncing) {
+                    syncDone.awaitUninterruptibly();
+                    continue;
+                }
+
+                syncing = true;
+                long target = written.get();
+                boolean success = false;
+
+                lock.unlock();
+                try {
+                    sync();
+                    success = true;
+                } finally {
+                    lock.lock();
+                    syncing = false;
+                    if (success && target > synced) {
+                        synced = target;
+                    }
+                    syncDone.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void sync() {
+        // the sync flag forces the write-ahead log to disk, including all
+        // previous non-synchronous writes
+        db.delete(SYNC_KEY, SYNC_OPTIONS);
+        log.debug("sync ['{}'] -> done", path);
+    }
+}
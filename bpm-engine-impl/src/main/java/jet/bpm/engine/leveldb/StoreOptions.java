@@ -0,0 +1,119 @@
+package jet.bpm.engine.leveldb;
+
+import org.iq80.leveldb.CompressionType;
+import org.iq80.leveldb.Options;
+
+/**
+ * Tuning options of a LevelDB store. Options, which are not set, keep the
+ * defaults of the LevelDB implementation.
+ * @see Configuration#getExecutionOptions()
+ * @see Configuration#getEventOptions()
+ * @see Configuration#getIndexOptions()
+ */
+public class StoreOptions {
+
+    private Long cacheSize;
+    private Integer writeBufferSize;
+    private Integer blockSize;
+    private Integer maxOpenFiles;
+    private Boolean compression;
+    private Boolean verifyChecksums;
+
+    public Long getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Sets the size of the block cache in bytes. Larger caches help stores
+     * with many repeated reads (e.g. executions of long-running processes).
+     */
+    public StoreOptions setCacheSize(long cacheSize) {
+        this.cacheSize = cacheSize;
+        return this;
+    }
+
+    public Integer getWriteBufferSize() {
+        return writeBufferSize;
+    }
+
+    /**
+     * Sets the size of the in-memory write buffer in bytes. Larger buffers
+     * reduce the number of compactions for write-heavy stores.
+     */
+    public StoreOptions setWriteBufferSize(int writeBufferSize) {
+        this.writeBufferSize = writeBufferSize;
+        return this;
+    }
+
+    public Integer getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Sets the size of data blocks in bytes. Smaller blocks are better for
+     * point lookups, larger blocks for scans.
+     */
+    public StoreOptions setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+        return this;
+    }
+
+    public Integer getMaxOpenFiles() {
+        return maxOpenFiles;
+    }
+
+    public StoreOptions setMaxOpenFiles(int maxOpenFiles) {
+        this.maxOpenFiles = maxOpenFiles;
+        return this;
+    }
+
+    public Boolean getCompression() {
+        return compression;
+    }
+
+    /**
+     * Enables or disables Snappy compression of data blocks.
+     */
+    public StoreOptions setCompression(boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    public Boolean getVerifyChecksums() {
+        return verifyChecksums;
+    }
+
+    public StoreOptions setVerifyChecksums(boolean verifyChecksums) {
+        this.verifyChecksums = verifyChecksums;
+        return this;
+    }
+
+    Options toOptions() {
+        Options o = new Options().createIfMissing(true);
+        if (cacheSize != null) {
+            o.cacheSize(cacheSize);
+        }
+        if (writeBufferSize != null) {
+            o.writeBufferSize(writeBufferSize);
+        }
+        if (blockSize != null) {
+            o.blockSize(blockSize);
+        }
+        if (maxOpenFiles != null) {
+            o.maxOpenFiles(maxOpenFiles);
+        }
+        if (compression != null) {
+            o.compressionType(compression ? CompressionType.SNAPPY : CompressionType.NONE);
+        }
+        if (verifyChecksums != null) {
+            o.verifyChecksums(verifyChecksums);
+        }
+        return o;
+    }
+
+    @Override
+    public String toString() {
+        return "StoreOptions{" + "cacheSize=" + cacheSize + ", writeBufferSize=" + writeBufferSize + ", blockSize=" + blockSize
+                + ", maxOpenFiles=" + maxOpenFiles + ", compression=" + compression + ", verifyChecksums=" + verifyChecksums + '}';
+    }
+}
@@ -6,15 +6,15 @@ import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
 import jet.bpm.engine.event.Event;
-import jet.bpm.engine.leveldb.LevelDb;
 import jet.bpm.engine.leveldb.Serializer;
+import jet.bpm.engine.storage.KeyValueStore;
 
 public class BusinessKeyEventIndex {
 
-    private final LevelDb levelDb;
+    private final KeyValueStore levelDb;
     private final Serializer serializer;
 
-    public BusinessKeyEventIndex(LevelDb levelDb, Serializer serializer) {
+    public BusinessKeyEventIndex(KeyValueStore levelDb, Serializer serializer) {
         this.levelDb = levelDb;
         this.serializer = serializer;
     }
@@ -0,0 +1,112 @@
+package jet.bpm.engine.leveldb.index;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import jet.bpm.engine.event.Event;
+import jet.bpm.engine.storage.KeyValueIterator;
+import jet.bpm.engine.storage.KeyValueStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of events by their names. Keys are the length of the name, the name
+ * and the event ID, so all events with the same name are stored together.
+ */
+public class EventNameIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(EventNameIndex.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final byte[] DUMMY = new byte[0];
+
+    private final KeyValueStore db;
+
+    public EventNameIndex(KeyValueStore levelDb) {
+        this.db = levelDb;
+    }
+
+    public void init() {
+        db.init();
+    }
+
+    public void close() {
+        db.close();
+    }
+
+    public void onAdd(Event e) {
+        db.put(marshallKey(e.getName(), e.getId()), DUMMY);
+    }
+
+    public void onRemove(Event e) {
+        db.delete(marshallKey(e.getName(), e.getId()));
+    }
+
+    public List<UUID> list(String eventName, UUID after, int maxEvents) {
+        List<UUID> result = new ArrayList<>();
+
+        byte[] prefix = marshallPrefix(eventName);
+        byte[] start = after != null ? marshallKey(eventName, after) : prefix;
+
+        try (KeyValueIterator it = db.iterator()) {
+            for (it.seek(start); it.hasNext() && result.size() < maxEvents;) {
+                Map.Entry<byte[], byte[]> entry = it.next();
+
+                byte[] k = entry.getKey();
+                if (!startsWith(k, prefix)) {
+                    break;
+                }
+
+                if (after != null && Arrays.equals(k, start)) {
+                    continue;
+                }
+
+                result.add(unmarshallId(k, prefix.length));
+            }
+        } catch (Exception e) {
+            log.error("list ['{}', '{}', {}] -> error", eventName, after, maxEvents, e);
+            throw new RuntimeException("call 'list' error", e);
+        }
+
+        log.debug("list ['{}', '{}', {}] -> done ({})", eventName, after, maxEvents, result.size());
+        return result;
+    }
+
+    private static byte[] marshallPrefix(String eventName) {
+        byte[] name = eventName.getBytes(UTF8);
+        return ByteBuffer.allocate(4 + name.length)
+                .putInt(name.length)
+                .put(name)
+                .array();
+    }
+
+    private static byte[] marshallKey(String eventName, UUID id) {
+        byte[] prefix = marshallPrefix(eventName);
+        return ByteBuffer.allocate(prefix.length + 8 + 8)
+                .put(prefix)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .array();
+    }
+
+    private static UUID unmarshallId(byte[] key, int offset) {
+        ByteBuffer buffer = ByteBuffer.wrap(key, offset, 8 + 8);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    private static boolean startsWith(byte[] key, byte[] prefix) {
+        if (key.length != prefix.length + 8 + 8) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (key[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -3,14 +3,15 @@ package jet.bpm.engine.leveldb.index;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import jet.bpm.engine.event.Event;
 import jet.bpm.engine.event.ExpiredEvent;
-import jet.bpm.engine.leveldb.LevelDb;
-import org.iq80.leveldb.DBIterator;
+import jet.bpm.engine.storage.KeyValueIterator;
+import jet.bpm.engine.storage.KeyValueStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,9 +20,9 @@ public class ExpiredEventIndex {
     private static final Logger log = LoggerFactory.getLogger(ExpiredEventIndex.class);
     private static final byte[] DUMMY = new byte[0];
 
-    private final LevelDb db;
+    private final KeyValueStore db;
 
-    public ExpiredEventIndex(LevelDb levelDb) {
+    public ExpiredEventIndex(KeyValueStore levelDb) {
         this.db = levelDb;    }
 
     public void init() {
@@ -57,7 +58,7 @@ public class ExpiredEventIndex {
         List<ExpiredEvent> result = new ArrayList<>();
 
         List<byte[]> toDelete = new ArrayList<>();
-        try (DBIterator it = db.iterator();) {
+        try (KeyValueIterator it = db.iterator();) {
             for (it.seekToFirst(); it.hasNext();) {
                 Map.Entry<byte[], byte[]> entry = it.next();
 
@@ -74,7 +75,7 @@ public class ExpiredEventIndex {
                 toDelete.add(entry.getKey());
             }
 
-            db.delete(toDelete);
+            db.write(Collections.<byte[], byte[]>emptyMap(), toDelete, null);
 
             log.info("list ['{}', {}] -> done ({})", now, maxEventsCount, result.size());
             return result;
@@ -109,9 +110,9 @@ public class ExpiredEventIndex {
         System.err.println(count(db) + " expired index item(s), ");
     }
 
-    private int count(LevelDb db) throws IOException {
+    private int count(KeyValueStore db) throws IOException {
         int cnt = 0;
-        try (DBIterator i = db.iterator()) {
+        try (KeyValueIterator i = db.iterator()) {
             while (i.hasNext()) {
                 i.next();
                 cnt++;
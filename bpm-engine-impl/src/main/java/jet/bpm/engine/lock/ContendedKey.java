@@ -0,0 +1,41 @@
+package jet.bpm.engine.lock;
+
+/**
+ * Estimated number of contended lock acquisitions of a business key.
+ * @see ProfilingLockManager
+ */
+public final class ContendedKey {
+
+    private final String processBusinessKey;
+    private final long count;
+    private final long error;
+
+    public ContendedKey(String processBusinessKey, long count, long error) {
+        this.processBusinessKey = processBusinessKey;
+        this.count = count;
+        this.error = error;
+    }
+
+    public String getProcessBusinessKey() {
+        return processBusinessKey;
+    }
+
+    /**
+     * Returns the estimated count, which is never lower than the real one.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the maximum overestimation of the count.
+     */
+    public long getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return processBusinessKey + "=" + count + (error > 0 ? " (error " + error + ")" : "");
+    }
+}
@@ -0,0 +1,186 @@
+package jet.bpm.engine.lock;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lock manager with a lock per business key. Unlike
+ * {@link StripedLockManagerImpl}, unrelated keys never wait for each other.
+ * Locks are created on demand and removed when no thread holds or waits for
+ * them, so the number of locks is bounded by the number of keys in use.
+ * Locks are reentrant.
+ */
+public class KeyLockManagerImpl implements LockManager {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyLockManagerImpl.class);
+
+    private final ConcurrentMap<String, KeyLock> locks = new ConcurrentHashMap<>();
+
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong contentions = new AtomicLong();
+    private final AtomicLong waitTime = new AtomicLong();
+    private final AtomicLong maxWaitTime = new AtomicLong();
+
+    @Override
+    public void lock(String processBusinessKey) {
+        log.debug("lock ['{}'] -> locking...", processBusinessKey);
+
+        KeyLock l = retain(processBusinessKey);
+        acquisitions.incrementAndGet();
+
+        if (!l.lock.tryLock()) {
+            contentions.incrementAndGet();
+
+            long t1 = System.nanoTime();
+            l.lock.lock();
+            recordWait(System.nanoTime() - t1);
+        }
+
+        log.debug("lock ['{}'] -> locked", processBusinessKey);
+    }
+
+    @Override
+    public boolean tryLock(String processBusinessKey, long timeout, TimeUnit unit) {
+        log.debug("tryLock ['{}', {} {}] -> locking...", processBusinessKey, timeout, unit);
+
+        KeyLock l = retain(processBusinessKey);
+        acquisitions.incrementAndGet();
+
+        boolean locked = l.lock.tryLock();
+        if (!locked) {
+            contentions.incrementAndGet();
+
+            long t1 = System.nanoTime();
+            locked = timeout > 0 && Locks.tryLock(l.lock, timeout, unit);
+            recordWait(System.nanoTime() - t1);
+        }
+
+        if (!locked) {
+            release(processBusinessKey, l);
+        }
+
+        log.debug("tryLock ['{}', {} {}] -> {}", processBusinessKey, timeout, unit, locked ? "locked" : "timeout");
+        return locked;
+    }
+
+    @Override
+    public void unlock(String processBusinessKey) {
+        KeyLock l = locks.get(processBusinessKey);
+        if (l == null) {
+            throw new IllegalMonitorStateException("Not locked: " + processBusinessKey);
+        }
+
+        l.lock.unlock();
+        release(processBusinessKey, l);
+
+        log.debug("lock ['{}'] -> unlocked", processBusinessKey);
+    }
+
+    /**
+     * Returns the number of keys, which are locked or waited for.
+     */
+    public int getActiveKeyCount() {
+        return locks.size();
+    }
+
+    /**
+     * Returns the total number of lock acquisitions.
+     */
+    public long getAcquisitionCount() {
+        return acquisitions.get();
+    }
+
+    /**
+     * Returns the number of lock acquisitions, which had to wait for another
+     * thread.
+     */
+    public long getContentionCount() {
+        return contentions.get();
+    }
+
+    /**
+     * Returns the total time spent waiting for locks.
+     */
+    public long getTotalWaitTime(TimeUnit unit) {
+        return unit.convert(waitTime.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the longest time spent waiting for a lock.
+     */
+    public long getMaxWaitTime(TimeUnit unit) {
+        return unit.convert(maxWaitTime.get(), TimeUnit.NANOSECONDS);
+    }
+
+    private KeyLock retain(String key) {
+        while (true) {
+            KeyLock l = locks.get(key);
+            if (l == null) {
+                l = new KeyLock();
+                KeyLock prev = locks.putIfAbsent(key, l);
+                if (prev == null) {
+                    return l;
+                }
+                l = prev;
+            }
+
+            if (l.retain()) {
+                return l;
+            }
+
+            // the lock is being removed, help to remove it and try again
+            locks.remove(key, l);
+        }
+    }
+
+    private void release(String key, KeyLock l) {
+        if (l.release()) {
+            locks.remove(key, l);
+        }
+    }
+
+    private void recordWait(long nanos) {
+        waitTime.addAndGet(nanos);
+
+        long max;
+        do {
+            max = maxWaitTime.get();
+        } while (nanos > max && !maxWaitTime.compareAndSet(max, nanos));
+    }
+
+    private static final class KeyLock {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * Number of pending lock calls: holds (including reentrant ones) and
+         * waits. Zero means the lock is removed and can't
+         * be used anymore.
+         */
+        private final AtomicInteger refs = new AtomicInteger(1);
+
+        private boolean retain() {
+            int r;
+            do {
+                r = refs.get();
+                if (r <= 0) {
+                    return false;
+                }
+            } while (!refs.compareAndSet(r, r + 1));
+            return true;
+        }
+
+        /**
+         * @return {@code true} if the lock isn't used anymore.
+         */
+        private boolean release() {
+            return refs.decrementAndGet() == 0;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package jet.bpm.engine.lock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations with power-of-two microsecond buckets.
+ * Bucket {@code i > 0} counts durations in {@code [2^(i-1), 2^i)}
+ * microseconds, bucket zero counts durations under a microsecond.
+ * Percentiles are reported as upper bounds of the buckets.
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+
+        counts.incrementAndGet(bucketOf(nanos));
+        total.addAndGet(nanos);
+
+        long m;
+        do {
+            m = max.get();
+        } while (nanos > m && !max.compareAndSet(m, nanos));
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.set(0);
+        max.set(0);
+    }
+
+    public Snapshot snapshot() {
+        long[] l = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            l[i] = counts.get(i);
+        }
+        return new Snapshot(l, total.get(), max.get());
+    }
+
+    private static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        if (micros == 0) {
+            return 0;
+        }
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * Point-in-time copy of a histogram.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        private Snapshot(long[] counts, long total, long max) {
+            long c = 0;
+            for (long n : counts) {
+                c += n;
+            }
+
+            this.counts = counts;
+            this.count = c;
+            this.total = total;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotal(TimeUnit unit) {
+            return unit.convert(total, TimeUnit.NANOSECONDS);
+        }
+
+        public long getMax(TimeUnit unit) {
+            return unit.convert(max, TimeUnit.NANOSECONDS);
+        }
+
+        public double getMean(TimeUnit unit) {
+            if (count == 0) {
+                return 0;
+            }
+            return (double) total / count / unit.toNanos(1);
+        }
+
+        /**
+         * Returns the upper bound of the bucket, which contains the given
+         * percentile, but no more than the maximum.
+         * @param percentile the percentile, from 0 to 100.
+         * @param unit the time unit of the result.
+         */
+        public long getPercentile(double percentile, TimeUnit unit) {
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(count * percentile / 100);
+            if (rank < 1) {
+                rank = 1;
+            }
+
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    long upper = TimeUnit.MICROSECONDS.toNanos(1L << i);
+                    return unit.convert(Math.min(upper, max), TimeUnit.NANOSECONDS);
+                }
+            }
+
+            return unit.convert(max, TimeUnit.NANOSECONDS);
+        }
+    }
+}
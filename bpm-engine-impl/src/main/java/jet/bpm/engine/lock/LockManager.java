@@ -1,8 +1,21 @@
 package jet.bpm.engine.lock;
 
+import java.util.concurrent.TimeUnit;
+
 public interface LockManager {
 
     void lock(String processBusinessKey);
 
+    /**
+     * Acquires the lock if it becomes available within the given time.
+     * Interruption of the waiting thread is treated as a timeout, the
+     * interrupted status of the thread is restored.
+     * @param processBusinessKey the process business key.
+     * @param timeout the maximum time to wait, zero to not wait at all.
+     * @param unit the time unit of the timeout.
+     * @return {@code true} if the lock was acquired.
+     */
+    boolean tryLock(String processBusinessKey, long timeout, TimeUnit unit);
+
     void unlock(String processBusinessKey);
 }
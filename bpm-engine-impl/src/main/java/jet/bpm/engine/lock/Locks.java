@@ -0,0 +1,23 @@
+package jet.bpm.engine.lock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+final class Locks {
+
+    /**
+     * Acquires the lock if it becomes available within the given time.
+     * Interruption is treated as a timeout.
+     */
+    static boolean tryLock(Lock l, long timeout, TimeUnit unit) {
+        try {
+            return l.tryLock(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Locks() {
+    }
+}
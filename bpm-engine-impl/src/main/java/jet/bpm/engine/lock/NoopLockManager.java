@@ -1,11 +1,18 @@
 package jet.bpm.engine.lock;
 
+import java.util.concurrent.TimeUnit;
+
 public class NoopLockManager implements LockManager {
 
     @Override
     public void lock(String processBusinnessKey) {
     }
 
+    @Override
+    public boolean tryLock(String processBusinessKey, long timeout, TimeUnit unit) {
+        return true;
+    }
+
     @Override
     public void unlock(String processBusinessKey) {
     }
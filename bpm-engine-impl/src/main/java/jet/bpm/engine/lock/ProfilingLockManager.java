@@ -0,0 +1,326 @@
+package jet.bpm.engine.lock;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Lock manager decorator, which collects contention statistics: wait and
+ * hold time histograms, the most contended keys (estimated with a
+ * space-saving sketch) and, for {@link StripedLockManagerImpl}, the number
+ * of contentions caused by a different key on the same stripe.
+ * <p/>
+ * Statistics are available with {@link #snapshot()} and via JMX, see
+ * {@link #registerMBean(String)}.
+ * <p/>
+ * Holds are tracked per key, so a lock can be released by a different thread
+ * than the one which acquired it. Contention is detected with an immediate
+ * {@code tryLock} before the actual acquisition, thus the delegate's own
+ * statistics (e.g. {@link KeyLockManagerImpl#getAcquisitionCount()}) count
+ * a contended acquisition twice. Use the statistics of this class instead.
+ */
+public class ProfilingLockManager implements LockManager, ProfilingLockManagerMBean {
+
+    public static final int DEFAULT_TOP_KEYS = 32;
+
+    public static final String DEFAULT_OBJECT_NAME = "jet.bpm.engine:type=LockManager";
+
+    private final LockManager delegate;
+    private final StripedLockManagerImpl striped;
+    private final int topKeys;
+
+    private final LatencyHistogram waitTime = new LatencyHistogram();
+    private final LatencyHistogram holdTime = new LatencyHistogram();
+    private final SpaceSaving contendedKeys;
+
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong contentions = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong stripeCollisions = new AtomicLong();
+
+    /**
+     * Keys holding the stripes of the striped delegate.
+     */
+    private final ConcurrentMap<Integer, String> stripeOwners = new ConcurrentHashMap<>();
+
+    /**
+     * Held locks. Only the holder of a key changes its entry.
+     */
+    private final ConcurrentMap<String, Hold> holds = new ConcurrentHashMap<>();
+
+    public ProfilingLockManager(LockManager delegate) {
+        this(delegate, DEFAULT_TOP_KEYS);
+    }
+
+    /**
+     * @param delegate the actual lock manager.
+     * @param topKeys the number of tracked most contended keys.
+     */
+    public ProfilingLockManager(LockManager delegate, int topKeys) {
+        this.delegate = delegate;
+        this.striped = delegate instanceof StripedLockManagerImpl ? (StripedLockManagerImpl) delegate : null;
+        this.topKeys = topKeys;
+        // extra counters improve the accuracy of the top keys
+        this.contendedKeys = new SpaceSaving(topKeys * 4);
+    }
+
+    public LockManager getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void lock(String processBusinessKey) {
+        long t1 = System.nanoTime();
+
+        if (!delegate.tryLock(processBusinessKey, 0, TimeUnit.NANOSECONDS)) {
+            onContention(processBusinessKey);
+            delegate.lock(processBusinessKey);
+        }
+
+        onAcquired(processBusinessKey, t1);
+    }
+
+    @Override
+    public boolean tryLock(String processBusinessKey, long timeout, TimeUnit unit) {
+        long t1 = System.nanoTime();
+
+        boolean locked = delegate.tryLock(processBusinessKey, 0, TimeUnit.NANOSECONDS);
+        if (!locked) {
+            onContention(processBusinessKey);
+            if (timeout > 0) {
+                locked = delegate.tryLock(processBusinessKey, timeout, unit);
+            }
+        }
+
+        if (locked) {
+            onAcquired(processBusinessKey, t1);
+        } else {
+            timeouts.incrementAndGet();
+            waitTime.record(System.nanoTime() - t1);
+        }
+
+        return locked;
+    }
+
+    @Override
+    public void unlock(String processBusinessKey) {
+        onRelease(processBusinessKey);
+        delegate.unlock(processBusinessKey);
+    }
+
+    /**
+     * Returns the current statistics.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(acquisitions.get(), contentions.get(), timeouts.get(), stripeCollisions.get(),
+                waitTime.snapshot(), holdTime.snapshot(), contendedKeys.top(topKeys));
+    }
+
+    @Override
+    public void reset() {
+        acquisitions.set(0);
+        contentions.set(0);
+        timeouts.set(0);
+        stripeCollisions.set(0);
+        waitTime.reset();
+        holdTime.reset();
+        contendedKeys.clear();
+    }
+
+    /**
+     * Registers this lock manager in the platform MBean server.
+     * @param name the object name, e.g. {@link #DEFAULT_OBJECT_NAME}.
+     * @return the registered object name.
+     * @throws JMException
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        return server.registerMBean(this, new ObjectName(name)).getObjectName();
+    }
+
+    @Override
+    public long getAcquisitionCount() {
+        return acquisitions.get();
+    }
+
+    @Override
+    public long getContentionCount() {
+        return contentions.get();
+    }
+
+    @Override
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    @Override
+    public long getStripeCollisionCount() {
+        return stripeCollisions.get();
+    }
+
+    @Override
+    public double getWaitTimeMean() {
+        return waitTime.snapshot().getMean(TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getWaitTime99thPercentile() {
+        return waitTime.snapshot().getPercentile(99, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getWaitTimeMax() {
+        return waitTime.snapshot().getMax(TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public double getHoldTimeMean() {
+        return holdTime.snapshot().getMean(TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getHoldTime99thPercentile() {
+        return holdTime.snapshot().getPercentile(99, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getHoldTimeMax() {
+        return holdTime.snapshot().getMax(TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public String[] getTopContendedKeys() {
+        List<ContendedKey> l = contendedKeys.top(topKeys);
+
+        String[] result = new String[l.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = l.get(i).toString();
+        }
+        return result;
+    }
+
+    private void onContention(String processBusinessKey) {
+        contentions.incrementAndGet();
+        contendedKeys.offer(processBusinessKey);
+
+        if (striped != null) {
+            String owner = stripeOwners.get(striped.getStripe(processBusinessKey));
+            if (owner != null && !owner.equals(processBusinessKey)) {
+                stripeCollisions.incrementAndGet();
+            }
+        }
+    }
+
+    private void onAcquired(String processBusinessKey, long t1) {
+        long t2 = System.nanoTime();
+
+        acquisitions.incrementAndGet();
+        waitTime.record(t2 - t1);
+
+        Hold h = holds.get(processBusinessKey);
+        if (h != null) {
+            // reentrant acquisition
+            h.depth++;
+            return;
+        }
+
+        holds.put(processBusinessKey, new Hold(t2));
+        if (striped != null) {
+            stripeOwners.put(striped.getStripe(processBusinessKey), processBusinessKey);
+        }
+    }
+
+    private void onRelease(String processBusinessKey) {
+        Hold h = holds.get(processBusinessKey);
+        if (h == null || --h.depth > 0) {
+            return;
+        }
+
+        holds.remove(processBusinessKey, h);
+        holdTime.record(System.nanoTime() - h.start);
+        if (striped != null) {
+            stripeOwners.remove(striped.getStripe(processBusinessKey), processBusinessKey);
+        }
+    }
+
+    private static final class Hold {
+
+        private final long start;
+        private volatile int depth = 1;
+
+        private Hold(long start) {
+            this.start = start;
+        }
+    }
+
+    /**
+     * Point-in-time statistics of a {@link ProfilingLockManager}.
+     */
+    public static final class Snapshot {
+
+        private final long acquisitionCount;
+        private final long contentionCount;
+        private final long timeoutCount;
+        private final long stripeCollisionCount;
+        private final LatencyHistogram.Snapshot waitTime;
+        private final LatencyHistogram.Snapshot holdTime;
+        private final List<ContendedKey> topContendedKeys;
+
+        private Snapshot(long acquisitionCount, long contentionCount, long timeoutCount, long stripeCollisionCount,
+                LatencyHistogram.Snapshot waitTime, LatencyHistogram.Snapshot holdTime, List<ContendedKey> topContendedKeys) {
+
+            this.acquisitionCount = acquisitionCount;
+            this.contentionCount = contentionCount;
+            this.timeoutCount = timeoutCount;
+            this.stripeCollisionCount = stripeCollisionCount;
+            this.waitTime = waitTime;
+            this.holdTime = holdTime;
+            this.topContendedKeys = topContendedKeys;
+        }
+
+        public long getAcquisitionCount() {
+            return acquisitionCount;
+        }
+
+        /**
+         * Returns the number of acquisitions, which found the lock held by
+         * another thread.
+         */
+        public long getContentionCount() {
+            return contentionCount;
+        }
+
+        public long getTimeoutCount() {
+            return timeoutCount;
+        }
+
+        /**
+         * Returns the number of contentions caused by a different key, which
+         * uses the same stripe. Always zero for non-striped lock managers.
+         */
+        public long getStripeCollisionCount() {
+            return stripeCollisionCount;
+        }
+
+        public LatencyHistogram.Snapshot getWaitTime() {
+            return waitTime;
+        }
+
+        public LatencyHistogram.Snapshot getHoldTime() {
+            return holdTime;
+        }
+
+        /**
+         * Returns the most contended keys, the most contended first.
+         */
+        public List<ContendedKey> getTopContendedKeys() {
+            return topContendedKeys;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package jet.bpm.engine.lock;
+
+/**
+ * JMX view of {@link ProfilingLockManager}. Durations are in microseconds.
+ */
+public interface ProfilingLockManagerMBean {
+
+    long getAcquisitionCount();
+
+    long getContentionCount();
+
+    long getTimeoutCount();
+
+    long getStripeCollisionCount();
+
+    double getWaitTimeMean();
+
+    long getWaitTime99thPercentile();
+
+    long getWaitTimeMax();
+
+    double getHoldTimeMean();
+
+    long getHoldTime99thPercentile();
+
+    long getHoldTimeMax();
+
+    /**
+     * Returns the most contended keys as {@code key=count} strings.
+     */
+    String[] getTopContendedKeys();
+
+    void reset();
+}
@@ -1,5 +1,6 @@
 package jet.bpm.engine.lock;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import org.slf4j.Logger;
@@ -18,6 +19,14 @@ public class SingleLockManagerImpl implements LockManager {
         log.debug("lock ['{}'] -> locked", processBusinnessKey);
     }
 
+    @Override
+    public boolean tryLock(String processBusinessKey, long timeout, TimeUnit unit) {
+        log.debug("tryLock ['{}', {} {}] -> locking...", processBusinessKey, timeout, unit);
+        boolean locked = Locks.tryLock(lock, timeout, unit);
+        log.debug("tryLock ['{}', {} {}] -> {}", processBusinessKey, timeout, unit, locked ? "locked" : "timeout");
+        return locked;
+    }
+
     @Override
     public void unlock(String processBusinessKey) {
         lock.unlock();
@@ -0,0 +1,88 @@
+package jet.bpm.engine.lock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-saving sketch of the most frequent keys. Keeps at most
+ * {@code capacity} counters: a new key replaces the key with the smallest
+ * count and inherits its count as the error. The reported count of a key is
+ * never lower than its real count and never higher than the real count plus
+ * the error.
+ */
+final class SpaceSaving {
+
+    private final int capacity;
+    private final Map<String, Counter> counters;
+
+    SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    synchronized void offer(String key) {
+        Counter c = counters.get(key);
+        if (c != null) {
+            c.count++;
+            return;
+        }
+
+        if (counters.size() < capacity) {
+            counters.put(key, new Counter(key, 1, 0));
+            return;
+        }
+
+        Counter min = null;
+        for (Counter x : counters.values()) {
+            if (min == null || x.count < min.count) {
+                min = x;
+            }
+        }
+
+        counters.remove(min.key);
+        counters.put(key, new Counter(key, min.count + 1, min.count));
+    }
+
+    synchronized List<ContendedKey> top(int n) {
+        List<Counter> l = new ArrayList<>(counters.values());
+        Collections.sort(l, new Comparator<Counter>() {
+
+            @Override
+            public int compare(Counter a, Counter b) {
+                return Long.compare(b.count, a.count);
+            }
+        });
+
+        int size = Math.min(n, l.size());
+        List<ContendedKey> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Counter c = l.get(i);
+            result.add(new ContendedKey(c.key, c.count, c.error));
+        }
+        return result;
+    }
+
+    synchronized void clear() {
+        counters.clear();
+    }
+
+    private static final class Counter {
+
+        private final String key;
+        private long count;
+        private final long error;
+
+        private Counter(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
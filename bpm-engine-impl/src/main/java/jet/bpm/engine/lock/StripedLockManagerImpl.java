@@ -1,6 +1,9 @@
 package jet.bpm.engine.lock;
 
 import com.google.common.util.concurrent.Striped;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,9 +13,29 @@ public class StripedLockManagerImpl implements LockManager {
     private static final Logger log = LoggerFactory.getLogger(StripedLockManagerImpl.class);
 
     private final Striped<Lock> locks;
+    private final Map<Lock, Integer> stripes;
 
     public StripedLockManagerImpl(int concurrencyLevel) {
         this.locks = Striped.lock(concurrencyLevel);
+
+        this.stripes = new IdentityHashMap<>(locks.size());
+        for (int i = 0; i < locks.size(); i++) {
+            stripes.put(locks.getAt(i), i);
+        }
+    }
+
+    /**
+     * Returns the number of stripes.
+     */
+    public int getStripeCount() {
+        return locks.size();
+    }
+
+    /**
+     * Returns the index of the stripe, which is used for the key.
+     */
+    public int getStripe(String processBusinessKey) {
+        return stripes.get(locks.get(processBusinessKey));
     }
 
     @Override
@@ -22,6 +45,14 @@ public class StripedLockManagerImpl implements LockManager {
         log.debug("lock ['{}'] -> locked", processBusinessKey);
     }
 
+    @Override
+    public boolean tryLock(String processBusinessKey, long timeout, TimeUnit unit) {
+        log.debug("tryLock ['{}', {} {}] -> locking...", processBusinessKey, timeout, unit);
+        boolean locked = Locks.tryLock(locks.get(processBusinessKey), timeout, unit);
+        log.debug("tryLock ['{}', {} {}] -> {}", processBusinessKey, timeout, unit, locked ? "locked" : "timeout");
+        return locked;
+    }
+
     @Override
     public void unlock(String processBusinessKey) {
         locks.get(processBusinessKey).unlock();
@@ -1,34 +1,201 @@
 package jet.bpm.engine.mapdb;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import jet.bpm.engine.DefaultExecution;
-import jet.bpm.engine.persistence.PersistenceManager;
+import jet.bpm.engine.leveldb.JavaSerializer;
+import jet.bpm.engine.leveldb.Serializer;
+import jet.bpm.engine.persistence.BatchPersistenceManager;
+import jet.bpm.engine.persistence.ListablePersistenceManager;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistence manager, which stores executions in MapDB hash maps. Keys are
+ * stored as fixed 16-byte UUIDs, values are serialized by the engine's
+ * {@link Serializer} and stored as byte arrays, so MapDB's own serialization
+ * is never used for executions.
+ */
+public class MapDbPersistenceManager implements BatchPersistenceManager, ListablePersistenceManager {
+
+    private static final Logger log = LoggerFactory.getLogger(MapDbPersistenceManager.class);
+
+    public enum Mode {
+
+        /**
+         * File storage without transactions. Memory-mapped files are used,
+         * if supported by the JVM.
+         */
+        FILE,
+
+        /**
+         * File storage without transactions, always memory-mapped.
+         */
+        MMAP_FILE,
+
+        /**
+         * File storage with the write-ahead log. Each save, remove or batch
+         * write is committed. MapDB has a single global transaction, so a
+         * commit also includes concurrent writes of other threads.
+         */
+        WAL,
+
+        /**
+         * Direct memory outside the Java heap, not persistent.
+         */
+        DIRECT_MEMORY
+    }
+
+    public enum CacheType {
+
+        NONE,
+
+        /**
+         * Fixed size hash table, MapDB's default.
+         */
+        HASH_TABLE,
+
+        HARD_REF,
+        WEAK_REF,
+        SOFT_REF,
+        LRU
+    }
+
+    private static final String MAP_NAME = "executionData";
+
+    /**
+     * Executions were stored in this map with MapDB's default serialization
+     * before. Such executions are moved to the new maps on start.
+     */
+    private static final String LEGACY_MAP_NAME = "executions";
+
+    /**
+     * Number of segments of the database, it can't be changed once the
+     * database is created.
+     */
+    private static final String SEGMENTS_NAME = "executionSegments";
+
+    private final Serializer serializer;
 
-public class MapDbPersistenceManager implements PersistenceManager {
-    
     private String baseDir = "/tmp/";
+    private Mode mode = Mode.FILE;
+    private CacheType cacheType = CacheType.HASH_TABLE;
+    private int cacheSize = 32768;
+    private int segments = 1;
+
     private DB db;
-    private Map<UUID, DefaultExecution> store;
+    private List<Map<UUID, byte[]>> stores;
+
+    public MapDbPersistenceManager() {
+        this(new JavaSerializer());
+    }
+
+    public MapDbPersistenceManager(Serializer serializer) {
+        this.serializer = serializer;
+    }
 
     public void setBaseDir(String baseDir) {
         this.baseDir = baseDir;
     }
 
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public void setCacheType(CacheType cacheType) {
+        this.cacheType = cacheType;
+    }
+
+    /**
+     * Sets the size of the instance cache, in records. Not used by the
+     * reference-based caches.
+     */
+    public void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Sets the number of hash maps, which executions are partitioned
+     * between. Each MapDB hash map has a fixed number of internally locked
+     * segments, more maps reduce the contention of concurrent writers. The
+     * number is stored in the database, {@link #start()} fails if it doesn't
+     * match.
+     */
+    public void setSegments(int segments) {
+        if (segments < 1) {
+            throw new IllegalArgumentException("Invalid number of segments: " + segments);
+        }
+        this.segments = segments;
+    }
+
     public synchronized void start() {
-        File f = new File(baseDir);
-        f.mkdirs();
+        DBMaker<?> maker;
+        if (mode == Mode.DIRECT_MEMORY) {
+            maker = DBMaker.newMemoryDirectDB();
+        } else {
+            File f = new File(baseDir);
+            f.mkdirs();
+            maker = DBMaker.newFileDB(new File(baseDir + "/db"));
 
-        f = new File(baseDir + "/db");
-        db = DBMaker.newFileDB(f)
-                .transactionDisable()
-                .mmapFileEnableIfSupported()
-                .make();
+            if (mode == Mode.MMAP_FILE) {
+                maker.mmapFileEnable();
+            } else {
+                maker.mmapFileEnableIfSupported();
+            }
+        }
+
+        if (mode != Mode.WAL) {
+            maker.transactionDisable();
+        }
 
-        store = db.getHashMap("executions");
+        switch (cacheType) {
+            case NONE:
+                maker.cacheDisable();
+                break;
+            case HARD_REF:
+                maker.cacheHardRefEnable();
+                break;
+            case WEAK_REF:
+                maker.cacheWeakRefEnable();
+                break;
+            case SOFT_REF:
+                maker.cacheSoftRefEnable();
+                break;
+            case LRU:
+                maker.cacheLRUEnable().cacheSize(cacheSize);
+                break;
+            default:
+                maker.cacheSize(cacheSize);
+        }
+
+        db = maker.make();
+        try {
+            checkSegments();
+        } catch (RuntimeException e) {
+            db.close();
+            db = null;
+            throw e;
+        }
+
+        stores = new ArrayList<>(segments);
+        for (int i = 0; i < segments; i++) {
+            String name = segments == 1 ? MAP_NAME : MAP_NAME + "-" + i;
+            Map<UUID, byte[]> m = db.createHashMap(name)
+                    .keySerializer(org.mapdb.Serializer.UUID)
+                    .valueSerializer(org.mapdb.Serializer.BYTE_ARRAY)
+                    .makeOrGet();
+            stores.add(m);
+        }
+
+        migrate();
+
+        log.info("start ['{}'] -> done ({}, cache: {}, segments: {})", baseDir, mode, cacheType, segments);
     }
 
     public synchronized void stop() {
@@ -41,16 +208,103 @@ public class MapDbPersistenceManager implements PersistenceManager {
     @Override
     public void save(DefaultExecution execution) {
         UUID id = execution.getId();
-        store.put(id, execution);
+        store(id).put(id, serializer.toBytes(execution));
+        commit();
     }
 
     @Override
     public DefaultExecution get(UUID id) {
-        return store.get(id);
+        return unmarshallValue(store(id).get(id));
     }
 
     @Override
     public DefaultExecution remove(UUID id) {
-        return store.remove(id);        
+        DefaultExecution e = unmarshallValue(store(id).remove(id));
+        commit();
+        return e;
+    }
+
+    @Override
+    public void write(Collection<DefaultExecution> toSave, Collection<UUID> toRemove) {
+        for (DefaultExecution e : toSave) {
+            UUID id = e.getId();
+            store(id).put(id, serializer.toBytes(e));
+        }
+        for (UUID id : toRemove) {
+            store(id).remove(id);
+        }
+        commit();
+        log.debug("write -> done (saved: {}, removed: {})", toSave.size(), toRemove.size());
+    }
+
+    @Override
+    public Collection<UUID> getIds() {
+        List<UUID> result = new ArrayList<>();
+        for (Map<UUID, byte[]> m : stores) {
+            result.addAll(m.keySet());
+        }
+        return result;
+    }
+
+    private void checkSegments() {
+        if (!db.exists(SEGMENTS_NAME)) {
+            db.createAtomicInteger(SEGMENTS_NAME, segments);
+            commit();
+            return;
+        }
+
+        int n = db.getAtomicInteger(SEGMENTS_NAME).get();
+        if (n != segments) {
+            throw new IllegalStateException("The database '" + baseDir + "' has " + n + " segment(s), got " + segments);
+        }
+    }
+
+    /**
+     * Moves executions of the legacy map to the new maps. The legacy map is
+     * deleted after all executions are copied, so an interrupted migration
+     * is repeated on the next start.
+     */
+    private void migrate() {
+        if (!db.exists(LEGACY_MAP_NAME)) {
+            return;
+        }
+
+        Map<UUID, DefaultExecution> legacy = db.getHashMap(LEGACY_MAP_NAME);
+
+        int count = 0;
+        for (Map.Entry<UUID, DefaultExecution> e : legacy.entrySet()) {
+            UUID id = e.getKey();
+            store(id).put(id, serializer.toBytes(e.getValue()));
+            count++;
+        }
+        commit();
+
+        db.delete(LEGACY_MAP_NAME);
+        commit();
+
+        log.info("migrate ['{}'] -> done ({})", baseDir, count);
+    }
+
+    private Map<UUID, byte[]> store(UUID id) {
+        if (segments == 1) {
+            return stores.get(0);
+        }
+
+        int h = id.hashCode();
+        h ^= h >>> 16;
+        return stores.get((h & 0x7fffffff) % segments);
+    }
+
+    private void commit() {
+        if (mode == Mode.WAL) {
+            db.commit();
+        }
+    }
+
+    private DefaultExecution unmarshallValue(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        return (DefaultExecution) serializer.fromBytes(bytes);
     }
 }
@@ -0,0 +1,18 @@
+package jet.bpm.engine.persistence;
+
+import java.util.Collection;
+import java.util.UUID;
+import jet.bpm.engine.DefaultExecution;
+
+/**
+ * Persistence manager, which is able to apply a group of changes at once.
+ */
+public interface BatchPersistenceManager extends PersistenceManager {
+
+    /**
+     * Saves and removes the specified executions in a single write.
+     * @param toSave executions to save.
+     * @param toRemove IDs of executions to remove.
+     */
+    void write(Collection<DefaultExecution> toSave, Collection<UUID> toRemove);
+}
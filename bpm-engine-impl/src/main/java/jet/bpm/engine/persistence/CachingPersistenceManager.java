@@ -0,0 +1,404 @@
+package jet.bpm.engine.persistence;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import jet.bpm.engine.DefaultExecution;
+import jet.bpm.engine.leveldb.JavaSerializer;
+import jet.bpm.engine.leveldb.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps recently saved executions in memory, in front of another persistence
+ * manager.
+ * <p/>
+ * Executions are mutated by the engine in place, so {@link #get(UUID)} takes
+ * a written instance out of the cache; it returns there on the next
+ * {@link #save(DefaultExecution)}. An instance with unwritten changes
+ * ({@link WriteMode#WRITE_BEHIND}) is handed out as is, but its entry stays
+ * in the cache with a snapshot of the saved state, taken with the configured
+ * {@link Serializer}. Until the instance is saved again, only the snapshot is
+ * written and a repeated {@link #get(UUID)} restores the execution from it,
+ * so a failed run never gets its partial changes written.
+ * <p/>
+ * Evicted and flushed executions stay reachable until they are written to
+ * the delegate, {@link #get(UUID)} waits for a write in progress instead of
+ * reading a stale copy. Access to the same execution must be serialized by
+ * the caller, e.g. with the process business key lock.
+ */
+public class CachingPersistenceManager implements BatchPersistenceManager {
+
+    private static final Logger log = LoggerFactory.getLogger(CachingPersistenceManager.class);
+
+    public enum WriteMode {
+
+        /**
+         * Executions are written to the delegate on every save.
+         */
+        WRITE_THROUGH,
+
+        /**
+         * Executions are written to the delegate only when evicted from the
+         * cache or on {@link CachingPersistenceManager#flush()}. Unflushed
+         * changes are lost on a crash.
+         */
+        WRITE_BEHIND
+    }
+
+    /**
+     * Computes the relative weight of a cached execution.
+     */
+    public interface ExecutionWeigher {
+
+        int weigh(DefaultExecution e);
+    }
+
+    /**
+     * Default weigher: the number of commands and the number of variables.
+     */
+    public static final ExecutionWeigher DEFAULT_WEIGHER = new ExecutionWeigher() {
+
+        @Override
+        public int weigh(DefaultExecution e) {
+            int w = 1 + e.size();
+            if (e.getContext() != null) {
+                w += e.getContext().getVariableNames().size();
+            }
+            return w;
+        }
+    };
+
+    private final PersistenceManager delegate;
+    private final WriteMode writeMode;
+    private final Cache<UUID, Entry> cache;
+
+    /**
+     * Entries with unwritten changes, including evicted ones which are still
+     * being written.
+     */
+    private final ConcurrentMap<UUID, Entry> unwritten = new ConcurrentHashMap<>();
+
+    private volatile Serializer serializer = new JavaSerializer();
+
+    /**
+     * Creates a cache with size-based eviction.
+     * @param delegate backing persistence manager.
+     * @param maximumSize maximum number of cached executions.
+     * @param writeMode write mode.
+     */
+    public CachingPersistenceManager(PersistenceManager delegate, long maximumSize, WriteMode writeMode) {
+        this(delegate, writeMode, CacheBuilder.newBuilder().maximumSize(maximumSize));
+    }
+
+    /**
+     * Creates a cache with weight-based eviction.
+     * @param delegate backing persistence manager.
+     * @param maximumWeight maximum total weight of cached executions.
+     * @param weigher computes weights of executions.
+     * @param writeMode write mode.
+     */
+    public CachingPersistenceManager(PersistenceManager delegate, long maximumWeight, final ExecutionWeigher weigher, WriteMode writeMode) {
+        this(delegate, writeMode, CacheBuilder.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher(new Weigher<UUID, Entry>() {
+
+                    @Override
+                    public int weigh(UUID key, Entry value) {
+                        return weigher.weigh(value.execution);
+                    }
+                }));
+    }
+
+    private CachingPersistenceManager(PersistenceManager delegate, WriteMode writeMode, CacheBuilder<? super UUID, ? super Entry> builder) {
+        this.delegate = delegate;
+        this.writeMode = writeMode;
+        this.cache = builder
+                .recordStats()
+                .<UUID, Entry>removalListener(new RemovalListener<UUID, Entry>() {
+
+                    @Override
+                    public void onRemoval(RemovalNotification<UUID, Entry> n) {
+                        onEviction(n);
+                    }
+                })
+                .build();
+    }
+
+    public PersistenceManager getDelegate() {
+        return delegate;
+    }
+
+    public WriteMode getWriteMode() {
+        return writeMode;
+    }
+
+    public Serializer getSerializer() {
+        return serializer;
+    }
+
+    /**
+     * Sets the serializer of snapshots of executions with unwritten changes.
+     * Defaults to {@link JavaSerializer}.
+     */
+    public void setSerializer(Serializer serializer) {
+        this.serializer = serializer;
+    }
+
+    @Override
+    public void save(DefaultExecution execution) {
+        UUID id = execution.getId();
+
+        if (writeMode == WriteMode.WRITE_THROUGH) {
+            delegate.save(execution);
+            cache.put(id, new Entry(execution, false));
+            return;
+        }
+
+        Entry e = new Entry(execution, true);
+
+        Entry prev = unwritten.get(id);
+        if (prev == null) {
+            unwritten.put(id, e);
+        } else {
+            // waits for a write of the previous state in progress, so the
+            // writes never overtake each other
+            prev.lock.lock();
+            try {
+                prev.dirty = false;
+                unwritten.put(id, e);
+            } finally {
+                prev.lock.unlock();
+            }
+        }
+
+        cache.put(id, e);
+    }
+
+    @Override
+    public DefaultExecution get(UUID id) {
+        Entry e = cache.getIfPresent(id);
+        if (e == null) {
+            // evicted, but can be still being written
+            e = unwritten.get(id);
+        }
+
+        if (e == null) {
+            return delegate.get(id);
+        }
+
+        e.lock.lock();
+        try {
+            if (e.dirty || e.snapshot != null) {
+                return e.checkOut(serializer);
+            }
+        } finally {
+            e.lock.unlock();
+        }
+
+        cache.asMap().remove(id, e);
+        unwritten.remove(id, e);
+        return e.execution;
+    }
+
+    @Override
+    public DefaultExecution remove(UUID id) {
+        Entry e = cache.getIfPresent(id);
+        if (e == null) {
+            e = unwritten.get(id);
+        }
+
+        DefaultExecution result = null;
+        if (e != null) {
+            e.lock.lock();
+            try {
+                result = e.savedState(serializer);
+                // cancels the write
+                e.dirty = false;
+            } finally {
+                e.lock.unlock();
+            }
+
+            cache.asMap().remove(id, e);
+            unwritten.remove(id, e);
+        }
+
+        DefaultExecution prev = delegate.remove(id);
+        return result != null ? result : prev;
+    }
+
+    @Override
+    public void write(Collection<DefaultExecution> toSave, Collection<UUID> toRemove) {
+        if (writeMode == WriteMode.WRITE_THROUGH && delegate instanceof BatchPersistenceManager) {
+            ((BatchPersistenceManager) delegate).write(toSave, toRemove);
+
+            for (DefaultExecution e : toSave) {
+                cache.put(e.getId(), new Entry(e, false));
+            }
+            for (UUID id : toRemove) {
+                cache.invalidate(id);
+            }
+            return;
+        }
+
+        for (DefaultExecution e : toSave) {
+            save(e);
+        }
+        for (UUID id : toRemove) {
+            remove(id);
+        }
+    }
+
+    /**
+     * Writes all unwritten changes to the delegate. The flushed executions
+     * are locked until the write is done.
+     */
+    public synchronized void flush() {
+        List<Entry> locked = new ArrayList<>();
+        List<DefaultExecution> l = new ArrayList<>();
+        try {
+            for (Entry e : unwritten.values()) {
+                e.lock.lock();
+                locked.add(e);
+
+                if (e.dirty) {
+                    l.add(e.savedState(serializer));
+                }
+            }
+
+            if (!l.isEmpty()) {
+                if (delegate instanceof BatchPersistenceManager) {
+                    ((BatchPersistenceManager) delegate).write(l, new ArrayList<UUID>());
+                } else {
+                    for (DefaultExecution e : l) {
+                        delegate.save(e);
+                    }
+                }
+            }
+
+            for (Entry e : locked) {
+                e.dirty = false;
+            }
+        } finally {
+            for (Entry e : locked) {
+                e.lock.unlock();
+            }
+        }
+
+        for (Entry e : locked) {
+            unwritten.remove(e.execution.getId(), e);
+        }
+
+        log.debug("flush -> done ({})", l.size());
+    }
+
+    /**
+     * Flushes unwritten changes and clears the cache.
+     */
+    public void close() {
+        flush();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Returns the cache statistics: hit and miss counts, hit ratio, number of
+     * evictions.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Returns the approximate number of cached executions.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    private void onEviction(RemovalNotification<UUID, Entry> n) {
+        if (!n.wasEvicted()) {
+            return;
+        }
+
+        Entry e = n.getValue();
+        if (e == null) {
+            return;
+        }
+
+        // the entry stays in the unwritten ones until written, get() finds
+        // it there and waits for the lock
+        e.lock.lock();
+        try {
+            if (e.dirty) {
+                delegate.save(e.savedState(serializer));
+                e.dirty = false;
+                log.debug("onEviction ['{}'] -> written ({})", n.getKey(), n.getCause());
+            }
+        } finally {
+            e.lock.unlock();
+        }
+
+        unwritten.remove(n.getKey(), e);
+    }
+
+    private static final class Entry {
+
+        private final DefaultExecution execution;
+        private final Lock lock = new ReentrantLock();
+
+        /**
+         * Guarded by the lock.
+         */
+        private boolean dirty;
+
+        /**
+         * The saved state of the execution, while the instance is handed out.
+         * Guarded by the lock.
+         */
+        private byte[] snapshot;
+
+        private Entry(DefaultExecution execution, boolean dirty) {
+            this.execution = execution;
+            this.dirty = dirty;
+        }
+
+        /**
+         * Hands out the execution, keeping a snapshot of its saved state. If
+         * the instance is already handed out, i.e. the previous run didn't
+         * save it, a new instance is restored from the snapshot.
+         */
+        private DefaultExecution checkOut(Serializer serializer) {
+            if (snapshot != null) {
+                return (DefaultExecution) serializer.fromBytes(snapshot);
+            }
+
+            byte[] b = serializer.toBytes(execution);
+            if (b == null) {
+                throw new IllegalStateException("Unable to take a snapshot of the execution '" + execution.getId() + "'");
+            }
+            snapshot = b;
+            return execution;
+        }
+
+        /**
+         * Returns the state of the execution as of the last save.
+         */
+        private DefaultExecution savedState(Serializer serializer) {
+            if (snapshot != null) {
+                return (DefaultExecution) serializer.fromBytes(snapshot);
+            }
+            return execution;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package jet.bpm.engine.persistence;
+
+/**
+ * Durability of execution writes. Constants are ordered from the weakest to
+ * the strongest guarantee.
+ */
+public enum Durability {
+
+    /**
+     * Writes are never explicitly synced to disk, the OS decides when to
+     * flush them.
+     */
+    NONE,
+
+    /**
+     * Writes are not synced, but the storage is periodically flushed in the
+     * background. Only the last flush interval can be lost on a crash.
+     */
+    ASYNC_FLUSH,
+
+    /**
+     * The writer waits until its write is synced to disk, but one sync is
+     * shared by all concurrent writers.
+     */
+    GROUP_COMMIT,
+
+    /**
+     * Each write is synced to disk before returning.
+     */
+    SYNC
+}
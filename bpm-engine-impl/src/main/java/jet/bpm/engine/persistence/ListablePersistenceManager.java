@@ -0,0 +1,15 @@
+package jet.bpm.engine.persistence;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Persistence manager, which is able to list the stored executions.
+ */
+public interface ListablePersistenceManager extends PersistenceManager {
+
+    /**
+     * Returns IDs of all stored executions.
+     */
+    Collection<UUID> getIds();
+}
@@ -1,12 +1,14 @@
 package jet.bpm.engine.persistence;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Map;
 import java.util.UUID;
 import jet.bpm.engine.DefaultExecution;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class MapPersistenceManager implements PersistenceManager {
+public class MapPersistenceManager implements BatchPersistenceManager, ListablePersistenceManager {
 
     private static final Logger log = LoggerFactory.getLogger(MapPersistenceManager.class);
     
@@ -32,5 +34,21 @@ public class MapPersistenceManager implements PersistenceManager {
         DefaultExecution e = delegate.remove(id);
         log.debug("remove ['{}'] -> done (found: {})", id, e != null);
         return e;
-    }    
+    }
+
+    @Override
+    public void write(Collection<DefaultExecution> toSave, Collection<UUID> toRemove) {
+        for (DefaultExecution s : toSave) {
+            delegate.put(s.getId(), s);
+        }
+        for (UUID id : toRemove) {
+            delegate.remove(id);
+        }
+        log.debug("write -> done (saved: {}, removed: {})", toSave.size(), toRemove.size());
+    }
+
+    @Override
+    public Collection<UUID> getIds() {
+        return new ArrayList<>(delegate.keySet());
+    }
 }
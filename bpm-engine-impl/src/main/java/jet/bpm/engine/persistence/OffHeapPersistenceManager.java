@@ -0,0 +1,241 @@
+package jet.bpm.engine.persistence;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import jet.bpm.engine.DefaultExecution;
+import jet.bpm.engine.leveldb.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps serialized executions in off-heap memory, so suspended executions
+ * don't add to the heap and to GC pauses. Values are stored in slabs of
+ * direct memory (see {@link SlabAllocator}), the index from execution IDs to
+ * values is kept on primitive arrays. When the memory limit is reached, new
+ * slabs are mapped from the spill file, if it is set.
+ * <p/>
+ * Executions are not persistent: the content is lost on {@link #stop()}.
+ */
+public class OffHeapPersistenceManager implements BatchPersistenceManager {
+
+    private static final Logger log = LoggerFactory.getLogger(OffHeapPersistenceManager.class);
+
+    public static final int DEFAULT_SLAB_SIZE = 1024 * 1024;
+    public static final long DEFAULT_MAX_MEMORY = 256L * 1024 * 1024;
+
+    private static final int STRIPES = 16;
+
+    private final Serializer serializer;
+
+    private int slabSize = DEFAULT_SLAB_SIZE;
+    private long maxMemory = DEFAULT_MAX_MEMORY;
+    private File spillFile;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private volatile SlabAllocator allocator;
+
+    public OffHeapPersistenceManager(Serializer serializer) {
+        this.serializer = serializer;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Sets the size of memory slabs, in bytes. Executions larger than a slab
+     * get a slab of their own.
+     */
+    public void setSlabSize(int slabSize) {
+        if (slabSize < 1024 || slabSize % 8 != 0) {
+            throw new IllegalArgumentException("Invalid slab size: " + slabSize);
+        }
+        this.slabSize = slabSize;
+    }
+
+    /**
+     * Sets the limit of direct memory, in bytes.
+     */
+    public void setMaxMemory(long maxMemory) {
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * Sets the file, which is used when the memory limit is reached. If not
+     * set, saving executions beyond the limit fails. The file is recreated on
+     * start and deleted on stop.
+     */
+    public void setSpillFile(File spillFile) {
+        this.spillFile = spillFile;
+    }
+
+    public synchronized void start() {
+        allocator = new SlabAllocator(slabSize, maxMemory, spillFile);
+        log.info("start -> done (slab size: {}, max memory: {}, spill file: {})", slabSize, maxMemory, spillFile);
+    }
+
+    public synchronized void stop() {
+        for (Stripe s : stripes) {
+            s.lock.writeLock().lock();
+            try {
+                s.index.clear();
+            } finally {
+                s.lock.writeLock().unlock();
+            }
+        }
+
+        if (allocator != null) {
+            allocator.close();
+            allocator = null;
+        }
+    }
+
+    @Override
+    public void save(DefaultExecution execution) {
+        UUID id = execution.getId();
+        byte[] bytes = serializer.toBytes(execution);
+
+        SlabAllocator a = allocator;
+        Stripe s = stripe(id);
+        s.lock.writeLock().lock();
+        try {
+            long msb = id.getMostSignificantBits();
+            long lsb = id.getLeastSignificantBits();
+
+            int slot = s.index.indexOf(msb, lsb);
+            if (slot >= 0) {
+                long prevAddress = s.index.address(slot);
+                int prevLength = s.index.length(slot);
+
+                if (a.chunkSize(prevLength) == a.chunkSize(bytes.length)) {
+                    // fits into the same chunk
+                    a.write(prevAddress, bytes);
+                    s.index.put(msb, lsb, prevAddress, bytes.length);
+                } else {
+                    long address = a.allocate(bytes.length);
+                    a.write(address, bytes);
+                    s.index.put(msb, lsb, address, bytes.length);
+                    a.free(prevAddress, prevLength);
+                }
+            } else {
+                long address = a.allocate(bytes.length);
+                a.write(address, bytes);
+                s.index.put(msb, lsb, address, bytes.length);
+            }
+        } finally {
+            s.lock.writeLock().unlock();
+        }
+
+        log.debug("save ['{}'] -> done ({} bytes)", id, bytes.length);
+    }
+
+    @Override
+    public DefaultExecution get(UUID id) {
+        byte[] bytes;
+
+        Stripe s = stripe(id);
+        s.lock.readLock().lock();
+        try {
+            int slot = s.index.indexOf(id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (slot < 0) {
+                return null;
+            }
+            bytes = allocator.read(s.index.address(slot), s.index.length(slot));
+        } finally {
+            s.lock.readLock().unlock();
+        }
+
+        return (DefaultExecution) serializer.fromBytes(bytes);
+    }
+
+    @Override
+    public DefaultExecution remove(UUID id) {
+        byte[] bytes;
+
+        SlabAllocator a = allocator;
+        Stripe s = stripe(id);
+        s.lock.writeLock().lock();
+        try {
+            int slot = s.index.indexOf(id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (slot < 0) {
+                log.debug("remove ['{}'] -> done (found: false)", id);
+                return null;
+            }
+
+            long address = s.index.address(slot);
+            int length = s.index.length(slot);
+            bytes = a.read(address, length);
+
+            s.index.remove(slot);
+            a.free(address, length);
+        } finally {
+            s.lock.writeLock().unlock();
+        }
+
+        log.debug("remove ['{}'] -> done (found: true)", id);
+        return (DefaultExecution) serializer.fromBytes(bytes);
+    }
+
+    @Override
+    public void write(Collection<DefaultExecution> toSave, Collection<UUID> toRemove) {
+        for (DefaultExecution e : toSave) {
+            save(e);
+        }
+        for (UUID id : toRemove) {
+            remove(id);
+        }
+        log.debug("write -> done (saved: {}, removed: {})", toSave.size(), toRemove.size());
+    }
+
+    /**
+     * Returns the number of stored executions.
+     */
+    public int getSize() {
+        int size = 0;
+        for (Stripe s : stripes) {
+            s.lock.readLock().lock();
+            try {
+                size += s.index.size();
+            } finally {
+                s.lock.readLock().unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the amount of memory taken by stored executions, including the
+     * unused space of their chunks.
+     */
+    public long getUsedMemory() {
+        return allocator.getUsedMemory();
+    }
+
+    /**
+     * Returns the amount of direct memory in slabs.
+     */
+    public long getAllocatedMemory() {
+        return allocator.getAllocatedMemory();
+    }
+
+    /**
+     * Returns the amount of slabs mapped from the spill file.
+     */
+    public long getSpilledMemory() {
+        return allocator.getSpilledMemory();
+    }
+
+    private Stripe stripe(UUID id) {
+        int h = id.hashCode();
+        h ^= h >>> 16;
+        return stripes[h & (STRIPES - 1)];
+    }
+
+    private static final class Stripe {
+
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final UuidIndex index = new UuidIndex(64);
+    }
+}
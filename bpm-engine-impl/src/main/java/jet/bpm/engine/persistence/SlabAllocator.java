@@ -0,0 +1,287 @@
+package jet.bpm.engine.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Allocates chunks of off-heap memory. Memory is taken in slabs of a fixed
+ * size, each slab is cut into chunks of one size class. Freed chunks go to
+ * the free list of their class and are reused by later allocations. Values
+ * larger than a slab get a slab of their own, which is released when freed.
+ * <p/>
+ * When the memory limit is reached, new slabs are mapped from the spill
+ * file, if it is set. Chunks are addressed by the slab number (high 32 bits)
+ * and the offset in the slab (low 32 bits).
+ */
+final class SlabAllocator {
+
+    private static final Logger log = LoggerFactory.getLogger(SlabAllocator.class);
+
+    private static final int MIN_CHUNK_SIZE = 64;
+    private static final double GROWTH_FACTOR = 1.25;
+
+    private final int slabSize;
+    private final long maxMemory;
+    private final File spillFile;
+
+    private final int[] chunkSizes;
+    private final LongStack[] freeLists;
+    private final int[] currentSlabs;
+    private final int[] currentOffsets;
+
+    private volatile Slab[] slabs = new Slab[16];
+    private int slabCount;
+    private final Deque<Integer> freeSlabs = new ArrayDeque<>();
+
+    private long allocatedMemory;
+    private long spilledMemory;
+    private long usedMemory;
+
+    private RandomAccessFile spill;
+    private long spillLength;
+
+    SlabAllocator(int slabSize, long maxMemory, File spillFile) {
+        this.slabSize = slabSize;
+        this.maxMemory = maxMemory;
+        this.spillFile = spillFile;
+
+        int[] sizes = new int[64];
+        int n = 0;
+        for (double s = MIN_CHUNK_SIZE; s < slabSize; s *= GROWTH_FACTOR) {
+            // 8-byte aligned
+            int size = ((int) s + 7) & ~7;
+            if (n == 0 || size > sizes[n - 1]) {
+                if (n == sizes.length) {
+                    sizes = Arrays.copyOf(sizes, n * 2);
+                }
+                sizes[n++] = size;
+            }
+        }
+        if (n == 0 || sizes[n - 1] < slabSize) {
+            if (n == sizes.length) {
+                sizes = Arrays.copyOf(sizes, n + 1);
+            }
+            sizes[n++] = slabSize;
+        }
+
+        this.chunkSizes = Arrays.copyOf(sizes, n);
+        this.freeLists = new LongStack[n];
+        for (int i = 0; i < n; i++) {
+            freeLists[i] = new LongStack();
+        }
+        this.currentSlabs = new int[n];
+        Arrays.fill(currentSlabs, -1);
+        this.currentOffsets = new int[n];
+    }
+
+    /**
+     * Returns the size of the chunk, which holds a value of the specified
+     * size.
+     */
+    int chunkSize(int size) {
+        int i = sizeClass(size);
+        return i >= 0 ? chunkSizes[i] : size;
+    }
+
+    synchronized long allocate(int size) {
+        int cls = sizeClass(size);
+        if (cls < 0) {
+            // a large value, gets a slab of its own
+            int slab = newSlab(size);
+            usedMemory += size;
+            return address(slab, 0);
+        }
+
+        int chunkSize = chunkSizes[cls];
+
+        LongStack free = freeLists[cls];
+        if (!free.isEmpty()) {
+            usedMemory += chunkSize;
+            return free.pop();
+        }
+
+        int slab = currentSlabs[cls];
+        if (slab < 0 || currentOffsets[cls] + chunkSize > slabSize) {
+            slab = newSlab(slabSize);
+            currentSlabs[cls] = slab;
+            currentOffsets[cls] = 0;
+        }
+
+        int offset = currentOffsets[cls];
+        currentOffsets[cls] += chunkSize;
+        usedMemory += chunkSize;
+        return address(slab, offset);
+    }
+
+    synchronized void free(long address, int size) {
+        int cls = sizeClass(size);
+        if (cls < 0) {
+            int slab = (int) (address >>> 32);
+            Slab b = slabs[slab];
+            if (b.spilled) {
+                // the space of the spill file isn't reused
+                spilledMemory -= b.buffer.capacity();
+            } else {
+                allocatedMemory -= b.buffer.capacity();
+            }
+            slabs[slab] = null;
+            freeSlabs.push(slab);
+            usedMemory -= size;
+            return;
+        }
+
+        usedMemory -= chunkSizes[cls];
+        freeLists[cls].push(address);
+    }
+
+    void write(long address, byte[] value) {
+        ByteBuffer b = slabs[(int) (address >>> 32)].buffer.duplicate();
+        b.position((int) address);
+        b.put(value);
+    }
+
+    byte[] read(long address, int size) {
+        byte[] value = new byte[size];
+        ByteBuffer b = slabs[(int) (address >>> 32)].buffer.duplicate();
+        b.position((int) address);
+        b.get(value);
+        return value;
+    }
+
+    synchronized long getAllocatedMemory() {
+        return allocatedMemory;
+    }
+
+    synchronized long getSpilledMemory() {
+        return spilledMemory;
+    }
+
+    synchronized long getUsedMemory() {
+        return usedMemory;
+    }
+
+    synchronized void close() {
+        slabs = new Slab[16];
+        slabCount = 0;
+        freeSlabs.clear();
+        for (LongStack s : freeLists) {
+            s.clear();
+        }
+        Arrays.fill(currentSlabs, -1);
+        allocatedMemory = 0;
+        spilledMemory = 0;
+        usedMemory = 0;
+
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException e) {
+                log.warn("close ['{}'] -> error", spillFile, e);
+            }
+            spill = null;
+            spillLength = 0;
+            spillFile.delete();
+        }
+    }
+
+    private int sizeClass(int size) {
+        if (size > slabSize) {
+            return -1;
+        }
+
+        int i = Arrays.binarySearch(chunkSizes, size);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    private int newSlab(int capacity) {
+        Slab b;
+        if (allocatedMemory + capacity <= maxMemory) {
+            b = new Slab(ByteBuffer.allocateDirect(capacity), false);
+            allocatedMemory += capacity;
+        } else if (spillFile != null) {
+            b = new Slab(spill(capacity), true);
+            spilledMemory += capacity;
+        } else {
+            throw new IllegalStateException("Off-heap memory limit reached: " + maxMemory + " bytes");
+        }
+
+        int slab;
+        if (!freeSlabs.isEmpty()) {
+            slab = freeSlabs.pop();
+        } else {
+            slab = slabCount++;
+            if (slab == slabs.length) {
+                slabs = Arrays.copyOf(slabs, slab * 2);
+            }
+        }
+
+        slabs[slab] = b;
+        return slab;
+    }
+
+    private ByteBuffer spill(int capacity) {
+        try {
+            if (spill == null) {
+                spill = new RandomAccessFile(spillFile, "rw");
+                spill.setLength(0);
+                log.info("spill ['{}'] -> memory limit reached, spilling to the file", spillFile);
+            }
+
+            ByteBuffer b = spill.getChannel().map(FileChannel.MapMode.READ_WRITE, spillLength, capacity);
+            spillLength += capacity;
+            return b;
+        } catch (IOException e) {
+            log.error("spill ['{}'] -> error", spillFile, e);
+            throw new IllegalStateException("Unable to map the spill file: " + spillFile, e);
+        }
+    }
+
+    private static long address(int slab, int offset) {
+        return ((long) slab << 32) | offset;
+    }
+
+    private static final class Slab {
+
+        private final ByteBuffer buffer;
+        private final boolean spilled;
+
+        private Slab(ByteBuffer buffer, boolean spilled) {
+            this.buffer = buffer;
+            this.spilled = spilled;
+        }
+    }
+
+    private static final class LongStack {
+
+        private long[] values = new long[16];
+        private int size;
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        private void push(long v) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = v;
+        }
+
+        private long pop() {
+            return values[--size];
+        }
+
+        private void clear() {
+            values = new long[16];
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package jet.bpm.engine.persistence;
+
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import jet.bpm.engine.DefaultExecution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps recently active executions in a fast (hot) tier and moves idle ones
+ * to a slow (cold) tier, e.g. an in-memory or off-heap manager in front of
+ * LevelDB or MapDB.
+ * <p/>
+ * Saved executions always go to the hot tier. Executions, which were not
+ * accessed for {@link #setMaxIdleTime(long)}, are demoted to the cold tier
+ * in the background. An execution loaded from the cold tier is promoted
+ * when it is saved again: it is written to the hot tier and only then
+ * removed from the cold one.
+ * <p/>
+ * By default, the hot tier holds the only copy of an execution until it is
+ * demoted. If the hot tier is volatile (e.g. {@link MapPersistenceManager}
+ * or {@link OffHeapPersistenceManager}), a crash loses all executions saved
+ * within the max idle time. Use a durable hot tier or
+ * {@link #setWriteThrough(boolean)}, which writes every save to the cold
+ * tier as well; then the hot tier only speeds up reads.
+ * <p/>
+ * The tiers of executions are tracked in memory. {@link #start()} tracks
+ * executions, which are already in a {@link ListablePersistenceManager} hot
+ * tier. Executions are always looked up in the hot tier first, so after a
+ * restart the newest copy is found even if the process stopped in the middle
+ * of a promotion. {@link #stop()} demotes all executions. The idle time must
+ * be longer than the longest engine run, otherwise an execution can be
+ * demoted while the engine still works with it.
+ */
+public class TieredPersistenceManager implements BatchPersistenceManager {
+
+    private static final Logger log = LoggerFactory.getLogger(TieredPersistenceManager.class);
+
+    public static final long DEFAULT_MAX_IDLE_TIME = 5 * 60 * 1000;
+    public static final long DEFAULT_DEMOTION_INTERVAL = 10 * 1000;
+
+    private final PersistenceManager hot;
+    private final PersistenceManager cold;
+
+    private final Striped<Lock> locks = Striped.lock(64);
+
+    /**
+     * Executions of the hot tier and their last access times.
+     */
+    private final ConcurrentMap<UUID, Long> lastAccess = new ConcurrentHashMap<>();
+
+    /**
+     * Executions loaded from the cold tier and not saved yet, and their load
+     * times. Executions, which are never saved (e.g. a failed run), are
+     * dropped by the demotion.
+     */
+    private final ConcurrentMap<UUID, Long> promoting = new ConcurrentHashMap<>();
+
+    private final AtomicLong hotHits = new AtomicLong();
+    private final AtomicLong coldHits = new AtomicLong();
+    private final AtomicLong promotions = new AtomicLong();
+    private final AtomicLong demotions = new AtomicLong();
+
+    private long maxIdleTime = DEFAULT_MAX_IDLE_TIME;
+    private long demotionInterval = DEFAULT_DEMOTION_INTERVAL;
+    private boolean writeThrough = false;
+
+    private ScheduledExecutorService executor;
+
+    public TieredPersistenceManager(PersistenceManager hot, PersistenceManager cold) {
+        this.hot = hot;
+        this.cold = cold;
+    }
+
+    public PersistenceManager getHotTier() {
+        return hot;
+    }
+
+    public PersistenceManager getColdTier() {
+        return cold;
+    }
+
+    /**
+     * Sets the time in milliseconds, after which an execution, which was not
+     * accessed, is demoted to the cold tier.
+     */
+    public void setMaxIdleTime(long maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    /**
+     * Sets the interval in milliseconds between checks for idle executions.
+     * If 0, executions are demoted only by {@link #demote()}.
+     */
+    public void setDemotionInterval(long demotionInterval) {
+        this.demotionInterval = demotionInterval;
+    }
+
+    /**
+     * If <code>true</code>, saved executions are written to the cold tier as
+     * well, so a crash loses nothing even with a volatile hot tier.
+     */
+    public void setWriteThrough(boolean writeThrough) {
+        this.writeThrough = writeThrough;
+    }
+
+    public boolean isWriteThrough() {
+        return writeThrough;
+    }
+
+    public synchronized void start() {
+        track();
+
+        if (demotionInterval <= 0) {
+            return;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("tieredStorageThread-%d")
+                .setDaemon(true)
+                .build());
+
+        executor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    demote();
+                } catch (Exception e) {
+                    log.error("demote -> error", e);
+                }
+            }
+        }, demotionInterval, demotionInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background demotion and demotes all executions to the cold
+     * tier.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(demotionInterval, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+
+        int n = demote(Long.MAX_VALUE);
+        log.info("stop -> done ({} demoted)", n);
+    }
+
+    @Override
+    public void save(DefaultExecution execution) {
+        UUID id = execution.getId();
+
+        Lock l = locks.get(id);
+        l.lock();
+        try {
+            // the hot copy is written first, it must never be older than the
+            // cold one
+            hot.save(execution);
+            if (writeThrough) {
+                cold.save(execution);
+            }
+            lastAccess.put(id, System.currentTimeMillis());
+
+            if (promoting.remove(id) != null) {
+                if (!writeThrough) {
+                    cold.remove(id);
+                }
+                promotions.incrementAndGet();
+                log.debug("save ['{}'] -> promoted", id);
+            }
+        } finally {
+            l.unlock();
+        }
+    }
+
+    @Override
+    public DefaultExecution get(UUID id) {
+        Lock l = locks.get(id);
+        l.lock();
+        try {
+            boolean tracked = lastAccess.containsKey(id);
+
+            // the hot copy is never older than the cold one: a promotion
+            // writes the hot tier before it removes the cold copy, a
+            // demotion writes the cold tier before it removes the hot copy
+            DefaultExecution e = hot.get(id);
+            if (e != null) {
+                if (!tracked && !writeThrough) {
+                    // not tracked, e.g. a persistent hot tier after a
+                    // restart. A stale cold copy is left, if the process
+                    // stopped in the middle of a promotion
+                    cold.remove(id);
+                }
+                onHotHit(id);
+                return e;
+            }
+
+            e = cold.get(id);
+            if (e != null) {
+                coldHits.incrementAndGet();
+                promoting.put(id, System.currentTimeMillis());
+            }
+            return e;
+        } finally {
+            l.unlock();
+        }
+    }
+
+    @Override
+    public DefaultExecution remove(UUID id) {
+        Lock l = locks.get(id);
+        l.lock();
+        try {
+            boolean wasHot = lastAccess.remove(id) != null;
+            boolean wasPromoting = promoting.remove(id) != null;
+
+            DefaultExecution e = null;
+            if (writeThrough || !wasHot || wasPromoting) {
+                e = cold.remove(id);
+            }
+            if (wasHot || !wasPromoting) {
+                DefaultExecution h = hot.remove(id);
+                if (h != null) {
+                    e = h;
+                }
+            }
+            return e;
+        } finally {
+            l.unlock();
+        }
+    }
+
+    @Override
+    public void write(Collection<DefaultExecution> toSave, Collection<UUID> toRemove) {
+        List<UUID> ids = new ArrayList<>(toSave.size() + toRemove.size());
+        for (DefaultExecution e : toSave) {
+            ids.add(e.getId());
+        }
+        ids.addAll(toRemove);
+
+        // bulkGet returns locks in a consistent order
+        List<Lock> ls = new ArrayList<>();
+        for (Lock l : locks.bulkGet(ids)) {
+            l.lock();
+            ls.add(l);
+        }
+
+        try {
+            List<UUID> hotRemoves = new ArrayList<>();
+            List<UUID> coldRemoves = new ArrayList<>();
+
+            for (UUID id : toRemove) {
+                boolean wasHot = lastAccess.remove(id) != null;
+                boolean wasPromoting = promoting.remove(id) != null;
+
+                if (writeThrough || !wasHot || wasPromoting) {
+                    coldRemoves.add(id);
+                }
+                if (wasHot || !wasPromoting) {
+                    hotRemoves.add(id);
+                }
+            }
+
+            int promoted = 0;
+            for (DefaultExecution e : toSave) {
+                if (promoting.remove(e.getId()) != null) {
+                    if (!writeThrough) {
+                        coldRemoves.add(e.getId());
+                    }
+                    promoted++;
+                }
+            }
+
+            // the cold tier is written only after the hot one
+            write(hot, toSave, hotRemoves);
+            write(cold, writeThrough ? toSave : Collections.<DefaultExecution>emptyList(), coldRemoves);
+
+            long now = System.currentTimeMillis();
+            for (DefaultExecution e : toSave) {
+                lastAccess.put(e.getId(), now);
+            }
+            promotions.addAndGet(promoted);
+        } finally {
+            for (int i = ls.size() - 1; i >= 0; i--) {
+                ls.get(i).unlock();
+            }
+        }
+
+        log.debug("write -> done (saved: {}, removed: {})", toSave.size(), toRemove.size());
+    }
+
+    /**
+     * Moves executions, which were not accessed for the max idle time, to the
+     * cold tier. Executions, which were loaded from the cold tier as long
+     * ago and never saved, stop being promoted.
+     * @return the number of demoted executions.
+     */
+    public int demote() {
+        return demote(System.currentTimeMillis() - maxIdleTime);
+    }
+
+    /**
+     * Returns the number of executions in the hot tier.
+     */
+    public int getHotSize() {
+        return lastAccess.size();
+    }
+
+    /**
+     * Returns the number of executions loaded from the cold tier, which were
+     * not saved yet.
+     */
+    public int getPromotingSize() {
+        return promoting.size();
+    }
+
+    /**
+     * Returns the number of executions loaded from the hot tier.
+     */
+    public long getHotHits() {
+        return hotHits.get();
+    }
+
+    /**
+     * Returns the number of executions loaded from the cold tier.
+     */
+    public long getColdHits() {
+        return coldHits.get();
+    }
+
+    /**
+     * Returns the number of executions moved from the cold tier to the hot
+     * one.
+     */
+    public long getPromotions() {
+        return promotions.get();
+    }
+
+    /**
+     * Returns the number of executions moved from the hot tier to the cold
+     * one.
+     */
+    public long getDemotions() {
+        return demotions.get();
+    }
+
+    /**
+     * Tracks executions, which are already in the hot tier, e.g. a persistent
+     * one after a restart.
+     */
+    private void track() {
+        if (!(hot instanceof ListablePersistenceManager)) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<UUID> ids = new ArrayList<>();
+        for (UUID id : ((ListablePersistenceManager) hot).getIds()) {
+            if (lastAccess.putIfAbsent(id, now) == null) {
+                ids.add(id);
+            }
+        }
+
+        if (!writeThrough) {
+            // stale copies are left, if the process stopped in the middle of
+            // a promotion
+            write(cold, Collections.<DefaultExecution>emptyList(), ids);
+        }
+
+        log.info("track -> done ({} in the hot tier)", ids.size());
+    }
+
+    private int demote(long threshold) {
+        int n = 0;
+        for (Map.Entry<UUID, Long> en : lastAccess.entrySet()) {
+            if (en.getValue() <= threshold && demote(en.getKey(), threshold)) {
+                n++;
+            }
+        }
+
+        for (Map.Entry<UUID, Long> en : promoting.entrySet()) {
+            if (en.getValue() <= threshold) {
+                // the cold copy stays, it is still the current one
+                promoting.remove(en.getKey(), en.getValue());
+            }
+        }
+
+        if (n > 0) {
+            log.debug("demote -> done ({} demoted, {} in the hot tier)", n, lastAccess.size());
+        }
+        return n;
+    }
+
+    private boolean demote(UUID id, long threshold) {
+        Lock l = locks.get(id);
+        l.lock();
+        try {
+            // the execution could be accessed in the meantime
+            Long t = lastAccess.get(id);
+            if (t == null || t > threshold) {
+                return false;
+            }
+
+            DefaultExecution e = hot.get(id);
+            if (e != null) {
+                cold.save(e);
+                hot.remove(id);
+                demotions.incrementAndGet();
+            }
+            lastAccess.remove(id);
+            return e != null;
+        } finally {
+            l.unlock();
+        }
+    }
+
+    private void onHotHit(UUID id) {
+        hotHits.incrementAndGet();
+        lastAccess.put(id, System.currentTimeMillis());
+    }
+
+    private static void write(PersistenceManager pm, Collection<DefaultExecution> toSave, Collection<UUID> toRemove) {
+        if (toSave.isEmpty() && toRemove.isEmpty()) {
+            return;
+        }
+
+        if (pm instanceof BatchPersistenceManager) {
+            ((BatchPersistenceManager) pm).write(toSave, toRemove);
+            return;
+        }
+
+        for (DefaultExecution e : toSave) {
+            pm.save(e);
+        }
+        for (UUID id : toRemove) {
+            pm.remove(id);
+        }
+    }
+}
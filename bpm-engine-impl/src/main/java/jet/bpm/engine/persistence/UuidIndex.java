@@ -0,0 +1,136 @@
+package jet.bpm.engine.persistence;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table from UUIDs to addresses and lengths of values,
+ * on primitive arrays. Uses linear probing and backward shift deletion, so
+ * no tombstones are left behind. Not thread-safe.
+ */
+final class UuidIndex {
+
+    private static final long EMPTY = -1;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private long[] msbs;
+    private long[] lsbs;
+    private long[] addresses;
+    private int[] lengths;
+    private int mask;
+    private int size;
+
+    UuidIndex(int initialCapacity) {
+        int c = Integer.highestOneBit(Math.max(initialCapacity, 16) - 1) << 1;
+        init(c);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the slot of the UUID or -1, if it isn't found.
+     */
+    int indexOf(long msb, long lsb) {
+        int i = hash(msb, lsb) & mask;
+        while (addresses[i] != EMPTY) {
+            if (msbs[i] == msb && lsbs[i] == lsb) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    long address(int slot) {
+        return addresses[slot];
+    }
+
+    int length(int slot) {
+        return lengths[slot];
+    }
+
+    void put(long msb, long lsb, long address, int length) {
+        if (size + 1 > (int) (addresses.length * LOAD_FACTOR)) {
+            resize(addresses.length * 2);
+        }
+
+        int i = hash(msb, lsb) & mask;
+        while (addresses[i] != EMPTY) {
+            if (msbs[i] == msb && lsbs[i] == lsb) {
+                addresses[i] = address;
+                lengths[i] = length;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+
+        msbs[i] = msb;
+        lsbs[i] = lsb;
+        addresses[i] = address;
+        lengths[i] = length;
+        size++;
+    }
+
+    void remove(int slot) {
+        int i = slot;
+        int j = slot;
+        while (true) {
+            j = (j + 1) & mask;
+            if (addresses[j] == EMPTY) {
+                break;
+            }
+
+            // the entry stays if its home slot is cyclically in (i, j]
+            int k = hash(msbs[j], lsbs[j]) & mask;
+            if (i <= j ? i < k && k <= j : i < k || k <= j) {
+                continue;
+            }
+
+            msbs[i] = msbs[j];
+            lsbs[i] = lsbs[j];
+            addresses[i] = addresses[j];
+            lengths[i] = lengths[j];
+            i = j;
+        }
+
+        addresses[i] = EMPTY;
+        size--;
+    }
+
+    void clear() {
+        init(16);
+    }
+
+    private void init(int capacity) {
+        msbs = new long[capacity];
+        lsbs = new long[capacity];
+        addresses = new long[capacity];
+        Arrays.fill(addresses, EMPTY);
+        lengths = new int[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] oldMsbs = msbs;
+        long[] oldLsbs = lsbs;
+        long[] oldAddresses = addresses;
+        int[] oldLengths = lengths;
+
+        init(capacity);
+        for (int i = 0; i < oldAddresses.length; i++) {
+            if (oldAddresses[i] != EMPTY) {
+                put(oldMsbs[i], oldLsbs[i], oldAddresses[i], oldLengths[i]);
+            }
+        }
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = msb * 31 + lsb;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -0,0 +1,161 @@
+package jet.bpm.engine.persistence;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import jet.bpm.engine.DefaultExecution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Buffers changes made during a unit of work (usually, a single engine call
+ * for one process business key) and writes only the final state of each
+ * execution on {@link #flush()}. Outside of a unit of work all calls go
+ * straight to the delegate.
+ * <p/>
+ * Units of work are bound to the current thread and can be nested.
+ */
+public class WriteBehindPersistenceManager implements PersistenceManager {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindPersistenceManager.class);
+
+    private final PersistenceManager delegate;
+
+    /**
+     * Stack of active units of work. In each unit, a <code>null</code> value
+     * marks the removed execution.
+     */
+    private final ThreadLocal<Deque<Map<UUID, DefaultExecution>>> units = new ThreadLocal<Deque<Map<UUID, DefaultExecution>>>() {
+
+        @Override
+        protected Deque<Map<UUID, DefaultExecution>> initialValue() {
+            return new ArrayDeque<>();
+        }
+    };
+
+    public WriteBehindPersistenceManager(PersistenceManager delegate) {
+        this.delegate = delegate;
+    }
+
+    public PersistenceManager getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Starts a new unit of work in the current thread.
+     */
+    public void begin() {
+        units.get().push(new LinkedHashMap<UUID, DefaultExecution>());
+    }
+
+    /**
+     * Writes the buffered changes of the current unit of work and closes it.
+     */
+    public void flush() {
+        Map<UUID, DefaultExecution> m = pop();
+        if (m == null || m.isEmpty()) {
+            return;
+        }
+
+        List<DefaultExecution> toSave = new ArrayList<>(m.size());
+        List<UUID> toRemove = new ArrayList<>();
+        for (Map.Entry<UUID, DefaultExecution> e : m.entrySet()) {
+            DefaultExecution v = e.getValue();
+            if (v != null) {
+                toSave.add(v);
+            } else {
+                toRemove.add(e.getKey());
+            }
+        }
+
+        Deque<Map<UUID, DefaultExecution>> d = units.get();
+        if (!d.isEmpty()) {
+            // nested unit, merge changes into the outer one
+            Map<UUID, DefaultExecution> outer = d.peek();
+            outer.putAll(m);
+        } else {
+            write(toSave, toRemove);
+        }
+
+        log.debug("flush -> done (saved: {}, removed: {})", toSave.size(), toRemove.size());
+    }
+
+    /**
+     * Discards the buffered changes of the current unit of work and closes it.
+     */
+    public void discard() {
+        Map<UUID, DefaultExecution> m = pop();
+        log.debug("discard -> done ({})", m != null ? m.size() : 0);
+    }
+
+    @Override
+    public void save(DefaultExecution execution) {
+        Map<UUID, DefaultExecution> m = current();
+        if (m == null) {
+            delegate.save(execution);
+            return;
+        }
+
+        m.put(execution.getId(), execution);
+    }
+
+    @Override
+    public DefaultExecution get(UUID id) {
+        for (Map<UUID, DefaultExecution> m : units.get()) {
+            if (m.containsKey(id)) {
+                return m.get(id);
+            }
+        }
+
+        return delegate.get(id);
+    }
+
+    @Override
+    public DefaultExecution remove(UUID id) {
+        Map<UUID, DefaultExecution> m = current();
+        if (m == null) {
+            return delegate.remove(id);
+        }
+
+        DefaultExecution e = get(id);
+        m.put(id, null);
+        return e;
+    }
+
+    private Map<UUID, DefaultExecution> current() {
+        return units.get().peek();
+    }
+
+    private Map<UUID, DefaultExecution> pop() {
+        Deque<Map<UUID, DefaultExecution>> d = units.get();
+        if (d.isEmpty()) {
+            return null;
+        }
+
+        Map<UUID, DefaultExecution> m = d.pop();
+        if (d.isEmpty()) {
+            units.remove();
+        }
+        return m;
+    }
+
+    private void write(Collection<DefaultExecution> toSave, Collection<UUID> toRemove) {
+        if (delegate instanceof BatchPersistenceManager) {
+            ((BatchPersistenceManager) delegate).write(toSave, toRemove);
+            return;
+        }
+
+        for (DefaultExecution e : toSave) {
+            delegate.save(e);
+        }
+
+        for (UUID id : toRemove) {
+            delegate.remove(id);
+        }
+    }
+}
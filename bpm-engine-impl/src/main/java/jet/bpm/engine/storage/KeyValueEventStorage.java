@@ -0,0 +1,181 @@
+package jet.bpm.engine.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import jet.bpm.engine.event.Event;
+import jet.bpm.engine.event.EventStorage;
+import jet.bpm.engine.event.ExpiredEvent;
+import jet.bpm.engine.leveldb.Serializer;
+import jet.bpm.engine.leveldb.index.BusinessKeyEventIndex;
+import jet.bpm.engine.leveldb.index.EventNameIndex;
+import jet.bpm.engine.leveldb.index.ExpiredEventIndex;
+
+/**
+ * Event storage, which keeps events and their indexes in
+ * {@link KeyValueStore}s.
+ */
+public class KeyValueEventStorage implements EventStorage {
+
+    private final ExpiredEventIndex expiredEventIndex;
+    private final BusinessKeyEventIndex businessKeyEventIndex;
+    private final EventNameIndex eventNameIndex;
+    private final KeyValueStore eventStore;
+    private final Serializer serializer;
+
+    /**
+     * @param eventStore store of events.
+     * @param expiredEventIndexStore store of the expired event index.
+     * @param businessKeyEventIndexStore store of the business key index.
+     * @param eventNameIndexStore store of the event name index, can be null.
+     * Without this index, searching events by name requires a full scan of
+     * events.
+     * @param serializer serializer of events.
+     */
+    public KeyValueEventStorage(KeyValueStore eventStore, KeyValueStore expiredEventIndexStore,
+            KeyValueStore businessKeyEventIndexStore, KeyValueStore eventNameIndexStore, Serializer serializer) {
+
+        this.eventStore = eventStore;
+        this.expiredEventIndex = new ExpiredEventIndex(expiredEventIndexStore);
+        this.businessKeyEventIndex = new BusinessKeyEventIndex(businessKeyEventIndexStore, serializer);
+        this.eventNameIndex = eventNameIndexStore != null ? new EventNameIndex(eventNameIndexStore) : null;
+        this.serializer = serializer;
+    }
+
+    public void init() {
+        try {
+            eventStore.init();
+            expiredEventIndex.init();
+            businessKeyEventIndex.init();
+            if (eventNameIndex != null) {
+                eventNameIndex.init();
+            }
+        } catch (Exception e) {
+            close();
+        }
+    }
+
+    public void close() {
+        eventStore.close();
+        expiredEventIndex.close();
+        businessKeyEventIndex.close();
+        if (eventNameIndex != null) {
+            eventNameIndex.close();
+        }
+    }
+
+    @Override
+    public Event get(UUID id) {
+        byte[] eventBytes = eventStore.get(Keys.marshall(id));
+        return unmarshallEvent(eventBytes);
+    }
+
+    @Override
+    public Event remove(UUID id) {
+        byte[] keyBytes = Keys.marshall(id);
+        byte[] eventBytes = eventStore.get(keyBytes);
+        if (eventBytes == null) {
+            return null;
+        }
+
+        eventStore.delete(keyBytes);
+
+        Event e = unmarshallEvent(eventBytes);
+        expiredEventIndex.onRemove(e);
+        businessKeyEventIndex.onRemove(e);
+        if (eventNameIndex != null) {
+            eventNameIndex.onRemove(e);
+        }
+        return e;
+    }
+
+    @Override
+    public Collection<Event> find(String processBusinessKey, String eventName) {
+        Collection<Event> events = find(processBusinessKey);
+        for (Iterator<Event> i = events.iterator(); i.hasNext();) {
+            Event e = i.next();
+            if (!e.getName().equals(eventName)) {
+                i.remove();
+            }
+        }
+        return events;
+    }
+
+    @Override
+    public Collection<Event> find(String processBusinessKey) {
+        List<Event> result = new ArrayList<>();
+
+        Set<UUID> ids = businessKeyEventIndex.list(processBusinessKey);
+        for (UUID id : ids) {
+            Event e = get(id);
+            if (e != null) {
+                result.add(e);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void add(Event event) {
+        expiredEventIndex.onAdd(event);
+        businessKeyEventIndex.onAdd(event);
+        if (eventNameIndex != null) {
+            eventNameIndex.onAdd(event);
+        }
+        eventStore.put(Keys.marshall(event.getId()), marshallEvent(event));
+    }
+
+    @Override
+    public List<UUID> findIds(String eventName, UUID after, int maxEvents) {
+        if (eventNameIndex != null) {
+            return eventNameIndex.list(eventName, after, maxEvents);
+        }
+
+        // no index, scanning all events
+        List<UUID> result = new ArrayList<>();
+        try (KeyValueIterator it = eventStore.iterator()) {
+            if (after != null) {
+                it.seek(Keys.marshall(after));
+                if (it.hasNext() && Keys.unmarshall(it.peekNext().getKey()).equals(after)) {
+                    it.next();
+                }
+            } else {
+                it.seekToFirst();
+            }
+
+            while (it.hasNext() && result.size() < maxEvents) {
+                Map.Entry<byte[], byte[]> entry = it.next();
+                Event e = unmarshallEvent(entry.getValue());
+                if (eventName.equals(e.getName())) {
+                    result.add(e.getId());
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("call 'findIds' error", e);
+        }
+        return result;
+    }
+
+    @Override
+    public List<ExpiredEvent> findNextExpiredEvent(int maxEvents) {
+        return expiredEventIndex.list(new Date(), maxEvents);
+    }
+
+    private byte[] marshallEvent(Event event) {
+        return serializer.toBytes(event);
+    }
+
+    private Event unmarshallEvent(byte[] event) {
+        if (event == null) {
+            return null;
+        }
+
+        return (Event) serializer.fromBytes(event);
+    }
+}
@@ -0,0 +1,21 @@
+package jet.bpm.engine.storage;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Iterator over entries of a {@link KeyValueStore}, in the key order.
+ */
+public interface KeyValueIterator extends Iterator<Map.Entry<byte[], byte[]>>, Closeable {
+
+    /**
+     * Positions the iterator at the first entry with a key greater than or
+     * equal to the specified key.
+     */
+    void seek(byte[] key);
+
+    void seekToFirst();
+
+    Map.Entry<byte[], byte[]> peekNext();
+}
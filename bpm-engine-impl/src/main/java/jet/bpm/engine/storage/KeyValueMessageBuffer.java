@@ -0,0 +1,170 @@
+package jet.bpm.engine.storage;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import jet.bpm.engine.event.BufferedMessage;
+import jet.bpm.engine.event.MessageBuffer;
+import jet.bpm.engine.leveldb.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Durable message buffer, which keeps messages in a {@link KeyValueStore}.
+ * Messages of a process are stored under its business key, so buffered
+ * messages survive restarts of the engine. Messages expire after the
+ * configured time to live.
+ * <p/>
+ * Updates are read-modify-write of the process' list of messages, they are
+ * serialized by the buffer's monitor.
+ */
+public class KeyValueMessageBuffer implements MessageBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyValueMessageBuffer.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final KeyValueStore store;
+    private final Serializer serializer;
+    private final long ttl;
+
+    /**
+     * @param store store of messages.
+     * @param serializer serializer of messages and their variables.
+     * @param ttl time to live of messages, in milliseconds.
+     */
+    public KeyValueMessageBuffer(KeyValueStore store, Serializer serializer, long ttl) {
+        this.store = store;
+        this.serializer = serializer;
+        this.ttl = ttl;
+    }
+
+    public void init() {
+        store.init();
+    }
+
+    public void close() {
+        store.close();
+    }
+
+    @Override
+    public synchronized void add(String processBusinessKey, String eventName, Map<String, Object> variables) {
+        BufferedMessage m = new BufferedMessage(processBusinessKey, eventName, variables,
+                new Date(System.currentTimeMillis() + ttl));
+
+        byte[] key = marshallKey(processBusinessKey);
+        List<BufferedMessage> l = list(key);
+        l.add(m);
+        store.put(key, marshallValue(l));
+
+        log.debug("add ['{}', '{}'] -> done", processBusinessKey, eventName);
+    }
+
+    @Override
+    public boolean hasMessages(String processBusinessKey) {
+        return store.get(marshallKey(processBusinessKey)) != null;
+    }
+
+    @Override
+    public synchronized BufferedMessage poll(String processBusinessKey, String eventName) {
+        byte[] key = marshallKey(processBusinessKey);
+        List<BufferedMessage> l = list(key);
+        if (l.isEmpty()) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        int size = l.size();
+
+        BufferedMessage result = null;
+        for (Iterator<BufferedMessage> i = l.iterator(); i.hasNext();) {
+            BufferedMessage m = i.next();
+            if (m.isExpired(now)) {
+                i.remove();
+            } else if (m.getEventName().equals(eventName)) {
+                i.remove();
+                result = m;
+                break;
+            }
+        }
+
+        if (l.isEmpty()) {
+            store.delete(key);
+        } else if (l.size() != size) {
+            store.put(key, marshallValue(l));
+        }
+
+        return result;
+    }
+
+    /**
+     * Removes expired messages of all processes.
+     */
+    public synchronized void purgeExpired() {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+
+        Map<byte[], byte[]> puts = new HashMap<>();
+        List<byte[]> deletes = new ArrayList<>();
+
+        try (KeyValueIterator i = store.iterator()) {
+            i.seekToFirst();
+            while (i.hasNext()) {
+                Map.Entry<byte[], byte[]> e = i.next();
+                List<BufferedMessage> l = unmarshallValue(e.getValue());
+
+                int size = l.size();
+                for (Iterator<BufferedMessage> j = l.iterator(); j.hasNext();) {
+                    if (j.next().isExpired(now)) {
+                        j.remove();
+                    }
+                }
+
+                if (l.size() == size) {
+                    continue;
+                }
+
+                removed += size - l.size();
+                if (l.isEmpty()) {
+                    deletes.add(e.getKey());
+                } else {
+                    puts.put(e.getKey(), marshallValue(l));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("call 'purgeExpired' error", e);
+        }
+
+        if (!puts.isEmpty() || !deletes.isEmpty()) {
+            store.write(puts, deletes, null);
+        }
+
+        log.debug("purgeExpired -> done ({})", removed);
+    }
+
+    private List<BufferedMessage> list(byte[] key) {
+        byte[] value = store.get(key);
+        if (value == null) {
+            return new ArrayList<>();
+        }
+        return unmarshallValue(value);
+    }
+
+    private static byte[] marshallKey(String processBusinessKey) {
+        return processBusinessKey.getBytes(UTF8);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<BufferedMessage> unmarshallValue(byte[] value) {
+        return (List<BufferedMessage>) serializer.fromBytes(value);
+    }
+
+    private byte[] marshallValue(List<BufferedMessage> value) {
+        return serializer.toBytes(new ArrayList<>(value));
+    }
+}
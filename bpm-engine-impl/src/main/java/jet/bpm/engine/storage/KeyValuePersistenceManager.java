@@ -0,0 +1,111 @@
+package jet.bpm.engine.storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import jet.bpm.engine.DefaultExecution;
+import jet.bpm.engine.leveldb.Serializer;
+import jet.bpm.engine.persistence.BatchPersistenceManager;
+import jet.bpm.engine.persistence.Durability;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistence manager, which stores executions in a {@link KeyValueStore}.
+ */
+public class KeyValuePersistenceManager implements BatchPersistenceManager {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyValuePersistenceManager.class);
+
+    private final KeyValueStore store;
+    private final Serializer serializer;
+    private volatile Durability defaultDurability = Durability.SYNC;
+
+    public KeyValuePersistenceManager(KeyValueStore store, Serializer serializer) {
+        this.store = store;
+        this.serializer = serializer;
+    }
+
+    /**
+     * Sets the durability of execution writes, {@link Durability#SYNC} by
+     * default.
+     */
+    public void setDefaultDurability(Durability defaultDurability) {
+        this.defaultDurability = defaultDurability;
+    }
+
+    public void init() {
+        store.init();
+    }
+
+    public void close() {
+        store.close();
+    }
+
+    @Override
+    public void save(DefaultExecution execution) {
+        Durability d = getDurability(execution);
+        store.put(Keys.marshall(execution.getId()), serializer.toBytes(execution), d);
+        log.debug("save ['{}'] -> done ({})", execution.getId(), d);
+    }
+
+    @Override
+    public DefaultExecution get(UUID id) {
+        return unmarshallValue(store.get(Keys.marshall(id)));
+    }
+
+    @Override
+    public DefaultExecution remove(UUID id) {
+        byte[] key = Keys.marshall(id);
+        DefaultExecution e = unmarshallValue(store.get(key));
+        store.delete(key);
+        return e;
+    }
+
+    @Override
+    public void write(Collection<DefaultExecution> toSave, Collection<UUID> toRemove) {
+        // the batch is written with the strongest durability of its
+        // executions
+        Durability d = toSave.isEmpty() ? getDefaultDurability() : Durability.NONE;
+
+        Map<byte[], byte[]> puts = new IdentityHashMap<>(toSave.size());
+        for (DefaultExecution e : toSave) {
+            puts.put(Keys.marshall(e.getId()), serializer.toBytes(e));
+
+            Durability ed = getDurability(e);
+            if (ed.compareTo(d) > 0) {
+                d = ed;
+            }
+        }
+
+        List<byte[]> deletes = new ArrayList<>(toRemove.size());
+        for (UUID id : toRemove) {
+            deletes.add(Keys.marshall(id));
+        }
+
+        store.write(puts, deletes, d);
+        log.debug("write -> done (saved: {}, removed: {}, {})", toSave.size(), toRemove.size(), d);
+    }
+
+    /**
+     * Returns the durability of writes of the execution. By default, all
+     * executions are written with {@link #getDefaultDurability()}.
+     */
+    protected Durability getDurability(DefaultExecution execution) {
+        return getDefaultDurability();
+    }
+
+    protected Durability getDefaultDurability() {
+        return defaultDurability;
+    }
+
+    private DefaultExecution unmarshallValue(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        return (DefaultExecution) serializer.fromBytes(bytes);
+    }
+}
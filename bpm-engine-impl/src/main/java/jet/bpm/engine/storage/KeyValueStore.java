@@ -0,0 +1,49 @@
+package jet.bpm.engine.storage;
+
+import java.util.Collection;
+import java.util.Map;
+import jet.bpm.engine.persistence.Durability;
+
+/**
+ * Ordered key-value store. Keys are compared as unsigned byte arrays.
+ * Executions, events and event indexes are kept in such stores, so a new
+ * storage backend only needs to implement this interface.
+ * @see KeyValuePersistenceManager
+ * @see KeyValueEventStorage
+ */
+public interface KeyValueStore {
+
+    void init();
+
+    void close();
+
+    byte[] get(byte[] key);
+
+    /**
+     * Puts the value with the store's default durability.
+     */
+    void put(byte[] key, byte[] value);
+
+    /**
+     * @param durability durability of the write or <code>null</code> to use
+     * the store's default.
+     */
+    void put(byte[] key, byte[] value, Durability durability);
+
+    void delete(byte[] key);
+
+    /**
+     * Applies puts and deletes atomically.
+     * @param puts key-value pairs to put.
+     * @param deletes keys to delete.
+     * @param durability durability of the write or <code>null</code> to use
+     * the store's default.
+     */
+    void write(Map<byte[], byte[]> puts, Collection<byte[]> deletes, Durability durability);
+
+    /**
+     * Returns an iterator over entries in the key order. The iterator must be
+     * closed.
+     */
+    KeyValueIterator iterator();
+}
@@ -0,0 +1,52 @@
+package jet.bpm.engine.storage;
+
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+import java.util.UUID;
+
+/**
+ * Marshalling of keys, shared by all storage backends. UUIDs are stored as 16
+ * big-endian bytes, so the unsigned key order is the order of the most and
+ * the least significant bits.
+ */
+public final class Keys {
+
+    public static final int UUID_LENGTH = 8 + 8;
+
+    /**
+     * Compares keys as unsigned byte arrays, like LevelDB does.
+     */
+    public static final Comparator<byte[]> COMPARATOR = new Comparator<byte[]>() {
+
+        @Override
+        public int compare(byte[] a, byte[] b) {
+            int l = Math.min(a.length, b.length);
+            for (int i = 0; i < l; i++) {
+                int d = (a[i] & 0xff) - (b[i] & 0xff);
+                if (d != 0) {
+                    return d;
+                }
+            }
+            return a.length - b.length;
+        }
+    };
+
+    public static byte[] marshall(UUID id) {
+        return ByteBuffer.allocate(UUID_LENGTH)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .array();
+    }
+
+    public static UUID unmarshall(byte[] key) {
+        return unmarshall(key, 0);
+    }
+
+    public static UUID unmarshall(byte[] key, int offset) {
+        ByteBuffer buffer = ByteBuffer.wrap(key, offset, UUID_LENGTH);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    private Keys() {
+    }
+}
@@ -0,0 +1,861 @@
+package jet.bpm.engine.storage;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import jet.bpm.engine.persistence.Durability;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Embedded key-value store on an append-only log of memory-mapped segment
+ * files. All writes are sequential appends to the active segment, the
+ * location of the latest value of each key is kept in an in-memory index.
+ * <p/>
+ * Each write is a frame with a checksum, so a torn write is detected and
+ * discarded on recovery, along with the rest of the segment. Entries carry
+ * sequence numbers, the index is rebuilt by replaying all segments and
+ * keeping the newest entry of each key.
+ * <p/>
+ * Overwritten and deleted values are reclaimed by the background compaction:
+ * when the share of garbage in sealed segments exceeds the threshold, live
+ * values of all sealed segments are copied to new segments and the old ones
+ * are deleted.
+ * <p/>
+ * Keys and the location of their values are kept on the heap, so the store
+ * suits a large number of values, but not of keys. Mappings of deleted
+ * segments are released by the garbage collector.
+ */
+public class MappedLogStore implements KeyValueStore {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedLogStore.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+
+    private static final String SUFFIX = ".log";
+    private static final int MAGIC = 0x42504d4c;
+    private static final int VERSION = 1;
+
+    /**
+     * Magic and version.
+     */
+    private static final int HEADER_SIZE = 4 + 4;
+
+    /**
+     * Payload length and checksum.
+     */
+    private static final int FRAME_HEADER_SIZE = 4 + 4;
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    private final File dir;
+
+    private volatile int segmentSize = DEFAULT_SEGMENT_SIZE;
+    private volatile Durability defaultDurability = Durability.SYNC;
+    private volatile long flushInterval = 1000;
+    private volatile long compactionInterval = 60000;
+    private volatile double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    private final ConcurrentNavigableMap<byte[], Location> index = new ConcurrentSkipListMap<>(Keys.COMPARATOR);
+
+    /**
+     * Guards appends and the list of segments.
+     */
+    private final Lock writeLock = new ReentrantLock();
+    private final Lock compactionLock = new ReentrantLock();
+    private final List<Segment> sealed = new ArrayList<>();
+    private Segment active;
+    private long lastSeq;
+    private long nextSegmentId;
+
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private ScheduledExecutorService executor;
+
+    public MappedLogStore(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Sets the size of new segment files, in bytes. Larger writes get a
+     * segment of their own.
+     */
+    public void setSegmentSize(int segmentSize) {
+        if (segmentSize <= HEADER_SIZE + FRAME_HEADER_SIZE) {
+            throw new IllegalArgumentException("Invalid segment size: " + segmentSize);
+        }
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Sets the durability of writes without an explicit durability,
+     * {@link Durability#SYNC} by default.
+     */
+    public void setDefaultDurability(Durability defaultDurability) {
+        this.defaultDurability = defaultDurability;
+    }
+
+    /**
+     * Sets the interval of background flushes for
+     * {@link Durability#ASYNC_FLUSH} writes, in milliseconds. Must be set
+     * before {@link #init()}.
+     */
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Sets the interval of compaction checks, in milliseconds. If zero, the
+     * store is compacted only by explicit {@link #compact()} calls. Must be
+     * set before {@link #init()}.
+     */
+    public void setCompactionInterval(long compactionInterval) {
+        this.compactionInterval = compactionInterval;
+    }
+
+    /**
+     * Sets the share of garbage in sealed segments, which triggers the
+     * background compaction.
+     */
+    public void setCompactionThreshold(double compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    @Override
+    public void init() {
+        writeLock.lock();
+        try {
+            if (!dir.exists()) {
+                dir.mkdirs();
+            }
+            recover();
+        } catch (IOException e) {
+            log.error("init ['{}'] -> error", dir, e);
+            throw new RuntimeException("Unable to start the store: '" + dir + "'", e);
+        } finally {
+            writeLock.unlock();
+        }
+
+        executor = Executors.newScheduledThreadPool(2, new ThreadFactoryBuilder()
+                .setNameFormat("mappedLogThread-%d")
+                .setDaemon(true)
+                .build());
+
+        if (flushInterval > 0) {
+            executor.scheduleWithFixedDelay(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        flush();
+                    } catch (Exception e) {
+                        log.error("flush ['{}'] -> error", dir, e);
+                    }
+                }
+            }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+
+        if (compactionInterval > 0) {
+            executor.scheduleWithFixedDelay(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        if (getGarbageRatio() >= compactionThreshold) {
+                            compact();
+                        }
+                    } catch (Exception e) {
+                        log.error("compact ['{}'] -> error", dir, e);
+                    }
+                }
+            }, compactionInterval, compactionInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            // a running compaction is completed, see below
+            executor.shutdown();
+            executor = null;
+        }
+
+        compactionLock.lock();
+        writeLock.lock();
+        try {
+            if (active != null) {
+                active.buffer.force();
+                active.close();
+                active = null;
+            }
+            for (Segment s : sealed) {
+                s.close();
+            }
+            sealed.clear();
+            index.clear();
+        } finally {
+            writeLock.unlock();
+            compactionLock.unlock();
+        }
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        Location l = index.get(key);
+        return l != null ? l.read() : null;
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) {
+        put(key, value, null);
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value, Durability durability) {
+        write(Collections.singletonMap(key, value), Collections.<byte[]>emptyList(), durability);
+    }
+
+    @Override
+    public void delete(byte[] key) {
+        write(Collections.<byte[], byte[]>emptyMap(), Collections.singletonList(key), null);
+    }
+
+    @Override
+    public void write(Map<byte[], byte[]> puts, Collection<byte[]> deletes, Durability durability) {
+        int count = puts.size() + deletes.size();
+        if (count == 0) {
+            return;
+        }
+
+        List<byte[]> keys = new ArrayList<>(count);
+        List<byte[]> values = new ArrayList<>(count);
+        int payloadSize = 4;
+        for (Map.Entry<byte[], byte[]> e : puts.entrySet()) {
+            keys.add(e.getKey());
+            values.add(e.getValue());
+            payloadSize += entrySize(e.getKey(), e.getValue());
+        }
+        for (byte[] k : deletes) {
+            keys.add(k);
+            values.add(null);
+            payloadSize += entrySize(k, null);
+        }
+
+        Segment s;
+        writeLock.lock();
+        try {
+            int frameSize = FRAME_HEADER_SIZE + payloadSize;
+            if (active.remaining() < frameSize) {
+                roll(frameSize);
+            }
+            s = active;
+
+            ByteBuffer b = ByteBuffer.allocate(frameSize);
+            b.position(FRAME_HEADER_SIZE);
+            b.putInt(count);
+
+            int base = s.position;
+            Location[] locations = new Location[count];
+            for (int i = 0; i < count; i++) {
+                locations[i] = writeEntry(b, s, base, keys.get(i), values.get(i), ++lastSeq);
+            }
+
+            writeFrame(s, b);
+            s.maxSeq = lastSeq;
+
+            for (int i = 0; i < count; i++) {
+                apply(keys.get(i), locations[i]);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        Durability d = durability != null ? durability : defaultDurability;
+        if (d == Durability.SYNC || d == Durability.GROUP_COMMIT) {
+            // concurrent writers share the sync of the mapped pages
+            force(s);
+        } else if (d == Durability.ASYNC_FLUSH) {
+            dirty.set(true);
+        }
+    }
+
+    /**
+     * Syncs the segment outside of the write lock. The segment is pinned, so
+     * it isn't closed by a concurrent compaction or {@link #close()} until
+     * the sync is done. A closed segment was synced before it was sealed.
+     */
+    private static void force(Segment s) {
+        if (!s.pin()) {
+            return;
+        }
+
+        try {
+            s.buffer.force();
+        } finally {
+            s.unpin();
+        }
+    }
+
+    @Override
+    public KeyValueIterator iterator() {
+        return new LogIterator();
+    }
+
+    /**
+     * Syncs the active segment, if it has unsynced writes.
+     */
+    public void flush() {
+        if (dirty.getAndSet(false)) {
+            Segment s = active;
+            if (s != null) {
+                force(s);
+            }
+        }
+    }
+
+    /**
+     * Returns the share of overwritten and deleted data in sealed segments.
+     */
+    public double getGarbageRatio() {
+        long used = 0;
+        long garbage = 0;
+
+        writeLock.lock();
+        try {
+            for (Segment s : sealed) {
+                used += s.position - HEADER_SIZE;
+                garbage += s.garbage.get();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        return used > 0 ? (double) garbage / used : 0;
+    }
+
+    public int getSegmentCount() {
+        writeLock.lock();
+        try {
+            return sealed.size() + (active != null ? 1 : 0);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public int getKeyCount() {
+        return index.size();
+    }
+
+    /**
+     * Copies live values of all sealed segments to new segments and deletes
+     * the sealed ones. Writes are not blocked, except for short periods.
+     */
+    public void compact() {
+        compactionLock.lock();
+        try {
+            List<Segment> victims;
+            writeLock.lock();
+            try {
+                victims = new ArrayList<>(sealed);
+            } finally {
+                writeLock.unlock();
+            }
+
+            if (victims.isEmpty()) {
+                return;
+            }
+
+            Set<Segment> victimSet = new HashSet<>(victims);
+            List<Segment> outputs = new ArrayList<>();
+            Segment out = null;
+            int copied = 0;
+
+            for (Map.Entry<byte[], Location> e : index.entrySet()) {
+                Location l = e.getValue();
+                if (!victimSet.contains(l.segment)) {
+                    continue;
+                }
+
+                byte[] k = e.getKey();
+                byte[] v = l.read();
+                int frameSize = FRAME_HEADER_SIZE + 4 + entrySize(k, v);
+                if (out == null || out.remaining() < frameSize) {
+                    out = newSegment(frameSize);
+                    outputs.add(out);
+                }
+
+                ByteBuffer b = ByteBuffer.allocate(frameSize);
+                b.position(FRAME_HEADER_SIZE);
+                b.putInt(1);
+                Location nl = writeEntry(b, out, out.position, k, v, l.seq);
+                writeFrame(out, b);
+                out.maxSeq = Math.max(out.maxSeq, l.seq);
+
+                if (index.replace(k, l, nl)) {
+                    copied++;
+                } else {
+                    // the key was changed in the meantime
+                    out.garbage.addAndGet(nl.size);
+                }
+            }
+
+            for (Segment s : outputs) {
+                s.buffer.force();
+            }
+
+            writeLock.lock();
+            try {
+                sealed.removeAll(victimSet);
+                sealed.addAll(outputs);
+            } finally {
+                writeLock.unlock();
+            }
+
+            // a tombstone must outlive the values it deletes: the values
+            // are always in segments with smaller sequence numbers
+            Collections.sort(victims, new Comparator<Segment>() {
+
+                @Override
+                public int compare(Segment a, Segment b) {
+                    return Long.compare(a.maxSeq, b.maxSeq);
+                }
+            });
+
+            for (Segment s : victims) {
+                s.close();
+                if (!s.file.delete()) {
+                    log.warn("compact ['{}'] -> can't delete '{}'", dir, s.file);
+                }
+            }
+
+            log.info("compact ['{}'] -> done (segments: {} -> {}, values copied: {})", dir, victims.size(), outputs.size(), copied);
+        } catch (IOException e) {
+            log.error("compact ['{}'] -> error", dir, e);
+            throw new RuntimeException("Unable to compact the store: '" + dir + "'", e);
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    private void apply(byte[] key, Location l) {
+        Location prev;
+        if (l.value) {
+            prev = index.put(key, l);
+        } else {
+            prev = index.remove(key);
+            l.segment.garbage.addAndGet(l.size);
+        }
+
+        if (prev != null) {
+            prev.segment.garbage.addAndGet(prev.size);
+        }
+    }
+
+    private void roll(int minSize) {
+        try {
+            active.buffer.force();
+            sealed.add(active);
+            active = newSegment(minSize);
+        } catch (IOException e) {
+            log.error("roll ['{}'] -> error", dir, e);
+            throw new RuntimeException("Unable to create a segment: '" + dir + "'", e);
+        }
+    }
+
+    private Segment newSegment(int minSize) throws IOException {
+        long id;
+        writeLock.lock();
+        try {
+            id = nextSegmentId++;
+        } finally {
+            writeLock.unlock();
+        }
+
+        int capacity = Math.max(segmentSize, HEADER_SIZE + minSize);
+        Segment s = Segment.open(new File(dir, String.format("%020d%s", id, SUFFIX)), capacity);
+        s.buffer.putInt(0, MAGIC);
+        s.buffer.putInt(4, VERSION);
+        s.position = HEADER_SIZE;
+
+        log.debug("newSegment ['{}'] -> done ({}, {} bytes)", dir, s.file.getName(), capacity);
+        return s;
+    }
+
+    private void recover() throws IOException {
+        File[] files = dir.listFiles(new FilenameFilter() {
+
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SUFFIX);
+            }
+        });
+
+        List<File> l = new ArrayList<>();
+        if (files != null) {
+            Collections.addAll(l, files);
+        }
+        Collections.sort(l);
+
+        Map<byte[], Long> tombstones = new TreeMap<>(Keys.COMPARATOR);
+        Segment last = null;
+        for (File f : l) {
+            String name = f.getName();
+            long id = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+            nextSegmentId = Math.max(nextSegmentId, id + 1);
+
+            Segment s = Segment.open(f, (int) f.length());
+            if (s.capacity < HEADER_SIZE || s.buffer.getInt(0) != MAGIC || s.buffer.getInt(4) != VERSION) {
+                s.close();
+                throw new IOException("Invalid segment: " + f);
+            }
+
+            replay(s, tombstones);
+
+            if (last != null) {
+                sealed.add(last);
+            }
+            last = s;
+        }
+
+        if (last == null) {
+            active = newSegment(0);
+        } else {
+            // discard the tail after the last valid frame
+            ByteBuffer b = last.buffer.duplicate();
+            b.position(last.position);
+            byte[] zeros = new byte[8192];
+            while (b.hasRemaining()) {
+                b.put(zeros, 0, Math.min(zeros.length, b.remaining()));
+            }
+            last.buffer.force();
+            active = last;
+        }
+
+        log.info("recover ['{}'] -> done (segments: {}, keys: {}, seq: {})", dir, l.size(), index.size(), lastSeq);
+    }
+
+    private void replay(Segment s, Map<byte[], Long> tombstones) {
+        ByteBuffer b = s.buffer.duplicate();
+        int pos = HEADER_SIZE;
+
+        while (pos + FRAME_HEADER_SIZE <= s.capacity) {
+            int length = b.getInt(pos);
+            if (length <= 0 || pos + FRAME_HEADER_SIZE + length > s.capacity) {
+                break;
+            }
+
+            byte[] payload = new byte[length];
+            b.position(pos + FRAME_HEADER_SIZE);
+            b.get(payload);
+
+            CRC32 crc = new CRC32();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != b.getInt(pos + 4)) {
+                log.warn("replay ['{}'] -> invalid frame at {}, discarding the rest", s.file, pos);
+                break;
+            }
+
+            ByteBuffer p = ByteBuffer.wrap(payload);
+            int count = p.getInt();
+            for (int i = 0; i < count; i++) {
+                int entryOffset = p.position();
+                byte type = p.get();
+                long seq = p.getLong();
+                byte[] k = new byte[p.getInt()];
+                p.get(k);
+
+                Location loc;
+                if (type == PUT) {
+                    int vl = p.getInt();
+                    int valueOffset = pos + FRAME_HEADER_SIZE + p.position();
+                    p.position(p.position() + vl);
+                    loc = new Location(s, valueOffset, vl, p.position() - entryOffset, seq, true);
+                } else {
+                    loc = new Location(s, 0, 0, p.position() - entryOffset, seq, false);
+                }
+
+                replay(k, loc, tombstones);
+
+                lastSeq = Math.max(lastSeq, seq);
+                s.maxSeq = Math.max(s.maxSeq, seq);
+            }
+
+            pos += FRAME_HEADER_SIZE + length;
+        }
+
+        s.position = pos;
+    }
+
+    private void replay(byte[] key, Location l, Map<byte[], Long> tombstones) {
+        Location prev = index.get(key);
+        Long deleted = tombstones.get(key);
+
+        if (!l.value) {
+            l.segment.garbage.addAndGet(l.size);
+            if (deleted == null || deleted < l.seq) {
+                tombstones.put(key, l.seq);
+            }
+            if (prev != null && prev.seq < l.seq) {
+                index.remove(key);
+                prev.segment.garbage.addAndGet(prev.size);
+            }
+            return;
+        }
+
+        if ((prev != null && prev.seq >= l.seq) || (deleted != null && deleted > l.seq)) {
+            // a newer entry is already replayed
+            l.segment.garbage.addAndGet(l.size);
+            return;
+        }
+
+        index.put(key, l);
+        if (prev != null) {
+            prev.segment.garbage.addAndGet(prev.size);
+        }
+    }
+
+    private static int entrySize(byte[] key, byte[] value) {
+        int size = 1 + 8 + 4 + key.length;
+        if (value != null) {
+            size += 4 + value.length;
+        }
+        return size;
+    }
+
+    /**
+     * Puts the entry into the frame buffer.
+     * @param frameOffset offset of the frame in the segment.
+     */
+    private static Location writeEntry(ByteBuffer b, Segment s, int frameOffset, byte[] key, byte[] value, long seq) {
+        int entryOffset = b.position();
+        b.put(value != null ? PUT : DELETE);
+        b.putLong(seq);
+        b.putInt(key.length);
+        b.put(key);
+
+        if (value == null) {
+            return new Location(s, 0, 0, b.position() - entryOffset, seq, false);
+        }
+
+        b.putInt(value.length);
+        int valueOffset = frameOffset + b.position();
+        b.put(value);
+        return new Location(s, valueOffset, value.length, b.position() - entryOffset, seq, true);
+    }
+
+    private static void writeFrame(Segment s, ByteBuffer b) {
+        byte[] a = b.array();
+        int length = a.length - FRAME_HEADER_SIZE;
+
+        CRC32 crc = new CRC32();
+        crc.update(a, FRAME_HEADER_SIZE, length);
+        b.putInt(0, length);
+        b.putInt(4, (int) crc.getValue());
+
+        ByteBuffer d = s.buffer.duplicate();
+        d.position(s.position);
+        d.put(a);
+
+        s.position += a.length;
+    }
+
+    private static final class Segment {
+
+        private final File file;
+        private final RandomAccessFile raf;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+
+        /**
+         * Bytes of overwritten and deleted entries, including tombstones.
+         */
+        private final AtomicLong garbage = new AtomicLong();
+
+        private volatile int position;
+        private volatile long maxSeq;
+
+        /**
+         * Number of writers, which sync the segment outside of the write
+         * lock, guarded by the segment's monitor.
+         */
+        private int pins;
+        private boolean closed;
+
+        private static Segment open(File file, int capacity) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(capacity);
+                MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+                return new Segment(file, raf, buffer, capacity);
+            } catch (IOException e) {
+                raf.close();
+                throw e;
+            }
+        }
+
+        private Segment(File file, RandomAccessFile raf, MappedByteBuffer buffer, int capacity) {
+            this.file = file;
+            this.raf = raf;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+
+        private int remaining() {
+            return capacity - position;
+        }
+
+        /**
+         * Prevents closing of the segment.
+         * @return {@code false} if the segment is already closed.
+         */
+        private synchronized boolean pin() {
+            if (closed) {
+                return false;
+            }
+            pins++;
+            return true;
+        }
+
+        private synchronized void unpin() {
+            if (--pins == 0) {
+                notifyAll();
+            }
+        }
+
+        /**
+         * Closes the segment, after all pins are released.
+         */
+        private void close() {
+            synchronized (this) {
+                closed = true;
+                boolean interrupted = false;
+                while (pins > 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            try {
+                raf.close();
+            } catch (IOException e) {
+                log.warn("close ['{}'] -> error", file, e);
+            }
+        }
+    }
+
+    private static final class Location {
+
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+
+        /**
+         * Size of the whole entry.
+         */
+        private final int size;
+        private final long seq;
+
+        /**
+         * {@code false} for tombstones.
+         */
+        private final boolean value;
+
+        private Location(Segment segment, int offset, int length, int size, long seq, boolean value) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.size = size;
+            this.seq = seq;
+            this.value = value;
+        }
+
+        private byte[] read() {
+            byte[] b = new byte[length];
+            ByteBuffer d = segment.buffer.duplicate();
+            d.position(offset);
+            d.get(b);
+            return b;
+        }
+    }
+
+    private final class LogIterator implements KeyValueIterator {
+
+        private PeekingIterator<Map.Entry<byte[], Location>> delegate;
+
+        private LogIterator() {
+            seekToFirst();
+        }
+
+        @Override
+        public void seek(byte[] key) {
+            delegate = Iterators.peekingIterator(index.tailMap(key, true).entrySet().iterator());
+        }
+
+        @Override
+        public void seekToFirst() {
+            delegate = Iterators.peekingIterator(index.entrySet().iterator());
+        }
+
+        @Override
+        public Map.Entry<byte[], byte[]> peekNext() {
+            return toEntry(delegate.peek());
+        }
+
+        @Override
+        public boolean hasNext() {
+            return delegate.hasNext();
+        }
+
+        @Override
+        public Map.Entry<byte[], byte[]> next() {
+            return toEntry(delegate.next());
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private Map.Entry<byte[], byte[]> toEntry(Map.Entry<byte[], Location> e) {
+            return Maps.immutableEntry(e.getKey(), e.getValue().read());
+        }
+    }
+}
@@ -5,6 +5,7 @@ import java.lang.reflect.Method;
 import java.util.Map;
 import java.util.UUID;
 import jet.bpm.engine.ProcessDefinitionProviderImpl;
+import jet.bpm.engine.TimeOrderedUuidGenerator;
 import jet.bpm.engine.api.Engine;
 import jet.bpm.engine.api.ExecutionException;
 import jet.bpm.engine.DefaultEngine;
@@ -14,7 +15,7 @@ import jet.bpm.engine.event.InMemEventStorage;
 import jet.bpm.engine.leveldb.Configuration;
 import jet.bpm.engine.leveldb.KryoSerializer;
 import jet.bpm.engine.leveldb.LevelDbPersistenceManager;
-import jet.bpm.engine.lock.StripedLockManagerImpl;
+import jet.bpm.engine.lock.KeyLockManagerImpl;
 import jet.bpm.engine.model.ProcessDefinition;
 import jet.bpm.engine.xml.Parser;
 import org.iq80.leveldb.DBFactory;
@@ -64,7 +65,9 @@ public class EngineRule implements TestRule {
             LevelDbPersistenceManager levelDbPersistenceManager = new LevelDbPersistenceManager(cfg, f, new KryoSerializer());
             levelDbPersistenceManager.init();
 
-            engine = new DefaultEngine(processDefinitionProvider, new Mocks.Registry(), eventManager, levelDbPersistenceManager, new StripedLockManagerImpl(1));
+            DefaultEngine e = new DefaultEngine(processDefinitionProvider, new Mocks.Registry(), eventManager, levelDbPersistenceManager, new KeyLockManagerImpl());
+            e.setUuidGenerator(new TimeOrderedUuidGenerator());
+            engine = e;
         }
 
         Class<?> k = description.getTestClass();
@@ -14,7 +14,7 @@ import jet.bpm.engine.event.InMemEventStorage;
 import jet.bpm.engine.leveldb.Configuration;
 import jet.bpm.engine.leveldb.KryoSerializer;
 import jet.bpm.engine.leveldb.LevelDbPersistenceManager;
-import jet.bpm.engine.lock.StripedLockManagerImpl;
+import jet.bpm.engine.lock.KeyLockManagerImpl;
 import jet.bpm.engine.task.ServiceTaskRegistry;
 import jet.bpm.engine.task.ServiceTaskRegistryImpl;
 import jet.bpm.engine.model.ProcessDefinition;
@@ -50,7 +50,7 @@ public abstract class AbstractEngineTest implements ActivationListener {
         levelDbPersistenceManager = new LevelDbPersistenceManager(cfg, f, new KryoSerializer());
         levelDbPersistenceManager.init();
 
-        engine = new DefaultEngine(processDefinitionProvider, serviceTaskRegistry, eventManager, levelDbPersistenceManager, new StripedLockManagerImpl(1));
+        engine = new DefaultEngine(processDefinitionProvider, serviceTaskRegistry, eventManager, levelDbPersistenceManager, new KeyLockManagerImpl());
 //        engine = new DefaultEngine(processDefinitionProvider, serviceTaskRegistry, eventManager);
 
         activations = new HashMap<>();
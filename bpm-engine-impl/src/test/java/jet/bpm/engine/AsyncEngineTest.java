@@ -0,0 +1,131 @@
+package jet.bpm.engine;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import jet.bpm.engine.api.ExecutionContext;
+import jet.bpm.engine.api.ExecutionException;
+import jet.bpm.engine.api.JavaDelegate;
+import jet.bpm.engine.api.NoEventFoundException;
+import jet.bpm.engine.event.EventPersistenceManagerImpl;
+import jet.bpm.engine.event.InMemEventStorage;
+import jet.bpm.engine.lock.StripedLockManagerImpl;
+import jet.bpm.engine.model.AbstractElement;
+import jet.bpm.engine.model.EndEvent;
+import jet.bpm.engine.model.EventBasedGateway;
+import jet.bpm.engine.model.ExpressionType;
+import jet.bpm.engine.model.IntermediateCatchEvent;
+import jet.bpm.engine.model.ProcessDefinition;
+import jet.bpm.engine.model.SequenceFlow;
+import jet.bpm.engine.model.ServiceTask;
+import jet.bpm.engine.model.StartEvent;
+import jet.bpm.engine.persistence.MapPersistenceManager;
+import jet.bpm.engine.task.ServiceTaskRegistryImpl;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncEngineTest {
+
+    private ExecutorService executor;
+    private ProcessDefinitionProviderImpl processDefinitionProvider;
+    private ServiceTaskRegistryImpl serviceTaskRegistry;
+    private AsyncEngine engine;
+
+    @Before
+    public void init() {
+        executor = Executors.newFixedThreadPool(8);
+        processDefinitionProvider = new ProcessDefinitionProviderImpl();
+        serviceTaskRegistry = new ServiceTaskRegistryImpl();
+
+        DefaultEngine e = new DefaultEngine(processDefinitionProvider, serviceTaskRegistry,
+                new EventPersistenceManagerImpl(new InMemEventStorage()),
+                new MapPersistenceManager(new ConcurrentHashMap<UUID, DefaultExecution>()),
+                new StripedLockManagerImpl(4));
+
+        engine = new AsyncEngine(e, executor);
+    }
+
+    @After
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * start --> t1 --> gw --> ev --> t2 --> end
+     */
+    @Test(timeout = 30000)
+    public void testOrderingPerKey() throws Exception {
+        final AtomicInteger t1Count = new AtomicInteger();
+        final AtomicInteger t2Count = new AtomicInteger();
+
+        serviceTaskRegistry.register("t1", new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                t1Count.incrementAndGet();
+            }
+        });
+        serviceTaskRegistry.register("t2", new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                t2Count.incrementAndGet();
+            }
+        });
+
+        String processId = "test";
+        processDefinitionProvider.add(new ProcessDefinition(processId, Arrays.<AbstractElement>asList(
+                new StartEvent("start"),
+                new SequenceFlow("f1", "start", "t1"),
+                new ServiceTask("t1", ExpressionType.DELEGATE, "${t1}"),
+                new SequenceFlow("f2", "t1", "gw"),
+                new EventBasedGateway("gw"),
+                new SequenceFlow("f3", "gw", "ev"),
+                new IntermediateCatchEvent("ev", "ev"),
+                new SequenceFlow("f4", "ev", "t2"),
+                new ServiceTask("t2", ExpressionType.DELEGATE, "${t2}"),
+                new SequenceFlow("f5", "t2", "end"),
+                new EndEvent("end")
+        )));
+
+        // ---
+
+        int count = 200;
+        List<ListenableFuture<Void>> l = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String key = "key" + i;
+            // the resume is submitted before the start is done
+            l.add(engine.startAsync(key, processId, null));
+            l.add(engine.resumeAsync(key, "ev", null));
+        }
+
+        for (ListenableFuture<Void> f : l) {
+            f.get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(count, t1Count.get());
+        assertEquals(count, t2Count.get());
+        assertEquals(0, engine.getActiveKeyCount());
+    }
+
+    @Test(timeout = 30000)
+    public void testFailure() throws Exception {
+        ListenableFuture<Void> f = engine.resumeAsync("unknown", "ev", null);
+
+        try {
+            f.get(10, TimeUnit.SECONDS);
+            fail("exception expected");
+        } catch (java.util.concurrent.ExecutionException e) {
+            assertTrue(e.getCause() instanceof NoEventFoundException);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package jet.bpm.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import jet.bpm.engine.api.AsyncCompletion;
+import jet.bpm.engine.api.AsyncJavaDelegate;
+import jet.bpm.engine.api.BpmnError;
+import jet.bpm.engine.api.ExecutionContext;
+import jet.bpm.engine.api.ExecutionException;
+import jet.bpm.engine.api.JavaDelegate;
+import jet.bpm.engine.api.NoEventFoundException;
+import jet.bpm.engine.event.ExpiredEvent;
+import jet.bpm.engine.handlers.ServiceTaskHandler;
+import jet.bpm.engine.model.AbstractElement;
+import jet.bpm.engine.model.BoundaryEvent;
+import jet.bpm.engine.model.EndEvent;
+import jet.bpm.engine.model.ExpressionType;
+import jet.bpm.engine.model.ProcessDefinition;
+import jet.bpm.engine.model.SequenceFlow;
+import jet.bpm.engine.model.ServiceTask;
+import jet.bpm.engine.model.StartEvent;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static org.mockito.Mockito.*;
+
+public class AsyncServiceTaskTest extends AbstractEngineTest {
+
+    /**
+     * start --> t1 --> t2 --> end
+     */
+    @Test
+    public void testDeferredCompletion() throws Exception {
+        final AtomicReference<AsyncCompletion> completion = new AtomicReference<>();
+        getEngine().getServiceTaskRegistry().register("t1", new AsyncJavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx, AsyncCompletion c) throws Exception {
+                completion.set(c);
+            }
+        });
+
+        JavaDelegate t2 = spy(new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                assertEquals("done", ctx.getVariable("result"));
+            }
+        });
+        getEngine().getServiceTaskRegistry().register("t2", t2);
+
+        String processId = "test";
+        deploy(makeProcess(processId));
+
+        // ---
+
+        String key = UUID.randomUUID().toString();
+        getEngine().start(key, processId, null);
+
+        // the process is waiting for the task, the lock is released
+        assertNotNull(completion.get());
+        verify(t2, never()).execute(any(ExecutionContext.class));
+
+        // ---
+
+        final AtomicReference<Future<Void>> future = new AtomicReference<>();
+        Thread t = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                future.set(completion.get().complete(Collections.<String, Object>singletonMap("result", "done")));
+            }
+        });
+        t.start();
+        t.join();
+
+        // the continuation is done
+        assertNull(future.get().get());
+
+        // ---
+
+        verify(t2, times(1)).execute(any(ExecutionContext.class));
+        assertActivations(key, processId,
+                "start",
+                "f1",
+                "t1",
+                "f2",
+                "t2",
+                "f3",
+                "end");
+        assertNoMoreActivations();
+    }
+
+    /**
+     * start --> t1 --> t2 --> end
+     */
+    @Test
+    public void testImmediateCompletion() throws Exception {
+        getEngine().getServiceTaskRegistry().register("t1", new AsyncJavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx, AsyncCompletion c) throws Exception {
+                c.complete(Collections.<String, Object>singletonMap("result", "done"));
+            }
+        });
+
+        JavaDelegate t2 = mock(JavaDelegate.class);
+        getEngine().getServiceTaskRegistry().register("t2", t2);
+
+        String processId = "test";
+        deploy(makeProcess(processId));
+
+        // ---
+
+        String key = UUID.randomUUID().toString();
+        getEngine().start(key, processId, null);
+
+        // ---
+
+        verify(t2, times(1)).execute(any(ExecutionContext.class));
+        assertActivations(key, processId,
+                "start",
+                "f1",
+                "t1",
+                "f2",
+                "t2",
+                "f3",
+                "end");
+        assertNoMoreActivations();
+    }
+
+    /**
+     * start --> t1 ----------> end
+     *             \        /
+     *              error --
+     */
+    @Test
+    public void testBoundaryError() throws Exception {
+        final String errorRef = "test#" + System.currentTimeMillis();
+
+        final AtomicReference<AsyncCompletion> completion = new AtomicReference<>();
+        getEngine().getServiceTaskRegistry().register("t1", new AsyncJavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx, AsyncCompletion c) throws Exception {
+                completion.set(c);
+            }
+        });
+
+        String processId = "test";
+        deploy(new ProcessDefinition(processId, Arrays.<AbstractElement>asList(
+                new StartEvent("start"),
+                new SequenceFlow("f1", "start", "t1"),
+                new ServiceTask("t1", ExpressionType.DELEGATE, "${t1}"),
+                new BoundaryEvent("be1", "t1", errorRef),
+                new SequenceFlow("f2", "be1", "end"),
+                new SequenceFlow("f3", "t1", "end"),
+                new EndEvent("end")
+        )));
+
+        // ---
+
+        String key = UUID.randomUUID().toString();
+        getEngine().start(key, processId, null);
+        completion.get().fail(new BpmnError(errorRef));
+
+        // ---
+
+        assertActivations(key, processId,
+                "start",
+                "f1",
+                "t1",
+                "f2",
+                "end");
+        assertNoMoreActivations();
+    }
+
+    /**
+     * start --> t1 ----------> end
+     *             \        /
+     *              timeout
+     */
+    @Test
+    public void testTimeout() throws Exception {
+        final AtomicReference<AsyncCompletion> completion = new AtomicReference<>();
+        getEngine().getServiceTaskRegistry().register("t1", new AsyncJavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx, AsyncCompletion c) throws Exception {
+                completion.set(c);
+            }
+        });
+
+        String processId = "test";
+        deploy(new ProcessDefinition(processId, Arrays.<AbstractElement>asList(
+                new StartEvent("start"),
+                new SequenceFlow("f1", "start", "t1"),
+                new ServiceTask("t1", ExpressionType.DELEGATE, "${t1}"),
+                new BoundaryEvent("be1", "t1", ServiceTaskHandler.ASYNC_TASK_TIMEOUT_ERROR),
+                new SequenceFlow("f2", "be1", "end"),
+                new SequenceFlow("f3", "t1", "end"),
+                new EndEvent("end")
+        )));
+
+        getEngine().setAsyncTaskTimeout(1, TimeUnit.MILLISECONDS);
+
+        // ---
+
+        String key = UUID.randomUUID().toString();
+        getEngine().start(key, processId, null);
+
+        Thread.sleep(10);
+
+        // the scheduler resumes the expired event
+        List<ExpiredEvent> expired = eventManager.findNextExpiredEvent(10);
+        assertEquals(1, expired.size());
+        getEngine().resume(eventManager.get(expired.get(0).geId()), null);
+
+        assertActivations(key, processId,
+                "start",
+                "f1",
+                "t1",
+                "f2",
+                "end");
+        assertNoMoreActivations();
+
+        // ---
+
+        // the late completion is reported as failed
+        Future<Void> f = completion.get().complete(null);
+        try {
+            f.get();
+            fail("exception expected");
+        } catch (java.util.concurrent.ExecutionException e) {
+            assertTrue(e.getCause() instanceof NoEventFoundException);
+        }
+    }
+
+    private static ProcessDefinition makeProcess(String processId) {
+        return new ProcessDefinition(processId, Arrays.<AbstractElement>asList(
+                new StartEvent("start"),
+                new SequenceFlow("f1", "start", "t1"),
+                new ServiceTask("t1", ExpressionType.DELEGATE, "${t1}"),
+                new SequenceFlow("f2", "t1", "t2"),
+                new ServiceTask("t2", ExpressionType.DELEGATE, "${t2}"),
+                new SequenceFlow("f3", "t2", "end"),
+                new EndEvent("end")
+        ));
+    }
+}
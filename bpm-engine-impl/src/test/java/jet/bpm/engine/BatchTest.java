@@ -0,0 +1,167 @@
+package jet.bpm.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import jet.bpm.engine.api.ExecutionContext;
+import jet.bpm.engine.api.ExecutionException;
+import jet.bpm.engine.api.InstanceBusyException;
+import jet.bpm.engine.api.JavaDelegate;
+import jet.bpm.engine.api.NoEventFoundException;
+import jet.bpm.engine.api.RequestOutcome;
+import jet.bpm.engine.api.ResumeRequest;
+import jet.bpm.engine.api.StartRequest;
+import jet.bpm.engine.model.AbstractElement;
+import jet.bpm.engine.model.EndEvent;
+import jet.bpm.engine.model.EventBasedGateway;
+import jet.bpm.engine.model.ExpressionType;
+import jet.bpm.engine.model.IntermediateCatchEvent;
+import jet.bpm.engine.model.ProcessDefinition;
+import jet.bpm.engine.model.SequenceFlow;
+import jet.bpm.engine.model.ServiceTask;
+import jet.bpm.engine.model.StartEvent;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static org.mockito.Mockito.*;
+
+public class BatchTest extends AbstractEngineTest {
+
+    /**
+     * start --> gw --> ev --> t1 --> end
+     */
+    @Test
+    public void testStartAndResumeAll() throws Exception {
+        JavaDelegate t1 = spy(new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                assertEquals(ctx.getVariable("in"), ctx.getVariable("out"));
+            }
+        });
+        getEngine().getServiceTaskRegistry().register("t1", t1);
+
+        String processId = "test";
+        deploy(new ProcessDefinition(processId, Arrays.<AbstractElement>asList(
+                new StartEvent("start"),
+                new SequenceFlow("f1", "start", "gw"),
+                new EventBasedGateway("gw"),
+                new SequenceFlow("f2", "gw", "ev"),
+                new IntermediateCatchEvent("ev", "ev"),
+                new SequenceFlow("f3", "ev", "t1"),
+                new ServiceTask("t1", ExpressionType.DELEGATE, "${t1}"),
+                new SequenceFlow("f4", "t1", "end"),
+                new EndEvent("end")
+        )));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        getEngine().setBatchExecutor(executor);
+        getEngine().setBatchSize(3);
+
+        // ---
+
+        int count = 10;
+
+        List<StartRequest> starts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            starts.add(new StartRequest("key" + i, processId, Collections.<String, Object>singletonMap("in", i)));
+        }
+        starts.add(new StartRequest("bad", "unknown", null));
+
+        List<RequestOutcome<StartRequest>> so = getEngine().startAll(starts);
+        assertEquals(count + 1, so.size());
+        for (int i = 0; i < count; i++) {
+            assertTrue(so.get(i).isSuccess());
+        }
+        assertFalse(so.get(count).isSuccess());
+
+        // ---
+
+        List<ResumeRequest> resumes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            resumes.add(new ResumeRequest("key" + i, "ev", Collections.<String, Object>singletonMap("out", i)));
+        }
+        // the event is already consumed by the previous request
+        resumes.add(new ResumeRequest("key0", "ev", null));
+
+        List<RequestOutcome<ResumeRequest>> ro = getEngine().resumeAll(resumes);
+        for (int i = 0; i < count; i++) {
+            assertTrue(ro.get(i).isSuccess());
+        }
+        assertTrue(ro.get(count).getError() instanceof NoEventFoundException);
+
+        executor.shutdown();
+
+        // ---
+
+        verify(t1, times(count)).execute(any(ExecutionContext.class));
+        for (int i = 0; i < count; i++) {
+            assertActivations("key" + i, processId,
+                    "start",
+                    "f1",
+                    "gw",
+                    "f2",
+                    "ev",
+                    "f3",
+                    "t1",
+                    "f4",
+                    "end");
+        }
+        assertNoMoreActivations();
+    }
+
+    /**
+     * start --> end
+     */
+    @Test(timeout = 10000)
+    public void testBusyKey() throws Exception {
+        String processId = "test";
+        deploy(new ProcessDefinition(processId, Arrays.<AbstractElement>asList(
+                new StartEvent("start"),
+                new SequenceFlow("f1", "start", "end"),
+                new EndEvent("end")
+        )));
+
+        getEngine().setLockTimeout(100, TimeUnit.MILLISECONDS);
+
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread t = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                getEngine().getLockManager().lock("busy");
+                locked.countDown();
+                try {
+                    done.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    getEngine().getLockManager().unlock("busy");
+                }
+            }
+        });
+        t.start();
+        locked.await();
+
+        List<RequestOutcome<StartRequest>> so = getEngine().startAll(Arrays.asList(
+                new StartRequest("a", processId, null),
+                new StartRequest("busy", processId, null),
+                new StartRequest("z", processId, null)));
+
+        done.countDown();
+        t.join();
+
+        assertTrue(so.get(0).isSuccess());
+        assertTrue(so.get(1).getError() instanceof InstanceBusyException);
+        assertTrue(so.get(2).isSuccess());
+
+        assertActivations("a", processId, "start", "f1", "end");
+        assertActivations("z", processId, "start", "f1", "end");
+        assertNoMoreActivations();
+    }
+}
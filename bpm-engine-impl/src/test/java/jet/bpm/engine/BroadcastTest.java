@@ -0,0 +1,222 @@
+package jet.bpm.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import jet.bpm.engine.api.BroadcastListener;
+import jet.bpm.engine.api.BroadcastResult;
+import jet.bpm.engine.api.ExecutionContext;
+import jet.bpm.engine.api.ExecutionException;
+import jet.bpm.engine.api.JavaDelegate;
+import jet.bpm.engine.api.NoEventFoundException;
+import jet.bpm.engine.api.Subscription;
+import jet.bpm.engine.event.Event;
+import jet.bpm.engine.leveldb.Configuration;
+import jet.bpm.engine.leveldb.KryoSerializer;
+import jet.bpm.engine.leveldb.LevelDbEventStorage;
+import jet.bpm.engine.model.AbstractElement;
+import jet.bpm.engine.model.EndEvent;
+import jet.bpm.engine.model.EventBasedGateway;
+import jet.bpm.engine.model.ExpressionType;
+import jet.bpm.engine.model.IntermediateCatchEvent;
+import jet.bpm.engine.model.ProcessDefinition;
+import jet.bpm.engine.model.SequenceFlow;
+import jet.bpm.engine.model.ServiceTask;
+import jet.bpm.engine.model.StartEvent;
+import org.iq80.leveldb.impl.Iq80DBFactory;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static org.mockito.Mockito.*;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class BroadcastTest extends AbstractEngineTest {
+
+    /**
+     * start --> gw --> ev --> t1 --> gw2 --> ev2 --> end
+     */
+    @Test
+    public void testBroadcast() throws Exception {
+        getEngine().getServiceTaskRegistry().register("t1", new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                if (Boolean.TRUE.equals(ctx.getVariable("fail"))) {
+                    throw new ExecutionException("Failed on purpose");
+                }
+            }
+        });
+
+        String processId = "test";
+        deploy(new ProcessDefinition(processId, Arrays.<AbstractElement>asList(
+                new StartEvent("start"),
+                new SequenceFlow("f1", "start", "gw"),
+                new EventBasedGateway("gw"),
+                new SequenceFlow("f2", "gw", "ev"),
+                new IntermediateCatchEvent("ev", "marketClosed"),
+                new SequenceFlow("f3", "ev", "t1"),
+                new ServiceTask("t1", ExpressionType.DELEGATE, "${t1}"),
+                new SequenceFlow("f4", "t1", "gw2"),
+                new EventBasedGateway("gw2"),
+                new SequenceFlow("f5", "gw2", "ev2"),
+                // waits for the same event again
+                new IntermediateCatchEvent("ev2", "marketClosed"),
+                new SequenceFlow("f6", "ev2", "end"),
+                new EndEvent("end")
+        )));
+
+        int count = 20;
+        for (int i = 0; i < count; i++) {
+            getEngine().start("key" + i, processId, null);
+        }
+        getEngine().start("bad", processId, Collections.<String, Object>singletonMap("fail", true));
+
+        // ---
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        getEngine().setBatchExecutor(executor);
+        getEngine().setBroadcastConcurrency(2);
+
+        final AtomicInteger progress = new AtomicInteger();
+        final List<Subscription> failed = new ArrayList<>();
+        BroadcastListener l = new BroadcastListener() {
+
+            @Override
+            public void onResumed(Subscription s) {
+                progress.incrementAndGet();
+            }
+
+            @Override
+            public void onFailure(Subscription s, ExecutionException e) {
+                synchronized (failed) {
+                    failed.add(s);
+                }
+            }
+        };
+
+        // events of the second wait state are not resumed by the same call
+        BroadcastResult r = getEngine().broadcast("marketClosed", null, l);
+        assertEquals(count, r.getResumedCount());
+        assertEquals(count, progress.get());
+        assertEquals(1, r.getFailures().size());
+        assertEquals("bad", r.getFailures().get(0).getRequest().getProcessBusinessKey());
+        assertEquals(1, failed.size());
+
+        // the failed instance has no more events
+        r = getEngine().broadcast("marketClosed", null, null);
+        assertEquals(count, r.getResumedCount());
+        assertTrue(r.getFailures().isEmpty());
+
+        r = getEngine().broadcast("marketClosed", null, null);
+        assertEquals(0, r.getResumedCount());
+
+        executor.shutdown();
+    }
+
+    /**
+     * start --> gw --> ev --> end
+     */
+    @Test
+    public void testConsumedEvent() throws Exception {
+        String processId = "test";
+        deploy(new ProcessDefinition(processId, Arrays.<AbstractElement>asList(
+                new StartEvent("start"),
+                new SequenceFlow("f1", "start", "gw"),
+                new EventBasedGateway("gw"),
+                new SequenceFlow("f2", "gw", "ev"),
+                new IntermediateCatchEvent("ev", "marketClosed"),
+                new SequenceFlow("f3", "ev", "end"),
+                new EndEvent("end")
+        )));
+
+        getEngine().start("key", processId, null);
+
+        // the event is consumed by a direct call after the broadcast has
+        // read it
+        final AtomicBoolean consumed = new AtomicBoolean();
+        final List<Event> stale = new ArrayList<>();
+        doAnswer(new Answer<Event>() {
+
+            @Override
+            public Event answer(InvocationOnMock inv) throws Throwable {
+                Event e = (Event) inv.callRealMethod();
+                if (e != null && consumed.compareAndSet(false, true)) {
+                    getEngine().resume(e.getProcessBusinessKey(), e.getName(), null);
+                    stale.add(e);
+                }
+                return e;
+            }
+        }).when(eventManager).get(any(UUID.class));
+
+        BroadcastResult r = getEngine().broadcast("marketClosed", null, null);
+        assertEquals(0, r.getResumedCount());
+        assertEquals(1, r.getSkippedCount());
+        assertTrue(r.getFailures().isEmpty());
+
+        try {
+            getEngine().resume(stale.get(0).getId(), null);
+            fail("exception expected");
+        } catch (NoEventFoundException e) {
+            // expected
+        }
+
+        assertActivations("key", processId,
+                "start",
+                "f1",
+                "gw",
+                "f2",
+                "ev",
+                "f3",
+                "end");
+        assertNoMoreActivations();
+    }
+
+    @Test
+    public void testLevelDbEventNameIndex() throws Exception {
+        String baseDir = "/tmp/bpm/" + UUID.randomUUID();
+
+        Configuration cfg = new Configuration();
+        cfg.setEventPath(baseDir + "/events");
+        cfg.setExpiredEventIndexPath(baseDir + "/expired");
+        cfg.setBusinessKeyEventIndexPath(baseDir + "/bk");
+        cfg.setEventNameIndexPath(baseDir + "/names");
+
+        LevelDbEventStorage es = new LevelDbEventStorage(cfg, new Iq80DBFactory(), new KryoSerializer());
+        es.init();
+        try {
+            Set<UUID> expected = new HashSet<>();
+            for (int i = 0; i < 25; i++) {
+                Event e = new Event(UUID.randomUUID(), UUID.randomUUID(), null, "ev", "key" + i, false, null);
+                es.add(e);
+                expected.add(e.getId());
+                es.add(new Event(UUID.randomUUID(), UUID.randomUUID(), null, "ev2", "key" + i, false, null));
+            }
+
+            Set<UUID> actual = new HashSet<>();
+            UUID after = null;
+            while (true) {
+                List<UUID> page = es.findIds("ev", after, 10);
+                actual.addAll(page);
+                if (page.size() < 10) {
+                    break;
+                }
+                after = page.get(page.size() - 1);
+            }
+
+            assertEquals(expected, actual);
+
+            es.remove(expected.iterator().next());
+            assertEquals(24, es.findIds("ev", null, 100).size());
+        } finally {
+            es.close();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package jet.bpm.engine;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import jet.bpm.engine.commands.PersistExecutionCommand;
+import jet.bpm.engine.persistence.CachingPersistenceManager;
+import jet.bpm.engine.persistence.CachingPersistenceManager.WriteMode;
+import jet.bpm.engine.persistence.PersistenceManager;
+import jet.bpm.engine.persistence.WriteBehindPersistenceManager;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import static org.mockito.Mockito.*;
+
+public class CachingPersistenceManagerTest {
+
+    @Test
+    public void testWriteThrough() throws Exception {
+        PersistenceManager delegate = mock(PersistenceManager.class);
+        CachingPersistenceManager pm = new CachingPersistenceManager(delegate, 10, WriteMode.WRITE_THROUGH);
+
+        DefaultExecution a = newExecution();
+
+        pm.save(a);
+        verify(delegate, times(1)).save(a);
+
+        // taken from the cache
+        assertSame(a, pm.get(a.getId()));
+        verify(delegate, never()).get(a.getId());
+
+        // not cached anymore until saved again
+        pm.get(a.getId());
+        verify(delegate, times(1)).get(a.getId());
+
+        assertEquals(1, pm.getStats().hitCount());
+        assertEquals(1, pm.getStats().missCount());
+        assertEquals(0.5, pm.getStats().hitRate(), 0.001);
+    }
+
+    @Test
+    public void testWriteBehind() throws Exception {
+        PersistenceManager delegate = mock(PersistenceManager.class);
+        CachingPersistenceManager pm = new CachingPersistenceManager(delegate, 1, WriteMode.WRITE_BEHIND);
+
+        DefaultExecution a = newExecution();
+        DefaultExecution b = newExecution();
+
+        pm.save(a);
+        a = pm.get(a.getId());
+        pm.save(a);
+        verifyZeroInteractions(delegate);
+
+        // evicts "a"
+        pm.save(b);
+        verify(delegate, times(1)).save(a);
+
+        // unwritten, the engine gets the instance itself
+        DefaultExecution b1 = pm.get(b.getId());
+        assertSame(b, b1);
+
+        // not saved back, restored from the snapshot
+        DefaultExecution b2 = pm.get(b.getId());
+        assertNotSame(b1, b2);
+        assertEquals(b.getId(), b2.getId());
+
+        ArgumentCaptor<DefaultExecution> c = ArgumentCaptor.forClass(DefaultExecution.class);
+        pm.flush();
+        verify(delegate, times(2)).save(c.capture());
+        assertEquals(b.getId(), c.getValue().getId());
+
+        pm.remove(b.getId());
+        verify(delegate, times(1)).remove(b.getId());
+    }
+
+    @Test
+    public void testFailedRun() throws Exception {
+        PersistenceManager delegate = mock(PersistenceManager.class);
+        CachingPersistenceManager pm = new CachingPersistenceManager(delegate, 10, WriteMode.WRITE_BEHIND);
+
+        WriteBehindPersistenceManager uow = new WriteBehindPersistenceManager(pm);
+
+        DefaultExecution a = newExecution();
+        a.getContext().setVariable("x", 1);
+        pm.save(a);
+
+        // the run fails, the changes are discarded
+        uow.begin();
+        DefaultExecution a1 = uow.get(a.getId());
+        a1.getContext().setVariable("x", 2);
+        a1.push(PersistExecutionCommand.INSTANCE);
+        uow.discard();
+
+        DefaultExecution a2 = pm.get(a.getId());
+        assertEquals(1, a2.getContext().getVariable("x"));
+        assertTrue(a2.isDone());
+
+        ArgumentCaptor<DefaultExecution> c = ArgumentCaptor.forClass(DefaultExecution.class);
+        pm.flush();
+        verify(delegate, times(1)).save(c.capture());
+        assertEquals(1, c.getValue().getContext().getVariable("x"));
+        assertTrue(c.getValue().isDone());
+    }
+
+    @Test(timeout = 10000)
+    public void testGetDuringEviction() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        PersistenceManager delegate = mock(PersistenceManager.class);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                writing.countDown();
+                release.await();
+                return null;
+            }
+        }).when(delegate).save(any(DefaultExecution.class));
+
+        final CachingPersistenceManager pm = new CachingPersistenceManager(delegate, 1, WriteMode.WRITE_BEHIND);
+
+        final DefaultExecution a = newExecution();
+        pm.save(a);
+
+        // evicts "a", the write blocks
+        Thread t = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                pm.save(newExecution());
+            }
+        });
+        t.start();
+        writing.await();
+
+        final AtomicReference<DefaultExecution> result = new AtomicReference<>();
+        Thread g = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                result.set(pm.get(a.getId()));
+            }
+        });
+        g.start();
+
+        // waits for the write instead of reading the delegate
+        g.join(200);
+        assertTrue(g.isAlive());
+
+        release.countDown();
+        g.join();
+        t.join();
+
+        assertSame(a, result.get());
+        verify(delegate, never()).get(a.getId());
+    }
+
+    @Test
+    public void testWeight() throws Exception {
+        PersistenceManager delegate = mock(PersistenceManager.class);
+        CachingPersistenceManager pm = new CachingPersistenceManager(delegate, 1000,
+                CachingPersistenceManager.DEFAULT_WEIGHER, WriteMode.WRITE_THROUGH);
+
+        for (int i = 0; i < 2000; i++) {
+            pm.save(newExecution());
+        }
+
+        assertTrue(pm.size() <= 1000);
+        assertTrue(pm.getStats().evictionCount() >= 1000);
+    }
+
+    private static DefaultExecution newExecution() {
+        return new DefaultExecution(UUID.randomUUID(), null, "bk", new ExecutionContextImpl(null));
+    }
+}
@@ -0,0 +1,89 @@
+package jet.bpm.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import jet.bpm.engine.leveldb.Configuration;
+import jet.bpm.engine.leveldb.KryoSerializer;
+import jet.bpm.engine.leveldb.LevelDbPersistenceManager;
+import jet.bpm.engine.persistence.Durability;
+import org.iq80.leveldb.impl.Iq80DBFactory;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DurabilityTest {
+
+    private Configuration cfg;
+    private LevelDbPersistenceManager pm;
+
+    @Before
+    public void init() {
+        cfg = new Configuration();
+        cfg.setExecutionPath("/tmp/bpm/durability#" + System.currentTimeMillis());
+        cfg.setDefaultDurability(Durability.SYNC);
+        cfg.setDurability("none", Durability.NONE);
+        cfg.setDurability("async", Durability.ASYNC_FLUSH);
+        cfg.setDurability("group", Durability.GROUP_COMMIT);
+        cfg.setAsyncFlushInterval(10);
+
+        pm = new LevelDbPersistenceManager(cfg, new Iq80DBFactory(), new KryoSerializer());
+        pm.init();
+    }
+
+    @After
+    public void close() {
+        pm.close();
+    }
+
+    @Test
+    public void testDurabilityLookup() throws Exception {
+        assertEquals(Durability.NONE, cfg.getDurability("none"));
+        assertEquals(Durability.SYNC, cfg.getDurability("unknown"));
+        assertEquals(Durability.SYNC, cfg.getDurability(null));
+    }
+
+    @Test
+    public void testSave() throws Exception {
+        for (String pdId : new String[]{"none", "async", "group", "sync"}) {
+            DefaultExecution e = new DefaultExecution(UUID.randomUUID(), null, "bk", pdId, new ExecutionContextImpl(null));
+            pm.save(e);
+
+            DefaultExecution ee = pm.get(e.getId());
+            assertNotNull(ee);
+            assertEquals(pdId, ee.getProcessDefinitionId());
+        }
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        final List<UUID> ids = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++) {
+            final DefaultExecution e = new DefaultExecution(UUID.randomUUID(), null, "bk" + i, "group", new ExecutionContextImpl(null));
+            ids.add(e.getId());
+
+            Thread t = new Thread() {
+
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10; j++) {
+                        pm.save(e);
+                    }
+                }
+            };
+            threads.add(t);
+            t.start();
+        }
+
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        for (UUID id : ids) {
+            assertNotNull(pm.get(id));
+        }
+    }
+}
@@ -3,16 +3,25 @@ package jet.bpm.engine;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import jet.bpm.engine.api.ExecutionContext;
+import jet.bpm.engine.api.ExecutionException;
+import jet.bpm.engine.api.JavaDelegate;
+import jet.bpm.engine.api.NoEventFoundException;
+import jet.bpm.engine.api.Subscription;
 import jet.bpm.engine.event.Event;
 import jet.bpm.engine.handlers.IntermediateCatchEventHandler;
 import jet.bpm.engine.model.AbstractElement;
 import jet.bpm.engine.model.EndEvent;
 import jet.bpm.engine.model.EventBasedGateway;
+import jet.bpm.engine.model.ExpressionType;
 import jet.bpm.engine.model.IntermediateCatchEvent;
 import jet.bpm.engine.model.ProcessDefinition;
 import jet.bpm.engine.model.SequenceFlow;
+import jet.bpm.engine.model.ServiceTask;
 import jet.bpm.engine.model.StartEvent;
 import static org.junit.Assert.*;
 import org.junit.Test;
@@ -59,6 +68,122 @@ public class EventBasedGatewayTest extends AbstractEngineTest {
         assertNoMoreActivations();
     }
 
+    /**
+     * Events created by other threads on behalf of the call are returned too.
+     * <p/>
+     * start --> t1 --> ev1 --> end
+     */
+    @Test(timeout = 10000)
+    public void testEventsOfOtherThreads() throws Exception {
+        final String key = UUID.randomUUID().toString();
+        final AtomicReference<Exception> error = new AtomicReference<>();
+
+        register("t1", new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                Thread t = new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            getEngine().addEvent(new Event(UUID.randomUUID(), null, null, "other", key, false, null));
+                        } catch (ExecutionException e) {
+                            error.set(e);
+                        }
+                    }
+                });
+                t.start();
+                try {
+                    t.join();
+                } catch (InterruptedException e) {
+                    throw new ExecutionException("Interrupted", e);
+                }
+            }
+        });
+
+        String processId = "test";
+        deploy(new ProcessDefinition(processId, Arrays.<AbstractElement>asList(
+                new StartEvent("start"),
+                new SequenceFlow("f1", "start", "t1"),
+                new ServiceTask("t1", ExpressionType.DELEGATE, "${t1}"),
+                new SequenceFlow("f2", "t1", "ev1"),
+                new IntermediateCatchEvent("ev1", "ev1"),
+                new SequenceFlow("f3", "ev1", "end"),
+                new EndEvent("end")
+        )));
+
+        // ---
+
+        List<Subscription> subs = getEngine().startWithEvents(key, processId, null);
+        assertNull(error.get());
+        assertEquals(2, subs.size());
+        assertEquals("other", subs.get(0).getEventName());
+        assertEquals("ev1", subs.get(1).getEventName());
+
+        // events of calls without subscriptions aren't collected anymore
+        getEngine().addEvent(new Event(UUID.randomUUID(), null, null, "later", key, false, null));
+        assertEquals(2, subs.size());
+    }
+
+    /**
+     * start --> gw --> ev1 --> end1
+     *             \
+     *              --> ev2 --> end2
+     */
+    @Test
+    public void testResumeByEventId() throws Exception {
+        String processId = "test";
+        deploy(new ProcessDefinition(processId, Arrays.<AbstractElement>asList(
+                new StartEvent("start"),
+                new SequenceFlow("f1", "start", "gw"),
+                new EventBasedGateway("gw"),
+                    new SequenceFlow("f2", "gw", "ev1"),
+                    new IntermediateCatchEvent("ev1", "ev1"),
+                    new SequenceFlow("f3", "ev1", "end1"),
+                    new EndEvent("end1"),
+
+                    new SequenceFlow("f4", "gw", "ev2"),
+                    new IntermediateCatchEvent("ev2", "ev2"),
+                    new SequenceFlow("f5", "ev2", "end2"),
+                    new EndEvent("end2")
+        )));
+
+        // ---
+
+        String key = UUID.randomUUID().toString();
+        List<Subscription> subs = getEngine().startWithEvents(key, processId, null);
+        assertEquals(2, subs.size());
+        assertEquals("ev1", subs.get(0).getEventName());
+        assertEquals("ev2", subs.get(1).getEventName());
+        assertEquals(key, subs.get(1).getProcessBusinessKey());
+
+        // ---
+
+        getEngine().resume(subs.get(1).getEventId(), null);
+
+        // the other event of the group is removed
+        try {
+            getEngine().resume(subs.get(0).getEventId(), null);
+            fail("exception expected");
+        } catch (NoEventFoundException e) {
+        }
+
+        // ---
+
+        assertActivations(key, processId,
+                "start",
+                "f1",
+                "gw",
+                "f2",
+                "ev1",
+                "f4",
+                "ev2",
+                "f5",
+                "end2");
+        assertNoMoreActivations();
+    }
+
     /**
      * start --> gw --> ev1 --> end1
      *             \
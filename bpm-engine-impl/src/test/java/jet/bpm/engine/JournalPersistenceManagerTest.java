@@ -0,0 +1,320 @@
+package jet.bpm.engine;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import jet.bpm.engine.api.AsyncCompletion;
+import jet.bpm.engine.api.AsyncJavaDelegate;
+import jet.bpm.engine.api.ExecutionContext;
+import jet.bpm.engine.api.JavaDelegate;
+import jet.bpm.engine.commands.ExecutionCommand;
+import jet.bpm.engine.commands.PersistExecutionCommand;
+import jet.bpm.engine.event.Event;
+import jet.bpm.engine.event.EventPersistenceManagerImpl;
+import jet.bpm.engine.event.InMemEventStorage;
+import jet.bpm.engine.handlers.ServiceTaskHandler;
+import jet.bpm.engine.journal.ExecutionStep;
+import jet.bpm.engine.journal.JournalPersistenceManager;
+import jet.bpm.engine.leveldb.JavaSerializer;
+import jet.bpm.engine.lock.KeyLockManagerImpl;
+import jet.bpm.engine.model.AbstractElement;
+import jet.bpm.engine.model.EndEvent;
+import jet.bpm.engine.model.EventBasedGateway;
+import jet.bpm.engine.model.ExpressionType;
+import jet.bpm.engine.model.IntermediateCatchEvent;
+import jet.bpm.engine.model.LoopCharacteristics;
+import jet.bpm.engine.model.ProcessDefinition;
+import jet.bpm.engine.model.SequenceFlow;
+import jet.bpm.engine.model.ServiceTask;
+import jet.bpm.engine.model.StartEvent;
+import jet.bpm.engine.model.SubProcess;
+import jet.bpm.engine.storage.MappedLogStore;
+import jet.bpm.engine.task.ServiceTaskRegistryImpl;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JournalPersistenceManagerTest {
+
+    private File dir;
+    private MappedLogStore store;
+    private JournalPersistenceManager pm;
+
+    private int snapshotInterval = JournalPersistenceManager.DEFAULT_SNAPSHOT_INTERVAL;
+    private boolean retainHistory = false;
+
+    @Before
+    public void init() {
+        dir = new File("/tmp/bpm/journal#" + System.nanoTime());
+        open();
+    }
+
+    @After
+    public void close() {
+        pm.close();
+    }
+
+    @Test
+    public void testSteps() throws Exception {
+        snapshotInterval = 3;
+        retainHistory = true;
+        reopen();
+
+        DefaultExecution e = makeExecution();
+        e.getContext().setVariable("a", 1);
+        pm.save(e);
+
+        e.push(PersistExecutionCommand.INSTANCE);
+        e.inc("pd", "t1", 1);
+        e.getContext().setVariable("b", 2);
+        e.getContext().removeVariable("a");
+        e.setSuspended(true);
+        UUID eventId = UUID.randomUUID();
+        e.getEventMap().put(eventId, new EventMap.Record(null, Collections.<ExecutionCommand>emptyList()));
+        pm.save(e);
+
+        reopen();
+
+        DefaultExecution ee = pm.get(e.getId());
+        assertEquals(1, ee.size());
+        assertEquals(1, ee.getActivationCount("pd", "t1"));
+        assertEquals(2, ee.getContext().getVariable("b"));
+        assertFalse(ee.getContext().hasVariable("a"));
+        assertTrue(ee.isSuspended());
+        assertTrue(ee.getEventMap().contains(eventId));
+        assertEquals(5, pm.getHistory(e.getId()).size());
+
+        // enough entries for a few snapshots
+        for (int i = 0; i < 10; i++) {
+            ee.getContext().setVariable("i", i);
+            pm.save(ee);
+        }
+        ee.pop();
+        pm.save(ee);
+
+        reopen();
+
+        ee = pm.get(e.getId());
+        assertTrue(ee.isDone());
+        assertEquals(9, ee.getContext().getVariable("i"));
+        assertEquals(16, pm.getHistory(e.getId()).size());
+
+        DefaultExecution r = pm.replay(e.getId(), 0);
+        assertEquals(1, r.getContext().getVariable("a"));
+        assertTrue(r.isDone());
+
+        r = pm.replay(e.getId(), 6);
+        assertEquals(2, r.getContext().getVariable("b"));
+        assertEquals(0, r.getContext().getVariable("i"));
+        assertEquals(1, r.size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testChangedInPlace() throws Exception {
+        DefaultExecution e = makeExecution();
+        e.getContext().setVariable("l", new ArrayList<>(Arrays.asList("a")));
+        e.getContext().setVariable("m", new HashMap<String, Object>());
+        pm.save(e);
+
+        // the values are changed, but the variables are never set again
+        e = pm.get(e.getId());
+        ((List<String>) e.getContext().getVariable("l")).add("b");
+        ((Map<String, Object>) e.getContext().getVariables().get("m")).put("k", "v");
+        pm.save(e);
+
+        reopen();
+
+        DefaultExecution ee = pm.get(e.getId());
+        assertEquals(Arrays.asList("a", "b"), ee.getContext().getVariable("l"));
+        assertEquals(Collections.singletonMap("k", "v"), ee.getContext().getVariable("m"));
+    }
+
+    @Test
+    public void testStaleExecution() throws Exception {
+        DefaultExecution e = makeExecution();
+        pm.save(e);
+
+        DefaultExecution a = pm.get(e.getId());
+        DefaultExecution b = pm.get(e.getId());
+
+        a.getContext().setVariable("a", 1);
+        pm.save(a);
+
+        // b is based on an older version, the whole state is written
+        b.getContext().setVariable("b", 2);
+        pm.save(b);
+
+        DefaultExecution ee = pm.get(e.getId());
+        assertFalse(ee.getContext().hasVariable("a"));
+        assertEquals(2, ee.getContext().getVariable("b"));
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        snapshotInterval = 2;
+        reopen();
+
+        DefaultExecution e = makeExecution();
+        pm.save(e);
+        for (int i = 0; i < 10; i++) {
+            e.getContext().setVariable("i", i);
+            pm.save(e);
+
+            // the head, a snapshot and at most two entries
+            assertTrue(store.getKeyCount() <= 4);
+        }
+
+        List<ExecutionStep> l = pm.getHistory(e.getId());
+        assertTrue(l.size() <= 2);
+
+        assertEquals(9, pm.remove(e.getId()).getContext().getVariable("i"));
+        assertNull(pm.get(e.getId()));
+        assertEquals(0, store.getKeyCount());
+    }
+
+    /**
+     * start --> sub                                   t2 --> end
+     *              \                                 /
+     *               substart --> gw --> ev --> subend
+     */
+    @Test(timeout = 10000)
+    public void testEngine() throws Exception {
+        ProcessDefinitionProviderImpl pdp = new ProcessDefinitionProviderImpl();
+        String processId = "test";
+        pdp.add(new ProcessDefinition(processId, Arrays.<AbstractElement>asList(
+                new StartEvent("start"),
+                new SequenceFlow("f1", "start", "sub"),
+                new SubProcess("sub", Arrays.<AbstractElement>asList(
+                        new StartEvent("substart"),
+                        new SequenceFlow("f2", "substart", "gw"),
+                        new EventBasedGateway("gw"),
+                        new SequenceFlow("f3", "gw", "ev"),
+                        new IntermediateCatchEvent("ev", "ev"),
+                        new SequenceFlow("f4", "ev", "subend"),
+                        new EndEvent("subend")
+                )),
+                new SequenceFlow("f5", "sub", "t2"),
+                new ServiceTask("t2", ExpressionType.DELEGATE, "${t2}"),
+                new SequenceFlow("f6", "t2", "end"),
+                new EndEvent("end")
+        )));
+
+        final Object[] result = new Object[1];
+        ServiceTaskRegistryImpl tasks = new ServiceTaskRegistryImpl();
+        tasks.register("t2", new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws Exception {
+                result[0] = ctx.getVariable("x");
+            }
+        });
+
+        EventPersistenceManagerImpl eventManager = new EventPersistenceManagerImpl(new InMemEventStorage());
+
+        String key = UUID.randomUUID().toString();
+        new DefaultEngine(pdp, tasks, eventManager, pm, new KeyLockManagerImpl())
+                .start(key, processId, Collections.<String, Object>singletonMap("a", 1));
+
+        reopen();
+
+        new DefaultEngine(pdp, tasks, eventManager, pm, new KeyLockManagerImpl())
+                .resume(key, "ev", Collections.<String, Object>singletonMap("x", 2));
+
+        assertEquals(2, result[0]);
+        assertTrue(eventManager.find(key, "ev").isEmpty());
+        assertEquals(0, store.getKeyCount());
+    }
+
+    /**
+     * start --> t1 (sequential loop, async) --> t2 --> end
+     */
+    @Test
+    public void testMultiInstanceLoop() throws Exception {
+        ServiceTask t1 = new ServiceTask("t1", ExpressionType.DELEGATE, "${t1}");
+        t1.setLoopCharacteristics(new LoopCharacteristics(true, "list", "item", null));
+
+        ProcessDefinitionProviderImpl pdp = new ProcessDefinitionProviderImpl();
+        String processId = "test";
+        pdp.add(new ProcessDefinition(processId, Arrays.<AbstractElement>asList(
+                new StartEvent("start"),
+                new SequenceFlow("f1", "start", "t1"),
+                t1,
+                new SequenceFlow("f2", "t1", "t2"),
+                new ServiceTask("t2", ExpressionType.DELEGATE, "${t2}"),
+                new SequenceFlow("f3", "t2", "end"),
+                new EndEvent("end")
+        )));
+
+        final List<Object> items = new ArrayList<>();
+        final List<AsyncCompletion> completions = new ArrayList<>();
+        ServiceTaskRegistryImpl tasks = new ServiceTaskRegistryImpl();
+        tasks.register("t1", new AsyncJavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx, AsyncCompletion c) throws Exception {
+                items.add(ctx.getVariable("item"));
+                completions.add(c);
+            }
+        });
+        final Object[] result = new Object[1];
+        tasks.register("t2", new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws Exception {
+                result[0] = ctx.getVariable("list");
+            }
+        });
+
+        EventPersistenceManagerImpl eventManager = new EventPersistenceManagerImpl(new InMemEventStorage());
+
+        String key = UUID.randomUUID().toString();
+        DefaultEngine engine = new DefaultEngine(pdp, tasks, eventManager, pm, new KeyLockManagerImpl());
+        engine.start(key, processId, Collections.<String, Object>singletonMap("list", Arrays.asList("a", "b", "c")));
+        assertNull(completions.get(0).complete(null).get());
+
+        // the loop is suspended at the second instance
+        assertEquals(Arrays.<Object>asList("a", "b"), items);
+
+        reopen();
+
+        engine = new DefaultEngine(pdp, tasks, eventManager, pm, new KeyLockManagerImpl());
+        for (int i = 0; i < 2; i++) {
+            Collection<Event> events = eventManager.find(key, ServiceTaskHandler.ASYNC_TASK_EVENT_PREFIX + "t1");
+            assertEquals(1, events.size());
+            assertNull(engine.continueAsyncTask(key, events.iterator().next().getId(), null, null).get());
+        }
+
+        // each instance is performed once
+        assertEquals(Arrays.<Object>asList("a", "b", "c"), items);
+        assertEquals(Arrays.asList("a", "b", "c"), result[0]);
+        assertEquals(0, store.getKeyCount());
+    }
+
+    private void open() {
+        store = new MappedLogStore(dir);
+        store.setSegmentSize(64 * 1024);
+        store.setCompactionInterval(0);
+
+        pm = new JournalPersistenceManager(store, new JavaSerializer());
+        pm.setSnapshotInterval(snapshotInterval);
+        pm.setRetainHistory(retainHistory);
+        pm.init();
+    }
+
+    private void reopen() {
+        pm.close();
+        open();
+    }
+
+    private static DefaultExecution makeExecution() {
+        return new DefaultExecution(UUID.randomUUID(), null, "bk", "pd", new ExecutionContextImpl(null));
+    }
+}
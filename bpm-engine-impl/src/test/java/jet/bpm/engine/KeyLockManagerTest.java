@@ -0,0 +1,114 @@
+package jet.bpm.engine;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import jet.bpm.engine.lock.KeyLockManagerImpl;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class KeyLockManagerTest {
+
+    @Test(timeout = 10000)
+    public void testIndependentKeys() throws Exception {
+        final KeyLockManagerImpl lm = new KeyLockManagerImpl();
+        lm.lock("a");
+
+        final CountDownLatch locked = new CountDownLatch(1);
+        Thread t = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                lm.lock("b");
+                locked.countDown();
+                lm.unlock("b");
+            }
+        });
+        t.start();
+
+        // a different key is not blocked by "a"
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+        t.join();
+
+        lm.unlock("a");
+        assertEquals(0, lm.getActiveKeyCount());
+        assertEquals(0, lm.getContentionCount());
+    }
+
+    @Test
+    public void testReentrancy() throws Exception {
+        KeyLockManagerImpl lm = new KeyLockManagerImpl();
+
+        lm.lock("a");
+        lm.lock("a");
+        assertEquals(1, lm.getActiveKeyCount());
+
+        lm.unlock("a");
+        assertEquals(1, lm.getActiveKeyCount());
+
+        lm.unlock("a");
+        assertEquals(0, lm.getActiveKeyCount());
+        assertEquals(2, lm.getAcquisitionCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testContention() throws Exception {
+        final KeyLockManagerImpl lm = new KeyLockManagerImpl();
+        lm.lock("a");
+
+        final CountDownLatch locked = new CountDownLatch(1);
+        Thread t = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                lm.lock("a");
+                locked.countDown();
+                lm.unlock("a");
+            }
+        });
+        t.start();
+
+        assertFalse(locked.await(200, TimeUnit.MILLISECONDS));
+        lm.unlock("a");
+
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+        t.join();
+
+        assertEquals(1, lm.getContentionCount());
+        assertTrue(lm.getMaxWaitTime(TimeUnit.MILLISECONDS) >= 100);
+        assertEquals(0, lm.getActiveKeyCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testTryLock() throws Exception {
+        final KeyLockManagerImpl lm = new KeyLockManagerImpl();
+        lm.lock("a");
+
+        final boolean[] result = new boolean[2];
+        Thread t = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                result[0] = lm.tryLock("a", 0, TimeUnit.MILLISECONDS);
+                result[1] = lm.tryLock("a", 50, TimeUnit.MILLISECONDS);
+            }
+        });
+        t.start();
+        t.join();
+
+        assertFalse(result[0]);
+        assertFalse(result[1]);
+
+        // failed attempts don't leak locks
+        lm.unlock("a");
+        assertEquals(0, lm.getActiveKeyCount());
+
+        assertTrue(lm.tryLock("a", 0, TimeUnit.MILLISECONDS));
+        lm.unlock("a");
+        assertEquals(0, lm.getActiveKeyCount());
+    }
+
+    @Test(expected = IllegalMonitorStateException.class)
+    public void testUnlockWithoutLock() throws Exception {
+        new KeyLockManagerImpl().unlock("a");
+    }
+}
@@ -1,10 +1,16 @@
 package jet.bpm.engine;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import jet.bpm.engine.commands.ExecutionCommand;
+import jet.bpm.engine.commands.PersistExecutionCommand;
 import jet.bpm.engine.commands.ProcessElementCommand;
+import jet.bpm.engine.commands.ProcessEventMappingCommand;
+import jet.bpm.engine.commands.SuspendExecutionCommand;
 import jet.bpm.engine.leveldb.KryoSerializer;
 import static org.junit.Assert.*;
 import org.junit.Ignore;
@@ -24,6 +30,69 @@ public class KryoSerializerTest {
         assertEquals(eventNames, s.fromBytes(bytes));
     }
 
+    @Test
+    public void eventMapSerialize() throws Exception {
+        KryoSerializer s = new KryoSerializer();
+
+        UUID groupId = UUID.randomUUID();
+        UUID id1 = UUID.randomUUID();
+        UUID id2 = UUID.randomUUID();
+
+        EventMap m = new EventMap();
+        m.put(id1, new EventMap.Record(groupId, Arrays.<ExecutionCommand>asList(new ProcessElementCommand("pid", "eid"))));
+        m.put(id2, new EventMap.Record(null, Arrays.<ExecutionCommand>asList(new ProcessElementCommand("pid", "eid2"))));
+
+        byte[] bytes = s.toBytes(m);
+        assertNotNull(bytes);
+
+        EventMap mm = (EventMap) s.fromBytes(bytes);
+        assertEquals(2, mm.size());
+        assertEquals(groupId, mm.get(id1).getGroupId());
+        assertNull(mm.get(id2).getGroupId());
+        assertEquals("eid2", ((ProcessElementCommand) mm.get(id2).getCommands().get(0)).getElementId());
+
+        mm.removeGroup(groupId);
+        assertFalse(mm.contains(id1));
+        assertTrue(mm.contains(id2));
+    }
+
+    @Test
+    public void commandsSerialize() throws Exception {
+        KryoSerializer s = new KryoSerializer();
+
+        UUID groupId = UUID.randomUUID();
+        List<ExecutionCommand> l = new ArrayList<>(Arrays.<ExecutionCommand>asList(
+                new ProcessElementCommand("pid", "eid"),
+                new ProcessElementCommand("pid", "eid", groupId, true),
+                SuspendExecutionCommand.INSTANCE,
+                PersistExecutionCommand.INSTANCE,
+                ProcessEventMappingCommand.INSTANCE));
+
+        byte[] bytes = s.toBytes(l);
+        assertNotNull(bytes);
+
+        List<?> ll = (List<?>) s.fromBytes(bytes);
+        assertEquals(l.size(), ll.size());
+
+        ProcessElementCommand c1 = (ProcessElementCommand) ll.get(0);
+        assertEquals("pid", c1.getProcessDefinitionId());
+        assertEquals("eid", c1.getElementId());
+        assertNull(c1.getGroupId());
+        assertFalse(c1.isExclusive());
+
+        ProcessElementCommand c2 = (ProcessElementCommand) ll.get(1);
+        assertEquals(groupId, c2.getGroupId());
+        assertTrue(c2.isExclusive());
+
+        // IDs are interned
+        assertSame(c1.getElementId(), c2.getElementId());
+
+        // stateless commands are shared
+        assertSame(SuspendExecutionCommand.INSTANCE, ll.get(2));
+        assertSame(PersistExecutionCommand.INSTANCE, ll.get(3));
+        assertSame(ProcessEventMappingCommand.INSTANCE, ll.get(4));
+    }
+
     @Test
     @Ignore
     public void defaultExecutionSerialize() throws Exception {
@@ -0,0 +1,214 @@
+package jet.bpm.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import jet.bpm.engine.api.AsyncCompletion;
+import jet.bpm.engine.api.AsyncJavaDelegate;
+import jet.bpm.engine.api.ExecutionContext;
+import jet.bpm.engine.api.ExecutionException;
+import jet.bpm.engine.api.ExecutionListener;
+import jet.bpm.engine.api.JavaDelegate;
+import jet.bpm.engine.commands.ProcessElementCommand;
+import jet.bpm.engine.event.EventPersistenceManagerImpl;
+import jet.bpm.engine.event.InMemEventStorage;
+import jet.bpm.engine.handlers.DelegatingElementHandler;
+import jet.bpm.engine.handlers.ElementHandler;
+import jet.bpm.engine.model.AbstractElement;
+import jet.bpm.engine.model.EndEvent;
+import jet.bpm.engine.model.ExpressionType;
+import jet.bpm.engine.model.ProcessDefinition;
+import jet.bpm.engine.model.SequenceFlow;
+import jet.bpm.engine.model.ServiceTask;
+import jet.bpm.engine.model.StartEvent;
+import jet.bpm.engine.task.ServiceTaskRegistryImpl;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class LinearSegmentsTest extends AbstractEngineTest {
+
+    /**
+     * start --> t1 --listener--> t2 --> t3 --> end
+     */
+    @Test
+    public void testChain() throws Exception {
+        testChain(true);
+    }
+
+    /**
+     * Same as {@link #testChain()}, but element by element.
+     */
+    @Test
+    public void testChainWithoutFusion() throws Exception {
+        testChain(false);
+    }
+
+    /**
+     * start --> t1 --> t2 (async) --> t3 --> end
+     */
+    @Test
+    public void testAsyncTaskInSegment() throws Exception {
+        final List<String> calls = new ArrayList<>();
+        register("t1", new Recorder("t1", calls));
+        register("t3", new Recorder("t3", calls));
+
+        final AtomicReference<AsyncCompletion> completion = new AtomicReference<>();
+        getEngine().getServiceTaskRegistry().register("t2", new AsyncJavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx, AsyncCompletion c) throws Exception {
+                calls.add("t2");
+                completion.set(c);
+            }
+        });
+
+        String processId = "test";
+        deploy(makeProcess(processId, null));
+
+        // ---
+
+        String key = UUID.randomUUID().toString();
+        getEngine().start(key, processId, null);
+
+        assertEquals(Arrays.asList("t1", "t2"), calls);
+        assertNotNull(completion.get());
+
+        // ---
+
+        completion.get().complete(Collections.<String, Object>emptyMap());
+
+        assertEquals(Arrays.asList("t1", "t2", "t3"), calls);
+        assertActivations(key, processId,
+                "start",
+                "f1",
+                "t1",
+                "f2",
+                "t2",
+                "f3",
+                "t3",
+                "f4",
+                "end");
+        assertNoMoreActivations();
+    }
+
+    /**
+     * start --> t1 --> t2 --> t3 --> end
+     */
+    @Test
+    public void testCustomElementHandler() throws Exception {
+        final List<String> handled = Collections.synchronizedList(new ArrayList<String>());
+
+        ProcessDefinitionProviderImpl processDefinitionProvider = new ProcessDefinitionProviderImpl();
+        ServiceTaskRegistryImpl serviceTaskRegistry = new ServiceTaskRegistryImpl();
+        EventPersistenceManagerImpl eventManager = new EventPersistenceManagerImpl(new InMemEventStorage());
+
+        DefaultEngine engine = new DefaultEngine(processDefinitionProvider, serviceTaskRegistry, eventManager) {
+
+            private final ElementHandler delegate = new DelegatingElementHandler(this);
+
+            @Override
+            public ElementHandler getElementHandler() {
+                return new ElementHandler() {
+
+                    @Override
+                    public void handle(DefaultExecution s, ProcessElementCommand c) throws ExecutionException {
+                        handled.add(c.getElementId());
+                        delegate.handle(s, c);
+                    }
+                };
+            }
+        };
+
+        List<String> calls = new ArrayList<>();
+        serviceTaskRegistry.register("t1", new Recorder("t1", calls));
+        serviceTaskRegistry.register("t2", new Recorder("t2", calls));
+        serviceTaskRegistry.register("t3", new Recorder("t3", calls));
+
+        String processId = "test";
+        processDefinitionProvider.add(makeProcess(processId, null));
+
+        // ---
+
+        assertTrue(engine.getLinearSegments().isEnabled());
+        engine.start(UUID.randomUUID().toString(), processId, null);
+
+        // ---
+
+        // the custom handler sees every element
+        assertEquals(Arrays.asList("t1", "t2", "t3"), calls);
+        assertEquals(Arrays.asList("start", "f1", "t1", "f2", "t2", "f3", "t3", "f4", "end"), handled);
+    }
+
+    private void testChain(boolean fusion) throws Exception {
+        getEngine().setLinearSegmentFusion(fusion);
+
+        final List<String> calls = new ArrayList<>();
+        register("t1", new Recorder("t1", calls));
+        register("t2", new Recorder("t2", calls));
+        register("t3", new Recorder("t3", calls));
+        getEngine().getServiceTaskRegistry().register("l", new ExecutionListener() {
+
+            @Override
+            public void notify(ExecutionContext ctx) {
+                calls.add("f2:" + ctx.getVariable("x"));
+            }
+        });
+
+        String processId = "test";
+        deploy(makeProcess(processId, new SequenceFlow.ExecutionListener("taken", ExpressionType.DELEGATE, "${l}")));
+
+        // ---
+
+        String key = UUID.randomUUID().toString();
+        getEngine().start(key, processId, null);
+
+        // ---
+
+        assertEquals(Arrays.asList("t1", "f2:t1", "t2", "t3"), calls);
+        assertActivations(key, processId,
+                "start",
+                "f1",
+                "t1",
+                "f2",
+                "t2",
+                "f3",
+                "t3",
+                "f4",
+                "end");
+        assertNoMoreActivations();
+    }
+
+    private static ProcessDefinition makeProcess(String processId, SequenceFlow.ExecutionListener l) {
+        return new ProcessDefinition(processId, Arrays.<AbstractElement>asList(
+                new StartEvent("start"),
+                new SequenceFlow("f1", "start", "t1"),
+                new ServiceTask("t1", ExpressionType.DELEGATE, "${t1}"),
+                l != null ? new SequenceFlow("f2", "t1", "t2", l) : new SequenceFlow("f2", "t1", "t2"),
+                new ServiceTask("t2", ExpressionType.DELEGATE, "${t2}"),
+                new SequenceFlow("f3", "t2", "t3"),
+                new ServiceTask("t3", ExpressionType.DELEGATE, "${t3}"),
+                new SequenceFlow("f4", "t3", "end"),
+                new EndEvent("end")
+        ));
+    }
+
+    private static final class Recorder implements JavaDelegate {
+
+        private final String id;
+        private final List<String> calls;
+
+        private Recorder(String id, List<String> calls) {
+            this.id = id;
+            this.calls = calls;
+        }
+
+        @Override
+        public void execute(ExecutionContext ctx) throws ExecutionException {
+            calls.add(id);
+            ctx.setVariable("x", id);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package jet.bpm.engine;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import jet.bpm.engine.api.InstanceBusyException;
+import jet.bpm.engine.lock.LockManager;
+import jet.bpm.engine.model.AbstractElement;
+import jet.bpm.engine.model.EndEvent;
+import jet.bpm.engine.model.EventBasedGateway;
+import jet.bpm.engine.model.IntermediateCatchEvent;
+import jet.bpm.engine.model.ProcessDefinition;
+import jet.bpm.engine.model.SequenceFlow;
+import jet.bpm.engine.model.StartEvent;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class LockTimeoutTest extends AbstractEngineTest {
+
+    /**
+     * start --> gw --> ev --> end
+     */
+    @Test(timeout = 10000)
+    public void testBusyInstance() throws Exception {
+        String processId = "test";
+        deploy(new ProcessDefinition(processId, Arrays.<AbstractElement>asList(
+                new StartEvent("start"),
+                new SequenceFlow("f1", "start", "gw"),
+                new EventBasedGateway("gw"),
+                new SequenceFlow("f2", "gw", "ev"),
+                new IntermediateCatchEvent("ev", "ev"),
+                new SequenceFlow("f3", "ev", "end"),
+                new EndEvent("end")
+        )));
+
+        final String key = UUID.randomUUID().toString();
+        getEngine().start(key, processId, null);
+
+        getEngine().setLockTimeout(50, TimeUnit.MILLISECONDS);
+
+        // ---
+
+        final LockManager lm = getEngine().getLockManager();
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread t = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                lm.lock(key);
+                try {
+                    locked.countDown();
+                    done.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    lm.unlock(key);
+                }
+            }
+        });
+        t.start();
+        locked.await();
+
+        try {
+            getEngine().resume(key, "ev", null);
+            fail("exception expected");
+        } catch (InstanceBusyException e) {
+            assertEquals(key, e.getProcessBusinessKey());
+        }
+
+        done.countDown();
+        t.join();
+
+        // ---
+
+        getEngine().resume(key, "ev", null);
+
+        assertActivations(key, processId,
+                "start",
+                "f1",
+                "gw",
+                "f2",
+                "ev",
+                "f3",
+                "end");
+        assertNoMoreActivations();
+    }
+}
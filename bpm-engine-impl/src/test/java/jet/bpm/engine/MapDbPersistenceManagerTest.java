@@ -0,0 +1,177 @@
+package jet.bpm.engine;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import jet.bpm.engine.mapdb.MapDbPersistenceManager;
+import jet.bpm.engine.mapdb.MapDbPersistenceManager.CacheType;
+import jet.bpm.engine.mapdb.MapDbPersistenceManager.Mode;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+
+public class MapDbPersistenceManagerTest {
+
+    @Test
+    public void testModes() throws Exception {
+        for (Mode m : Mode.values()) {
+            MapDbPersistenceManager pm = create(m, CacheType.HASH_TABLE, 1);
+            pm.start();
+            try {
+                assertSaveGetRemove(pm);
+            } finally {
+                pm.stop();
+            }
+        }
+    }
+
+    @Test
+    public void testSegmentsAndCache() throws Exception {
+        for (CacheType c : CacheType.values()) {
+            MapDbPersistenceManager pm = create(Mode.FILE, c, 4);
+            pm.start();
+            try {
+                assertSaveGetRemove(pm);
+            } finally {
+                pm.stop();
+            }
+        }
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        for (Mode m : Arrays.asList(Mode.FILE, Mode.WAL)) {
+            String dir = "/tmp/bpm/mapdb#" + System.nanoTime();
+
+            MapDbPersistenceManager pm = create(m, CacheType.HASH_TABLE, 4);
+            pm.setBaseDir(dir);
+            pm.start();
+
+            DefaultExecution e = makeExecution();
+            pm.save(e);
+            pm.stop();
+
+            pm = create(m, CacheType.HASH_TABLE, 4);
+            pm.setBaseDir(dir);
+            pm.start();
+            try {
+                DefaultExecution ee = pm.get(e.getId());
+                assertNotNull(ee);
+                assertEquals("v", ee.getContext().getVariable("k"));
+            } finally {
+                pm.stop();
+            }
+        }
+    }
+
+    @Test
+    public void testLegacyMigration() throws Exception {
+        String dir = "/tmp/bpm/mapdb#" + System.nanoTime();
+        new File(dir).mkdirs();
+
+        // the legacy layout, opened as the old version did
+        DefaultExecution e = makeExecution();
+        DB db = DBMaker.newFileDB(new File(dir + "/db"))
+                .transactionDisable()
+                .mmapFileEnableIfSupported()
+                .make();
+        db.getHashMap("executions").put(e.getId(), e);
+        db.close();
+
+        // ---
+
+        MapDbPersistenceManager pm = create(Mode.FILE, CacheType.HASH_TABLE, 4);
+        pm.setBaseDir(dir);
+        pm.start();
+        try {
+            DefaultExecution ee = pm.get(e.getId());
+            assertNotNull(ee);
+            assertEquals("v", ee.getContext().getVariable("k"));
+        } finally {
+            pm.stop();
+        }
+
+        // ---
+
+        db = DBMaker.newFileDB(new File(dir + "/db"))
+                .transactionDisable()
+                .mmapFileEnableIfSupported()
+                .make();
+        try {
+            assertFalse(db.exists("executions"));
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void testSegmentsChanged() throws Exception {
+        String dir = "/tmp/bpm/mapdb#" + System.nanoTime();
+
+        MapDbPersistenceManager pm = create(Mode.FILE, CacheType.HASH_TABLE, 4);
+        pm.setBaseDir(dir);
+        pm.start();
+        pm.save(makeExecution());
+        pm.stop();
+
+        pm = create(Mode.FILE, CacheType.HASH_TABLE, 2);
+        pm.setBaseDir(dir);
+        try {
+            pm.start();
+            fail("exception expected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // the same number of segments is accepted
+        pm = create(Mode.FILE, CacheType.HASH_TABLE, 4);
+        pm.setBaseDir(dir);
+        pm.start();
+        pm.stop();
+    }
+
+    private static void assertSaveGetRemove(MapDbPersistenceManager pm) {
+        List<DefaultExecution> l = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            DefaultExecution e = makeExecution();
+            pm.save(e);
+            l.add(e);
+        }
+
+        for (DefaultExecution e : l) {
+            DefaultExecution ee = pm.get(e.getId());
+            assertNotNull(ee);
+            assertEquals(e.getBusinessKey(), ee.getBusinessKey());
+            assertEquals("v", ee.getContext().getVariable("k"));
+        }
+
+        DefaultExecution e = makeExecution();
+        pm.write(Collections.singletonList(e), Arrays.asList(l.get(0).getId(), l.get(1).getId()));
+        assertNotNull(pm.get(e.getId()));
+        assertNull(pm.get(l.get(0).getId()));
+        assertNull(pm.get(l.get(1).getId()));
+
+        assertNotNull(pm.remove(l.get(2).getId()));
+        assertNull(pm.get(l.get(2).getId()));
+        assertNull(pm.remove(UUID.randomUUID()));
+    }
+
+    private static MapDbPersistenceManager create(Mode m, CacheType c, int segments) {
+        MapDbPersistenceManager pm = new MapDbPersistenceManager();
+        pm.setBaseDir("/tmp/bpm/mapdb#" + System.nanoTime());
+        pm.setMode(m);
+        pm.setCacheType(c);
+        pm.setSegments(segments);
+        return pm;
+    }
+
+    private static DefaultExecution makeExecution() {
+        ExecutionContextImpl ctx = new ExecutionContextImpl(null);
+        ctx.setVariable("k", "v");
+        return new DefaultExecution(UUID.randomUUID(), null, UUID.randomUUID().toString(), "pd", ctx);
+    }
+}
@@ -0,0 +1,288 @@
+package jet.bpm.engine;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import jet.bpm.engine.event.EventPersistenceManagerImpl;
+import jet.bpm.engine.leveldb.JavaSerializer;
+import jet.bpm.engine.leveldb.KryoSerializer;
+import jet.bpm.engine.lock.KeyLockManagerImpl;
+import jet.bpm.engine.model.AbstractElement;
+import jet.bpm.engine.persistence.Durability;
+import jet.bpm.engine.model.EndEvent;
+import jet.bpm.engine.model.EventBasedGateway;
+import jet.bpm.engine.model.IntermediateCatchEvent;
+import jet.bpm.engine.model.ProcessDefinition;
+import jet.bpm.engine.model.SequenceFlow;
+import jet.bpm.engine.model.StartEvent;
+import jet.bpm.engine.storage.KeyValueEventStorage;
+import jet.bpm.engine.storage.KeyValueIterator;
+import jet.bpm.engine.storage.KeyValuePersistenceManager;
+import jet.bpm.engine.storage.MappedLogStore;
+import jet.bpm.engine.task.ServiceTaskRegistryImpl;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedLogStoreTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private File dir;
+    private MappedLogStore store;
+
+    @Before
+    public void init() {
+        dir = new File("/tmp/bpm/mappedlog#" + System.nanoTime());
+        store = open(dir);
+    }
+
+    @After
+    public void close() {
+        store.close();
+    }
+
+    @Test
+    public void testPutGetDelete() throws Exception {
+        store.put(b("b"), b("2"));
+        store.put(b("a"), b("1"));
+        store.put(b("c"), b("3"));
+        store.put(b("b"), b("22"));
+        store.delete(b("c"));
+
+        assertEquals("1", s(store.get(b("a"))));
+        assertEquals("22", s(store.get(b("b"))));
+        assertNull(store.get(b("c")));
+
+        List<String> keys = new ArrayList<>();
+        try (KeyValueIterator it = store.iterator()) {
+            it.seekToFirst();
+            while (it.hasNext()) {
+                keys.add(s(it.next().getKey()));
+            }
+        }
+        assertEquals(Arrays.asList("a", "b"), keys);
+
+        try (KeyValueIterator it = store.iterator()) {
+            it.seek(b("aa"));
+            assertEquals("b", s(it.peekNext().getKey()));
+        }
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        Map<byte[], byte[]> puts = new HashMap<>();
+        puts.put(b("a"), b("1"));
+        puts.put(b("b"), b("2"));
+        store.write(puts, Collections.singletonList(b("b")), null);
+        store.put(b("c"), b("3"));
+
+        store.close();
+        store = open(dir);
+
+        assertEquals("1", s(store.get(b("a"))));
+        assertNull(store.get(b("b")));
+        assertEquals("3", s(store.get(b("c"))));
+    }
+
+    @Test
+    public void testTornWrite() throws Exception {
+        store.put(b("a"), b("1"));
+        store.put(b("b"), b("2"));
+        store.close();
+
+        // damage the last byte of the last frame
+        File f = dir.listFiles()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            long pos = raf.length() - 1;
+            while (pos > 0) {
+                raf.seek(pos);
+                if (raf.read() != 0) {
+                    break;
+                }
+                pos--;
+            }
+            raf.seek(pos);
+            raf.write('x');
+        }
+
+        store = open(dir);
+        assertEquals("1", s(store.get(b("a"))));
+        assertNull(store.get(b("b")));
+
+        store.put(b("c"), b("3"));
+        store.close();
+        store = open(dir);
+        assertEquals("1", s(store.get(b("a"))));
+        assertEquals("3", s(store.get(b("c"))));
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            store.put(b("k" + (i % 10)), b("v" + i));
+        }
+        for (int i = 0; i < 5; i++) {
+            store.delete(b("k" + i));
+        }
+
+        int before = store.getSegmentCount();
+        assertTrue(before > 2);
+        assertTrue(store.getGarbageRatio() > 0.5);
+
+        store.compact();
+
+        assertTrue(store.getSegmentCount() < before);
+        assertEquals(0, store.getGarbageRatio(), 0.001);
+        assertEquals(5, store.getKeyCount());
+
+        store.close();
+        store = open(dir);
+
+        for (int i = 0; i < 5; i++) {
+            assertNull(store.get(b("k" + i)));
+        }
+        for (int i = 5; i < 10; i++) {
+            assertEquals("v" + (990 + i), s(store.get(b("k" + i))));
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testSyncDuringCompaction() throws Exception {
+        final int threads = 4;
+        final int writes = 500;
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int n = t;
+            Thread w = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < writes; i++) {
+                            // small segments are sealed and compacted while
+                            // the writers sync them
+                            store.put(b("k" + n + ":" + (i % 5)), b("v" + i), Durability.SYNC);
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            });
+            writers.add(w);
+            w.start();
+        }
+
+        boolean running = true;
+        while (running) {
+            store.compact();
+
+            running = false;
+            for (Thread w : writers) {
+                running |= w.isAlive();
+            }
+        }
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < 5; i++) {
+                assertEquals("v" + (writes - 5 + i), s(store.get(b("k" + t + ":" + i))));
+            }
+        }
+    }
+
+    /**
+     * start --> gw --> ev --> end
+     */
+    @Test(timeout = 10000)
+    public void testEngine() throws Exception {
+        ProcessDefinitionProviderImpl pdp = new ProcessDefinitionProviderImpl();
+        String processId = "test";
+        pdp.add(new ProcessDefinition(processId, Arrays.<AbstractElement>asList(
+                new StartEvent("start"),
+                new SequenceFlow("f1", "start", "gw"),
+                new EventBasedGateway("gw"),
+                new SequenceFlow("f2", "gw", "ev"),
+                new IntermediateCatchEvent("ev", "ev"),
+                new SequenceFlow("f3", "ev", "end"),
+                new EndEvent("end")
+        )));
+
+        String key = UUID.randomUUID().toString();
+
+        Backend b = new Backend(new File(dir, "engine"));
+        new DefaultEngine(pdp, new ServiceTaskRegistryImpl(), b.eventManager, b.persistenceManager, new KeyLockManagerImpl())
+                .start(key, processId, null);
+        b.close();
+
+        // ---
+
+        b = new Backend(new File(dir, "engine"));
+        assertEquals(1, b.eventManager.find(key, "ev").size());
+
+        new DefaultEngine(pdp, new ServiceTaskRegistryImpl(), b.eventManager, b.persistenceManager, new KeyLockManagerImpl())
+                .resume(key, "ev", null);
+
+        assertTrue(b.eventManager.find(key, "ev").isEmpty());
+        b.close();
+    }
+
+    private static MappedLogStore open(File dir) {
+        MappedLogStore s = create(dir);
+        s.init();
+        return s;
+    }
+
+    private static MappedLogStore create(File dir) {
+        MappedLogStore s = new MappedLogStore(dir);
+        s.setSegmentSize(4096);
+        s.setCompactionInterval(0);
+        return s;
+    }
+
+    private static byte[] b(String s) {
+        return s.getBytes(UTF8);
+    }
+
+    private static String s(byte[] b) {
+        return new String(b, UTF8);
+    }
+
+    private static final class Backend {
+
+        private final KeyValuePersistenceManager persistenceManager;
+        private final KeyValueEventStorage eventStorage;
+        private final EventPersistenceManagerImpl eventManager;
+
+        private Backend(File dir) {
+            KryoSerializer serializer = new KryoSerializer();
+
+            persistenceManager = new KeyValuePersistenceManager(create(new File(dir, "executions")), new JavaSerializer());
+            persistenceManager.init();
+
+            eventStorage = new KeyValueEventStorage(create(new File(dir, "events")),
+                    create(new File(dir, "expired")),
+                    create(new File(dir, "keys")),
+                    create(new File(dir, "names")),
+                    serializer);
+            eventStorage.init();
+
+            eventManager = new EventPersistenceManagerImpl(eventStorage);
+        }
+
+        private void close() {
+            persistenceManager.close();
+            eventStorage.close();
+        }
+    }
+}
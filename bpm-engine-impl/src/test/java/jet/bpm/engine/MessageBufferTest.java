@@ -0,0 +1,189 @@
+package jet.bpm.engine;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import jet.bpm.engine.api.ExecutionContext;
+import jet.bpm.engine.api.ExecutionException;
+import jet.bpm.engine.api.JavaDelegate;
+import jet.bpm.engine.api.NoEventFoundException;
+import jet.bpm.engine.event.InMemMessageBuffer;
+import jet.bpm.engine.leveldb.JavaSerializer;
+import jet.bpm.engine.model.AbstractElement;
+import jet.bpm.engine.model.EndEvent;
+import jet.bpm.engine.model.EventBasedGateway;
+import jet.bpm.engine.model.ExpressionType;
+import jet.bpm.engine.model.IntermediateCatchEvent;
+import jet.bpm.engine.model.ProcessDefinition;
+import jet.bpm.engine.model.SequenceFlow;
+import jet.bpm.engine.model.ServiceTask;
+import jet.bpm.engine.model.StartEvent;
+import jet.bpm.engine.storage.KeyValueMessageBuffer;
+import jet.bpm.engine.storage.MappedLogStore;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static org.mockito.Mockito.*;
+
+public class MessageBufferTest extends AbstractEngineTest {
+
+    /**
+     * start --> gw --> ev1 --> end1
+     *             \
+     *              --> ev2 --> t1 --> end2
+     */
+    @Test
+    public void testEarlyMessage() throws Exception {
+        JavaDelegate t1 = spy(new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                assertEquals("hello", ctx.getVariable("msg"));
+            }
+        });
+        getEngine().getServiceTaskRegistry().register("t1", t1);
+
+        String processId = "test";
+        deploy(makeProcess(processId));
+
+        getEngine().setMessageBuffer(new InMemMessageBuffer(60000));
+
+        // ---
+
+        String key = UUID.randomUUID().toString();
+
+        // the message arrives before the process is started
+        getEngine().resume(key, "ev2", Collections.<String, Object>singletonMap("msg", "hello"));
+        getEngine().start(key, processId, null);
+
+        // ---
+
+        assertActivations(key, processId,
+                "start",
+                "f1",
+                "gw",
+                "f2",
+                "ev1",
+                "f4",
+                "ev2",
+                "f5",
+                "t1",
+                "f6",
+                "end2");
+        assertNoMoreActivations();
+
+        verify(t1, times(1)).execute(any(ExecutionContext.class));
+
+        // all events of the group are removed
+        assertTrue(eventManager.find(key, "ev1").isEmpty());
+        assertTrue(eventManager.find(key, "ev2").isEmpty());
+    }
+
+    @Test
+    public void testExpiredMessage() throws Exception {
+        getEngine().getServiceTaskRegistry().register("t1", mock(JavaDelegate.class));
+
+        String processId = "test";
+        deploy(makeProcess(processId));
+
+        getEngine().setMessageBuffer(new InMemMessageBuffer(1));
+
+        // ---
+
+        String key = UUID.randomUUID().toString();
+        getEngine().resume(key, "ev1", null);
+
+        Thread.sleep(10);
+
+        // the message is expired, the process must wait
+        getEngine().start(key, processId, null);
+        assertEquals(1, eventManager.find(key, "ev1").size());
+
+        getEngine().resume(key, "ev1", null);
+
+        assertActivations(key, processId,
+                "start",
+                "f1",
+                "gw",
+                "f2",
+                "ev1",
+                "f4",
+                "ev2",
+                "f3",
+                "end1");
+        assertNoMoreActivations();
+    }
+
+    @Test
+    public void testNoBuffer() throws Exception {
+        String key = UUID.randomUUID().toString();
+        try {
+            getEngine().resume(key, "ev1", null);
+            fail("exception expected");
+        } catch (NoEventFoundException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDurableBuffer() throws Exception {
+        getEngine().getServiceTaskRegistry().register("t1", mock(JavaDelegate.class));
+
+        String processId = "test";
+        deploy(makeProcess(processId));
+
+        File dir = new File("/tmp/bpm/messages#" + System.nanoTime());
+
+        KeyValueMessageBuffer mb = new KeyValueMessageBuffer(new MappedLogStore(dir), new JavaSerializer(), 60000);
+        mb.init();
+        getEngine().setMessageBuffer(mb);
+
+        String key = UUID.randomUUID().toString();
+        getEngine().resume(key, "ev1", Collections.<String, Object>singletonMap("msg", "hello"));
+        mb.close();
+
+        // the buffered message survives the restart
+        mb = new KeyValueMessageBuffer(new MappedLogStore(dir), new JavaSerializer(), 60000);
+        mb.init();
+        getEngine().setMessageBuffer(mb);
+
+        try {
+            getEngine().start(key, processId, null);
+
+            assertActivations(key, processId,
+                    "start",
+                    "f1",
+                    "gw",
+                    "f2",
+                    "ev1",
+                    "f4",
+                    "ev2",
+                    "f3",
+                    "end1");
+            assertNoMoreActivations();
+
+            assertFalse(mb.hasMessages(key));
+        } finally {
+            mb.close();
+        }
+    }
+
+    private static ProcessDefinition makeProcess(String processId) {
+        return new ProcessDefinition(processId, Arrays.<AbstractElement>asList(
+                new StartEvent("start"),
+                new SequenceFlow("f1", "start", "gw"),
+                new EventBasedGateway("gw"),
+                    new SequenceFlow("f2", "gw", "ev1"),
+                    new IntermediateCatchEvent("ev1", "ev1"),
+                    new SequenceFlow("f3", "ev1", "end1"),
+                    new EndEvent("end1"),
+
+                    new SequenceFlow("f4", "gw", "ev2"),
+                    new IntermediateCatchEvent("ev2", "ev2"),
+                    new SequenceFlow("f5", "ev2", "t1"),
+                    new ServiceTask("t1", ExpressionType.DELEGATE, "${t1}"),
+                    new SequenceFlow("f6", "t1", "end2"),
+                    new EndEvent("end2")
+        ));
+    }
+}
@@ -0,0 +1,335 @@
+package jet.bpm.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import jet.bpm.engine.api.BpmnError;
+import jet.bpm.engine.api.ExecutionContext;
+import jet.bpm.engine.api.ExecutionException;
+import jet.bpm.engine.api.JavaDelegate;
+import jet.bpm.engine.model.AbstractElement;
+import jet.bpm.engine.model.BoundaryEvent;
+import jet.bpm.engine.model.EndEvent;
+import jet.bpm.engine.model.ExpressionType;
+import jet.bpm.engine.model.LoopCharacteristics;
+import jet.bpm.engine.model.ProcessDefinition;
+import jet.bpm.engine.model.SequenceFlow;
+import jet.bpm.engine.model.ServiceTask;
+import jet.bpm.engine.model.StartEvent;
+import jet.bpm.engine.model.SubProcess;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class MultiInstanceTest extends AbstractEngineTest {
+
+    /**
+     * start --> t1 (x3) --> t2 --> end
+     */
+    @Test
+    public void testSequential() throws Exception {
+        final List<Object> items = new ArrayList<>();
+        register("t1", new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                items.add(ctx.getVariable("item"));
+                assertEquals(items.size() - 1, ctx.getVariable(ExecutionContext.LOOP_COUNTER_KEY));
+                assertEquals(3, ctx.getVariable(ExecutionContext.NUMBER_OF_INSTANCES_KEY));
+            }
+        });
+
+        final AtomicReference<Map<String, Object>> result = new AtomicReference<>();
+        register("t2", new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                result.set(ctx.getVariables());
+            }
+        });
+
+        String processId = "test";
+        deploy(makeProcess(processId, new LoopCharacteristics(true, "list", "item", null)));
+
+        // ---
+
+        String key = UUID.randomUUID().toString();
+        getEngine().start(key, processId, Collections.<String, Object>singletonMap("list", Arrays.asList("a", "b", "c")));
+
+        // ---
+
+        assertEquals(Arrays.<Object>asList("a", "b", "c"), items);
+        assertActivations(key, processId,
+                "start",
+                "f1",
+                "t1",
+                "t1",
+                "t1",
+                "t1",
+                "f2",
+                "t2",
+                "f3",
+                "end");
+        assertNoMoreActivations();
+
+        // loop variables are removed
+        assertFalse(result.get().containsKey("item"));
+        assertFalse(result.get().containsKey(ExecutionContext.LOOP_COUNTER_KEY));
+    }
+
+    /**
+     * start --> t1 (x5, stops after 2) --> t2 --> end
+     */
+    @Test
+    public void testCompletionCondition() throws Exception {
+        final List<Object> items = new ArrayList<>();
+        register("t1", new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                items.add(ctx.getVariable("item"));
+            }
+        });
+        register("t2", new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+            }
+        });
+
+        String processId = "test";
+        deploy(makeProcess(processId, new LoopCharacteristics(true, "${list}", "item", "${nrOfCompletedInstances >= 2}")));
+
+        // ---
+
+        String key = UUID.randomUUID().toString();
+        getEngine().start(key, processId, Collections.<String, Object>singletonMap("list", Arrays.asList(1, 2, 3, 4, 5)));
+
+        // ---
+
+        assertEquals(Arrays.<Object>asList(1, 2), items);
+    }
+
+    /**
+     * start --> t1 (x20, parallel) --> t2 --> end
+     */
+    @Test(timeout = 10000)
+    public void testParallel() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        getEngine().setParallelBranchExecutor(executor);
+        getEngine().setMultiInstanceConcurrency(4);
+
+        final Set<Long> threads = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+        register("t1", new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                threads.add(Thread.currentThread().getId());
+                Object item = ctx.getVariable("item");
+                ctx.setVariable("r" + item, item);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    throw new ExecutionException("Interrupted", e);
+                }
+            }
+        });
+
+        final AtomicReference<Map<String, Object>> result = new AtomicReference<>();
+        register("t2", new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                result.set(ctx.getVariables());
+            }
+        });
+
+        String processId = "test";
+        deploy(makeProcess(processId, new LoopCharacteristics(false, "list", "item", null)));
+
+        List<Integer> l = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            l.add(i);
+        }
+
+        // ---
+
+        String key = UUID.randomUUID().toString();
+        try {
+            getEngine().start(key, processId, Collections.<String, Object>singletonMap("list", l));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // ---
+
+        Map<String, Object> m = result.get();
+        assertNotNull(m);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, m.get("r" + i));
+        }
+        assertFalse(m.containsKey("item"));
+        assertTrue(threads.size() > 1);
+    }
+
+    /**
+     * start --> sub (x2) --> t2 --> end
+     *           substart --> t1 --> subend
+     */
+    @Test
+    public void testSubProcess() throws Exception {
+        final List<Object> items = new ArrayList<>();
+        register("t1", new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                items.add(ctx.getVariable("item"));
+            }
+        });
+        register("t2", new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+            }
+        });
+
+        SubProcess sub = new SubProcess("sub", Arrays.<AbstractElement>asList(
+                new StartEvent("substart"),
+                new SequenceFlow("f2", "substart", "t1"),
+                new ServiceTask("t1", ExpressionType.DELEGATE, "${t1}"),
+                new SequenceFlow("f3", "t1", "subend"),
+                new EndEvent("subend")));
+        sub.setLoopCharacteristics(new LoopCharacteristics(true, "list", "item", null));
+
+        String processId = "test";
+        deploy(new ProcessDefinition(processId, Arrays.<AbstractElement>asList(
+                new StartEvent("start"),
+                new SequenceFlow("f1", "start", "sub"),
+                sub,
+                new SequenceFlow("f4", "sub", "t2"),
+                new ServiceTask("t2", ExpressionType.DELEGATE, "${t2}"),
+                new SequenceFlow("f5", "t2", "end"),
+                new EndEvent("end")
+        )));
+
+        // ---
+
+        String key = UUID.randomUUID().toString();
+        getEngine().start(key, processId, Collections.<String, Object>singletonMap("list", Arrays.asList("a", "b")));
+
+        // ---
+
+        assertEquals(Arrays.<Object>asList("a", "b"), items);
+        assertActivations(key, processId,
+                "start",
+                "f1",
+                "sub",
+                "sub",
+                "substart",
+                "f2",
+                "t1",
+                "f3",
+                "subend",
+                "sub",
+                "substart",
+                "f2",
+                "t1",
+                "f3",
+                "subend",
+                "f4",
+                "t2",
+                "f5",
+                "end");
+        assertNoMoreActivations();
+    }
+
+    /**
+     * start --> t1 (x3) --> t2 --> end
+     *             \
+     *              be1 --> t3 --> end
+     */
+    @Test
+    public void testBoundaryError() throws Exception {
+        final List<Object> items = new ArrayList<>();
+        register("t1", new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                Object item = ctx.getVariable("item");
+                items.add(item);
+                if ("b".equals(item)) {
+                    throw new BpmnError("fail");
+                }
+            }
+        });
+
+        final List<String> called = new ArrayList<>();
+        register("t2", new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                called.add("t2");
+            }
+        });
+        register("t3", new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                called.add("t3");
+            }
+        });
+
+        ServiceTask t1 = new ServiceTask("t1", ExpressionType.DELEGATE, "${t1}");
+        t1.setLoopCharacteristics(new LoopCharacteristics(true, "list", "item", null));
+
+        String processId = "test";
+        deploy(new ProcessDefinition(processId, Arrays.<AbstractElement>asList(
+                new StartEvent("start"),
+                new SequenceFlow("f1", "start", "t1"),
+                t1,
+                new BoundaryEvent("be1", "t1", null),
+                new SequenceFlow("f4", "be1", "t3"),
+                new ServiceTask("t3", ExpressionType.DELEGATE, "${t3}"),
+                new SequenceFlow("f5", "t3", "end"),
+                new SequenceFlow("f2", "t1", "t2"),
+                new ServiceTask("t2", ExpressionType.DELEGATE, "${t2}"),
+                new SequenceFlow("f3", "t2", "end"),
+                new EndEvent("end")
+        )));
+
+        // ---
+
+        String key = UUID.randomUUID().toString();
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("list", Arrays.asList("a", "b", "c"));
+        getEngine().start(key, processId, vars);
+
+        // ---
+
+        assertEquals(Arrays.<Object>asList("a", "b"), items);
+        assertEquals(Arrays.asList("t3"), called);
+    }
+
+    private static ProcessDefinition makeProcess(String processId, LoopCharacteristics l) {
+        ServiceTask t1 = new ServiceTask("t1", ExpressionType.DELEGATE, "${t1}");
+        t1.setLoopCharacteristics(l);
+
+        return new ProcessDefinition(processId, Arrays.<AbstractElement>asList(
+                new StartEvent("start"),
+                new SequenceFlow("f1", "start", "t1"),
+                t1,
+                new SequenceFlow("f2", "t1", "t2"),
+                new ServiceTask("t2", ExpressionType.DELEGATE, "${t2}"),
+                new SequenceFlow("f3", "t2", "end"),
+                new EndEvent("end")
+        ));
+    }
+}
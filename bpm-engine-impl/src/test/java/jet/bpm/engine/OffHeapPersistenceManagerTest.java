@@ -0,0 +1,149 @@
+package jet.bpm.engine;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import jet.bpm.engine.leveldb.JavaSerializer;
+import jet.bpm.engine.persistence.OffHeapPersistenceManager;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OffHeapPersistenceManagerTest {
+
+    private OffHeapPersistenceManager pm;
+
+    @Before
+    public void init() {
+        pm = new OffHeapPersistenceManager(new JavaSerializer());
+        pm.setSlabSize(64 * 1024);
+    }
+
+    @After
+    public void close() {
+        pm.stop();
+    }
+
+    @Test
+    public void testSaveGetRemove() throws Exception {
+        pm.start();
+
+        Random rnd = new Random(42);
+        List<DefaultExecution> l = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            DefaultExecution e = makeExecution(rnd.nextInt(3000));
+            pm.save(e);
+            l.add(e);
+        }
+        assertEquals(l.size(), pm.getSize());
+
+        // rewrite with a different size
+        for (int i = 0; i < l.size(); i += 2) {
+            DefaultExecution e = l.get(i);
+            e.getContext().setVariable("payload", payload(rnd.nextInt(3000)));
+            pm.save(e);
+        }
+
+        for (DefaultExecution e : l) {
+            DefaultExecution ee = pm.get(e.getId());
+            assertNotNull(ee);
+            assertEquals(e.getContext().getVariable("payload"), ee.getContext().getVariable("payload"));
+        }
+
+        long used = pm.getUsedMemory();
+        for (int i = 0; i < l.size(); i += 2) {
+            assertNotNull(pm.remove(l.get(i).getId()));
+            assertNull(pm.get(l.get(i).getId()));
+        }
+        assertTrue(pm.getUsedMemory() < used);
+        assertEquals(l.size() / 2, pm.getSize());
+
+        // freed chunks are reused
+        long allocated = pm.getAllocatedMemory();
+        for (int i = 0; i < l.size(); i += 2) {
+            pm.save(l.get(i));
+        }
+        assertEquals(allocated, pm.getAllocatedMemory());
+
+        for (DefaultExecution e : l) {
+            assertNotNull(pm.remove(e.getId()));
+        }
+        assertEquals(0, pm.getSize());
+        assertEquals(0, pm.getUsedMemory());
+        assertNull(pm.remove(UUID.randomUUID()));
+    }
+
+    @Test
+    public void testLargeExecution() throws Exception {
+        pm.start();
+
+        DefaultExecution e = makeExecution(100000);
+        pm.save(e);
+        long allocated = pm.getAllocatedMemory();
+        assertTrue(allocated > 100000);
+
+        assertEquals(e.getContext().getVariable("payload"), pm.get(e.getId()).getContext().getVariable("payload"));
+
+        pm.remove(e.getId());
+        assertTrue(pm.getAllocatedMemory() < allocated);
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        File f = new File("/tmp/bpm/offheap#" + System.nanoTime());
+        f.getParentFile().mkdirs();
+
+        pm.setMaxMemory(64 * 1024);
+        pm.setSpillFile(f);
+        pm.start();
+
+        List<DefaultExecution> l = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            DefaultExecution e = makeExecution(1000);
+            pm.save(e);
+            l.add(e);
+        }
+
+        assertTrue(pm.getSpilledMemory() > 0);
+        assertTrue(pm.getAllocatedMemory() <= 64 * 1024);
+        assertTrue(f.exists());
+
+        for (DefaultExecution e : l) {
+            assertEquals(e.getContext().getVariable("payload"), pm.get(e.getId()).getContext().getVariable("payload"));
+        }
+
+        pm.stop();
+        assertFalse(f.exists());
+    }
+
+    @Test
+    public void testMemoryLimit() throws Exception {
+        pm.setMaxMemory(64 * 1024);
+        pm.start();
+
+        try {
+            for (int i = 0; i < 200; i++) {
+                pm.save(makeExecution(1000));
+            }
+            fail("exception expected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private static DefaultExecution makeExecution(int payloadSize) {
+        ExecutionContextImpl ctx = new ExecutionContextImpl(null);
+        ctx.setVariable("payload", payload(payloadSize));
+        return new DefaultExecution(UUID.randomUUID(), null, "bk", "pd", ctx);
+    }
+
+    private static String payload(int size) {
+        char[] c = new char[size];
+        Arrays.fill(c, 'x');
+        return new String(c);
+    }
+}
@@ -0,0 +1,251 @@
+package jet.bpm.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import jet.bpm.engine.api.AsyncCompletion;
+import jet.bpm.engine.api.AsyncJavaDelegate;
+import jet.bpm.engine.api.ExecutionContext;
+import jet.bpm.engine.api.ExecutionException;
+import jet.bpm.engine.api.JavaDelegate;
+import jet.bpm.engine.model.AbstractElement;
+import jet.bpm.engine.model.EndEvent;
+import jet.bpm.engine.model.ExpressionType;
+import jet.bpm.engine.model.ParallelGateway;
+import jet.bpm.engine.model.ProcessDefinition;
+import jet.bpm.engine.model.SequenceFlow;
+import jet.bpm.engine.model.ServiceTask;
+import jet.bpm.engine.model.StartEvent;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelBranchesTest extends AbstractEngineTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        getEngine().setParallelBranchExecutor(executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * start --> gw1 --> t1 --> gw2 --> t4 --> end
+     *               \-> t2 -/
+     *               \-> t3 -/
+     */
+    @Test(timeout = 10000)
+    public void testConcurrentBranches() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(3);
+        JavaDelegate d = new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                // completes only if all branches are running at the same time
+                latch.countDown();
+                try {
+                    assertTrue(latch.await(5, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new ExecutionException("Interrupted", e);
+                }
+                ctx.setVariable("v_" + Thread.currentThread().getId(), true);
+                ctx.setVariable("x", ctx.getVariable("x") + "-" + ctx.getVariable("name"));
+            }
+        };
+
+        final AtomicReference<Map<String, Object>> result = new AtomicReference<>();
+        register("t4", new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                result.set(ctx.getVariables());
+            }
+        });
+
+        register("t", d);
+
+        String processId = "test";
+        deploy(makeProcess(processId, "${t}"));
+
+        // ---
+
+        String key = UUID.randomUUID().toString();
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("x", "a");
+        vars.put("name", "b");
+        getEngine().start(key, processId, vars);
+
+        // ---
+
+        assertActivations(key, processId,
+                "start",
+                "f1",
+                "gw1",
+                "f2",
+                "t1",
+                "f3",
+                "f4",
+                "t2",
+                "f5",
+                "f6",
+                "t3",
+                "f7",
+                "gw2",
+                "gw2",
+                "gw2",
+                "f8",
+                "t4",
+                "f9",
+                "end");
+        assertNoMoreActivations();
+
+        Map<String, Object> m = result.get();
+        assertNotNull(m);
+        // each branch saw its own copy of the variables
+        assertEquals("a-b", m.get("x"));
+
+        int threads = 0;
+        for (String k : m.keySet()) {
+            if (k.startsWith("v_")) {
+                threads++;
+            }
+        }
+        assertEquals(3, threads);
+    }
+
+    /**
+     * Changes of later branches win.
+     */
+    @Test(timeout = 10000)
+    public void testDeterministicMerge() throws Exception {
+        for (final String id : Arrays.asList("t1", "t2", "t3")) {
+            register(id, new JavaDelegate() {
+
+                @Override
+                public void execute(ExecutionContext ctx) throws ExecutionException {
+                    if (!"t3".equals(id)) {
+                        ctx.setVariable("x", id);
+                    }
+                    if ("t1".equals(id)) {
+                        ctx.removeVariable("y");
+                    }
+                }
+            });
+        }
+
+        final AtomicReference<Map<String, Object>> result = new AtomicReference<>();
+        register("t4", new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                result.set(ctx.getVariables());
+            }
+        });
+
+        String processId = "test";
+        deploy(makeProcess(processId, null));
+
+        // ---
+
+        String key = UUID.randomUUID().toString();
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("x", "initial");
+        vars.put("y", "initial");
+        getEngine().start(key, processId, vars);
+
+        // ---
+
+        Map<String, Object> m = result.get();
+        assertEquals("t2", m.get("x"));
+        assertFalse(m.containsKey("y"));
+    }
+
+    /**
+     * Asynchronous tasks are performed by the parent execution.
+     */
+    @Test(timeout = 10000)
+    public void testAsyncTaskInBranch() throws Exception {
+        final AtomicReference<AsyncCompletion> completion = new AtomicReference<>();
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+        getEngine().getServiceTaskRegistry().register("t1", new AsyncJavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx, AsyncCompletion c) throws Exception {
+                thread.set(Thread.currentThread());
+                completion.set(c);
+            }
+        });
+
+        JavaDelegate noop = new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+            }
+        };
+        register("t2", noop);
+        register("t3", noop);
+
+        final AtomicReference<Map<String, Object>> result = new AtomicReference<>();
+        register("t4", new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                result.set(ctx.getVariables());
+            }
+        });
+
+        String processId = "test";
+        deploy(makeProcess(processId, null));
+
+        // ---
+
+        String key = UUID.randomUUID().toString();
+        getEngine().start(key, processId, null);
+
+        assertSame(Thread.currentThread(), thread.get());
+        assertNull(result.get());
+
+        // ---
+
+        completion.get().complete(Collections.<String, Object>singletonMap("r", "done"));
+
+        assertNotNull(result.get());
+        assertEquals("done", result.get().get("r"));
+    }
+
+    private static ProcessDefinition makeProcess(String processId, String expr) {
+        return new ProcessDefinition(processId, Arrays.<AbstractElement>asList(
+                new StartEvent("start"),
+                new SequenceFlow("f1", "start", "gw1"),
+                new ParallelGateway("gw1"),
+                    new SequenceFlow("f2", "gw1", "t1"),
+                    new ServiceTask("t1", ExpressionType.DELEGATE, expr != null ? expr : "${t1}"),
+                    new SequenceFlow("f3", "t1", "gw2"),
+                    new SequenceFlow("f4", "gw1", "t2"),
+                    new ServiceTask("t2", ExpressionType.DELEGATE, expr != null ? expr : "${t2}"),
+                    new SequenceFlow("f5", "t2", "gw2"),
+                    new SequenceFlow("f6", "gw1", "t3"),
+                    new ServiceTask("t3", ExpressionType.DELEGATE, expr != null ? expr : "${t3}"),
+                    new SequenceFlow("f7", "t3", "gw2"),
+                new ParallelGateway("gw2"),
+                new SequenceFlow("f8", "gw2", "t4"),
+                new ServiceTask("t4", ExpressionType.DELEGATE, "${t4}"),
+                new SequenceFlow("f9", "t4", "end"),
+                new EndEvent("end")
+        ));
+    }
+}
@@ -0,0 +1,140 @@
+package jet.bpm.engine;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import jet.bpm.engine.lock.KeyLockManagerImpl;
+import jet.bpm.engine.lock.NoopLockManager;
+import jet.bpm.engine.lock.ProfilingLockManager;
+import jet.bpm.engine.lock.StripedLockManagerImpl;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ProfilingLockManagerTest {
+
+    @Test(timeout = 10000)
+    public void testStripeCollision() throws Exception {
+        ProfilingLockManager lm = new ProfilingLockManager(new StripedLockManagerImpl(1));
+
+        // "a" and "b" share the only stripe
+        lm.lock("a");
+        Thread t = lockInThread(lm, "b");
+        Thread.sleep(100);
+        awaitContention(lm, 1);
+        lm.unlock("a");
+        t.join();
+
+        ProfilingLockManager.Snapshot s = lm.snapshot();
+        assertEquals(2, s.getAcquisitionCount());
+        assertEquals(1, s.getContentionCount());
+        assertEquals(1, s.getStripeCollisionCount());
+        assertEquals(2, s.getHoldTime().getCount());
+        assertTrue(s.getWaitTime().getMax(TimeUnit.MILLISECONDS) >= 50);
+        assertEquals("b", s.getTopContendedKeys().get(0).getProcessBusinessKey());
+    }
+
+    @Test(timeout = 10000)
+    public void testTopContendedKeys() throws Exception {
+        ProfilingLockManager lm = new ProfilingLockManager(new KeyLockManagerImpl(), 2);
+
+        for (int i = 0; i < 3; i++) {
+            contend(lm, "hot");
+        }
+        contend(lm, "warm");
+
+        ProfilingLockManager.Snapshot s = lm.snapshot();
+        assertEquals(4, s.getContentionCount());
+        assertEquals(0, s.getStripeCollisionCount());
+        assertEquals("hot", s.getTopContendedKeys().get(0).getProcessBusinessKey());
+        assertEquals(3, s.getTopContendedKeys().get(0).getCount());
+        assertEquals("warm", s.getTopContendedKeys().get(1).getProcessBusinessKey());
+
+        // reentrant acquisitions are held once
+        lm.reset();
+        lm.lock("x");
+        lm.lock("x");
+        lm.unlock("x");
+        lm.unlock("x");
+        assertEquals(2, lm.snapshot().getAcquisitionCount());
+        assertEquals(1, lm.snapshot().getHoldTime().getCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testUnlockInAnotherThread() throws Exception {
+        final ProfilingLockManager lm = new ProfilingLockManager(new NoopLockManager());
+
+        lm.lock("a");
+        Thread t = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                lm.unlock("a");
+            }
+        });
+        t.start();
+        t.join();
+        assertEquals(1, lm.snapshot().getHoldTime().getCount());
+
+        // the next acquisition isn't mistaken for a reentrant one
+        lm.lock("a");
+        lm.unlock("a");
+        assertEquals(2, lm.snapshot().getHoldTime().getCount());
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        ProfilingLockManager lm = new ProfilingLockManager(new KeyLockManagerImpl());
+        lm.lock("a");
+        lm.unlock("a");
+        assertTrue(lm.tryLock("b", 0, TimeUnit.MILLISECONDS));
+        lm.unlock("b");
+
+        ObjectName n = lm.registerMBean(ProfilingLockManager.DEFAULT_OBJECT_NAME);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertEquals(2L, server.getAttribute(n, "AcquisitionCount"));
+            assertEquals(0L, server.getAttribute(n, "ContentionCount"));
+            server.invoke(n, "reset", null, null);
+            assertEquals(0L, server.getAttribute(n, "AcquisitionCount"));
+        } finally {
+            server.unregisterMBean(n);
+        }
+    }
+
+    /**
+     * Makes the key contended once.
+     */
+    private static void contend(ProfilingLockManager lm, String key) throws InterruptedException {
+        long n = lm.getContentionCount();
+
+        lm.lock(key);
+        Thread t = lockInThread(lm, key);
+        awaitContention(lm, n + 1);
+        lm.unlock(key);
+        t.join();
+    }
+
+    private static void awaitContention(ProfilingLockManager lm, long n) throws InterruptedException {
+        while (lm.getContentionCount() < n) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static Thread lockInThread(final ProfilingLockManager lm, final String key) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        Thread t = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                started.countDown();
+                lm.lock(key);
+                lm.unlock(key);
+            }
+        });
+        t.start();
+        started.await();
+        return t;
+    }
+}
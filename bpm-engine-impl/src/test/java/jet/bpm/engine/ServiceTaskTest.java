@@ -11,6 +11,8 @@ import jet.bpm.engine.api.ExecutionException;
 import jet.bpm.engine.model.AbstractElement;
 import jet.bpm.engine.model.BoundaryEvent;
 import jet.bpm.engine.model.EndEvent;
+import jet.bpm.engine.model.EventBasedGateway;
+import jet.bpm.engine.model.IntermediateCatchEvent;
 import jet.bpm.engine.model.ProcessDefinition;
 import jet.bpm.engine.model.SequenceFlow;
 import jet.bpm.engine.model.ServiceTask;
@@ -215,6 +217,73 @@ public class ServiceTaskTest extends AbstractEngineTest {
         verify(t, times(1)).doIt(eq(123L));
     }
     
+    /**
+     * start --> t1 --> t2 --> gw --> ev --> t3 --> end
+     */
+    @Test
+    public void testTransientVariables() throws Exception {
+        final Object handle = new Object();
+
+        JavaDelegate t1 = spy(new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                ctx.setTransientVariable("handle", handle);
+            }
+        });
+        getEngine().getServiceTaskRegistry().register("t1", t1);
+
+        JavaDelegate t2 = spy(new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                Assert.assertSame(handle, ctx.getTransientVariable("handle"));
+                Assert.assertFalse(ctx.hasVariable("handle"));
+            }
+        });
+        getEngine().getServiceTaskRegistry().register("t2", t2);
+
+        JavaDelegate t3 = spy(new JavaDelegate() {
+
+            @Override
+            public void execute(ExecutionContext ctx) throws ExecutionException {
+                Assert.assertNull(ctx.getTransientVariable("handle"));
+            }
+        });
+        getEngine().getServiceTaskRegistry().register("t3", t3);
+
+        // ---
+
+        String processId = "test";
+        deploy(new ProcessDefinition(processId, Arrays.<AbstractElement>asList(
+                new StartEvent("start"),
+                new SequenceFlow("f1", "start", "t1"),
+                new ServiceTask("t1", ExpressionType.DELEGATE, "${t1}"),
+                new SequenceFlow("f2", "t1", "t2"),
+                new ServiceTask("t2", ExpressionType.DELEGATE, "${t2}"),
+                new SequenceFlow("f3", "t2", "gw"),
+                new EventBasedGateway("gw"),
+                new SequenceFlow("f4", "gw", "ev"),
+                new IntermediateCatchEvent("ev", "ev"),
+                new SequenceFlow("f5", "ev", "t3"),
+                new ServiceTask("t3", ExpressionType.DELEGATE, "${t3}"),
+                new SequenceFlow("f6", "t3", "end"),
+                new EndEvent("end")
+        )));
+
+        // ---
+
+        String key = UUID.randomUUID().toString();
+        getEngine().start(key, processId, null);
+        getEngine().resume(key, "ev", null);
+
+        // ---
+
+        verify(t1, times(1)).execute(any(ExecutionContext.class));
+        verify(t2, times(1)).execute(any(ExecutionContext.class));
+        verify(t3, times(1)).execute(any(ExecutionContext.class));
+    }
+
     public interface SampleTask {
         
         void doIt(long i);
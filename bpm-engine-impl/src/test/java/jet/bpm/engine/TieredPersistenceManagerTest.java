@@ -0,0 +1,193 @@
+package jet.bpm.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import jet.bpm.engine.persistence.MapPersistenceManager;
+import jet.bpm.engine.persistence.TieredPersistenceManager;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TieredPersistenceManagerTest {
+
+    private Map<UUID, DefaultExecution> hot;
+    private Map<UUID, DefaultExecution> cold;
+    private TieredPersistenceManager pm;
+
+    @Before
+    public void init() {
+        hot = new ConcurrentHashMap<>();
+        cold = new ConcurrentHashMap<>();
+        pm = new TieredPersistenceManager(new MapPersistenceManager(hot), new MapPersistenceManager(cold));
+        pm.setDemotionInterval(0);
+    }
+
+    @Test
+    public void testDemoteAndPromote() throws Exception {
+        DefaultExecution a = makeExecution();
+        DefaultExecution b = makeExecution();
+        pm.save(a);
+        pm.save(b);
+        assertEquals(2, hot.size());
+        assertEquals(2, pm.getHotSize());
+
+        // nothing is idle yet
+        assertEquals(0, pm.demote());
+
+        pm.setMaxIdleTime(0);
+        Thread.sleep(5);
+        assertEquals(2, pm.demote());
+        assertTrue(hot.isEmpty());
+        assertEquals(2, cold.size());
+        assertEquals(0, pm.getHotSize());
+        assertEquals(2, pm.getDemotions());
+
+        // loaded, but not promoted until saved
+        assertSame(a, pm.get(a.getId()));
+        assertEquals(1, pm.getColdHits());
+        assertTrue(cold.containsKey(a.getId()));
+
+        pm.save(a);
+        assertTrue(hot.containsKey(a.getId()));
+        assertFalse(cold.containsKey(a.getId()));
+        assertEquals(1, pm.getPromotions());
+
+        assertSame(a, pm.get(a.getId()));
+        assertEquals(1, pm.getHotHits());
+
+        assertSame(a, pm.remove(a.getId()));
+        assertSame(b, pm.remove(b.getId()));
+        assertTrue(hot.isEmpty());
+        assertTrue(cold.isEmpty());
+        assertNull(pm.get(a.getId()));
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        DefaultExecution a = makeExecution();
+        DefaultExecution b = makeExecution();
+        DefaultExecution c = makeExecution();
+        pm.write(Arrays.asList(a, b, c), Collections.<UUID>emptyList());
+
+        pm.setMaxIdleTime(0);
+        Thread.sleep(5);
+        pm.demote();
+        pm.setMaxIdleTime(TieredPersistenceManager.DEFAULT_MAX_IDLE_TIME);
+
+        pm.get(a.getId());
+        pm.get(b.getId());
+        pm.write(Collections.singletonList(a), Arrays.asList(b.getId(), c.getId()));
+
+        assertEquals(Collections.singleton(a.getId()), hot.keySet());
+        assertTrue(cold.isEmpty());
+        assertEquals(1, pm.getPromotions());
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        pm.setDemotionInterval(10);
+        pm.setMaxIdleTime(20);
+        pm.start();
+
+        DefaultExecution a = makeExecution();
+        pm.save(a);
+        for (int i = 0; i < 100 && !cold.containsKey(a.getId()); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(cold.containsKey(a.getId()));
+
+        DefaultExecution b = makeExecution();
+        pm.save(b);
+        pm.stop();
+        assertTrue(hot.isEmpty());
+        assertEquals(2, cold.size());
+    }
+
+    @Test
+    public void testInterruptedPromotion() throws Exception {
+        // the process stopped after the hot copy was written, but before
+        // the cold one was removed
+        DefaultExecution stale = makeExecution();
+        DefaultExecution current = new DefaultExecution(stale.getId(), null, "bk", "pd", new ExecutionContextImpl(null));
+        cold.put(stale.getId(), stale);
+        hot.put(current.getId(), current);
+
+        // a fresh instance doesn't track anything
+        pm = new TieredPersistenceManager(new MapPersistenceManager(hot), new MapPersistenceManager(cold));
+        pm.setDemotionInterval(0);
+
+        assertSame(current, pm.get(current.getId()));
+        assertEquals(1, pm.getHotHits());
+        assertFalse(cold.containsKey(current.getId()));
+
+        assertSame(current, pm.remove(current.getId()));
+        assertNull(pm.get(current.getId()));
+    }
+
+    @Test
+    public void testWriteThrough() throws Exception {
+        pm.setWriteThrough(true);
+
+        DefaultExecution a = makeExecution();
+        pm.save(a);
+        // survives the loss of the hot tier
+        assertTrue(hot.containsKey(a.getId()));
+        assertTrue(cold.containsKey(a.getId()));
+
+        pm.setMaxIdleTime(0);
+        assertEquals(1, pm.demote());
+        assertTrue(hot.isEmpty());
+
+        // the cold copy is kept on promotion
+        a = pm.get(a.getId());
+        pm.save(a);
+        assertEquals(1, pm.getPromotions());
+        assertTrue(hot.containsKey(a.getId()));
+        assertTrue(cold.containsKey(a.getId()));
+
+        pm.remove(a.getId());
+        assertTrue(hot.isEmpty());
+        assertTrue(cold.isEmpty());
+    }
+
+    @Test
+    public void testTrackOnStart() throws Exception {
+        // left in a persistent hot tier by the previous run, with a stale
+        // cold copy of an interrupted promotion
+        DefaultExecution stale = makeExecution();
+        DefaultExecution current = new DefaultExecution(stale.getId(), null, "bk", "pd", new ExecutionContextImpl(null));
+        cold.put(stale.getId(), stale);
+        hot.put(current.getId(), current);
+
+        pm.start();
+        assertEquals(1, pm.getHotSize());
+        assertFalse(cold.containsKey(current.getId()));
+
+        pm.setMaxIdleTime(0);
+        assertEquals(1, pm.demote());
+        assertTrue(hot.isEmpty());
+        assertSame(current, cold.get(current.getId()));
+    }
+
+    @Test
+    public void testUnsavedPromotion() throws Exception {
+        DefaultExecution a = makeExecution();
+        cold.put(a.getId(), a);
+
+        // e.g. a failed run, the execution is never saved
+        assertNotNull(pm.get(a.getId()));
+        assertEquals(1, pm.getPromotingSize());
+
+        pm.setMaxIdleTime(0);
+        pm.demote();
+        assertEquals(0, pm.getPromotingSize());
+        assertTrue(cold.containsKey(a.getId()));
+    }
+
+    private static DefaultExecution makeExecution() {
+        return new DefaultExecution(UUID.randomUUID(), null, "bk", "pd", new ExecutionContextImpl(null));
+    }
+}
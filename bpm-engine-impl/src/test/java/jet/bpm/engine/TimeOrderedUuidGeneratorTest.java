@@ -0,0 +1,67 @@
+package jet.bpm.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class TimeOrderedUuidGeneratorTest {
+
+    @Test
+    public void testLayout() throws Exception {
+        long t1 = System.currentTimeMillis();
+        UUID id = new TimeOrderedUuidGenerator().generate();
+        long t2 = System.currentTimeMillis();
+
+        assertEquals(7, id.version());
+        assertEquals(2, id.variant());
+
+        long millis = id.getMostSignificantBits() >>> 16;
+        assertTrue(millis >= t1 && millis <= t2 + 1);
+    }
+
+    @Test
+    public void testMonotonic() throws Exception {
+        UuidGenerator g = new TimeOrderedUuidGenerator();
+
+        UUID prev = g.generate();
+        for (int i = 0; i < 100000; i++) {
+            UUID id = g.generate();
+            // the time and the counter are in the most significant bits
+            assertTrue(id.getMostSignificantBits() > prev.getMostSignificantBits());
+            prev = id;
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testUnique() throws Exception {
+        final UuidGenerator g = new TimeOrderedUuidGenerator();
+        final Set<UUID> ids = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+
+        final int count = 10000;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread t = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int j = 0; j < count; j++) {
+                        ids.add(g.generate());
+                    }
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertEquals(4 * count, ids.size());
+    }
+}
@@ -0,0 +1,60 @@
+package jet.bpm.engine;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+import jet.bpm.engine.persistence.BatchPersistenceManager;
+import jet.bpm.engine.persistence.WriteBehindPersistenceManager;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static org.mockito.Mockito.*;
+
+public class WriteBehindPersistenceManagerTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCoalescing() throws Exception {
+        BatchPersistenceManager delegate = mock(BatchPersistenceManager.class);
+        WriteBehindPersistenceManager pm = new WriteBehindPersistenceManager(delegate);
+
+        DefaultExecution a = new DefaultExecution(UUID.randomUUID(), null, "bk", new ExecutionContextImpl(null));
+        DefaultExecution b = new DefaultExecution(UUID.randomUUID(), null, "bk", new ExecutionContextImpl(null));
+
+        pm.begin();
+
+        pm.save(a);
+        pm.save(a);
+        pm.save(b);
+        assertSame(b, pm.remove(b.getId()));
+        assertNull(pm.get(b.getId()));
+        assertSame(a, pm.get(a.getId()));
+
+        verifyZeroInteractions(delegate);
+
+        pm.flush();
+
+        verify(delegate, times(1)).write(
+                (Collection<DefaultExecution>) eq(Arrays.asList(a)),
+                (Collection<UUID>) eq(Collections.singletonList(b.getId())));
+        verify(delegate, never()).save(any(DefaultExecution.class));
+    }
+
+    @Test
+    public void testDiscard() throws Exception {
+        BatchPersistenceManager delegate = mock(BatchPersistenceManager.class);
+        WriteBehindPersistenceManager pm = new WriteBehindPersistenceManager(delegate);
+
+        DefaultExecution a = new DefaultExecution(UUID.randomUUID(), null, "bk", new ExecutionContextImpl(null));
+
+        pm.begin();
+        pm.save(a);
+        pm.discard();
+
+        verifyZeroInteractions(delegate);
+
+        // no active unit of work, goes directly to the delegate
+        pm.save(a);
+        verify(delegate, times(1)).save(a);
+    }
+}